@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.naming.Context;
+import javax.naming.NameNotFoundException;
+import javax.naming.OperationNotSupportedException;
+import javax.naming.spi.InitialContextFactory;
+
+/**
+ * Minimal JNDI provider which serves the objects bound by the benchmark environment, e.g. the data source looked
+ * up by the identity persistence manager. Only lookups are supported.
+ */
+public class BenchmarkContextFactory implements InitialContextFactory {
+
+    private static final Map<String, Object> bindings = new ConcurrentHashMap<>();
+
+    public static void bind(String name, Object value) {
+        bindings.put(name, value);
+    }
+
+    @Override
+    public Context getInitialContext(Hashtable<?, ?> environment) {
+
+        return (Context) Proxy.newProxyInstance(BenchmarkContextFactory.class.getClassLoader(),
+                new Class[]{Context.class}, new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+                        String methodName = method.getName();
+                        if ("lookup".equals(methodName)) {
+                            String name = String.valueOf(args[0]);
+                            Object value = bindings.get(name);
+                            if (value == null) {
+                                throw new NameNotFoundException(name + " is not bound");
+                            }
+                            return value;
+                        } else if ("close".equals(methodName)) {
+                            return null;
+                        } else if ("toString".equals(methodName)) {
+                            return BenchmarkContextFactory.class.getSimpleName();
+                        } else if ("hashCode".equals(methodName)) {
+                            return System.identityHashCode(proxy);
+                        } else if ("equals".equals(methodName)) {
+                            return proxy == args[0];
+                        }
+                        throw new OperationNotSupportedException(methodName + " is not supported");
+                    }
+                });
+    }
+}
@@ -0,0 +1,551 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth.benchmarks;
+
+import org.apache.commons.io.IOUtils;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.h2.tools.RunScript;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.wso2.carbon.base.CarbonBaseConstants;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.core.util.KeyStoreManager;
+import org.wso2.carbon.identity.application.common.model.ClaimConfig;
+import org.wso2.carbon.identity.application.common.model.FederatedAuthenticatorConfig;
+import org.wso2.carbon.identity.application.common.model.IdentityProvider;
+import org.wso2.carbon.identity.application.common.model.LocalAndOutboundAuthenticationConfig;
+import org.wso2.carbon.identity.application.common.model.Property;
+import org.wso2.carbon.identity.application.common.model.ServiceProvider;
+import org.wso2.carbon.identity.application.common.util.IdentityApplicationConstants;
+import org.wso2.carbon.identity.application.mgt.ApplicationManagementService;
+import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
+import org.wso2.carbon.identity.oauth.common.OAuthConstants;
+import org.wso2.carbon.identity.oauth.internal.OAuthComponentServiceHolder;
+import org.wso2.carbon.identity.oauth2.internal.OAuth2ServiceComponentHolder;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
+import org.wso2.carbon.idp.mgt.IdentityProviderManager;
+import org.wso2.carbon.registry.core.service.RegistryService;
+import org.wso2.carbon.registry.core.session.UserRegistry;
+import org.wso2.carbon.user.core.UserRealm;
+import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.carbon.user.core.UserCoreConstants;
+import org.wso2.carbon.user.core.service.RealmService;
+import org.wso2.carbon.user.core.tenant.TenantManager;
+import org.wso2.carbon.user.api.RealmConfiguration;
+import org.wso2.carbon.utils.CarbonUtils;
+import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.naming.Context;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Boots the OAuth2 component outside the Carbon runtime for the benchmarks. A temporary carbon home is rendered
+ * from the configuration templates of this module, the identity database is created in an in-memory H2 instance
+ * served through {@link BenchmarkContextFactory}, and the OSGi services used on the token paths (realm service,
+ * registry, application management and the resident identity provider) are replaced with in-memory stubs.
+ * <p>
+ * The OAuth2 component keeps its configuration in static singletons, so an environment can only be started once
+ * per JVM. The benchmarks fork a JVM per parameter combination.
+ */
+public class BenchmarkEnvironment {
+
+    public static final String TENANT_DOMAIN = MultitenantConstants.SUPER_TENANT_DOMAIN_NAME;
+    public static final int TENANT_ID = MultitenantConstants.SUPER_TENANT_ID;
+    public static final String USER_STORE_DOMAIN = UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME;
+    public static final String APPLICATION_OWNER = "admin";
+    public static final String CLIENT_ID_PREFIX = "benchmark-client-";
+    public static final String CLIENT_SECRET = "benchmark-client-secret";
+    public static final String CALLBACK_URL = "https://localhost:9443/benchmark/callback";
+    public static final String USER_NAME_PREFIX = "benchmark-user-";
+    public static final String USER_PASSWORD = "benchmark-password";
+    public static final String USER_LAST_NAME = "Benchmark";
+    public static final String USER_EMAIL_SUFFIX = "@benchmark.wso2.org";
+    public static final String SCOPE = "default";
+    public static final int APPLICATION_COUNT = 10;
+
+    private static final String SERVICE_PROVIDER_NAME = "benchmark-service-provider";
+    private static final String ISSUER = "https://localhost:9443/oauth2/token";
+    private static final String IDP_ENTITY_ID = "IdPEntityId";
+    private static final String GRANT_TYPES = "authorization_code password refresh_token client_credentials";
+    private static final String CARBON_CONFIG_DIR_PATH = "carbon.config.dir.path";
+    private static final String DATA_SOURCE_NAME = "jdbc/WSO2CarbonDB";
+    private static final String DATABASE_URL = "jdbc:h2:mem:oauth-benchmark;DB_CLOSE_DELAY=-1";
+    private static final String KEY_STORE = "security/wso2carbon.jks";
+    private static final String KEY_STORE_PASSWORD = "wso2carbon";
+    private static final String KEY_ALIAS = "wso2carbon";
+    private static final long VALIDITY_PERIOD = TimeUnit.HOURS.toMillis(1);
+    private static final long REFRESH_TOKEN_VALIDITY_PERIOD = TimeUnit.DAYS.toMillis(1);
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String INSERT_APPLICATION = "INSERT INTO IDN_OAUTH_CONSUMER_APPS (CONSUMER_KEY, " +
+            "CONSUMER_SECRET, USERNAME, TENANT_ID, USER_DOMAIN, APP_NAME, OAUTH_VERSION, CALLBACK_URL, GRANT_TYPES) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_ACCESS_TOKEN = "INSERT INTO IDN_OAUTH2_ACCESS_TOKEN (TOKEN_ID, ACCESS_TOKEN, " +
+            "REFRESH_TOKEN, CONSUMER_KEY_ID, AUTHZ_USER, TENANT_ID, USER_DOMAIN, USER_TYPE, GRANT_TYPE, TIME_CREATED, " +
+            "REFRESH_TOKEN_TIME_CREATED, VALIDITY_PERIOD, REFRESH_TOKEN_VALIDITY_PERIOD, TOKEN_SCOPE_HASH, " +
+            "TOKEN_STATE, SUBJECT_IDENTIFIER) SELECT ?, ?, ?, ID, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ? FROM " +
+            "IDN_OAUTH_CONSUMER_APPS WHERE CONSUMER_KEY = ?";
+
+    private static final String INSERT_ACCESS_TOKEN_SCOPE = "INSERT INTO IDN_OAUTH2_ACCESS_TOKEN_SCOPE (TOKEN_ID, " +
+            "TOKEN_SCOPE, TENANT_ID) VALUES (?, ?, ?)";
+
+    private static final String INSERT_AUTHORIZATION_CODE = "INSERT INTO IDN_OAUTH2_AUTHORIZATION_CODE (CODE_ID, " +
+            "AUTHORIZATION_CODE, CONSUMER_KEY_ID, CALLBACK_URL, SCOPE, AUTHZ_USER, TENANT_ID, USER_DOMAIN, " +
+            "TIME_CREATED, VALIDITY_PERIOD, SUBJECT_IDENTIFIER) SELECT ?, ?, ID, ?, ?, ?, ?, ?, ?, ?, ? FROM " +
+            "IDN_OAUTH_CONSUMER_APPS WHERE CONSUMER_KEY = ?";
+
+    private static BenchmarkEnvironment instance;
+
+    private final boolean cacheEnabled;
+    private final int persistencePoolSize;
+    private final int tokenCount;
+    private final String signatureAlgorithm;
+    private final List<String> accessTokens = new ArrayList<>();
+    private final List<String> refreshTokens = new ArrayList<>();
+    private final AtomicInteger nextTokenIndex = new AtomicInteger();
+    private final AtomicInteger nextUserIndex = new AtomicInteger();
+    private JdbcConnectionPool dataSource;
+
+    private BenchmarkEnvironment(boolean cacheEnabled, int persistencePoolSize, int tokenCount,
+                                 String signatureAlgorithm) {
+
+        this.cacheEnabled = cacheEnabled;
+        this.persistencePoolSize = persistencePoolSize;
+        this.tokenCount = tokenCount;
+        this.signatureAlgorithm = signatureAlgorithm;
+    }
+
+    /**
+     * Starts the environment of this JVM, or returns it if it was already started with the same parameters.
+     *
+     * @param cacheEnabled        whether the OAuth caches are enabled.
+     * @param persistencePoolSize number of asynchronous token persistence threads, 0 to persist synchronously.
+     * @param tokenCount          number of active access tokens loaded into the token store.
+     * @param signatureAlgorithm  JCA signature algorithm of JWT access tokens and ID tokens.
+     * @return started environment.
+     * @throws Exception if the environment cannot be started.
+     */
+    public static synchronized BenchmarkEnvironment start(boolean cacheEnabled, int persistencePoolSize,
+                                                          int tokenCount, String signatureAlgorithm)
+            throws Exception {
+
+        if (instance == null) {
+            BenchmarkEnvironment environment = new BenchmarkEnvironment(cacheEnabled, persistencePoolSize,
+                    tokenCount, signatureAlgorithm);
+            environment.init();
+            instance = environment;
+        } else if (instance.cacheEnabled != cacheEnabled || instance.persistencePoolSize != persistencePoolSize ||
+                instance.tokenCount != tokenCount || !instance.signatureAlgorithm.equals(signatureAlgorithm)) {
+            throw new IllegalStateException("The benchmark environment is already started with different " +
+                    "parameters. Run each parameter combination in a forked JVM.");
+        }
+        return instance;
+    }
+
+    /**
+     * Sets the super tenant on the carbon context of the calling thread. The OAuth2 component reads the tenant
+     * from the thread local carbon context, so every benchmark thread has to start a tenant flow.
+     */
+    public static void startTenantFlow() {
+
+        PrivilegedCarbonContext.startTenantFlow();
+        PrivilegedCarbonContext carbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+        carbonContext.setTenantDomain(TENANT_DOMAIN);
+        carbonContext.setTenantId(TENANT_ID);
+    }
+
+    public static void endTenantFlow() {
+        PrivilegedCarbonContext.endTenantFlow();
+    }
+
+    public static String getClientId(int index) {
+        return CLIENT_ID_PREFIX + (index % APPLICATION_COUNT);
+    }
+
+    public static String getUserName(int index) {
+        return USER_NAME_PREFIX + index;
+    }
+
+    public int getTokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * Returns an access token loaded into the token store. Token {@code i} was issued to the user
+     * {@link #getUserName(int)} of the application {@link #getClientId(int)} with the same index.
+     *
+     * @param index index of the token, modulo the number of loaded tokens.
+     * @return access token identifier.
+     */
+    public String getAccessToken(int index) {
+        return accessTokens.get(index % tokenCount);
+    }
+
+    public String getRefreshToken(int index) {
+        return refreshTokens.get(index % tokenCount);
+    }
+
+    /**
+     * Returns the index of the next loaded token, so that concurrent benchmark threads start from different
+     * tokens.
+     *
+     * @return token index.
+     */
+    public int nextTokenIndex() {
+        return nextTokenIndex.getAndIncrement() % tokenCount;
+    }
+
+    /**
+     * Returns the index of a user without a token in the token store, so that a grant issues a new token instead
+     * of returning the active token of the user.
+     *
+     * @return user index.
+     */
+    public int nextUserIndex() {
+        return tokenCount + nextUserIndex.getAndIncrement();
+    }
+
+    /**
+     * Inserts a new authorization code for the given user and application, as the authorize endpoint would.
+     *
+     * @param clientId client id of the application.
+     * @param userName user who authorized the code.
+     * @return authorization code.
+     * @throws SQLException if the code cannot be stored.
+     */
+    public String createAuthorizationCode(String clientId, String userName) throws SQLException {
+
+        String authorizationCode = UUID.randomUUID().toString();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement prepStmt = connection.prepareStatement(INSERT_AUTHORIZATION_CODE)) {
+            prepStmt.setString(1, UUID.randomUUID().toString());
+            prepStmt.setString(2, authorizationCode);
+            prepStmt.setString(3, CALLBACK_URL);
+            prepStmt.setString(4, SCOPE);
+            prepStmt.setString(5, userName);
+            prepStmt.setInt(6, TENANT_ID);
+            prepStmt.setString(7, USER_STORE_DOMAIN);
+            prepStmt.setTimestamp(8, new Timestamp(System.currentTimeMillis()));
+            prepStmt.setLong(9, VALIDITY_PERIOD);
+            prepStmt.setString(10, userName);
+            prepStmt.setString(11, clientId);
+            prepStmt.executeUpdate();
+        }
+        return authorizationCode;
+    }
+
+    private void init() throws Exception {
+
+        Path carbonHome = createCarbonHome();
+        System.setProperty(CarbonBaseConstants.CARBON_HOME, carbonHome.toString());
+        System.setProperty(CARBON_CONFIG_DIR_PATH, carbonHome.resolve("repository").resolve("conf").toString());
+        CarbonUtils.getServerConfiguration();
+
+        createDatabase();
+        stubServices();
+
+        startTenantFlow();
+        try {
+            loadApplications();
+            loadTokens();
+            stubKeyStoreManager(carbonHome.resolve("repository").resolve("resources").resolve(KEY_STORE));
+        } finally {
+            endTenantFlow();
+        }
+    }
+
+    private Path createCarbonHome() throws IOException {
+
+        Path carbonHome = Files.createTempDirectory("oauth-benchmarks");
+        Path confDir = carbonHome.resolve("repository").resolve("conf");
+        Path securityDir = carbonHome.resolve("repository").resolve("resources").resolve("security");
+        Files.createDirectories(confDir.resolve("identity"));
+        Files.createDirectories(securityDir);
+
+        Map<String, String> placeholders = new HashMap<>();
+        placeholders.put("cacheEnabled", String.valueOf(cacheEnabled));
+        placeholders.put("persistencePoolSize", String.valueOf(persistencePoolSize));
+        placeholders.put("signatureAlgorithm", signatureAlgorithm);
+
+        String identityConfig = readResource("repository/conf/identity/identity.xml");
+        for (Map.Entry<String, String> placeholder : placeholders.entrySet()) {
+            identityConfig = identityConfig.replace("${" + placeholder.getKey() + "}", placeholder.getValue());
+        }
+        Files.write(confDir.resolve("identity").resolve("identity.xml"),
+                identityConfig.getBytes(StandardCharsets.UTF_8));
+        Files.write(confDir.resolve("carbon.xml"),
+                readResource("repository/conf/carbon.xml").getBytes(StandardCharsets.UTF_8));
+        try (InputStream keyStore = getResource(KEY_STORE)) {
+            Files.copy(keyStore, securityDir.resolve("wso2carbon.jks"));
+        }
+        return carbonHome;
+    }
+
+    private void createDatabase() throws SQLException, IOException {
+
+        dataSource = JdbcConnectionPool.create(DATABASE_URL, "wso2carbon", "wso2carbon");
+        dataSource.setMaxConnections(Math.max(persistencePoolSize, 0) + Runtime.getRuntime().availableProcessors() * 2);
+        BenchmarkContextFactory.bind(DATA_SOURCE_NAME, dataSource);
+        System.setProperty(Context.INITIAL_CONTEXT_FACTORY, BenchmarkContextFactory.class.getName());
+
+        try (Connection connection = dataSource.getConnection();
+             Reader script = new InputStreamReader(getResource("dbscripts/h2.sql"), StandardCharsets.UTF_8)) {
+            RunScript.execute(connection, script);
+        }
+    }
+
+    private void stubServices() throws Exception {
+
+        RealmConfiguration realmConfiguration = new RealmConfiguration();
+
+        UserStoreManager userStoreManager = mock(UserStoreManager.class);
+        when(userStoreManager.authenticate(anyString(), any())).thenReturn(true);
+        when(userStoreManager.getUserClaimValues(anyString(), any(String[].class), anyString()))
+                .thenAnswer(new Answer<Map<String, String>>() {
+
+                    @Override
+                    public Map<String, String> answer(InvocationOnMock invocation) {
+                        return getUserClaims((String) invocation.getArguments()[0]);
+                    }
+                });
+        when(userStoreManager.getUserClaimValue(anyString(), anyString(), anyString()))
+                .thenAnswer(new Answer<String>() {
+
+                    @Override
+                    public String answer(InvocationOnMock invocation) {
+                        return getUserClaims((String) invocation.getArguments()[0])
+                                .get((String) invocation.getArguments()[1]);
+                    }
+                });
+        when(userStoreManager.getRealmConfiguration()).thenReturn(realmConfiguration);
+        when(userStoreManager.getSecondaryUserStoreManager(anyString())).thenReturn(userStoreManager);
+        when(userStoreManager.getTenantId()).thenReturn(TENANT_ID);
+
+        UserRealm userRealm = mock(UserRealm.class);
+        when(userRealm.getUserStoreManager()).thenReturn(userStoreManager);
+        when(userRealm.getRealmConfiguration()).thenReturn(realmConfiguration);
+
+        TenantManager tenantManager = mock(TenantManager.class);
+        when(tenantManager.getTenantId(anyString())).thenReturn(TENANT_ID);
+        when(tenantManager.getDomain(anyInt())).thenReturn(TENANT_DOMAIN);
+
+        RealmService realmService = mock(RealmService.class);
+        when(realmService.getTenantUserRealm(anyInt())).thenReturn(userRealm);
+        when(realmService.getTenantManager()).thenReturn(tenantManager);
+        when(realmService.getBootstrapRealmConfiguration()).thenReturn(realmConfiguration);
+        OAuthComponentServiceHolder.getInstance().setRealmService(realmService);
+        IdentityTenantUtil.setRealmService(realmService);
+
+        // An empty registry, i.e. no service provider specific token expiry times.
+        UserRegistry registry = mock(UserRegistry.class);
+        RegistryService registryService = mock(RegistryService.class);
+        when(registryService.getConfigSystemRegistry(anyInt())).thenReturn(registry);
+        when(registryService.getGovernanceSystemRegistry(anyInt())).thenReturn(registry);
+        OAuthComponentServiceHolder.getInstance().setRegistryService(registryService);
+        OAuth2ServiceComponentHolder.setRegistryService(registryService);
+        IdentityTenantUtil.setRegistryService(registryService);
+
+        ServiceProvider serviceProvider = new ServiceProvider();
+        serviceProvider.setApplicationName(SERVICE_PROVIDER_NAME);
+        serviceProvider.setSaasApp(false);
+        serviceProvider.setLocalAndOutBoundAuthenticationConfig(new LocalAndOutboundAuthenticationConfig());
+        serviceProvider.setClaimConfig(new ClaimConfig());
+
+        ApplicationManagementService applicationMgtService = mock(ApplicationManagementService.class);
+        when(applicationMgtService.getServiceProviderByClientId(anyString(), anyString(), anyString()))
+                .thenReturn(serviceProvider);
+        when(applicationMgtService.getServiceProviderNameByClientId(anyString(), anyString(), anyString()))
+                .thenReturn(SERVICE_PROVIDER_NAME);
+        when(applicationMgtService.getApplicationExcludingFileBasedSPs(anyString(), anyString()))
+                .thenReturn(serviceProvider);
+        OAuth2ServiceComponentHolder.setApplicationMgtService(applicationMgtService);
+
+        Property idpEntityId = new Property();
+        idpEntityId.setName(IDP_ENTITY_ID);
+        idpEntityId.setValue(ISSUER);
+        FederatedAuthenticatorConfig oidcAuthenticatorConfig = new FederatedAuthenticatorConfig();
+        oidcAuthenticatorConfig.setName(IdentityApplicationConstants.Authenticator.OIDC.NAME);
+        oidcAuthenticatorConfig.setProperties(new Property[]{idpEntityId});
+        IdentityProvider residentIdP = new IdentityProvider();
+        residentIdP.setIdentityProviderName(IdentityApplicationConstants.RESIDENT_IDP_RESERVED_NAME);
+        residentIdP.setFederatedAuthenticatorConfigs(new FederatedAuthenticatorConfig[]{oidcAuthenticatorConfig});
+
+        IdentityProviderManager identityProviderManager = mock(IdentityProviderManager.class);
+        when(identityProviderManager.getResidentIdP(anyString())).thenReturn(residentIdP);
+        setSingleton(IdentityProviderManager.class, identityProviderManager);
+    }
+
+    private void loadApplications() throws SQLException {
+
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement prepStmt = connection.prepareStatement(INSERT_APPLICATION)) {
+            for (int i = 0; i < APPLICATION_COUNT; i++) {
+                prepStmt.setString(1, getClientId(i));
+                prepStmt.setString(2, CLIENT_SECRET);
+                prepStmt.setString(3, APPLICATION_OWNER);
+                prepStmt.setInt(4, TENANT_ID);
+                prepStmt.setString(5, USER_STORE_DOMAIN);
+                prepStmt.setString(6, SERVICE_PROVIDER_NAME + "-" + i);
+                prepStmt.setString(7, OAuthConstants.OAuthVersions.VERSION_2);
+                prepStmt.setString(8, CALLBACK_URL);
+                prepStmt.setString(9, GRANT_TYPES);
+                prepStmt.addBatch();
+            }
+            prepStmt.executeBatch();
+        }
+    }
+
+    private void loadTokens() throws SQLException {
+
+        String scopeHash = OAuth2Util.hashScopes(SCOPE);
+        Timestamp timeCreated = new Timestamp(System.currentTimeMillis());
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement tokenPrepStmt = connection.prepareStatement(INSERT_ACCESS_TOKEN);
+             PreparedStatement scopePrepStmt = connection.prepareStatement(INSERT_ACCESS_TOKEN_SCOPE)) {
+            connection.setAutoCommit(false);
+            for (int i = 0; i < tokenCount; i++) {
+                String tokenId = UUID.randomUUID().toString();
+                String accessToken = UUID.randomUUID().toString();
+                String refreshToken = UUID.randomUUID().toString();
+                tokenPrepStmt.setString(1, tokenId);
+                tokenPrepStmt.setString(2, accessToken);
+                tokenPrepStmt.setString(3, refreshToken);
+                tokenPrepStmt.setString(4, getUserName(i));
+                tokenPrepStmt.setInt(5, TENANT_ID);
+                tokenPrepStmt.setString(6, USER_STORE_DOMAIN);
+                tokenPrepStmt.setString(7, OAuthConstants.UserType.APPLICATION_USER);
+                tokenPrepStmt.setString(8, OAuthConstants.GrantTypes.PASSWORD);
+                tokenPrepStmt.setTimestamp(9, timeCreated);
+                tokenPrepStmt.setTimestamp(10, timeCreated);
+                tokenPrepStmt.setLong(11, VALIDITY_PERIOD);
+                tokenPrepStmt.setLong(12, REFRESH_TOKEN_VALIDITY_PERIOD);
+                tokenPrepStmt.setString(13, scopeHash);
+                tokenPrepStmt.setString(14, OAuthConstants.TokenStates.TOKEN_STATE_ACTIVE);
+                tokenPrepStmt.setString(15, getUserName(i));
+                tokenPrepStmt.setString(16, getClientId(i));
+                tokenPrepStmt.addBatch();
+
+                scopePrepStmt.setString(1, tokenId);
+                scopePrepStmt.setString(2, SCOPE);
+                scopePrepStmt.setInt(3, TENANT_ID);
+                scopePrepStmt.addBatch();
+
+                accessTokens.add(accessToken);
+                refreshTokens.add(refreshToken);
+                if ((i + 1) % BATCH_SIZE == 0 || i == tokenCount - 1) {
+                    tokenPrepStmt.executeBatch();
+                    scopePrepStmt.executeBatch();
+                    connection.commit();
+                }
+            }
+        }
+        Collections.shuffle(accessTokens);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubKeyStoreManager(Path keyStorePath) throws Exception {
+
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        try (InputStream inputStream = Files.newInputStream(keyStorePath)) {
+            keyStore.load(inputStream, KEY_STORE_PASSWORD.toCharArray());
+        }
+        PrivateKey privateKey = (PrivateKey) keyStore.getKey(KEY_ALIAS, KEY_STORE_PASSWORD.toCharArray());
+        X509Certificate certificate = (X509Certificate) keyStore.getCertificate(KEY_ALIAS);
+
+        KeyStoreManager keyStoreManager = mock(KeyStoreManager.class);
+        when(keyStoreManager.getPrimaryKeyStore()).thenReturn(keyStore);
+        when(keyStoreManager.getDefaultPrivateKey()).thenReturn(privateKey);
+        when(keyStoreManager.getDefaultPrimaryCertificate()).thenReturn(certificate);
+        // KeyStoreManager.getInstance returns the manager registered for the tenant id, so that the token signing
+        // service resolves the benchmark key through its regular path.
+        Field field = KeyStoreManager.class.getDeclaredField("mtKeyStoreManagers");
+        field.setAccessible(true);
+        ((Map<String, KeyStoreManager>) field.get(null)).put(String.valueOf(TENANT_ID), keyStoreManager);
+    }
+
+    static Map<String, String> getUserClaims(String userName) {
+
+        Map<String, String> claims = new HashMap<>();
+        claims.put("http://wso2.org/claims/givenname", userName);
+        claims.put("http://wso2.org/claims/lastname", USER_LAST_NAME);
+        claims.put("http://wso2.org/claims/emailaddress", userName + USER_EMAIL_SUFFIX);
+        return claims;
+    }
+
+    private static <T> void setSingleton(Class<T> clazz, T value) throws ReflectiveOperationException {
+
+        for (Field field : clazz.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) && field.getType() == clazz) {
+                field.setAccessible(true);
+                Field modifiers = Field.class.getDeclaredField("modifiers");
+                modifiers.setAccessible(true);
+                modifiers.setInt(field, field.getModifiers() & ~Modifier.FINAL);
+                field.set(null, value);
+                return;
+            }
+        }
+        throw new IllegalStateException("No singleton instance field found in " + clazz.getName());
+    }
+
+    private static InputStream getResource(String name) throws IOException {
+
+        InputStream inputStream = BenchmarkEnvironment.class.getClassLoader().getResourceAsStream(name);
+        if (inputStream == null) {
+            throw new IOException("Resource " + name + " is not found in the class path");
+        }
+        return inputStream;
+    }
+
+    private static String readResource(String name) throws IOException {
+
+        try (InputStream inputStream = getResource(name)) {
+            return IOUtils.toString(inputStream, StandardCharsets.UTF_8.name());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark parameters shared by the token endpoint benchmarks. Each combination runs in a forked JVM with its
+ * own {@link BenchmarkEnvironment}.
+ */
+@State(Scope.Benchmark)
+public class EnvironmentState {
+
+    @Param({"true", "false"})
+    public boolean cacheEnabled;
+
+    @Param({"0", "4"})
+    public int persistencePoolSize;
+
+    @Param({"1000", "100000"})
+    public int tokenCount;
+
+    /**
+     * JCA name of the RSA signature algorithm of JWT access tokens and ID tokens. Pass e.g.
+     * {@code -p signatureAlgorithm=SHA256withRSA,SHA384withRSA,SHA512withRSA} to compare the algorithms.
+     */
+    @Param({"SHA256withRSA"})
+    public String signatureAlgorithm;
+
+    public BenchmarkEnvironment environment;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        environment = BenchmarkEnvironment.start(cacheEnabled, persistencePoolSize, tokenCount,
+                signatureAlgorithm);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wso2.carbon.identity.oauth.common.OAuthConstants;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.dto.OAuth2AccessTokenReqDTO;
+import org.wso2.carbon.identity.oauth2.dto.OAuth2AccessTokenRespDTO;
+import org.wso2.carbon.identity.oauth2.token.OAuthTokenReqMessageContext;
+import org.wso2.carbon.identity.openidconnect.DefaultIDTokenBuilder;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building a signed ID token for a password grant request, including the service provider lookup and
+ * the custom claims callback.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(4)
+public class IDTokenBuilderBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class BuilderState {
+
+        private DefaultIDTokenBuilder idTokenBuilder;
+
+        @Setup(Level.Trial)
+        public void setUp(EnvironmentState environmentState) throws Exception {
+
+            // The builder reads its configuration when created, i.e. after the environment state started the
+            // environment.
+            BenchmarkEnvironment.startTenantFlow();
+            try {
+                idTokenBuilder = new DefaultIDTokenBuilder();
+            } finally {
+                BenchmarkEnvironment.endTenantFlow();
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class RequestState {
+
+        private OAuthTokenReqMessageContext tokenReqMessageContext;
+        private OAuth2AccessTokenRespDTO tokenRespDTO;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+
+            String userName = BenchmarkEnvironment.getUserName((int) Thread.currentThread().getId());
+            OAuth2AccessTokenReqDTO tokenReqDTO = new OAuth2AccessTokenReqDTO();
+            tokenReqDTO.setClientId(BenchmarkEnvironment.getClientId(0));
+            tokenReqDTO.setGrantType(OAuthConstants.GrantTypes.PASSWORD);
+            tokenReqDTO.setTenantDomain(BenchmarkEnvironment.TENANT_DOMAIN);
+            tokenReqMessageContext = new OAuthTokenReqMessageContext(tokenReqDTO);
+            tokenReqMessageContext.setAuthorizedUser(TokenSigningBenchmark.createUser(userName));
+            tokenReqMessageContext.setScope(new String[]{OAuthConstants.Scope.OPENID});
+
+            tokenRespDTO = new OAuth2AccessTokenRespDTO();
+            tokenRespDTO.setAccessToken(UUID.randomUUID().toString());
+        }
+    }
+
+    @Benchmark
+    public String buildIDToken(TenantFlowState tenantFlow, BuilderState builderState, RequestState requestState)
+            throws IdentityOAuth2Exception {
+
+        return builderState.idTokenBuilder.buildIDToken(requestState.tokenReqMessageContext,
+                requestState.tokenRespDTO);
+    }
+}
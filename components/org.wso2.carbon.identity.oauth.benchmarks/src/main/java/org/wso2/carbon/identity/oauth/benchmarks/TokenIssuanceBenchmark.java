@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wso2.carbon.identity.oauth.common.OAuthConstants;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.dto.OAuth2AccessTokenReqDTO;
+import org.wso2.carbon.identity.oauth2.dto.OAuth2AccessTokenRespDTO;
+import org.wso2.carbon.identity.oauth2.token.AccessTokenIssuer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the token endpoint for each grant type, from client authentication to the persisted token.
+ * <p>
+ * The client credentials grant returns the active token of the application, as the token endpoint does for
+ * repeated requests. The password and authorization code grants are issued to users without an active token, so
+ * every request issues and persists a new token next to the tokens already in the store. The refresh token grant
+ * follows a chain of refresh tokens per benchmark thread.
+ * <p>
+ * Authorization codes are inserted by a per invocation fixture, which JMH excludes from the measurement. The
+ * fixture overhead is small compared to a token request, but results of the authorization code grant are less
+ * precise than the others.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(4)
+public class TokenIssuanceBenchmark {
+
+    private static final String REFRESH_TOKEN_GRANT_TYPE = "refresh_token";
+
+    @State(Scope.Thread)
+    public static class RequestState {
+
+        @Param({"client_credentials", "password", "authorization_code", REFRESH_TOKEN_GRANT_TYPE})
+        public String grantType;
+
+        private OAuth2AccessTokenReqDTO request;
+        private String refreshToken;
+        private String refreshTokenClientId;
+
+        @Setup(Level.Trial)
+        public void setUp(EnvironmentState state) {
+
+            int tokenIndex = state.environment.nextTokenIndex();
+            refreshToken = state.environment.getRefreshToken(tokenIndex);
+            refreshTokenClientId = BenchmarkEnvironment.getClientId(tokenIndex);
+        }
+
+        @Setup(Level.Invocation)
+        public void prepareRequest(EnvironmentState state) throws Exception {
+
+            request = new OAuth2AccessTokenReqDTO();
+            request.setGrantType(grantType);
+            request.setClientSecret(BenchmarkEnvironment.CLIENT_SECRET);
+            request.setScope(new String[]{BenchmarkEnvironment.SCOPE});
+            request.setTenantDomain(BenchmarkEnvironment.TENANT_DOMAIN);
+
+            int userIndex = state.environment.nextUserIndex();
+            String clientId = BenchmarkEnvironment.getClientId(userIndex);
+            String userName = BenchmarkEnvironment.getUserName(userIndex);
+            if (OAuthConstants.GrantTypes.PASSWORD.equals(grantType)) {
+                request.setResourceOwnerUsername(userName);
+                request.setResourceOwnerPassword(BenchmarkEnvironment.USER_PASSWORD);
+            } else if (OAuthConstants.GrantTypes.AUTHORIZATION_CODE.equals(grantType)) {
+                request.setAuthorizationCode(state.environment.createAuthorizationCode(clientId, userName));
+                request.setCallbackURI(BenchmarkEnvironment.CALLBACK_URL);
+            } else if (REFRESH_TOKEN_GRANT_TYPE.equals(grantType)) {
+                clientId = refreshTokenClientId;
+                request.setRefreshToken(refreshToken);
+            }
+            request.setClientId(clientId);
+        }
+    }
+
+    @Benchmark
+    public OAuth2AccessTokenRespDTO issue(TenantFlowState tenantFlow, RequestState requestState)
+            throws IdentityOAuth2Exception {
+
+        OAuth2AccessTokenRespDTO response = AccessTokenIssuer.getInstance().issue(requestState.request);
+        if (response.isError()) {
+            throw new IllegalStateException("Token request of grant type " + requestState.grantType +
+                    " failed: " + response.getErrorMsg());
+        }
+        if (response.getRefreshToken() != null) {
+            requestState.refreshToken = response.getRefreshToken();
+        }
+        return response;
+    }
+}
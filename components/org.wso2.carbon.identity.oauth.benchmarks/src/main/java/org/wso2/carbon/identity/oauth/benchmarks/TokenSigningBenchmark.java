@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth.benchmarks;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.apache.oltu.oauth2.common.exception.OAuthSystemException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wso2.carbon.identity.application.authentication.framework.model.AuthenticatedUser;
+import org.wso2.carbon.identity.oauth.common.OAuthConstants;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.dto.OAuth2AccessTokenReqDTO;
+import org.wso2.carbon.identity.oauth2.token.JWTTokenIssuer;
+import org.wso2.carbon.identity.oauth2.token.OAuthTokenReqMessageContext;
+import org.wso2.carbon.identity.oauth2.token.TokenSigningService;
+
+import java.security.interfaces.RSAPrivateKey;
+import java.util.Collections;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures JWT signing with the configured RSA signature algorithm of JWT access tokens and ID tokens.
+ * <p>
+ * {@link #perTokenSigner} is the baseline which creates a signer and a JWS header for every token.
+ * {@link #signingService} signs through the pooled signatures and pre-serialized headers of
+ * {@link TokenSigningService}, and {@link #jwtAccessToken} builds a complete JWT access token.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(4)
+public class TokenSigningBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class SigningState {
+
+        private JWSAlgorithm signatureAlgorithm;
+        private RSAPrivateKey privateKey;
+        private JWTTokenIssuer tokenIssuer;
+        private OAuthTokenReqMessageContext tokenReqMessageContext;
+
+        @Setup(Level.Trial)
+        public void setUp(EnvironmentState environmentState) throws Exception {
+
+            // SHA256withRSA maps to RS256 and so on.
+            String digestLength = environmentState.signatureAlgorithm.replaceAll("\\D", "");
+            signatureAlgorithm = JWSAlgorithm.parse("RS" + digestLength);
+
+            BenchmarkEnvironment.startTenantFlow();
+            try {
+                privateKey = (RSAPrivateKey) TokenSigningService.getInstance()
+                        .getPrivateKey(BenchmarkEnvironment.TENANT_DOMAIN);
+                tokenIssuer = new JWTTokenIssuer();
+            } finally {
+                BenchmarkEnvironment.endTenantFlow();
+            }
+
+            OAuth2AccessTokenReqDTO tokenReqDTO = new OAuth2AccessTokenReqDTO();
+            tokenReqDTO.setClientId(BenchmarkEnvironment.getClientId(0));
+            tokenReqDTO.setGrantType(OAuthConstants.GrantTypes.PASSWORD);
+            tokenReqDTO.setTenantDomain(BenchmarkEnvironment.TENANT_DOMAIN);
+            tokenReqMessageContext = new OAuthTokenReqMessageContext(tokenReqDTO);
+            tokenReqMessageContext.setAuthorizedUser(createUser(BenchmarkEnvironment.getUserName(0)));
+            tokenReqMessageContext.setScope(new String[]{BenchmarkEnvironment.SCOPE});
+        }
+    }
+
+    @Benchmark
+    public String perTokenSigner(SigningState state) throws JOSEException {
+
+        SignedJWT signedJWT = new SignedJWT(new JWSHeader(state.signatureAlgorithm), createClaims());
+        signedJWT.sign(new RSASSASigner(state.privateKey));
+        return signedJWT.serialize();
+    }
+
+    @Benchmark
+    public String signingService(SigningState state) throws IdentityOAuth2Exception {
+
+        return TokenSigningService.getInstance().sign(createClaims(), state.signatureAlgorithm,
+                BenchmarkEnvironment.TENANT_DOMAIN);
+    }
+
+    @Benchmark
+    public String jwtAccessToken(TenantFlowState tenantFlow, SigningState state) throws OAuthSystemException {
+        return state.tokenIssuer.accessToken(state.tokenReqMessageContext);
+    }
+
+    static AuthenticatedUser createUser(String userName) {
+
+        AuthenticatedUser user = new AuthenticatedUser();
+        user.setUserName(userName);
+        user.setTenantDomain(BenchmarkEnvironment.TENANT_DOMAIN);
+        user.setUserStoreDomain(BenchmarkEnvironment.USER_STORE_DOMAIN);
+        user.setAuthenticatedSubjectIdentifier(userName);
+        return user;
+    }
+
+    private static JWTClaimsSet createClaims() {
+
+        long curTimeInMillis = System.currentTimeMillis();
+        JWTClaimsSet jwtClaimsSet = new JWTClaimsSet();
+        jwtClaimsSet.setIssuer("https://localhost:9443/oauth2/token");
+        jwtClaimsSet.setSubject(BenchmarkEnvironment.getUserName(0));
+        jwtClaimsSet.setAudience(Collections.singletonList(BenchmarkEnvironment.getClientId(0)));
+        jwtClaimsSet.setExpirationTime(new Date(curTimeInMillis + TimeUnit.HOURS.toMillis(1)));
+        jwtClaimsSet.setIssueTime(new Date(curTimeInMillis));
+        jwtClaimsSet.setJWTID(UUID.randomUUID().toString());
+        return jwtClaimsSet;
+    }
+}
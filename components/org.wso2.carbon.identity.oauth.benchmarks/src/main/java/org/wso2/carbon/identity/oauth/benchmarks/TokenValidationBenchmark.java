@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.dto.OAuth2IntrospectionResponseDTO;
+import org.wso2.carbon.identity.oauth2.dto.OAuth2TokenValidationRequestDTO;
+import org.wso2.carbon.identity.oauth2.dto.OAuth2TokenValidationResponseDTO;
+import org.wso2.carbon.identity.oauth2.validators.TokenValidationHandler;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures bearer token validation and introspection against a token store of {@code tokenCount} active tokens.
+ * Each benchmark thread walks through the loaded tokens from a random offset, so cache hit rates depend on the
+ * number of tokens and the configured cache sizes rather than on a single hot token.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(4)
+public class TokenValidationBenchmark {
+
+    private static final String BEARER_TOKEN_TYPE = "bearer";
+
+    @State(Scope.Thread)
+    public static class TokenState {
+
+        private BenchmarkEnvironment environment;
+        private int tokenIndex;
+
+        @Setup(Level.Trial)
+        public void setUp(EnvironmentState state) {
+
+            environment = state.environment;
+            tokenIndex = ThreadLocalRandom.current().nextInt(environment.getTokenCount());
+        }
+
+        private OAuth2TokenValidationRequestDTO nextRequest() {
+
+            OAuth2TokenValidationRequestDTO request = new OAuth2TokenValidationRequestDTO();
+            OAuth2TokenValidationRequestDTO.OAuth2AccessToken accessToken = request.new OAuth2AccessToken();
+            accessToken.setTokenType(BEARER_TOKEN_TYPE);
+            accessToken.setIdentifier(environment.getAccessToken(tokenIndex++ & Integer.MAX_VALUE));
+            request.setAccessToken(accessToken);
+            request.setContext(new OAuth2TokenValidationRequestDTO.TokenValidationContextParam[0]);
+            return request;
+        }
+    }
+
+    @Benchmark
+    public OAuth2TokenValidationResponseDTO validate(TenantFlowState tenantFlow, TokenState tokenState)
+            throws IdentityOAuth2Exception {
+
+        OAuth2TokenValidationResponseDTO response =
+                TokenValidationHandler.getInstance().validate(tokenState.nextRequest());
+        if (!response.isValid()) {
+            throw new IllegalStateException("Token validation failed: " + response.getErrorMsg());
+        }
+        return response;
+    }
+
+    @Benchmark
+    public OAuth2IntrospectionResponseDTO introspect(TenantFlowState tenantFlow, TokenState tokenState)
+            throws IdentityOAuth2Exception {
+
+        OAuth2IntrospectionResponseDTO response =
+                TokenValidationHandler.getInstance().buildIntrospectionResponse(tokenState.nextRequest());
+        if (!response.isActive()) {
+            throw new IllegalStateException("Token introspection failed: " + response.getError());
+        }
+        return response;
+    }
+}
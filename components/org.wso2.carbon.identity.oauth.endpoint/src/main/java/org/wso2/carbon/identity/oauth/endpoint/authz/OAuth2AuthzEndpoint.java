@@ -45,6 +45,7 @@ import org.wso2.carbon.identity.application.authentication.framework.util.Framew
 import org.wso2.carbon.identity.application.common.model.Claim;
 import org.wso2.carbon.identity.application.common.model.ClaimMapping;
 import org.wso2.carbon.identity.oauth.IdentityOAuthAdminException;
+import org.wso2.carbon.identity.oauth.OAuthAppMetadataService;
 import org.wso2.carbon.identity.oauth.cache.AuthorizationGrantCache;
 import org.wso2.carbon.identity.oauth.cache.AuthorizationGrantCacheEntry;
 import org.wso2.carbon.identity.oauth.cache.AuthorizationGrantCacheKey;
@@ -53,7 +54,6 @@ import org.wso2.carbon.identity.oauth.cache.SessionDataCacheEntry;
 import org.wso2.carbon.identity.oauth.cache.SessionDataCacheKey;
 import org.wso2.carbon.identity.oauth.common.OAuth2ErrorCodes;
 import org.wso2.carbon.identity.oauth.common.OAuthConstants;
-import org.wso2.carbon.identity.oauth.dao.OAuthAppDAO;
 import org.wso2.carbon.identity.oauth.endpoint.OAuthRequestWrapper;
 import org.wso2.carbon.identity.oauth.endpoint.util.EndpointUtil;
 import org.wso2.carbon.identity.oauth.endpoint.util.OpenIDConnectUserRPStore;
@@ -227,9 +227,8 @@ public class OAuth2AuthzEndpoint {
 
         try {
             if(StringUtils.isNotEmpty(clientId)) {
-                OAuthAppDAO oAuthAppDAO = new OAuthAppDAO();
                 try {
-                    String appState = oAuthAppDAO.getConsumerAppState(clientId);
+                    String appState = OAuthAppMetadataService.getInstance().getAppState(clientId);
                     if (StringUtils.isEmpty(appState)) {
                         if (log.isDebugEnabled()) {
                             log.debug("A valid OAuth client could not be found for client_id: " + clientId);
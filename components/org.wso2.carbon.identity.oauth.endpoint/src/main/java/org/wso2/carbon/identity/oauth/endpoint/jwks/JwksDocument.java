@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.oauth.endpoint.jwks;
+
+import org.apache.commons.codec.binary.Base64;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A serialized JWKS document of a tenant along with its entity tag. Instances are immutable and shared between
+ * requests.
+ */
+class JwksDocument {
+
+    private final byte[] content;
+    private final String entityTag;
+    private final String keyStoreVersion;
+    private final long refreshTime;
+
+    JwksDocument(String content, String keyStoreVersion, long refreshTime) throws NoSuchAlgorithmException {
+
+        this.content = content.getBytes(StandardCharsets.UTF_8);
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(this.content);
+        this.entityTag = "\"" + Base64.encodeBase64URLSafeString(digest) + "\"";
+        this.keyStoreVersion = keyStoreVersion;
+        this.refreshTime = refreshTime;
+    }
+
+    /**
+     * Returns the serialized document. The returned array must not be modified.
+     *
+     * @return UTF-8 encoded JWKS document.
+     */
+    byte[] getContent() {
+        return content;
+    }
+
+    String getEntityTag() {
+        return entityTag;
+    }
+
+    String getKeyStoreVersion() {
+        return keyStoreVersion;
+    }
+
+    boolean isStale(long now) {
+        return now >= refreshTime;
+    }
+
+    /**
+     * Checks whether the value of an If-None-Match request header matches this document.
+     *
+     * @param ifNoneMatch value of the If-None-Match header, may contain several comma separated entity tags.
+     * @return true if the client already holds this version of the document.
+     */
+    boolean matches(String ifNoneMatch) {
+
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            String trimmedTag = tag.trim();
+            if (trimmedTag.startsWith("W/")) {
+                trimmedTag = trimmedTag.substring(2);
+            }
+            if ("*".equals(trimmedTag) || entityTag.equals(trimmedTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
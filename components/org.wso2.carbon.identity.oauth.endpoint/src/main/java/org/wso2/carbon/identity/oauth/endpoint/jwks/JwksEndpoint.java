@@ -17,15 +17,7 @@
  */
 package org.wso2.carbon.identity.oauth.endpoint.jwks;
 
-
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.math.BigInteger;
-import java.security.KeyStore;
-import java.security.cert.Certificate;
-import java.security.interfaces.RSAPublicKey;
-
-
+import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -37,26 +29,59 @@ import org.wso2.carbon.identity.core.util.IdentityIOStreamUtils;
 import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
 import org.wso2.carbon.identity.core.util.IdentityUtil;
 import org.wso2.carbon.identity.oauth.common.OAuthConstants;
+import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
 import org.wso2.carbon.utils.CarbonUtils;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.math.BigInteger;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 
-
+/**
+ * Publishes the public keys of the tenant key store as a JWKS document.
+ * <p>
+ * The document of each tenant is built once and kept as serialized bytes along with a strong entity tag. Conditional
+ * requests carrying a matching If-None-Match header are answered with 304. The super tenant document is rebuilt when
+ * the key store file changes, while tenant documents, whose key stores are kept in the registry, are rebuilt after
+ * OAuth.JWKS.RefreshInterval seconds.
+ */
 public class JwksEndpoint {
     private static final Log log = LogFactory.getLog(JwksEndpoint.class);
-    private static final char[] ENCODE_MAP = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
-    private static final String alg = "RS256";
     private static final String use = "sig";
-    private static final String kid = "d0ec514a32b6f88c0abd12a2840699bdd3deba9d";
+
+    private static final String JWKS_MAX_AGE = "OAuth.JWKS.MaxAge";
+    private static final String JWKS_REFRESH_INTERVAL = "OAuth.JWKS.RefreshInterval";
+    private static final long DEFAULT_MAX_AGE_SECONDS = 300;
+    private static final long DEFAULT_REFRESH_INTERVAL_SECONDS = 60;
+
+    private static final ConcurrentMap<String, JwksDocument> jwksDocuments = new ConcurrentHashMap<>();
 
     @GET
     @Path(value = "/jwks")
     @Produces(MediaType.APPLICATION_JSON)
-    public String jwks() {
+    public Response jwks(@Context HttpServletRequest request) {
 
         String tenantDomain = null;
         Object tenantObj = IdentityUtil.threadLocalProperties.get().get(OAuthConstants.TENANT_NAME_FROM_CONTEXT);
@@ -67,139 +92,241 @@ public class JwksEndpoint {
             tenantDomain = MultitenantConstants.SUPER_TENANT_DOMAIN_NAME;
         }
 
-        RSAPublicKey publicKey = null;
-        JSONObject jwksJson = new JSONObject();
-        FileInputStream file = null;
+        JwksDocument jwksDocument;
         try {
-            if (tenantDomain.equals(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME)) {
-                file = new FileInputStream(CarbonUtils.getServerConfiguration().getFirstProperty
-                        ("Security.KeyStore.Location"));
-                KeyStore keystore = KeyStore.getInstance(KeyStore.getDefaultType());
-                String password = CarbonUtils.getServerConfiguration().getInstance().getFirstProperty
-                        ("Security.KeyStore.Password");
-                keystore.load(file, password.toCharArray());
-                String alias = CarbonUtils.getServerConfiguration().getInstance().getFirstProperty
-                        ("Security.KeyStore.KeyAlias");
-                // Get certificate of public key
-                Certificate cert = keystore.getCertificate(alias);
-                // Get public key
-                publicKey = (RSAPublicKey) cert.getPublicKey();
-            } else {
-
+            if (!tenantDomain.equals(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME)) {
                 int tenantId = IdentityTenantUtil.getTenantId(tenantDomain);
                 if (tenantId < 1 && tenantId != -1234) {
                     String errorMesage = "The tenant is not existing";
                     log.error(errorMesage);
-                    return errorMesage;
+                    return Response.status(HttpServletResponse.SC_BAD_REQUEST).entity(errorMesage).build();
                 }
-                KeyStoreManager keyStoreManager = KeyStoreManager.getInstance(tenantId);
-                KeyStore keyStore = keyStoreManager.getKeyStore(generateKSNameFromDomainName(tenantDomain));
-                // Get certificate of public key
-                Certificate cert = keyStore.getCertificate(tenantDomain);
-                publicKey = (RSAPublicKey) cert.getPublicKey();
-
             }
-            String modulus = base64EncodeUint(publicKey.getModulus());
-            String exponent = base64EncodeUint(publicKey.getPublicExponent());
-            String kty = publicKey.getAlgorithm();
-            JSONArray jwksKeyArray = new JSONArray();
-            JSONObject jwksKeys = new JSONObject();
-            jwksKeys.put("kty", kty);
-            jwksKeys.put("alg", alg);
-            jwksKeys.put("use", use);
-            jwksKeys.put("kid", kid);
-            jwksKeys.put("n", modulus);
-            jwksKeys.put("e", exponent);
-            jwksKeyArray.put(jwksKeys);
-            jwksJson.put("keys", jwksKeyArray);
+            jwksDocument = getJwksDocument(tenantDomain);
         } catch (Exception e) {
             String errorMesage = "Error while generating the keyset";
-            log.error(errorMesage);
-            return errorMesage;
-        } finally {
-            IdentityIOStreamUtils.closeInputStream(file);
+            log.error(errorMesage, e);
+            return Response.status(HttpServletResponse.SC_INTERNAL_SERVER_ERROR).entity(errorMesage).build();
         }
 
-        return jwksJson.toString();
+        Response.ResponseBuilder responseBuilder;
+        if (request != null && jwksDocument.matches(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+            responseBuilder = Response.notModified();
+        } else {
+            responseBuilder = Response.ok(jwksDocument.getContent(), MediaType.APPLICATION_JSON);
+        }
+        return responseBuilder.header(HttpHeaders.ETAG, jwksDocument.getEntityTag())
+                .header(HttpHeaders.CACHE_CONTROL, "public, max-age=" + OAuth2Util.getLongProperty(JWKS_MAX_AGE,
+                        DEFAULT_MAX_AGE_SECONDS, 0, Long.MAX_VALUE)).build();
     }
 
     /**
-     * This method generates the key store file name from the Domain Name
+     * Returns the cached JWKS document of the tenant, rebuilding it if the key store may have changed.
      *
-     * @return key store file name
+     * @param tenantDomain tenant domain.
+     * @return JWKS document of the tenant.
+     * @throws Exception if the key store cannot be read.
      */
-    private String generateKSNameFromDomainName(String tenantDomain) {
-        String ksName = tenantDomain.trim().replace(".", "-");
-        return (ksName + ".jks");
+    private JwksDocument getJwksDocument(String tenantDomain) throws Exception {
+
+        JwksDocument jwksDocument = jwksDocuments.get(tenantDomain);
+        long now = System.currentTimeMillis();
+        if (tenantDomain.equals(MultitenantConstants.SUPER_TENANT_DOMAIN_NAME)) {
+            String keyStoreLocation = CarbonUtils.getServerConfiguration().getFirstProperty
+                    ("Security.KeyStore.Location");
+            File keyStoreFile = new File(keyStoreLocation);
+            String keyStoreVersion = keyStoreFile.getAbsolutePath() + ":" + keyStoreFile.lastModified() + ":" +
+                    keyStoreFile.length();
+            if (jwksDocument != null && keyStoreVersion.equals(jwksDocument.getKeyStoreVersion())) {
+                return jwksDocument;
+            }
+            jwksDocument = new JwksDocument(buildSuperTenantJwks(keyStoreFile), keyStoreVersion, Long.MAX_VALUE);
+        } else {
+            if (jwksDocument != null && !jwksDocument.isStale(now)) {
+                return jwksDocument;
+            }
+            long refreshTime = now + TimeUnit.SECONDS.toMillis(OAuth2Util.getLongProperty(JWKS_REFRESH_INTERVAL,
+                    DEFAULT_REFRESH_INTERVAL_SECONDS, 0, Long.MAX_VALUE));
+            jwksDocument = new JwksDocument(buildTenantJwks(tenantDomain), null, refreshTime);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("JWKS document of tenant: " + tenantDomain + " was built with entity tag: " +
+                    jwksDocument.getEntityTag());
+        }
+        jwksDocuments.put(tenantDomain, jwksDocument);
+        return jwksDocument;
+    }
+
+    private String buildSuperTenantJwks(File keyStoreFile) throws Exception {
+
+        FileInputStream file = null;
+        try {
+            file = new FileInputStream(keyStoreFile);
+            KeyStore keystore = KeyStore.getInstance(KeyStore.getDefaultType());
+            String password = CarbonUtils.getServerConfiguration().getFirstProperty("Security.KeyStore.Password");
+            keystore.load(file, password.toCharArray());
+            String alias = CarbonUtils.getServerConfiguration().getFirstProperty("Security.KeyStore.KeyAlias");
+            return buildJwks(keystore, alias);
+        } finally {
+            IdentityIOStreamUtils.closeInputStream(file);
+        }
+    }
+
+    private String buildTenantJwks(String tenantDomain) throws Exception {
+
+        int tenantId = IdentityTenantUtil.getTenantId(tenantDomain);
+        KeyStoreManager keyStoreManager = KeyStoreManager.getInstance(tenantId);
+        KeyStore keyStore = keyStoreManager.getKeyStore(generateKSNameFromDomainName(tenantDomain));
+        return buildJwks(keyStore, tenantDomain);
     }
 
     /**
-     * This method is used to extract the modulus and exponent values of the jks file
-     * by converting the raw value to big endian format and encoding it
+     * Builds a JWKS document from the key entries of the given key store. The key of the primary alias is listed
+     * first, followed by any other signing keys in the key store, e.g. keys published ahead of a rotation.
+     *
+     * @param keyStore     key store.
+     * @param primaryAlias alias of the key currently used for signing.
+     * @return serialized JWKS document.
+     * @throws Exception if the key store cannot be read.
      */
-    public String base64Encode(final byte[] bytes, final int offset, final int length, final boolean padding) {
-        final StringBuilder buffer = new StringBuilder(length * 3);
-        for (int i = offset; i < offset + length; i += 3) {
-            // p's are the segments for each byte. For every triple there are 6
-            // segments
-            int p0 = bytes[i] & 0xFC;
-            p0 >>= 2;
-
-            int p1 = bytes[i] & 0x03;
-            p1 <<= 4;
-
-            int p2;
-            int p3;
-            if (i + 1 < offset + length) {
-                p2 = bytes[i + 1] & 0xF0;
-                p2 >>= 4;
-                p3 = bytes[i + 1] & 0x0F;
-                p3 <<= 2;
-            } else {
-                p2 = 0;
-                p3 = 0;
+    private String buildJwks(KeyStore keyStore, String primaryAlias) throws Exception {
+
+        List<String> aliases = new ArrayList<>(Collections.list(keyStore.aliases()));
+        if (aliases.remove(primaryAlias)) {
+            aliases.add(0, primaryAlias);
+        }
+
+        JSONArray jwksKeyArray = new JSONArray();
+        for (String alias : aliases) {
+            if (!keyStore.isKeyEntry(alias)) {
+                continue;
             }
-            int p4;
-            int p5;
-            if (i + 2 < offset + length) {
-                p4 = bytes[i + 2] & 0xC0;
-                p4 >>= 6;
-                p5 = bytes[i + 2] & 0x3F;
-            } else {
-                p4 = 0;
-                p5 = 0;
+            Certificate cert = keyStore.getCertificate(alias);
+            if (cert == null) {
+                continue;
+            }
+            JSONObject jwksKeys = buildJwk(cert);
+            if (jwksKeys != null) {
+                jwksKeyArray.put(jwksKeys);
             }
+        }
+        JSONObject jwksJson = new JSONObject();
+        jwksJson.put("keys", jwksKeyArray);
+        return jwksJson.toString();
+    }
 
-            if (i + 2 < offset + length) {
-                buffer.append(ENCODE_MAP[p0]);
-                buffer.append(ENCODE_MAP[p1 | p2]);
-                buffer.append(ENCODE_MAP[p3 | p4]);
-                buffer.append(ENCODE_MAP[p5]);
-            } else if (i + 1 < offset + length) {
-                buffer.append(ENCODE_MAP[p0]);
-                buffer.append(ENCODE_MAP[p1 | p2]);
-                buffer.append(ENCODE_MAP[p3]);
-                if (padding) {
-                    buffer.append('=');
-                }
+    private JSONObject buildJwk(Certificate cert) throws Exception {
+
+        JSONObject jwksKeys = new JSONObject();
+        if (cert.getPublicKey() instanceof RSAPublicKey) {
+            RSAPublicKey publicKey = (RSAPublicKey) cert.getPublicKey();
+            jwksKeys.put("kty", "RSA");
+            String algorithm = getRSASignatureAlgorithm();
+            if (algorithm != null) {
+                jwksKeys.put("alg", algorithm);
+            }
+            jwksKeys.put("n", base64EncodeUint(publicKey.getModulus()));
+            jwksKeys.put("e", base64EncodeUint(publicKey.getPublicExponent()));
+        } else if (cert.getPublicKey() instanceof ECPublicKey) {
+            ECPublicKey publicKey = (ECPublicKey) cert.getPublicKey();
+            int fieldSize = publicKey.getParams().getCurve().getField().getFieldSize();
+            String curve;
+            String algorithm;
+            if (fieldSize == 256) {
+                curve = "P-256";
+                algorithm = "ES256";
+            } else if (fieldSize == 384) {
+                curve = "P-384";
+                algorithm = "ES384";
+            } else if (fieldSize == 521) {
+                curve = "P-521";
+                algorithm = "ES512";
             } else {
-                buffer.append(ENCODE_MAP[p0]);
-                buffer.append(ENCODE_MAP[p1 | p2]);
-                if (padding) {
-                    buffer.append("==");
+                if (log.isDebugEnabled()) {
+                    log.debug("Unsupported elliptic curve with field size: " + fieldSize + ". Skipping the key");
                 }
+                return null;
             }
+            int length = (fieldSize + 7) / 8;
+            jwksKeys.put("kty", "EC");
+            jwksKeys.put("alg", algorithm);
+            jwksKeys.put("crv", curve);
+            jwksKeys.put("x", Base64.encodeBase64URLSafeString(toUnsignedBytes(publicKey.getW().getAffineX(),
+                    length)));
+            jwksKeys.put("y", Base64.encodeBase64URLSafeString(toUnsignedBytes(publicKey.getW().getAffineY(),
+                    length)));
+        } else {
+            return null;
         }
-        return buffer.toString();
+        jwksKeys.put("use", use);
+        jwksKeys.put("kid", OAuth2Util.getKeyId(cert));
+        return jwksKeys;
     }
 
-    public String base64urlEncode(final byte[] bytes) {
+    /**
+     * Returns the JWS algorithm RSA keys sign with, i.e. the configured ID token and JWT access token signature
+     * algorithm. Returns null if these are different RSA algorithms, in which case a key is used with more than one
+     * algorithm and must not be restricted to either of them.
+     */
+    private static String getRSASignatureAlgorithm() {
 
-        return base64Encode(bytes, 0, bytes.length, false);
+        String rsaAlgorithm = null;
+        for (String signatureAlgorithm : new String[]{
+                OAuthServerConfiguration.getInstance().getIdTokenSignatureAlgorithm(),
+                OAuthServerConfiguration.getInstance().getSignatureAlgorithm()}) {
+            String algorithm;
+            try {
+                algorithm = OAuth2Util.mapSignatureAlgorithm(signatureAlgorithm);
+            } catch (IdentityOAuth2Exception e) {
+                continue;
+            }
+            if (!algorithm.startsWith("RS")) {
+                continue;
+            }
+            if (rsaAlgorithm != null && !rsaAlgorithm.equals(algorithm)) {
+                return null;
+            }
+            rsaAlgorithm = algorithm;
+        }
+        return rsaAlgorithm;
     }
 
-    public String base64EncodeUint(final BigInteger v) {
+    /**
+     * This method generates the key store file name from the Domain Name
+     *
+     * @return key store file name
+     */
+    private String generateKSNameFromDomainName(String tenantDomain) {
+        String ksName = tenantDomain.trim().replace(".", "-");
+        return (ksName + ".jks");
+    }
 
-        return base64urlEncode(v.toByteArray());
+    /**
+     * Returns the big endian, unsigned representation of the value, left padded with zeros to the given length.
+     */
+    private static byte[] toUnsignedBytes(BigInteger value, int length) {
+
+        byte[] bytes = value.toByteArray();
+        if (bytes.length == length) {
+            return bytes;
+        }
+        byte[] unsignedBytes = new byte[length];
+        int copyLength = Math.min(bytes.length, length);
+        System.arraycopy(bytes, bytes.length - copyLength, unsignedBytes, length - copyLength, copyLength);
+        return unsignedBytes;
+    }
+
+    /**
+     * This method is used to encode the modulus and exponent values of the key as base64url encoded, unsigned big
+     * endian values
+     */
+    private static String base64EncodeUint(BigInteger value) {
+
+        byte[] bytes = value.toByteArray();
+        if (bytes.length > 1 && bytes[0] == 0) {
+            // Drop the sign byte added by BigInteger for values with the most significant bit set
+            bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        return Base64.encodeBase64URLSafeString(bytes);
     }
 }
@@ -31,10 +31,10 @@ import org.apache.oltu.oauth2.common.message.OAuthResponse;
 import org.apache.oltu.oauth2.common.message.types.GrantType;
 import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.identity.oauth.IdentityOAuthAdminException;
+import org.wso2.carbon.identity.oauth.OAuthAppMetadataService;
 import org.wso2.carbon.identity.oauth.common.OAuth2ErrorCodes;
 import org.wso2.carbon.identity.oauth.common.OAuthConstants;
 import org.wso2.carbon.identity.oauth.common.exception.OAuthClientException;
-import org.wso2.carbon.identity.oauth.dao.OAuthAppDAO;
 import org.wso2.carbon.identity.oauth.endpoint.OAuthRequestWrapper;
 import org.wso2.carbon.identity.oauth.endpoint.util.EndpointUtil;
 import org.wso2.carbon.identity.oauth2.ResponseHeader;
@@ -122,9 +122,8 @@ public class OAuth2TokenEndpoint {
                 }
 
                 if (StringUtils.isNotEmpty(consumerKey)) {
-                    OAuthAppDAO oAuthAppDAO = new OAuthAppDAO();
                     try {
-                        String appState = oAuthAppDAO.getConsumerAppState(consumerKey);
+                        String appState = OAuthAppMetadataService.getInstance().getAppState(consumerKey);
                         if (StringUtils.isEmpty(appState)) {
                             if (log.isDebugEnabled()) {
                                 log.debug("A valid OAuth client could not be found for client_id: " + consumerKey);
@@ -204,6 +203,8 @@ public class OAuth2TokenEndpoint {
                     return handleSQLError();
                 } else if (OAuth2ErrorCodes.SERVER_ERROR.equals(oauth2AccessTokenResp.getErrorCode())) {
                     return handleServerError();
+                } else if (OAuth2ErrorCodes.TEMPORARY_UNAVAILABLE.equals(oauth2AccessTokenResp.getErrorCode())) {
+                    return handleServiceUnavailable();
                 } else {
                     // Otherwise send back HTTP 400 Status Code
                     OAuthResponse.OAuthErrorResponseBuilder oAuthErrorResponseBuilder = OAuthASResponse
@@ -284,6 +285,14 @@ public class OAuth2TokenEndpoint {
 
     }
 
+    private Response handleServiceUnavailable() throws OAuthSystemException {
+        OAuthResponse response = OAuthASResponse.errorResponse(HttpServletResponse.SC_SERVICE_UNAVAILABLE).
+                setError(OAuth2ErrorCodes.TEMPORARY_UNAVAILABLE).setErrorDescription("Service Unavailable Error.")
+                .buildJSONMessage();
+
+        return Response.status(response.getResponseStatus()).entity(response.getBody()).build();
+    }
+
     private Response handleSQLError() throws OAuthSystemException {
         OAuthResponse response = OAuthASResponse.errorResponse(HttpServletResponse.SC_BAD_GATEWAY).
                 setError(OAuth2ErrorCodes.SERVER_ERROR).setErrorDescription("Service Unavailable Error.")
@@ -24,8 +24,8 @@ import org.wso2.carbon.identity.oauth.dao.OAuthAppDO;
 import org.wso2.carbon.identity.core.model.OpenIDUserRPDO;
 import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
 import org.wso2.carbon.identity.oauth.common.exception.InvalidOAuthClientException;
-import org.wso2.carbon.identity.oauth.dao.OAuthAppDAO;
 import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
 
 /**
  * Stores user consent on applications
@@ -59,10 +59,9 @@ public class OpenIDConnectUserRPStore {
         if (user.getUserName() != null) {
             tenantId = IdentityTenantUtil.getTenantId(user.getTenantDomain());
         } else {
-            OAuthAppDAO oAuthAppDAO = new OAuthAppDAO();
             OAuthAppDO appDO;
             try {
-                appDO = oAuthAppDAO.getAppInformation(clientId);
+                appDO = OAuth2Util.getAppInformationByClientId(clientId);
                 tenantId = IdentityTenantUtil.getTenantId(appDO.getUser().getTenantDomain());
             } catch (IdentityOAuth2Exception | InvalidOAuthClientException e) {
                 throw new OAuthSystemException("Error while retrieving app");
@@ -87,10 +86,9 @@ public class OpenIDConnectUserRPStore {
         if (user.getUserName() != null) {
             tenantId = IdentityTenantUtil.getTenantId(user.getTenantDomain());
         } else {
-            OAuthAppDAO oAuthAppDAO = new OAuthAppDAO();
             OAuthAppDO appDO;
             try {
-                appDO = oAuthAppDAO.getAppInformation(clientId);
+                appDO = OAuth2Util.getAppInformationByClientId(clientId);
                 tenantId = IdentityTenantUtil.getTenantId(appDO.getUser().getTenantDomain());
             } catch (IdentityOAuth2Exception | InvalidOAuthClientException e) {
                 throw new OAuthSystemException("Error while retrieving app");
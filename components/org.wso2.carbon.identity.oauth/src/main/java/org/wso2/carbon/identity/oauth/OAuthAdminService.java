@@ -29,8 +29,7 @@ import org.wso2.carbon.identity.application.authentication.framework.model.Authe
 import org.wso2.carbon.identity.application.common.IdentityApplicationManagementException;
 import org.wso2.carbon.identity.application.common.model.User;
 import org.wso2.carbon.identity.core.util.IdentityUtil;
-import org.wso2.carbon.identity.oauth.cache.AppInfoCache;
-import org.wso2.carbon.identity.oauth.cache.CacheEntry;
+import org.wso2.carbon.identity.oauth.cache.AccessTokenValidationNearCache;
 import org.wso2.carbon.identity.oauth.cache.OAuthCache;
 import org.wso2.carbon.identity.oauth.cache.OAuthCacheKey;
 import org.wso2.carbon.identity.oauth.common.OAuth2ErrorCodes;
@@ -48,7 +47,8 @@ import org.wso2.carbon.identity.oauth.internal.OAuthComponentServiceHolder;
 import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
 import org.wso2.carbon.identity.oauth2.dao.TokenMgtDAO;
 import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
-import org.wso2.carbon.identity.oauth2.model.ClientCredentialDO;
+import org.wso2.carbon.identity.oauth2.revocation.RevocationJob;
+import org.wso2.carbon.identity.oauth2.revocation.RevocationJobManager;
 import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
 import org.wso2.carbon.user.api.UserStoreException;
 import org.wso2.carbon.user.core.util.UserCoreUtil;
@@ -56,6 +56,7 @@ import org.wso2.carbon.utils.multitenancy.MultitenantUtils;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -69,7 +70,7 @@ public class OAuthAdminService extends AbstractAdmin {
     public static final String AUTHORIZATION_CODE = "authorization_code";
     private static List<String> allowedGrants = null;
     protected Log log = LogFactory.getLog(OAuthAdminService.class);
-    private AppInfoCache appInfoCache = AppInfoCache.getInstance();
+    private OAuthAppMetadataService appMetadataService = OAuthAppMetadataService.getInstance();
 
     /**
      * Registers an consumer secret against the logged in user. A given user can only have a single
@@ -275,9 +276,7 @@ public class OAuthAdminService extends AbstractAdmin {
                     app.setPkceSupportPlain(application.getPkceSupportPlain());
                 }
                 dao.addOAuthApplication(app);
-                if (OAuthServerConfiguration.getInstance().isCacheEnabled()) {
-                    appInfoCache.addToCache(app.getOauthConsumerKey(), app);
-                }
+                appMetadataService.invalidate(app.getOauthConsumerKey());
             }
         }
     }
@@ -320,9 +319,7 @@ public class OAuthAdminService extends AbstractAdmin {
             oauthappdo.setGrantTypes(consumerAppDTO.getGrantTypes());
         }
         dao.updateConsumerApplication(oauthappdo);
-        if (OAuthServerConfiguration.getInstance().isCacheEnabled()) {
-            appInfoCache.addToCache(oauthappdo.getOauthConsumerKey(), oauthappdo);
-        }
+        appMetadataService.invalidate(oauthappdo.getOauthConsumerKey());
     }
 
     /**
@@ -341,29 +338,14 @@ public class OAuthAdminService extends AbstractAdmin {
      */
     public void updateConsumerAppState(String consumerKey, String newState) throws IdentityOAuthAdminException {
 
-        OAuthAppDAO oAuthAppDAO = new OAuthAppDAO();
-        try {
-            if (OAuthServerConfiguration.getInstance().isCacheEnabled()) {
-                OAuthAppDO oAuthAppDO = appInfoCache.getValueFromCache(consumerKey);
-                if (oAuthAppDO != null) {
-                    oAuthAppDO.setState(newState);
-                } else {
-                    oAuthAppDO = oAuthAppDAO.getAppInformation(consumerKey);
-                }
-                appInfoCache.addToCache(consumerKey, oAuthAppDO);
-
-                if (log.isDebugEnabled()) {
-                    log.debug("App state is updated in the cache.");
-                }
-            }
-
-            Properties properties = new Properties();
-            properties.setProperty(OAuthConstants.OAUTH_APP_NEW_STATE, newState);
-            properties.setProperty(OAuthConstants.ACTION_PROPERTY_KEY, OAuthConstants.ACTION_REVOKE);
-            updateAppAndRevokeTokensAndAuthzCodes(consumerKey, properties);
+        Properties properties = new Properties();
+        properties.setProperty(OAuthConstants.OAUTH_APP_NEW_STATE, newState);
+        properties.setProperty(OAuthConstants.ACTION_PROPERTY_KEY, OAuthConstants.ACTION_REVOKE);
+        updateAppAndRevokeTokensAndAuthzCodes(consumerKey, properties);
 
-        } catch (InvalidOAuthClientException | IdentityOAuth2Exception e) {
-            throw new IdentityOAuthAdminException("Error while updating consumer application state", e);
+        appMetadataService.invalidate(consumerKey);
+        if (log.isDebugEnabled()) {
+            log.debug("App is invalidated in the cache after the state update.");
         }
     }
 
@@ -374,18 +356,12 @@ public class OAuthAdminService extends AbstractAdmin {
     public void updateOauthSecretKey(String consumerKey) throws IdentityOAuthAdminException {
 
         String newSecretKey = OAuthUtil.getRandomNumber();
-        if (OAuthServerConfiguration.getInstance().isCacheEnabled()) {
-            CacheEntry clientCredentialDO = new ClientCredentialDO(newSecretKey);
-            OAuthCache.getInstance().addToCache(new OAuthCacheKey(consumerKey), clientCredentialDO);
-            if (log.isDebugEnabled()) {
-                log.debug("Client Secret is updated in the cache.");
-            }
-        }
 
         Properties properties = new Properties();
         properties.setProperty(OAuthConstants.OAUTH_APP_NEW_SECRET_KEY, newSecretKey);
         properties.setProperty(OAuthConstants.ACTION_PROPERTY_KEY, OAuthConstants.ACTION_REGENERATE);
         updateAppAndRevokeTokensAndAuthzCodes(consumerKey, properties);
+        appMetadataService.invalidate(consumerKey);
 
     }
 
@@ -393,7 +369,13 @@ public class OAuthAdminService extends AbstractAdmin {
         TokenMgtDAO tokenMgtDAO = new TokenMgtDAO();
         int countToken = 0;
         try {
-            Set<AccessTokenDO> activeDetailedTokens = tokenMgtDAO.getActiveDetailedTokensForConsumerKey(consumerKey);
+            Set<AccessTokenDO> activeDetailedTokens;
+            if (submitAppTokenRevocation(consumerKey)) {
+                // tokens are rejected from now on and revoked and evicted from the cache in the background
+                activeDetailedTokens = Collections.emptySet();
+            } else {
+                activeDetailedTokens = tokenMgtDAO.getActiveDetailedTokensForConsumerKey(consumerKey);
+            }
             String[] accessTokens = new String[activeDetailedTokens.size()];
 
             if (OAuthServerConfiguration.getInstance().isCacheEnabled()) {
@@ -405,6 +387,7 @@ public class OAuthAdminService extends AbstractAdmin {
 
                     OAuthCacheKey cacheKeyToken = new OAuthCacheKey(token);
                     oauthCache.clearCacheEntry(cacheKeyToken);
+                    AccessTokenValidationNearCache.getInstance().clearCacheEntry(token);
 
                     String scope = OAuth2Util.buildScopeString(detailToken.getScope());
                     String authorizedUser = detailToken.getAuthzUser().toString();
@@ -445,6 +428,23 @@ public class OAuthAdminService extends AbstractAdmin {
         }
     }
 
+    private boolean submitAppTokenRevocation(String consumerKey) {
+
+        RevocationJobManager revocationJobManager = RevocationJobManager.getInstance();
+        if (!revocationJobManager.isEnabled()) {
+            return false;
+        }
+        try {
+            revocationJobManager.submit(RevocationJob.forApp(CarbonContext.getThreadLocalCarbonContext().getTenantId(),
+                    consumerKey));
+            return true;
+        } catch (IdentityOAuth2Exception e) {
+            log.error("Error occurred while submitting the revocation of access tokens of client ID: " + consumerKey +
+                    ". Revoking them synchronously", e);
+            return false;
+        }
+    }
+
     /**
      * Removes an OAuth consumer application.
      *
@@ -455,10 +455,10 @@ public class OAuthAdminService extends AbstractAdmin {
 
         OAuthAppDAO dao = new OAuthAppDAO();
         dao.removeConsumerApplication(consumerKey);
+        appMetadataService.invalidate(consumerKey);
         // remove client credentials from cache
         if (OAuthServerConfiguration.getInstance().isCacheEnabled()) {
             OAuthCache.getInstance().clearCacheEntry(new OAuthCacheKey(consumerKey));
-            appInfoCache.clearCacheEntry(consumerKey);
             if (log.isDebugEnabled()) {
                 log.debug("Client credentials are removed from the cache.");
             }
@@ -525,7 +525,7 @@ public class OAuthAdminService extends AbstractAdmin {
                             OAuthConsumerAppDTO appDTO = new OAuthConsumerAppDTO();
                             OAuthAppDO appDO;
                             try {
-                                appDO = appDAO.getAppInformation(scopedToken.getConsumerKey());
+                                appDO = appMetadataService.getAppInformation(scopedToken.getConsumerKey());
                                 appDTO.setOauthConsumerKey(scopedToken.getConsumerKey());
                                 appDTO.setApplicationName(appDO.getApplicationName());
                                 appDTO.setUsername(appDO.getUser().toString());
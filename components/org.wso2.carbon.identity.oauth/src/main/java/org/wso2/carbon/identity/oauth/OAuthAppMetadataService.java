@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.oauth.cache.AppInfoCache;
+import org.wso2.carbon.identity.oauth.cache.AppStateCache;
+import org.wso2.carbon.identity.oauth.cache.AppStateCacheEntry;
+import org.wso2.carbon.identity.oauth.cache.ClientSecretCache;
+import org.wso2.carbon.identity.oauth.cache.ClientSecretVerificationCache;
+import org.wso2.carbon.identity.oauth.common.exception.InvalidOAuthClientException;
+import org.wso2.carbon.identity.oauth.dao.OAuthAppDAO;
+import org.wso2.carbon.identity.oauth.dao.OAuthAppDO;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Single read path of OAuth application metadata. Applications are read through the AppInfoCache and writers
+ * invalidate the application they changed instead of writing the cache themselves.
+ * <p>
+ * Every application maps to one of a fixed number of local versions which an invalidation moves, and an application
+ * read from the database is only cached if its version did not move during the read. This keeps an update racing
+ * with a read from leaving the old application in the cache. Versions are shared by applications hashing to the same
+ * stripe, so that they take constant memory however many applications are invalidated. Invalidations are per
+ * application, so that the peers of a cluster drop only the changed entry. The client secret of the application is
+ * dropped from the ClientSecretCache at the same time. The applications of a tenant can be invalidated together,
+ * e.g. when the tenant is deleted.
+ * <p>
+ * The states of applications, which the token and authorize endpoints check before anything else, are read through
+ * the clustered AppStateCache unless OAuth.AppStateCache.Enable is false. States are dropped together with the
+ * application, on this node and the peers of the cluster, so a revoked application is rejected by every node right
+ * away.
+ */
+public class OAuthAppMetadataService {
+
+    private static final Log log = LogFactory.getLog(OAuthAppMetadataService.class);
+
+    private static final String WARM_UP_ENABLE = "OAuth.AppMetadataCache.WarmUp.Enable";
+    private static final String WARM_UP_MAX_APPS = "OAuth.AppMetadataCache.WarmUp.MaxApps";
+    private static final int DEFAULT_WARM_UP_MAX_APPS = 1000;
+    private static final int VERSION_STRIPES = 1024;
+
+    private static final String APP_STATE_CACHE_ENABLE = "OAuth.AppStateCache.Enable";
+    private static final String APP_STATE_CACHE_WARM_UP_ENABLE = "OAuth.AppStateCache.WarmUp.Enable";
+    private static final String APP_STATE_CACHE_WARM_UP_MAX_APPS = "OAuth.AppStateCache.WarmUp.MaxApps";
+    private static final int DEFAULT_APP_STATE_CACHE_WARM_UP_MAX_APPS = 10000;
+
+    private static volatile OAuthAppMetadataService instance;
+
+    private final AppInfoCache appInfoCache = AppInfoCache.getInstance();
+    private final AtomicLongArray appVersions = new AtomicLongArray(VERSION_STRIPES);
+    private final ConcurrentMap<String, Set<String>> tenantApps = new ConcurrentHashMap<>();
+    private final AppStateCache appStateCache = AppStateCache.getInstance();
+
+    private final boolean appStateCacheEnabled;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong loadCount = new AtomicLong();
+    private final AtomicLong invalidationCount = new AtomicLong();
+    private final AtomicLong stateHitCount = new AtomicLong();
+    private final AtomicLong stateLoadCount = new AtomicLong();
+
+    private OAuthAppMetadataService() {
+
+        this.appStateCacheEnabled = !"false".equalsIgnoreCase(StringUtils.trim(IdentityUtil.getProperty(
+                APP_STATE_CACHE_ENABLE)));
+    }
+
+    public static OAuthAppMetadataService getInstance() {
+        if (instance == null) {
+            synchronized (OAuthAppMetadataService.class) {
+                if (instance == null) {
+                    instance = new OAuthAppMetadataService();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the application of a client id, from the cache if available.
+     *
+     * @param clientId client id of the application.
+     * @return application of the client id.
+     * @throws InvalidOAuthClientException if there is no application with the client id.
+     * @throws IdentityOAuth2Exception     Error when reading the application.
+     */
+    public OAuthAppDO getAppInformation(String clientId) throws InvalidOAuthClientException, IdentityOAuth2Exception {
+
+        OAuthAppDO oAuthAppDO = appInfoCache.getValueFromCache(clientId);
+        if (oAuthAppDO != null) {
+            hitCount.incrementAndGet();
+            return oAuthAppDO;
+        }
+        long version = getVersion(clientId);
+        oAuthAppDO = new OAuthAppDAO().getAppInformation(clientId);
+        loadCount.incrementAndGet();
+        cache(clientId, oAuthAppDO, version);
+        return oAuthAppDO;
+    }
+
+    /**
+     * Returns the state of the application of a client id, from the cache if available.
+     *
+     * @param clientId client id of the application.
+     * @return state of the application, or null if there is no application with the client id.
+     * @throws IdentityOAuthAdminException Error when reading the state.
+     */
+    public String getAppState(String clientId) throws IdentityOAuthAdminException {
+
+        if (!isAppStateCacheEnabled()) {
+            return new OAuthAppDAO().getConsumerAppState(clientId);
+        }
+        AppStateCacheEntry appState = appStateCache.getValueFromCache(clientId);
+        if (appState != null) {
+            stateHitCount.incrementAndGet();
+            return appState.getState();
+        }
+        long version = getVersion(clientId);
+        String state = new OAuthAppDAO().getConsumerAppState(clientId);
+        stateLoadCount.incrementAndGet();
+        // Unknown client ids are not cached, a newly registered application is admitted right away.
+        if (state != null) {
+            cacheState(clientId, state, version);
+        }
+        return state;
+    }
+
+    /**
+     * Drop an application after it was added, updated or removed, on this node and the peers of the cluster.
+     *
+     * @param clientId client id of the application.
+     */
+    public void invalidate(String clientId) {
+
+        if (clientId == null) {
+            return;
+        }
+        moveVersion(clientId);
+        appStateCache.clearCacheEntry(clientId);
+        appInfoCache.clearCacheEntry(clientId);
+        // The client secret may have changed as well.
+        ClientSecretCache.getInstance().clearCacheEntry(clientId);
+        ClientSecretVerificationCache.getInstance().clearCacheEntry(clientId);
+        invalidationCount.incrementAndGet();
+        if (log.isDebugEnabled()) {
+            log.debug("Application of client id : " + clientId + " is invalidated in the application cache");
+        }
+    }
+
+    /**
+     * Drop the applications of a tenant read by this node.
+     *
+     * @param tenantDomain tenant domain of the applications.
+     */
+    public void invalidateTenant(String tenantDomain) {
+
+        Set<String> clientIds = tenantApps.remove(tenantDomain);
+        if (clientIds == null) {
+            return;
+        }
+        for (String clientId : clientIds) {
+            invalidate(clientId);
+        }
+    }
+
+    /**
+     * Load the most recently registered applications and their states into the caches in the background, if
+     * enabled.
+     */
+    public void warmUp() {
+
+        warmUpAppStates();
+        if (!Boolean.parseBoolean(StringUtils.trim(IdentityUtil.getProperty(WARM_UP_ENABLE))) ||
+                !appInfoCache.isEnabled()) {
+            return;
+        }
+        final int maxApps = OAuth2Util.getIntProperty(WARM_UP_MAX_APPS, DEFAULT_WARM_UP_MAX_APPS, 1,
+                Integer.MAX_VALUE);
+        new Thread(new Runnable() {
+            public void run() {
+                long start = System.currentTimeMillis();
+                try {
+                    List<OAuthAppDO> apps = new OAuthAppDAO().getAppInformation(maxApps);
+                    for (OAuthAppDO app : apps) {
+                        String clientId = app.getOauthConsumerKey();
+                        if (appInfoCache.getValueFromCache(clientId) == null) {
+                            cache(clientId, app, getVersion(clientId));
+                        }
+                    }
+                    log.info("Application cache is warmed up with " + apps.size() + " applications in " +
+                            (System.currentTimeMillis() - start) + "ms");
+                } catch (IdentityOAuth2Exception e) {
+                    log.error("Error occurred while warming up the application cache", e);
+                }
+            }
+        }).start();
+    }
+
+    private void warmUpAppStates() {
+
+        if (!isAppStateCacheEnabled() ||
+                !Boolean.parseBoolean(StringUtils.trim(IdentityUtil.getProperty(APP_STATE_CACHE_WARM_UP_ENABLE)))) {
+            return;
+        }
+        new Thread(new Runnable() {
+            public void run() {
+                long start = System.currentTimeMillis();
+                int maxApps = OAuth2Util.getIntProperty(APP_STATE_CACHE_WARM_UP_MAX_APPS,
+                        DEFAULT_APP_STATE_CACHE_WARM_UP_MAX_APPS, 1, Integer.MAX_VALUE);
+                try {
+                    Map<String, String> states = new OAuthAppDAO().getConsumerAppStates(maxApps);
+                    for (Map.Entry<String, String> state : states.entrySet()) {
+                        if (appStateCache.getValueFromCache(state.getKey()) == null) {
+                            cacheState(state.getKey(), state.getValue(), getVersion(state.getKey()));
+                        }
+                    }
+                    log.info("Application state cache is warmed up with " + states.size() + " applications in " +
+                            (System.currentTimeMillis() - start) + "ms");
+                } catch (IdentityOAuthAdminException e) {
+                    log.error("Error occurred while warming up the application state cache", e);
+                }
+            }
+        }).start();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getLoadCount() {
+        return loadCount.get();
+    }
+
+    public long getInvalidationCount() {
+        return invalidationCount.get();
+    }
+
+    public long getStateHitCount() {
+        return stateHitCount.get();
+    }
+
+    public long getStateLoadCount() {
+        return stateLoadCount.get();
+    }
+
+    private void cache(String clientId, OAuthAppDO oAuthAppDO, long version) {
+
+        if (getVersion(clientId) != version) {
+            return;
+        }
+        appInfoCache.addToCache(clientId, oAuthAppDO);
+        if (getVersion(clientId) != version) {
+            // invalidated while being cached
+            appInfoCache.clearCacheEntry(clientId);
+            return;
+        }
+        if (oAuthAppDO.getUser() != null && oAuthAppDO.getUser().getTenantDomain() != null) {
+            String tenantDomain = oAuthAppDO.getUser().getTenantDomain();
+            Set<String> clientIds = tenantApps.get(tenantDomain);
+            if (clientIds == null) {
+                Set<String> newClientIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+                clientIds = tenantApps.putIfAbsent(tenantDomain, newClientIds);
+                if (clientIds == null) {
+                    clientIds = newClientIds;
+                }
+            }
+            clientIds.add(clientId);
+        }
+    }
+
+    private void cacheState(String clientId, String state, long version) {
+
+        if (getVersion(clientId) != version) {
+            return;
+        }
+        appStateCache.addToCache(clientId, new AppStateCacheEntry(state));
+        if (getVersion(clientId) != version) {
+            // invalidated while being cached
+            appStateCache.clearCacheEntry(clientId);
+        }
+    }
+
+    private boolean isAppStateCacheEnabled() {
+        return appStateCacheEnabled && appStateCache.isEnabled();
+    }
+
+    private void moveVersion(String clientId) {
+        appVersions.incrementAndGet(getVersionStripe(clientId));
+    }
+
+    private long getVersion(String clientId) {
+        return appVersions.get(getVersionStripe(clientId));
+    }
+
+    private static int getVersionStripe(String clientId) {
+        return (clientId.hashCode() & Integer.MAX_VALUE) % VERSION_STRIPES;
+    }
+}
@@ -30,7 +30,6 @@ import org.wso2.carbon.core.common.AuthenticationException;
 import org.wso2.carbon.identity.base.IdentityException;
 import org.wso2.carbon.identity.oauth.dao.OAuthAppDO;
 import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
-import org.wso2.carbon.identity.oauth.dao.OAuthAppDAO;
 import org.wso2.carbon.identity.oauth.dao.OAuthConsumerDAO;
 import org.wso2.carbon.identity.oauth.dto.OAuthConsumerDTO;
 import org.wso2.carbon.registry.core.exceptions.RegistryException;
@@ -260,8 +259,7 @@ public class OAuthService {
         OAuthConsumerDAO consumerDAO = new OAuthConsumerDAO();
         Parameters params = consumerDAO.getRequestToken(oauthToken);
 
-        OAuthAppDAO appDAO = new OAuthAppDAO();
-        OAuthAppDO oauthAppDO = appDAO.getAppInformation(params.getOauthConsumerKey());
+        OAuthAppDO oauthAppDO = OAuthAppMetadataService.getInstance().getAppInformation(params.getOauthConsumerKey());
 
         Parameters resp = new Parameters();
         resp.setScope(params.getScope());
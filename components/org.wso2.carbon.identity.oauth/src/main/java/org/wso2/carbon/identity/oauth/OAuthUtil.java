@@ -26,6 +26,7 @@ import org.apache.xml.security.utils.Base64;
 import org.wso2.carbon.identity.application.authentication.framework.model.AuthenticatedUser;
 import org.wso2.carbon.identity.application.common.model.User;
 import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.oauth.cache.AccessTokenValidationNearCache;
 import org.wso2.carbon.identity.oauth.cache.OAuthCache;
 import org.wso2.carbon.identity.oauth.cache.OAuthCacheKey;
 import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
@@ -102,6 +103,7 @@ public final class OAuthUtil {
     }
 
     public static void clearOAuthCache(String oauthCacheKey) {
+        AccessTokenValidationNearCache.getInstance().clearCacheEntry(oauthCacheKey);
         if (OAuthServerConfiguration.getInstance().isCacheEnabled()) {
             OAuthCache oauthCache = OAuthCache.getInstance();
             OAuthCacheKey cacheKey = new OAuthCacheKey(oauthCacheKey);
@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.oauth.cache;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process cache of access tokens looked up by the token validation path. It sits in front of {@link OAuthCache},
+ * which may be distributed in a clustered deployment, so that repeated validation of the same token is served from
+ * local memory without creating cache keys or crossing the network.
+ * <p>
+ * Entries live for at most the configured time to live and never outlive the remaining lifetime of the token. When
+ * the cache is full a new token is only admitted if it has been requested more often than the oldest cached token,
+ * as estimated by a {@link FrequencySketch}. Entries are invalidated together with the corresponding
+ * {@link OAuthCache} entries.
+ * <p>
+ * Cached {@link AccessTokenDO} instances are shared between requests in the same way as local {@link OAuthCache}
+ * entries and must be treated as read only.
+ */
+public class AccessTokenValidationNearCache {
+
+    private static final Log log = LogFactory.getLog(AccessTokenValidationNearCache.class);
+
+    private static final String ENABLE = "OAuth.TokenValidationNearCache.Enable";
+    private static final String MAX_SIZE = "OAuth.TokenValidationNearCache.MaxSize";
+    private static final String TIME_TO_LIVE = "OAuth.TokenValidationNearCache.TimeToLive";
+
+    private static final int DEFAULT_MAX_SIZE = 10000;
+    private static final long DEFAULT_TIME_TO_LIVE_MILLIS = 15000;
+    private static final long MAX_TIME_TO_LIVE_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private static volatile AccessTokenValidationNearCache instance;
+
+    private final boolean enabled;
+    private final int maxSize;
+    private final long timeToLiveNanos;
+    private final ConcurrentMap<String, Entry> entries;
+    private final FrequencySketch sketch;
+
+    // Insertion order of the cached entries. Guarded by itself. Entries removed from the map are left in place and
+    // skipped when they reach the head of the queue.
+    private final ArrayDeque<Entry> insertionOrder = new ArrayDeque<>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    private AccessTokenValidationNearCache() {
+
+        this.enabled = !"false".equalsIgnoreCase(StringUtils.trim(IdentityUtil.getProperty(ENABLE)));
+        this.maxSize = OAuth2Util.getIntProperty(MAX_SIZE, DEFAULT_MAX_SIZE, 0, Integer.MAX_VALUE);
+        this.timeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(OAuth2Util.getLongProperty(TIME_TO_LIVE,
+                DEFAULT_TIME_TO_LIVE_MILLIS, 0, MAX_TIME_TO_LIVE_MILLIS));
+        this.entries = new ConcurrentHashMap<>(Math.min(maxSize, DEFAULT_MAX_SIZE));
+        this.sketch = new FrequencySketch(maxSize);
+        if (log.isDebugEnabled()) {
+            log.debug("Token validation near cache enabled : " + enabled + ", max size : " + maxSize +
+                    ", time to live(ms) : " + TimeUnit.NANOSECONDS.toMillis(timeToLiveNanos));
+        }
+    }
+
+    public static AccessTokenValidationNearCache getInstance() {
+        if (instance == null) {
+            synchronized (AccessTokenValidationNearCache.class) {
+                if (instance == null) {
+                    instance = new AccessTokenValidationNearCache();
+                }
+            }
+        }
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled && maxSize > 0 && timeToLiveNanos > 0;
+    }
+
+    /**
+     * Returns the cached token for the given identifier, or null if it is not cached or has expired.
+     *
+     * @param accessTokenIdentifier access token identifier.
+     * @return cached token or null.
+     */
+    public AccessTokenDO getValueFromCache(String accessTokenIdentifier) {
+
+        if (!isEnabled() || accessTokenIdentifier == null) {
+            return null;
+        }
+        sketch.increment(accessTokenIdentifier);
+        Entry entry = entries.get(accessTokenIdentifier);
+        if (entry == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        if (entry.isExpired(System.nanoTime())) {
+            entries.remove(accessTokenIdentifier, entry);
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return entry.accessTokenDO;
+    }
+
+    /**
+     * Caches the given token, loaded from {@link OAuthCache} or the database, against its identifier.
+     *
+     * @param accessTokenIdentifier access token identifier.
+     * @param accessTokenDO         token to cache.
+     */
+    public void addToCache(String accessTokenIdentifier, AccessTokenDO accessTokenDO) {
+
+        if (!isEnabled() || accessTokenIdentifier == null || accessTokenDO == null) {
+            return;
+        }
+
+        long timeToLive = timeToLiveNanos;
+        long tokenValidityMillis = OAuth2Util.getAccessTokenExpireMillis(accessTokenDO);
+        if (tokenValidityMillis == 0) {
+            return;
+        } else if (tokenValidityMillis > 0) {
+            timeToLive = Math.min(timeToLive, TimeUnit.MILLISECONDS.toNanos(tokenValidityMillis));
+        }
+
+        Entry entry = new Entry(accessTokenIdentifier, accessTokenDO, System.nanoTime() + timeToLive);
+        synchronized (insertionOrder) {
+            if (entries.containsKey(accessTokenIdentifier)) {
+                entries.put(accessTokenIdentifier, entry);
+                insertionOrder.addLast(entry);
+                compact();
+                return;
+            }
+            if (!makeRoomFor(accessTokenIdentifier)) {
+                rejectedCount.incrementAndGet();
+                return;
+            }
+            entries.put(accessTokenIdentifier, entry);
+            insertionOrder.addLast(entry);
+            compact();
+        }
+    }
+
+    /**
+     * Removes the token with the given identifier from this node's near cache.
+     *
+     * @param accessTokenIdentifier access token identifier.
+     */
+    public void clearCacheEntry(String accessTokenIdentifier) {
+
+        if (accessTokenIdentifier != null) {
+            entries.remove(accessTokenIdentifier);
+        }
+    }
+
+    public void clear() {
+
+        synchronized (insertionOrder) {
+            entries.clear();
+            insertionOrder.clear();
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Evicts entries until there is room for the candidate. The oldest live entry is only evicted in favour of a
+     * candidate that is estimated to be requested more often than it. Must be called while holding the
+     * insertion order lock.
+     */
+    private boolean makeRoomFor(String candidate) {
+
+        long now = System.nanoTime();
+        while (entries.size() >= maxSize) {
+            Entry victim = insertionOrder.pollFirst();
+            if (victim == null) {
+                // Entries are only added while holding the lock, so this can only happen if the map was cleared
+                // concurrently.
+                return true;
+            }
+            if (entries.get(victim.key) != victim) {
+                continue;
+            }
+            if (victim.isExpired(now) || sketch.frequency(candidate) > sketch.frequency(victim.key)) {
+                entries.remove(victim.key, victim);
+                evictionCount.incrementAndGet();
+            } else {
+                insertionOrder.addLast(victim);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Drops entries which are no longer in the map from the insertion order queue, so that it stays proportional to
+     * the size of the cache. Must be called while holding the insertion order lock.
+     */
+    private void compact() {
+
+        if (insertionOrder.size() <= 2 * Math.max(entries.size(), 16)) {
+            return;
+        }
+        Iterator<Entry> iterator = insertionOrder.iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entries.get(entry.key) != entry) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static final class Entry {
+
+        private final String key;
+        private final AccessTokenDO accessTokenDO;
+        private final long expiryTimeNanos;
+
+        private Entry(String key, AccessTokenDO accessTokenDO, long expiryTimeNanos) {
+            this.key = key;
+            this.accessTokenDO = accessTokenDO;
+            this.expiryTimeNanos = expiryTimeNanos;
+        }
+
+        private boolean isExpired(long now) {
+            return now - expiryTimeNanos >= 0;
+        }
+    }
+}
@@ -21,6 +21,7 @@ package org.wso2.carbon.identity.oauth.cache;
 import org.wso2.carbon.identity.application.common.cache.BaseCache;
 import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
 import org.wso2.carbon.identity.oauth.dao.OAuthAppDO;
+import org.wso2.carbon.identity.oauth2.util.CallbackUriMatcher;
 import org.wso2.carbon.utils.CarbonUtils;
 
 /**
@@ -53,6 +54,25 @@ public class AppInfoCache extends BaseCache<String, OAuthAppDO> {
         return instance;
     }
 
+    @Override
+    public void addToCache(String key, OAuthAppDO entry) {
+        // The callback of an updated application is recompiled on its next use.
+        CallbackUriMatcher.invalidate(key);
+        super.addToCache(key, entry);
+    }
+
+    @Override
+    public void clearCacheEntry(String key) {
+        CallbackUriMatcher.invalidate(key);
+        super.clearCacheEntry(key);
+    }
+
+    @Override
+    public void clear() {
+        CallbackUriMatcher.clear();
+        super.clear();
+    }
+
     @Override
     public boolean isEnabled() {
         return super.isEnabled() && OAuthServerConfiguration.getInstance().isCacheEnabled();
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth.cache;
+
+import org.wso2.carbon.identity.application.common.cache.BaseCache;
+import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
+import org.wso2.carbon.utils.CarbonUtils;
+
+/**
+ * AppStateCache holds the states of applications against their client ids, which the token and authorize endpoints
+ * check on every request. Entries are removed on every member of the cluster when the application is updated,
+ * revoked or removed.
+ */
+public class AppStateCache extends BaseCache<String, AppStateCacheEntry> {
+
+    private static final String APP_STATE_CACHE_NAME = "AppStateCache";
+
+    private static volatile AppStateCache instance;
+
+    private AppStateCache() {
+        super(APP_STATE_CACHE_NAME);
+    }
+
+    public static AppStateCache getInstance() {
+        CarbonUtils.checkSecurity();
+        if (instance == null) {
+            synchronized (AppStateCache.class) {
+                if (instance == null) {
+                    instance = new AppStateCache();
+                }
+            }
+        }
+        return instance;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return super.isEnabled() && OAuthServerConfiguration.getInstance().isCacheEnabled();
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.oauth.cache;
+
+/**
+ * State of an application, e.g. ACTIVE or REVOKED.
+ */
+public class AppStateCacheEntry extends CacheEntry {
+
+    private static final long serialVersionUID = 6415839105274417120L;
+
+    private String state;
+
+    public AppStateCacheEntry(String state) {
+        this.state = state;
+    }
+
+    public String getState() {
+        return state;
+    }
+}
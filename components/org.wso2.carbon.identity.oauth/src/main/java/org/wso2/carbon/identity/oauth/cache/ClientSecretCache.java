@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth.cache;
+
+import org.wso2.carbon.identity.application.common.cache.BaseCache;
+import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
+import org.wso2.carbon.identity.oauth2.model.ClientCredentialDO;
+import org.wso2.carbon.utils.CarbonUtils;
+
+/**
+ * ClientSecretCache holds the client secrets of applications against their client ids, as they are persisted, i.e.
+ * encrypted or hashed by the persistence processor. Entries are removed on every member of the cluster when the
+ * secret is regenerated or the application is updated or removed.
+ */
+public class ClientSecretCache extends BaseCache<String, ClientCredentialDO> {
+
+    private static final String CLIENT_SECRET_CACHE_NAME = "ClientSecretCache";
+
+    private static volatile ClientSecretCache instance;
+
+    private ClientSecretCache() {
+        super(CLIENT_SECRET_CACHE_NAME);
+    }
+
+    public static ClientSecretCache getInstance() {
+        CarbonUtils.checkSecurity();
+        if (instance == null) {
+            synchronized (ClientSecretCache.class) {
+                if (instance == null) {
+                    instance = new ClientSecretCache();
+                }
+            }
+        }
+        return instance;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return super.isEnabled() && OAuthServerConfiguration.getInstance().isCacheEnabled();
+    }
+}
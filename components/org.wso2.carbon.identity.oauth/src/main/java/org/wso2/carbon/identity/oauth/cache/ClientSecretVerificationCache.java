@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.oauth.cache;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
+
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process cache of recent successful client authentications. A client presenting the same secret again within
+ * the time to live is authenticated without decrypting or hashing the stored secret again.
+ * <p>
+ * Only SHA-256 digests of the verified secret and of the stored secret it was verified against are kept, and the
+ * cache is never replicated. An entry is only used while the stored secret is unchanged, so a secret regenerated
+ * through any node stops the old secret from authenticating on every node. Entries of a client are also removed
+ * when its secret is regenerated or the application is removed through this node.
+ */
+public class ClientSecretVerificationCache {
+
+    private static final Log log = LogFactory.getLog(ClientSecretVerificationCache.class);
+
+    private static final String ENABLE = "OAuth.ClientSecretVerificationCache.Enable";
+    private static final String MAX_SIZE = "OAuth.ClientSecretVerificationCache.MaxSize";
+    private static final String TIME_TO_LIVE = "OAuth.ClientSecretVerificationCache.TimeToLive";
+
+    private static final int DEFAULT_MAX_SIZE = 10000;
+    private static final long DEFAULT_TIME_TO_LIVE_MILLIS = 60000;
+    private static final long MAX_TIME_TO_LIVE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private static volatile ClientSecretVerificationCache instance;
+
+    private final boolean enabled;
+    private final int maxSize;
+    private final long timeToLiveNanos;
+
+    // Client id to the verified and stored secrets, in access order. Guarded by itself.
+    private final LinkedHashMap<String, Entry> verifiedSecrets;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    private ClientSecretVerificationCache() {
+
+        this.enabled = !"false".equalsIgnoreCase(StringUtils.trim(IdentityUtil.getProperty(ENABLE)));
+        this.maxSize = OAuth2Util.getIntProperty(MAX_SIZE, DEFAULT_MAX_SIZE, 0, Integer.MAX_VALUE);
+        this.timeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(OAuth2Util.getLongProperty(TIME_TO_LIVE,
+                DEFAULT_TIME_TO_LIVE_MILLIS, 0, MAX_TIME_TO_LIVE_MILLIS));
+        this.verifiedSecrets = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+        if (log.isDebugEnabled()) {
+            log.debug("Client secret verification cache enabled : " + enabled + ", max size : " + maxSize +
+                    ", time to live(ms) : " + TimeUnit.NANOSECONDS.toMillis(timeToLiveNanos));
+        }
+    }
+
+    public static ClientSecretVerificationCache getInstance() {
+        if (instance == null) {
+            synchronized (ClientSecretVerificationCache.class) {
+                if (instance == null) {
+                    instance = new ClientSecretVerificationCache();
+                }
+            }
+        }
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled && maxSize > 0 && timeToLiveNanos > 0;
+    }
+
+    /**
+     * Checks whether the given secret of the client was verified recently against the same stored secret.
+     *
+     * @param clientId     client id.
+     * @param clientSecret client secret provided by the client.
+     * @param storedSecret client secret as currently stored, i.e. as returned by the persistence processor.
+     * @return true if the same secret was successfully verified against the same stored secret within the time to
+     * live.
+     */
+    public boolean isVerified(String clientId, String clientSecret, String storedSecret) {
+
+        if (!isEnabled() || clientId == null || clientSecret == null || storedSecret == null) {
+            return false;
+        }
+        Entry entry;
+        synchronized (verifiedSecrets) {
+            entry = verifiedSecrets.get(clientId);
+            if (entry != null && System.nanoTime() - entry.expiryTime >= 0) {
+                verifiedSecrets.remove(clientId);
+                entry = null;
+            }
+        }
+        if (entry != null && MessageDigest.isEqual(entry.storedSecretDigest, DigestUtils.sha256(storedSecret)) &&
+                MessageDigest.isEqual(entry.secretDigest, DigestUtils.sha256(clientSecret))) {
+            hitCount.incrementAndGet();
+            return true;
+        }
+        missCount.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Records a successful verification of the secret of the client.
+     *
+     * @param clientId     client id.
+     * @param clientSecret verified client secret.
+     * @param storedSecret stored client secret the secret was verified against.
+     */
+    public void addVerifiedSecret(String clientId, String clientSecret, String storedSecret) {
+
+        if (!isEnabled() || clientId == null || clientSecret == null || storedSecret == null) {
+            return;
+        }
+        Entry entry = new Entry(DigestUtils.sha256(clientSecret), DigestUtils.sha256(storedSecret),
+                System.nanoTime() + timeToLiveNanos);
+        synchronized (verifiedSecrets) {
+            verifiedSecrets.put(clientId, entry);
+        }
+    }
+
+    /**
+     * Removes the verified secret of the client, e.g. after the secret is regenerated.
+     *
+     * @param clientId client id.
+     */
+    public void clearCacheEntry(String clientId) {
+
+        if (clientId == null) {
+            return;
+        }
+        synchronized (verifiedSecrets) {
+            verifiedSecrets.remove(clientId);
+        }
+    }
+
+    public void clear() {
+
+        synchronized (verifiedSecrets) {
+            verifiedSecrets.clear();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    private static class Entry {
+
+        private final byte[] secretDigest;
+        private final byte[] storedSecretDigest;
+        private final long expiryTime;
+
+        private Entry(byte[] secretDigest, byte[] storedSecretDigest, long expiryTime) {
+            this.secretDigest = secretDigest;
+            this.storedSecretDigest = storedSecretDigest;
+            this.expiryTime = expiryTime;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.oauth.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A count-min sketch of 4-bit counters used to estimate how often a key has been requested recently. Counters are
+ * halved once the number of recorded increments reaches ten times the configured capacity, so that the estimate
+ * reflects recent popularity rather than all-time popularity. This is the frequency filter used for TinyLFU style
+ * admission decisions in the local caches of this component.
+ */
+class FrequencySketch {
+
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+            0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_COUNTER = 15;
+
+    private final AtomicLongArray table;
+    private final int tableMask;
+    private final int sampleSize;
+    private final AtomicInteger size = new AtomicInteger();
+
+    FrequencySketch(int capacity) {
+
+        int tableSize = 1;
+        while (tableSize < Math.max(capacity, 16) && tableSize < (1 << 30)) {
+            tableSize <<= 1;
+        }
+        this.table = new AtomicLongArray(tableSize);
+        this.tableMask = tableSize - 1;
+        this.sampleSize = (int) Math.min(10L * Math.max(capacity, 16), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the estimated number of occurrences of the given key, up to a maximum of 15.
+     *
+     * @param key key to look up.
+     * @return estimated frequency of the key.
+     */
+    int frequency(Object key) {
+
+        int hash = spread(key.hashCode());
+        int frequency = MAX_COUNTER;
+        for (int i = 0; i < SEEDS.length; i++) {
+            int index = indexOf(hash, i);
+            int offset = offsetOf(hash, i);
+            int count = (int) ((table.get(index) >>> offset) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Records an occurrence of the given key.
+     *
+     * @param key key to record.
+     */
+    void increment(Object key) {
+
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            added |= incrementAt(indexOf(hash, i), offsetOf(hash, i));
+        }
+        if (added && size.incrementAndGet() >= sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int offset) {
+
+        long mask = 0xfL << offset;
+        while (true) {
+            long current = table.get(index);
+            if ((current & mask) == mask) {
+                return false;
+            }
+            if (table.compareAndSet(index, current, current + (1L << offset))) {
+                return true;
+            }
+        }
+    }
+
+    private void reset() {
+
+        // Only the thread that observed the threshold halves the counters. Concurrent increments racing with the
+        // reset may be lost, which only makes the estimate slightly more conservative.
+        if (size.get() < sampleSize) {
+            return;
+        }
+        size.set(0);
+        for (int i = 0; i < table.length(); i++) {
+            long current = table.get(i);
+            table.compareAndSet(i, current, (current >>> 1) & RESET_MASK);
+        }
+    }
+
+    private int indexOf(int hash, int depth) {
+
+        long h = (hash + SEEDS[depth]) * SEEDS[depth];
+        h += h >>> 32;
+        return (int) h & tableMask;
+    }
+
+    private static int offsetOf(int hash, int depth) {
+
+        // Each table slot holds sixteen 4-bit counters. Pick a different counter for each row of the sketch.
+        return ((((hash >>> (depth << 3)) & 3) << 2) + depth) << 2;
+    }
+
+    private static int spread(int hash) {
+
+        int h = hash;
+        h = ((h >>> 16) ^ h) * 0x45d9f3b;
+        h = ((h >>> 16) ^ h) * 0x45d9f3b;
+        return (h >>> 16) ^ h;
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.oauth.cache;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.oauth2.dao.TokenMgtDAO;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * In-process negative cache of access token identifiers which were recently looked up and not found in the database.
+ * Repeated validation requests for unknown, revoked or malformed tokens are answered from this cache for a short
+ * time instead of querying the access token table again.
+ * <p>
+ * Token identifiers are kept as SHA-256 hashes so that arbitrarily long garbage tokens do not inflate the memory
+ * held by the cache.
+ * <p>
+ * The cache is local to the node, so an identifier is only cached if it cannot turn into a valid token while the
+ * entry lives. Identifiers which are not well formed bearer tokens are always cached. Well formed identifiers are
+ * only cached when access tokens are persisted synchronously, since a token issued by any node is then in the
+ * database before it is handed to the client. With asynchronous persistence, a token issued by another node or
+ * still waiting in the persistence queue may be looked up before it is stored, hence well formed identifiers are
+ * always looked up in the database.
+ */
+public class InvalidAccessTokenCache {
+
+    private static final Log log = LogFactory.getLog(InvalidAccessTokenCache.class);
+
+    private static final String ENABLE = "OAuth.TokenValidationNegativeCache.Enable";
+    private static final String MAX_SIZE = "OAuth.TokenValidationNegativeCache.MaxSize";
+    private static final String TIME_TO_LIVE = "OAuth.TokenValidationNegativeCache.TimeToLive";
+
+    private static final int DEFAULT_MAX_SIZE = 10000;
+    private static final long DEFAULT_TIME_TO_LIVE_MILLIS = 5000;
+    private static final long MAX_TIME_TO_LIVE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    // b64token syntax of RFC 6750, which every bearer token issued by the server conforms to.
+    private static final Pattern BEARER_TOKEN_PATTERN = Pattern.compile("[A-Za-z0-9\\-._~+/]+=*");
+
+    private static volatile InvalidAccessTokenCache instance;
+
+    private final boolean enabled;
+    private final int maxSize;
+    private final long timeToLiveNanos;
+
+    // Token hash to expiry time in nanoseconds, in insertion order. Guarded by itself.
+    private final LinkedHashMap<String, Long> invalidTokens;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    private InvalidAccessTokenCache() {
+
+        this.enabled = !"false".equalsIgnoreCase(StringUtils.trim(IdentityUtil.getProperty(ENABLE)));
+        this.maxSize = OAuth2Util.getIntProperty(MAX_SIZE, DEFAULT_MAX_SIZE, 0, Integer.MAX_VALUE);
+        this.timeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(OAuth2Util.getLongProperty(TIME_TO_LIVE,
+                DEFAULT_TIME_TO_LIVE_MILLIS, 0, MAX_TIME_TO_LIVE_MILLIS));
+        this.invalidTokens = new LinkedHashMap<String, Long>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maxSize;
+            }
+        };
+        if (log.isDebugEnabled()) {
+            log.debug("Token validation negative cache enabled : " + enabled + ", max size : " + maxSize +
+                    ", time to live(ms) : " + TimeUnit.NANOSECONDS.toMillis(timeToLiveNanos));
+        }
+    }
+
+    public static InvalidAccessTokenCache getInstance() {
+        if (instance == null) {
+            synchronized (InvalidAccessTokenCache.class) {
+                if (instance == null) {
+                    instance = new InvalidAccessTokenCache();
+                }
+            }
+        }
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled && maxSize > 0 && timeToLiveNanos > 0;
+    }
+
+    /**
+     * Checks whether the given token identifier was recently found to be invalid.
+     *
+     * @param accessTokenIdentifier access token identifier.
+     * @return true if the token is known to be invalid.
+     */
+    public boolean isInvalid(String accessTokenIdentifier) {
+
+        if (!isEnabled() || accessTokenIdentifier == null) {
+            return false;
+        }
+        String key = DigestUtils.sha256Hex(accessTokenIdentifier);
+        long now = System.nanoTime();
+        synchronized (invalidTokens) {
+            Long expiryTime = invalidTokens.get(key);
+            if (expiryTime != null) {
+                if (now - expiryTime < 0) {
+                    hitCount.incrementAndGet();
+                    return true;
+                }
+                invalidTokens.remove(key);
+            }
+        }
+        missCount.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Records that the given token identifier could not be found. Well formed identifiers are ignored while access
+     * tokens are persisted asynchronously.
+     *
+     * @param accessTokenIdentifier access token identifier.
+     */
+    public void addInvalidToken(String accessTokenIdentifier) {
+
+        if (!isEnabled() || accessTokenIdentifier == null) {
+            return;
+        }
+        if (TokenMgtDAO.isAsynchronousPersistenceEnabled() && isWellFormed(accessTokenIdentifier)) {
+            return;
+        }
+        String key = DigestUtils.sha256Hex(accessTokenIdentifier);
+        long expiryTime = System.nanoTime() + timeToLiveNanos;
+        synchronized (invalidTokens) {
+            // Re-insert so that the entry moves to the end of the eviction order.
+            invalidTokens.remove(key);
+            invalidTokens.put(key, expiryTime);
+            removeExpiredEntries();
+        }
+    }
+
+    /**
+     * Removes the given token identifier from the cache. Called when a token with this identifier is issued.
+     *
+     * @param accessTokenIdentifier access token identifier.
+     */
+    public void clearCacheEntry(String accessTokenIdentifier) {
+
+        if (!isEnabled() || accessTokenIdentifier == null) {
+            return;
+        }
+        synchronized (invalidTokens) {
+            if (invalidTokens.isEmpty()) {
+                return;
+            }
+        }
+        String key = DigestUtils.sha256Hex(accessTokenIdentifier);
+        synchronized (invalidTokens) {
+            invalidTokens.remove(key);
+        }
+    }
+
+    public void clear() {
+
+        synchronized (invalidTokens) {
+            invalidTokens.clear();
+        }
+    }
+
+    public int size() {
+
+        synchronized (invalidTokens) {
+            return invalidTokens.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    private static boolean isWellFormed(String accessTokenIdentifier) {
+        return BEARER_TOKEN_PATTERN.matcher(accessTokenIdentifier).matches();
+    }
+
+    /**
+     * Entries are kept in insertion order and share the same time to live, so expired entries are always at the
+     * head of the map. Must be called while holding the map lock.
+     */
+    private void removeExpiredEntries() {
+
+        long now = System.nanoTime();
+        Iterator<Long> iterator = invalidTokens.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next() < 0) {
+                return;
+            }
+            iterator.remove();
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.oauth.cache;
+
+import com.nimbusds.jwt.JWT;
+import com.nimbusds.jwt.JWTParser;
+import com.nimbusds.jwt.ReadOnlyJWTClaimsSet;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
+
+import java.text.ParseException;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Set of the JWT IDs (jti) of revoked self contained access tokens, checked by the JWT access token validator on
+ * every validation.
+ * <p>
+ * An entry is only needed until the token itself expires, so entries are kept along with the expiry time of the
+ * token and dropped once it has passed. This keeps the set proportional to the number of revoked tokens which
+ * are still within their lifetime.
+ * <p>
+ * Revocations are kept in-process and shared with the other cluster members through the
+ * {@link RevokedTokenIdClusterCache}. Validations are answered from the in-process set, the cluster cache is only read
+ * for a token not known to be revoked once its last read is older than the configured cluster check interval, so a
+ * revocation made on another node is honoured within that interval. The cluster cache does not survive a restart of
+ * the whole cluster, so deployments which need that can also have the token store checked on validation.
+ */
+public class RevokedTokenIdCache {
+
+    private static final Log log = LogFactory.getLog(RevokedTokenIdCache.class);
+
+    private static final String PURGE_THRESHOLD = "OAuth.JWTAccessTokenValidation.RevokedTokenIdPurgeThreshold";
+    private static final int DEFAULT_PURGE_THRESHOLD = 10000;
+    private static final String CLUSTER_CHECK_INTERVAL =
+            "OAuth.JWTAccessTokenValidation.RevokedTokenIdClusterCheckInterval";
+    private static final long DEFAULT_CLUSTER_CHECK_INTERVAL = 1000;
+
+    private static volatile RevokedTokenIdCache instance;
+
+    private final int purgeThreshold;
+    private final long clusterCheckInterval;
+
+    // JWT ID to token expiry time in milliseconds.
+    private final Map<String, Long> revokedTokenIds = new ConcurrentHashMap<>();
+    private final AtomicLong nextPurgeSize;
+
+    // JWT ID of a token found not to be revoked to the time in milliseconds the cluster cache is read for it again.
+    private final Map<String, Long> nextClusterCheckTimes = new ConcurrentHashMap<>();
+    private final AtomicLong nextCheckTimePurgeSize;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private RevokedTokenIdCache() {
+
+        this.purgeThreshold = OAuth2Util.getIntProperty(PURGE_THRESHOLD, DEFAULT_PURGE_THRESHOLD, 1,
+                Integer.MAX_VALUE);
+        this.nextPurgeSize = new AtomicLong(purgeThreshold);
+        this.nextCheckTimePurgeSize = new AtomicLong(purgeThreshold);
+        this.clusterCheckInterval = OAuth2Util.getLongProperty(CLUSTER_CHECK_INTERVAL,
+                DEFAULT_CLUSTER_CHECK_INTERVAL, 0, Long.MAX_VALUE);
+    }
+
+    public static RevokedTokenIdCache getInstance() {
+        if (instance == null) {
+            synchronized (RevokedTokenIdCache.class) {
+                if (instance == null) {
+                    instance = new RevokedTokenIdCache();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Checks whether the token with the given JWT ID was revoked.
+     *
+     * @param tokenId JWT ID of the token.
+     * @return true if the token was revoked and has not expired yet.
+     */
+    public boolean isRevoked(String tokenId) {
+
+        if (tokenId == null) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        Long expiryTime = revokedTokenIds.get(tokenId);
+        if (expiryTime != null) {
+            if (expiryTime > now) {
+                hitCount.incrementAndGet();
+                return true;
+            }
+            revokedTokenIds.remove(tokenId, expiryTime);
+        }
+        Long nextClusterCheckTime = nextClusterCheckTimes.get(tokenId);
+        if (nextClusterCheckTime != null && nextClusterCheckTime > now) {
+            return false;
+        }
+        RevokedTokenIdCacheEntry entry = RevokedTokenIdClusterCache.getInstance().getValueFromCache(tokenId);
+        if (entry != null && !entry.isExpired(now)) {
+            // Revoked through another node. Remember it locally, further checks need not reach the cluster cache.
+            revokedTokenIds.put(tokenId, entry.getExpiryTime());
+            nextClusterCheckTimes.remove(tokenId);
+            hitCount.incrementAndGet();
+            return true;
+        }
+        nextClusterCheckTimes.put(tokenId, now + clusterCheckInterval);
+        purgeIfNeeded(nextClusterCheckTimes, nextCheckTimePurgeSize);
+        return false;
+    }
+
+    /**
+     * Records the revocation of a token.
+     *
+     * @param tokenId    JWT ID of the token.
+     * @param expiryTime expiry time of the token in milliseconds.
+     */
+    public void addRevokedTokenId(String tokenId, long expiryTime) {
+
+        if (tokenId == null || expiryTime <= System.currentTimeMillis()) {
+            return;
+        }
+        revokedTokenIds.put(tokenId, expiryTime);
+        nextClusterCheckTimes.remove(tokenId);
+        RevokedTokenIdClusterCache.getInstance().addToCache(tokenId, new RevokedTokenIdCacheEntry(expiryTime));
+        purgeIfNeeded(revokedTokenIds, nextPurgeSize);
+    }
+
+    /**
+     * Records the revocation of the given access tokens. Tokens which are not self contained JWTs are ignored.
+     *
+     * @param accessTokens revoked access tokens.
+     */
+    public void addRevokedTokens(String[] accessTokens) {
+
+        if (accessTokens == null) {
+            return;
+        }
+        for (String accessToken : accessTokens) {
+            if (StringUtils.countMatches(accessToken, ".") != 2) {
+                continue;
+            }
+            try {
+                JWT jwt = JWTParser.parse(accessToken);
+                ReadOnlyJWTClaimsSet claimsSet = jwt.getJWTClaimsSet();
+                Date expirationTime = claimsSet.getExpirationTime();
+                if (claimsSet.getJWTID() != null && expirationTime != null) {
+                    addRevokedTokenId(claimsSet.getJWTID(), expirationTime.getTime());
+                }
+            } catch (ParseException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Revoked access token is not a JWT. Not adding it to the revoked token ID set", e);
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        revokedTokenIds.clear();
+        nextClusterCheckTimes.clear();
+    }
+
+    public int size() {
+        return revokedTokenIds.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    private void purgeIfNeeded(Map<String, Long> expiryTimes, AtomicLong nextPurgeSize) {
+
+        long purgeSize = nextPurgeSize.get();
+        if (expiryTimes.size() >= purgeSize && nextPurgeSize.compareAndSet(purgeSize, Long.MAX_VALUE)) {
+            removeExpiredEntries(expiryTimes);
+            nextPurgeSize.set(expiryTimes.size() + purgeThreshold);
+        }
+    }
+
+    private void removeExpiredEntries(Map<String, Long> expiryTimes) {
+
+        long now = System.currentTimeMillis();
+        Iterator<Long> iterator = expiryTimes.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() <= now) {
+                iterator.remove();
+            }
+        }
+    }
+}
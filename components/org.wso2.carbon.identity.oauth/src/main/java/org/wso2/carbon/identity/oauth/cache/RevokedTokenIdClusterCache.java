@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.oauth.cache;
+
+import org.wso2.carbon.identity.application.common.cache.BaseCache;
+import org.wso2.carbon.utils.CarbonUtils;
+
+/**
+ * RevokedTokenIdClusterCache shares the JWT IDs of revoked self contained access tokens between cluster members.
+ */
+public class RevokedTokenIdClusterCache extends BaseCache<String, RevokedTokenIdCacheEntry> {
+
+    private static final String REVOKED_TOKEN_ID_CACHE_NAME = "RevokedTokenIdCache";
+
+    private static volatile RevokedTokenIdClusterCache instance;
+
+    private RevokedTokenIdClusterCache() {
+        super(REVOKED_TOKEN_ID_CACHE_NAME);
+    }
+
+    public static RevokedTokenIdClusterCache getInstance() {
+        CarbonUtils.checkSecurity();
+        if (instance == null) {
+            synchronized (RevokedTokenIdClusterCache.class) {
+                if (instance == null) {
+                    instance = new RevokedTokenIdClusterCache();
+                }
+            }
+        }
+        return instance;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth.cache;
+
+import org.wso2.carbon.identity.application.common.cache.BaseCache;
+import org.wso2.carbon.utils.CarbonUtils;
+
+/**
+ * SAML2AssertionIdCache shares the IDs of the SAML2 bearer assertions used for the token grant between cluster
+ * members. Entries are keyed by the hash of the issuer and the assertion ID.
+ */
+public class SAML2AssertionIdCache extends BaseCache<String, SAML2AssertionIdCacheEntry> {
+
+    private static final String SAML2_ASSERTION_ID_CACHE_NAME = "SAML2AssertionIdCache";
+
+    private static volatile SAML2AssertionIdCache instance;
+
+    private SAML2AssertionIdCache() {
+        super(SAML2_ASSERTION_ID_CACHE_NAME);
+    }
+
+    public static SAML2AssertionIdCache getInstance() {
+        CarbonUtils.checkSecurity();
+        if (instance == null) {
+            synchronized (SAML2AssertionIdCache.class) {
+                if (instance == null) {
+                    instance = new SAML2AssertionIdCache();
+                }
+            }
+        }
+        return instance;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth.cache;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Set of the IDs of the SAML2 bearer assertions already used for the token grant, so that an assertion is not
+ * replayed while it is still valid.
+ * <p>
+ * An ID is only needed until the assertion expires, so entries are kept along with the NotOnOrAfter instant of the
+ * assertion plus the allowed clock skew and dropped once it has passed. Keys are SHA-256 hashes of the issuer and
+ * the ID, so that the set stays compact whatever the length of the IDs.
+ * <p>
+ * The set is kept in-process. It can additionally be backed by the clustered {@link SAML2AssertionIdCache}, so that
+ * an assertion used through one node is rejected by the others. Since the cluster cache has no atomic add, two
+ * nodes receiving the same assertion at the same time may both accept it.
+ */
+public class SAML2AssertionReplayCache {
+
+    private static final Log log = LogFactory.getLog(SAML2AssertionReplayCache.class);
+
+    private static final String ENABLE = "OAuth.SAML2Grant.ReplayDetection.Enable";
+    private static final String CLUSTER_CACHE_ENABLE = "OAuth.SAML2Grant.ReplayDetection.ClusterCache.Enable";
+    private static final String PURGE_THRESHOLD = "OAuth.SAML2Grant.ReplayDetection.PurgeThreshold";
+    private static final int DEFAULT_PURGE_THRESHOLD = 10000;
+
+    private static volatile SAML2AssertionReplayCache instance;
+
+    private final boolean enabled;
+    private final boolean clusterCacheEnabled;
+    private final int purgeThreshold;
+
+    // Hash of the issuer and assertion ID to expiry time in milliseconds.
+    private final Map<String, Long> usedAssertionIds = new ConcurrentHashMap<>();
+    private final AtomicLong nextPurgeSize;
+
+    private final AtomicLong replayCount = new AtomicLong();
+
+    private SAML2AssertionReplayCache() {
+
+        this.enabled = !"false".equalsIgnoreCase(StringUtils.trim(IdentityUtil.getProperty(ENABLE)));
+        this.clusterCacheEnabled = Boolean.parseBoolean(StringUtils.trim(IdentityUtil.getProperty(
+                CLUSTER_CACHE_ENABLE)));
+        this.purgeThreshold = OAuth2Util.getIntProperty(PURGE_THRESHOLD, DEFAULT_PURGE_THRESHOLD, 1,
+                Integer.MAX_VALUE);
+        this.nextPurgeSize = new AtomicLong(purgeThreshold);
+        if (log.isDebugEnabled()) {
+            log.debug("SAML2 assertion replay detection enabled : " + enabled + ", cluster cache enabled : " +
+                    clusterCacheEnabled + ", purge threshold : " + purgeThreshold);
+        }
+    }
+
+    public static SAML2AssertionReplayCache getInstance() {
+        if (instance == null) {
+            synchronized (SAML2AssertionReplayCache.class) {
+                if (instance == null) {
+                    instance = new SAML2AssertionReplayCache();
+                }
+            }
+        }
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Checks whether the assertion was already used. Meant to be called as soon as the assertion is parsed, so that
+     * replays are rejected before its signature is validated.
+     *
+     * @param issuer      issuer of the assertion.
+     * @param assertionId ID of the assertion.
+     * @return true if the assertion was used and has not expired yet.
+     */
+    public boolean isReplayed(String issuer, String assertionId) {
+
+        if (!enabled) {
+            return false;
+        }
+        String key = getKey(issuer, assertionId);
+        long now = System.currentTimeMillis();
+        Long expiryTime = usedAssertionIds.get(key);
+        if (expiryTime != null) {
+            if (expiryTime > now) {
+                replayCount.incrementAndGet();
+                return true;
+            }
+            usedAssertionIds.remove(key, expiryTime);
+        }
+        if (clusterCacheEnabled) {
+            SAML2AssertionIdCacheEntry entry = SAML2AssertionIdCache.getInstance().getValueFromCache(key);
+            if (entry != null && !entry.isExpired(now)) {
+                // Remember it locally, further replays need not reach the cluster cache.
+                usedAssertionIds.put(key, entry.getExpiryTime());
+                replayCount.incrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records the use of an assertion. Meant to be called once the assertion is fully validated, so that an
+     * assertion which fails validation cannot block a genuine one with the same ID.
+     *
+     * @param issuer      issuer of the assertion.
+     * @param assertionId ID of the assertion.
+     * @param expiryTime  time in milliseconds until which the assertion is accepted.
+     * @return false if the assertion was used concurrently, in which case it has to be rejected.
+     */
+    public boolean addUsedAssertion(String issuer, String assertionId, long expiryTime) {
+
+        long now = System.currentTimeMillis();
+        if (!enabled || expiryTime <= now) {
+            return true;
+        }
+        String key = getKey(issuer, assertionId);
+        Long existingExpiryTime = usedAssertionIds.putIfAbsent(key, expiryTime);
+        if (existingExpiryTime != null) {
+            if (existingExpiryTime > now || !usedAssertionIds.replace(key, existingExpiryTime, expiryTime)) {
+                replayCount.incrementAndGet();
+                return false;
+            }
+        }
+        if (clusterCacheEnabled) {
+            SAML2AssertionIdCache.getInstance().addToCache(key, new SAML2AssertionIdCacheEntry(expiryTime));
+        }
+
+        long purgeSize = nextPurgeSize.get();
+        if (usedAssertionIds.size() >= purgeSize && nextPurgeSize.compareAndSet(purgeSize, Long.MAX_VALUE)) {
+            removeExpiredEntries();
+            nextPurgeSize.set(usedAssertionIds.size() + purgeThreshold);
+        }
+        return true;
+    }
+
+    public void clear() {
+        usedAssertionIds.clear();
+    }
+
+    public int size() {
+        return usedAssertionIds.size();
+    }
+
+    public long getReplayCount() {
+        return replayCount.get();
+    }
+
+    private void removeExpiredEntries() {
+
+        long now = System.currentTimeMillis();
+        Iterator<Long> iterator = usedAssertionIds.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() <= now) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static String getKey(String issuer, String assertionId) {
+        return DigestUtils.sha256Hex(issuer + "\n" + assertionId);
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth.cache;
+
+/**
+ * Token issuance lease held by a cluster member.
+ */
+public class TokenIssuanceLockCacheEntry extends CacheEntry {
+
+    private static final long serialVersionUID = -3188523920472945628L;
+
+    private String ownerId;
+    private long expiryTime;
+
+    public TokenIssuanceLockCacheEntry(String ownerId, long expiryTime) {
+        this.ownerId = ownerId;
+        this.expiryTime = expiryTime;
+    }
+
+    public String getOwnerId() {
+        return ownerId;
+    }
+
+    public long getExpiryTime() {
+        return expiryTime;
+    }
+
+    public boolean isExpired(long currentTime) {
+        return currentTime >= expiryTime;
+    }
+}
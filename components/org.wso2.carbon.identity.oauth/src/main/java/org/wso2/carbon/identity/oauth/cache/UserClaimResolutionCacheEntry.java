@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.oauth.cache;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable claim values of a user and the claim URIs they were resolved for, including the claims the user has no
+ * value for.
+ */
+public class UserClaimResolutionCacheEntry extends CacheEntry {
+
+    private static final long serialVersionUID = -3318765440915271864L;
+
+    private final Set<String> claimURIs;
+    private final Map<String, String> values;
+    private final long expiryTime;
+
+    public UserClaimResolutionCacheEntry(UserClaimResolutionCacheEntry previousClaims, Set<String> resolvedClaimURIs,
+                                         Map<String, String> resolvedValues, long expiryTime) {
+
+        Set<String> claimURIs = new HashSet<>(resolvedClaimURIs);
+        Map<String, String> values = new HashMap<>();
+        if (previousClaims != null) {
+            claimURIs.addAll(previousClaims.claimURIs);
+            values.putAll(previousClaims.values);
+        }
+        if (resolvedValues != null) {
+            for (Map.Entry<String, String> entry : resolvedValues.entrySet()) {
+                if (resolvedClaimURIs.contains(entry.getKey())) {
+                    values.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        this.claimURIs = Collections.unmodifiableSet(claimURIs);
+        this.values = Collections.unmodifiableMap(values);
+        this.expiryTime = expiryTime;
+    }
+
+    public boolean isResolved(String claimURI) {
+        return claimURIs.contains(claimURI);
+    }
+
+    public long getExpiryTime() {
+        return expiryTime;
+    }
+
+    /**
+     * Returns the values of the requested claims the user has a value for, in a map which the caller may modify.
+     *
+     * @param requestedClaimURIs requested claim URIs.
+     * @return values of the requested claims.
+     */
+    public Map<String, String> getValues(String[] requestedClaimURIs) {
+
+        Map<String, String> requestedValues = new HashMap<>();
+        for (String claimURI : requestedClaimURIs) {
+            String value = values.get(claimURI);
+            if (value != null) {
+                requestedValues.put(claimURI, value);
+            }
+        }
+        return requestedValues;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.oauth.cache;
+
+import org.wso2.carbon.identity.application.common.cache.BaseCache;
+import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
+import org.wso2.carbon.utils.CarbonUtils;
+
+/**
+ * UserClaimResolutionClusterCache holds the local claim values of users resolved from the user store against the
+ * domain qualified user name and tenant id. Entries are removed on every member of the cluster when the claims of
+ * the user are updated or the user is deleted.
+ */
+public class UserClaimResolutionClusterCache extends BaseCache<String, UserClaimResolutionCacheEntry> {
+
+    private static final String USER_CLAIM_RESOLUTION_CACHE_NAME = "UserClaimResolutionCache";
+
+    private static volatile UserClaimResolutionClusterCache instance;
+
+    private UserClaimResolutionClusterCache() {
+        super(USER_CLAIM_RESOLUTION_CACHE_NAME);
+    }
+
+    public static UserClaimResolutionClusterCache getInstance() {
+        CarbonUtils.checkSecurity();
+        if (instance == null) {
+            synchronized (UserClaimResolutionClusterCache.class) {
+                if (instance == null) {
+                    instance = new UserClaimResolutionClusterCache();
+                }
+            }
+        }
+        return instance;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return super.isEnabled() && OAuthServerConfiguration.getInstance().isCacheEnabled();
+    }
+}
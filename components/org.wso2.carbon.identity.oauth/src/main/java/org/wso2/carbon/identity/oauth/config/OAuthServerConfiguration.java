@@ -49,6 +49,8 @@ import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
 import org.wso2.carbon.identity.oauth2.authz.handlers.ResponseTypeHandler;
 import org.wso2.carbon.identity.oauth2.token.OauthTokenIssuer;
 import org.wso2.carbon.identity.oauth2.token.OauthTokenIssuerImpl;
+import org.wso2.carbon.identity.oauth2.token.StripedTokenIssuanceLockManager;
+import org.wso2.carbon.identity.oauth2.token.TokenIssuanceLockManager;
 import org.wso2.carbon.identity.oauth2.token.handlers.clientauth.ClientAuthenticationHandler;
 import org.wso2.carbon.identity.oauth2.token.handlers.grant.AuthorizationGrantHandler;
 import org.wso2.carbon.identity.oauth2.token.handlers.grant.saml.SAML2TokenCallbackHandler;
@@ -184,6 +186,10 @@ public class OAuthServerConfiguration {
     private ValueGenerator tokenValueGenerator;
     private String tokenValueGeneratorClassName;
 
+    // Lock manager used to serialize token issuance for the same client, user and scope.
+    private String tokenIssuanceLockManagerClassName;
+    private TokenIssuanceLockManager tokenIssuanceLockManager;
+
     private OAuthServerConfiguration() {
         buildOAuthServerConfiguration();
     }
@@ -298,6 +304,9 @@ public class OAuthServerConfiguration {
         // Read the value of UseSPTenantDomain config.
         parseUseSPTenantDomainConfig(oauthElem);
 
+        // Parse token issuance lock manager class name.
+        parseTokenIssuanceLockManagerConfig(oauthElem);
+
         parseRevokeResponseHeadersEnableConfig(oauthElem);
     }
 
@@ -745,6 +754,10 @@ public class OAuthServerConfiguration {
         return tokenGeneratorImplClass;
     }
 
+    public String getOauthIdentityTokenGeneratorClassName() {
+        return oauthIdentityTokenGeneratorClassName;
+    }
+
     public String getSignatureAlgorithm() {
         return signatureAlgorithm;
     }
@@ -769,6 +782,43 @@ public class OAuthServerConfiguration {
         return useMultiValueSeparatorForAuthContextToken;
     }
 
+    /**
+     * Get the instance of the token issuance lock manager according to the identity xml configuration value.
+     *
+     * @return TokenIssuanceLockManager object instance.
+     */
+    public TokenIssuanceLockManager getTokenIssuanceLockManager() {
+
+        if (tokenIssuanceLockManager == null) {
+            synchronized (this) {
+                if (tokenIssuanceLockManager == null) {
+                    try {
+                        if (tokenIssuanceLockManagerClassName != null) {
+                            Class clazz = this.getClass().getClassLoader().loadClass(tokenIssuanceLockManagerClassName);
+                            tokenIssuanceLockManager = (TokenIssuanceLockManager) clazz.newInstance();
+                            if (log.isDebugEnabled()) {
+                                log.debug("An instance of " + tokenIssuanceLockManagerClassName + " is created.");
+                            }
+                        } else {
+                            tokenIssuanceLockManager = new StripedTokenIssuanceLockManager();
+                            if (log.isDebugEnabled()) {
+                                log.debug("Default token issuance lock manager StripedTokenIssuanceLockManager " +
+                                        "will be used.");
+                            }
+                        }
+                    } catch (Exception e) {
+                        log.error("Error while initiating the token issuance lock manager :" +
+                                tokenIssuanceLockManagerClassName + ". Defaulting to " +
+                                "StripedTokenIssuanceLockManager.", e);
+                        tokenIssuanceLockManager = new StripedTokenIssuanceLockManager();
+                    }
+                }
+            }
+        }
+
+        return tokenIssuanceLockManager;
+    }
+
     public TokenPersistenceProcessor getPersistenceProcessor() throws IdentityOAuth2Exception {
         if (persistenceProcessor == null) {
             synchronized (this) {
@@ -1801,6 +1851,20 @@ public class OAuthServerConfiguration {
         }
     }
 
+    private void parseTokenIssuanceLockManagerConfig(OMElement oauthElem) {
+
+        OMElement lockManagerElement = oauthElem
+                .getFirstChildWithName(getQNameWithIdentityNS(ConfigElements.TOKEN_ISSUANCE_LOCK_MANAGER));
+
+        if (lockManagerElement != null && StringUtils.isNotBlank(lockManagerElement.getText())) {
+            tokenIssuanceLockManagerClassName = lockManagerElement.getText().trim();
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Token issuance lock manager class is set to: " + tokenIssuanceLockManagerClassName);
+        }
+    }
+
     private void parseOpenIDConnectConfig(OMElement oauthConfigElem) {
 
         OMElement openIDConnectConfigElem =
@@ -2051,6 +2115,9 @@ public class OAuthServerConfiguration {
         // Oauth access token value generator related.
         private static final String OAUTH_TOKEN_VALUE_GENERATOR = "AccessTokenValueGenerator";
 
+        // Lock manager serializing token issuance for the same client, user and scope.
+        private static final String TOKEN_ISSUANCE_LOCK_MANAGER = "TokenIssuanceLockManager";
+
         // Property to decide whether to pick the user tenant domain or SP tenant domain.
         private static final String OAUTH_USE_SP_TENANT_DOMAIN = "UseSPTenantDomain";
         private static final String MAP_FED_USERS_TO_LOCAL = "MapFederatedUsersToLocal";
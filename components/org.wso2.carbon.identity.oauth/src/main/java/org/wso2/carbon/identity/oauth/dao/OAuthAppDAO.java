@@ -18,6 +18,7 @@
 
 package org.wso2.carbon.identity.oauth.dao;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.context.CarbonContext;
@@ -45,7 +46,9 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * JDBC Based data access layer for OAuth Consumer Applications.
@@ -292,6 +295,60 @@ public class OAuthAppDAO {
         return oauthApp;
     }
 
+    /**
+     * Retrieve the information of the most recently registered applications of all tenants, e.g. to warm up the
+     * application cache.
+     *
+     * @param maxApps maximum number of applications to retrieve.
+     * @return applications, most recently registered first.
+     * @throws IdentityOAuth2Exception Error when reading the applications.
+     */
+    public List<OAuthAppDO> getAppInformation(int maxApps) throws IdentityOAuth2Exception {
+        Connection connection = IdentityDatabaseUtil.getDBConnection();
+        PreparedStatement prepStmt = null;
+        ResultSet rSet = null;
+        List<OAuthAppDO> oauthApps = new ArrayList<>();
+        boolean isPKCESupportEnabled = OAuth2ServiceComponentHolder.isPkceEnabled();
+        try {
+            if (isPKCESupportEnabled) {
+                prepStmt = connection.prepareStatement(SQLQueries.OAuthAppDAOSQLQueries.GET_ALL_APP_INFO_WITH_PKCE);
+            } else {
+                prepStmt = connection.prepareStatement(SQLQueries.OAuthAppDAOSQLQueries.GET_ALL_APP_INFO);
+            }
+            prepStmt.setMaxRows(maxApps);
+
+            rSet = prepStmt.executeQuery();
+            while (rSet.next()) {
+                if (rSet.getString(4) != null && rSet.getString(4).length() > 0) {
+                    OAuthAppDO oauthApp = new OAuthAppDO();
+                    oauthApp.setOauthConsumerKey(persistenceProcessor.getPreprocessedClientId(rSet.getString(10)));
+                    oauthApp.setOauthConsumerSecret(persistenceProcessor.getPreprocessedClientSecret(rSet.getString(1)));
+                    AuthenticatedUser authenticatedUser = new AuthenticatedUser();
+                    authenticatedUser.setUserName(rSet.getString(2));
+                    oauthApp.setApplicationName(rSet.getString(3));
+                    oauthApp.setOauthVersion(rSet.getString(4));
+                    oauthApp.setCallbackUrl(rSet.getString(5));
+                    authenticatedUser.setTenantDomain(IdentityTenantUtil.getTenantDomain(rSet.getInt(6)));
+                    authenticatedUser.setUserStoreDomain(rSet.getString(7));
+                    oauthApp.setUser(authenticatedUser);
+                    oauthApp.setGrantTypes(rSet.getString(8));
+                    oauthApp.setId(rSet.getInt(9));
+                    if (isPKCESupportEnabled) {
+                        oauthApp.setPkceMandatory("0".equals(rSet.getString(11)) ? false : true);
+                        oauthApp.setPkceSupportPlain("0".equals(rSet.getString(12)) ? false : true);
+                    }
+                    oauthApps.add(oauthApp);
+                }
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            throw new IdentityOAuth2Exception("Error while retrieving the app information", e);
+        } finally {
+            IdentityDatabaseUtil.closeAllConnections(connection, rSet, prepStmt);
+        }
+        return oauthApps;
+    }
+
     public OAuthAppDO getAppInformationByAppName(String appName) throws InvalidOAuthClientException, IdentityOAuth2Exception {
         Connection connection = IdentityDatabaseUtil.getDBConnection();
         PreparedStatement prepStmt = null;
@@ -471,6 +528,41 @@ public class OAuthAppDAO {
         return consumerAppState;
     }
 
+    /**
+     * Returns the states of the most recently registered applications.
+     *
+     * @param maxApps maximum number of applications to read.
+     * @return application states by client id.
+     * @throws IdentityOAuthAdminException Error when reading the application states.
+     */
+    public Map<String, String> getConsumerAppStates(int maxApps) throws IdentityOAuthAdminException {
+        PreparedStatement prepStmt = null;
+        Connection connection = null;
+        ResultSet rSet = null;
+        Map<String, String> consumerAppStates = new HashMap<>();
+
+        try {
+            connection = IdentityDatabaseUtil.getDBConnection();
+            prepStmt = connection.prepareStatement(SQLQueries.OAuthAppDAOSQLQueries.GET_ALL_APPLICATION_STATES);
+            prepStmt.setMaxRows(maxApps);
+            rSet = prepStmt.executeQuery();
+            while (rSet.next()) {
+                String appState = rSet.getString(2);
+                if (StringUtils.isNotEmpty(appState)) {
+                    consumerAppStates.put(persistenceProcessor.getPreprocessedClientId(rSet.getString(1)), appState);
+                }
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            throw new IdentityOAuthAdminException("Error while retrieving the application states", e);
+        } catch (IdentityOAuth2Exception e) {
+            throw new IdentityOAuthAdminException("Error while processing the client id of an application", e);
+        } finally {
+            IdentityDatabaseUtil.closeAllConnections(connection, rSet, prepStmt);
+        }
+        return consumerAppStates;
+    }
+
     public void updateConsumerAppState(String consumerKey, String state) throws IdentityApplicationManagementException {
         PreparedStatement statement = null;
         Connection connection = null;
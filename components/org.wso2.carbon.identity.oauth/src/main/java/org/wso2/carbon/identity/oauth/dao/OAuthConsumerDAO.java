@@ -59,6 +59,28 @@ public class OAuthConsumerDAO {
      * @throws IdentityOAuthAdminException Error when reading consumer secret from the persistence store
      */
     public String getOAuthConsumerSecret(String consumerKey) throws IdentityOAuthAdminException {
+
+        String processedConsumerSecret = getProcessedOAuthConsumerSecret(consumerKey);
+        if (processedConsumerSecret == null) {
+            return null;
+        }
+        try {
+            return persistenceProcessor.getPreprocessedClientSecret(processedConsumerSecret);
+        } catch (IdentityOAuth2Exception e) {
+            throw new IdentityOAuthAdminException("Error occurred while processing client id and client secret by " +
+                    "TokenPersistenceProcessor", e);
+        }
+    }
+
+    /**
+     * Returns the consumer secret corresponding to a given consumer key as it is persisted, i.e. encrypted or hashed
+     * by the persistence processor
+     *
+     * @param consumerKey Consumer key
+     * @return persisted consumer secret
+     * @throws IdentityOAuthAdminException Error when reading consumer secret from the persistence store
+     */
+    public String getProcessedOAuthConsumerSecret(String consumerKey) throws IdentityOAuthAdminException {
         String consumerSecret = null;
         Connection connection = IdentityDatabaseUtil.getDBConnection();
         PreparedStatement prepStmt = null;
@@ -70,7 +92,7 @@ public class OAuthConsumerDAO {
             resultSet = prepStmt.executeQuery();
 
             if (resultSet.next()) {
-                consumerSecret = persistenceProcessor.getPreprocessedClientSecret(resultSet.getString(1));
+                consumerSecret = resultSet.getString(1);
             } else {
                 if(log.isDebugEnabled()) {
                     log.debug("Invalid Consumer Key : " + consumerKey);
@@ -57,6 +57,14 @@ public class SQLQueries {
         public static final String GET_APP_INFO_WITH_PKCE = "SELECT CONSUMER_SECRET,USERNAME,APP_NAME, OAUTH_VERSION, " +
                 "CALLBACK_URL,TENANT_ID, USER_DOMAIN, GRANT_TYPES, ID, PKCE_MANDATORY, PKCE_SUPPORT_PLAIN FROM IDN_OAUTH_CONSUMER_APPS WHERE CONSUMER_KEY=? ";
 
+        public static final String GET_ALL_APP_INFO = "SELECT CONSUMER_SECRET,USERNAME,APP_NAME, OAUTH_VERSION, " +
+                "CALLBACK_URL,TENANT_ID, USER_DOMAIN, GRANT_TYPES, ID, CONSUMER_KEY FROM IDN_OAUTH_CONSUMER_APPS " +
+                "ORDER BY ID DESC";
+
+        public static final String GET_ALL_APP_INFO_WITH_PKCE = "SELECT CONSUMER_SECRET,USERNAME,APP_NAME, " +
+                "OAUTH_VERSION, CALLBACK_URL,TENANT_ID, USER_DOMAIN, GRANT_TYPES, ID, CONSUMER_KEY, PKCE_MANDATORY, " +
+                "PKCE_SUPPORT_PLAIN FROM IDN_OAUTH_CONSUMER_APPS ORDER BY ID DESC";
+
         public static final String GET_APP_INFO_BY_APP_NAME = "SELECT CONSUMER_SECRET,USERNAME,USER_DOMAIN,CONSUMER_KEY, " +
                 "OAUTH_VERSION, CALLBACK_URL,GRANT_TYPES, ID FROM IDN_OAUTH_CONSUMER_APPS WHERE APP_NAME=? AND TENANT_ID=? ";
 
@@ -91,6 +99,9 @@ public class SQLQueries {
         public static final String UPDATE_APPLICATION_STATE = "UPDATE IDN_OAUTH_CONSUMER_APPS SET APP_STATE=? WHERE " +
                 "CONSUMER_KEY=?";
 
+        public static final String GET_ALL_APPLICATION_STATES = "SELECT CONSUMER_KEY, APP_STATE FROM " +
+                "IDN_OAUTH_CONSUMER_APPS ORDER BY ID DESC";
+
         private OAuthAppDAOSQLQueries() {
         }
     }
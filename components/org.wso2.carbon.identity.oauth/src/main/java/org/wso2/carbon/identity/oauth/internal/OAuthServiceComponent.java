@@ -86,6 +86,9 @@ public class OAuthServiceComponent {
         if (serviceRegistration != null) {
             serviceRegistration.unregister();
         }
+        if (listener != null) {
+            listener.shutdown();
+        }
         if (log.isDebugEnabled()) {
             log.debug("Identity OAuth bundle is deactivated");
         }
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth.listener;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Detects the transitions of user accounts from active to locked or disabled, as observed by the user operation
+ * listener, and runs the token revocation of a transition once in the background.
+ * <p>
+ * The account state of a user is reported on every authentication attempt while the account is locked or disabled.
+ * Only the first report after the account was seen active fires a revocation, concurrent and subsequent reports
+ * are suppressed until the user authenticates successfully again or the state is reset. The detector remembers a
+ * bounded number of inactive accounts, forgetting the least recently reported ones, in which case a later report
+ * revokes the tokens of the account again.
+ */
+public class AccountStateTransitionDetector {
+
+    private static final Log log = LogFactory.getLog(AccountStateTransitionDetector.class);
+
+    private static final String WORKER_COUNT = "OAuth.AccountStateRevocation.WorkerCount";
+    private static final String QUEUE_SIZE = "OAuth.AccountStateRevocation.QueueSize";
+    private static final String MAX_TRACKED_ACCOUNTS = "OAuth.AccountStateRevocation.MaxTrackedAccounts";
+
+    private static final int DEFAULT_WORKER_COUNT = 1;
+    private static final int DEFAULT_QUEUE_SIZE = 1000;
+    private static final int DEFAULT_MAX_TRACKED_ACCOUNTS = 10000;
+
+    private final Map<String, String> inactiveAccounts;
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong transitionCount = new AtomicLong();
+    private final AtomicLong suppressedCount = new AtomicLong();
+    private final AtomicLong synchronousRevocationCount = new AtomicLong();
+    private final AtomicLong failedRevocationCount = new AtomicLong();
+
+    public AccountStateTransitionDetector() {
+
+        final int maxTrackedAccounts = OAuth2Util.getIntProperty(MAX_TRACKED_ACCOUNTS, DEFAULT_MAX_TRACKED_ACCOUNTS, 1,
+                Integer.MAX_VALUE);
+        this.inactiveAccounts = Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxTrackedAccounts;
+            }
+        });
+        int workerCount = OAuth2Util.getIntProperty(WORKER_COUNT, DEFAULT_WORKER_COUNT, 1, Integer.MAX_VALUE);
+        int queueSize = OAuth2Util.getIntProperty(QUEUE_SIZE, DEFAULT_QUEUE_SIZE, 1, Integer.MAX_VALUE);
+        this.executor = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize));
+    }
+
+    /**
+     * Report the state of an account which failed authentication as locked or disabled.
+     *
+     * @param accountKey unique key of the account, across user stores and tenants.
+     * @param state      reported account state.
+     * @return true if the account was active until now, in which case the caller revokes its tokens.
+     */
+    public boolean onInactiveState(String accountKey, String state) {
+
+        String previousState;
+        synchronized (inactiveAccounts) {
+            previousState = inactiveAccounts.get(accountKey);
+            if (previousState == null) {
+                inactiveAccounts.put(accountKey, state);
+            }
+        }
+        if (previousState != null) {
+            suppressedCount.incrementAndGet();
+            return false;
+        }
+        transitionCount.incrementAndGet();
+        if (log.isDebugEnabled()) {
+            log.debug("Account : " + accountKey + " transitioned from active to " + state);
+        }
+        return true;
+    }
+
+    /**
+     * Report an account as active again, so that the next lock or disable revokes its tokens.
+     *
+     * @param accountKey unique key of the account, across user stores and tenants.
+     */
+    public void onActiveState(String accountKey) {
+        inactiveAccounts.remove(accountKey);
+    }
+
+    /**
+     * Run the revocation of a transition in the background. The revocation runs on the calling thread if the
+     * background queue is full, and the transition is forgotten if it fails, so that the next report retries it.
+     *
+     * @param accountKey unique key of the account the revocation belongs to.
+     * @param revocation revocation of the tokens of the account, which throws a runtime exception if it fails.
+     */
+    public void revoke(final String accountKey, final Runnable revocation) {
+
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    revocation.run();
+                } catch (RuntimeException e) {
+                    failedRevocationCount.incrementAndGet();
+                    onActiveState(accountKey);
+                    log.error("Error occurred while revoking the tokens of account : " + accountKey, e);
+                }
+            }
+        };
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            synchronousRevocationCount.incrementAndGet();
+            if (log.isDebugEnabled()) {
+                log.debug("Account state revocation queue is full. Revoking the tokens of account : " + accountKey +
+                        " synchronously");
+            }
+            task.run();
+        }
+    }
+
+    /**
+     * Stop the background revocations. Queued revocations are still run.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Returns the number of active to inactive transitions detected, i.e. the number of revocations fired.
+     *
+     * @return number of detected transitions.
+     */
+    public long getTransitionCount() {
+        return transitionCount.get();
+    }
+
+    /**
+     * Returns the number of inactive state reports which did not fire a revocation since the tokens of the account
+     * were already revoked.
+     *
+     * @return number of suppressed reports.
+     */
+    public long getSuppressedCount() {
+        return suppressedCount.get();
+    }
+
+    public long getSynchronousRevocationCount() {
+        return synchronousRevocationCount.get();
+    }
+
+    public long getFailedRevocationCount() {
+        return failedRevocationCount.get();
+    }
+
+    public int getPendingRevocationCount() {
+        return executor.getQueue().size();
+    }
+
+    public int getTrackedAccountCount() {
+        return inactiveAccounts.size();
+    }
+}
@@ -35,9 +35,12 @@ import org.wso2.carbon.identity.oauth.util.ClaimCacheKey;
 import org.wso2.carbon.identity.oauth.util.ClaimMetaDataCache;
 import org.wso2.carbon.identity.oauth.util.ClaimMetaDataCacheEntry;
 import org.wso2.carbon.identity.oauth.util.ClaimMetaDataCacheKey;
+import org.wso2.carbon.identity.oauth.util.UserClaimResolutionCache;
 import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
 import org.wso2.carbon.identity.oauth2.dao.TokenMgtDAO;
 import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
+import org.wso2.carbon.identity.oauth2.revocation.RevocationJob;
+import org.wso2.carbon.identity.oauth2.revocation.RevocationJobManager;
 import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
 import org.wso2.carbon.user.core.UserCoreConstants;
 import org.wso2.carbon.user.core.UserStoreException;
@@ -55,6 +58,8 @@ import java.util.Set;
 public class IdentityOathEventListener extends AbstractIdentityUserOperationEventListener {
     private static final Log log = LogFactory.getLog(IdentityOathEventListener.class);
 
+    private final AccountStateTransitionDetector accountStateDetector = new AccountStateTransitionDetector();
+
     /**
      * Bundle execution order id.
      */
@@ -80,6 +85,7 @@ public class IdentityOathEventListener extends AbstractIdentityUserOperationEven
         }
 
         removeClaimCacheEntry(username, userStoreManager);
+        removeResolvedUserClaims(username, userStoreManager);
 
         return revokeTokens(username, userStoreManager);
 
@@ -89,6 +95,7 @@ public class IdentityOathEventListener extends AbstractIdentityUserOperationEven
     public boolean doPreSetUserClaimValue(String userName, String claimURI, String claimValue, String profileName,
                                           UserStoreManager userStoreManager) throws UserStoreException {
         removeTokensFromCache(userName, userStoreManager);
+        removeResolvedUserClaims(userName, userStoreManager);
         return true;
     }
 
@@ -96,6 +103,7 @@ public class IdentityOathEventListener extends AbstractIdentityUserOperationEven
     public boolean doPreSetUserClaimValues(String userName, Map<String, String> claims, String profileName,
                                            UserStoreManager userStoreManager) throws UserStoreException {
         removeTokensFromCache(userName, userStoreManager);
+        removeResolvedUserClaims(userName, userStoreManager);
         return true;
     }
 
@@ -104,7 +112,7 @@ public class IdentityOathEventListener extends AbstractIdentityUserOperationEven
         if (!isEnable()) {
             return true;
         }
-        return revokeTokensOfLockedUser(userName, userStoreManager) && revokeTokensOfDisabledUser(userName, userStoreManager)
+        return revokeTokensOfInactiveUser(userName, userStoreManager)
                 && removeUserClaimsFromCache(userName, userStoreManager);
     }
 
@@ -115,7 +123,7 @@ public class IdentityOathEventListener extends AbstractIdentityUserOperationEven
         if (!isEnable()) {
             return true;
         }
-        return revokeTokensOfLockedUser(userName, userStoreManager) && revokeTokensOfDisabledUser(userName, userStoreManager)
+        return revokeTokensOfInactiveUser(userName, userStoreManager)
                 && removeUserClaimsFromCache(userName, userStoreManager);
     }
 
@@ -126,7 +134,35 @@ public class IdentityOathEventListener extends AbstractIdentityUserOperationEven
         if (!isEnable()) {
             return true;
         }
-        return revokeTokensOfLockedUser(userName, userStoreManager) && revokeTokensOfDisabledUser(userName, userStoreManager);
+
+        String accountState = getAccountState();
+        String accountKey = getAccountKey(userName, userStoreManager);
+        if (!isInactiveAccountState(accountState)) {
+            if (authenticated) {
+                accountStateDetector.onActiveState(accountKey);
+            }
+            return true;
+        }
+        // Revoke once per transition to locked or disabled and keep the revocation off the authentication call.
+        if (accountStateDetector.onInactiveState(accountKey, accountState)) {
+            final String user = userName;
+            final UserStoreManager manager = userStoreManager;
+            accountStateDetector.revoke(accountKey, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        revokeTokensOfUser(user, manager);
+                    } catch (UserStoreException e) {
+                        throw new IllegalStateException("Error occurred while resolving the user store of user : " +
+                                user, e);
+                    } catch (IdentityOAuth2Exception e) {
+                        throw new IllegalStateException("Error occurred while revoking access tokens issued for " +
+                                "user : " + user, e);
+                    }
+                }
+            });
+        }
+        return true;
     }
 
     @Override
@@ -147,27 +183,73 @@ public class IdentityOathEventListener extends AbstractIdentityUserOperationEven
         return revokeTokens(userName, userStoreManager);
     }
 
-    private boolean revokeTokensOfLockedUser(String userName, UserStoreManager userStoreManager) throws UserStoreException {
+    /**
+     * Stop the background revocations of locked and disabled users.
+     */
+    public void shutdown() {
+        accountStateDetector.shutdown();
+    }
+
+    public AccountStateTransitionDetector getAccountStateDetector() {
+        return accountStateDetector;
+    }
 
-        String errorCode = (String) IdentityUtil.threadLocalProperties.get().get(IdentityCoreConstants.USER_ACCOUNT_STATE);
+    private boolean revokeTokensOfInactiveUser(String userName, UserStoreManager userStoreManager)
+            throws UserStoreException {
 
-        if (errorCode != null && (errorCode.equalsIgnoreCase(UserCoreConstants.ErrorCode.USER_IS_LOCKED))) {
-            return revokeTokens(userName, userStoreManager);
+        String accountState = getAccountState();
+        String accountKey = getAccountKey(userName, userStoreManager);
+        if (!isInactiveAccountState(accountState)) {
+            // e.g. unlocked by the admin, the next lock has to revoke again
+            accountStateDetector.onActiveState(accountKey);
+            return true;
+        }
+        accountStateDetector.onInactiveState(accountKey, accountState);
+        try {
+            revokeTokensOfUser(userName, userStoreManager);
+        } catch (IdentityOAuth2Exception e) {
+            // Forget the transition, so that the next report of the account state retries the revocation.
+            accountStateDetector.onActiveState(accountKey);
+            log.error("Error occurred while revoking access tokens issued for user : " + userName, e);
         }
         return true;
     }
 
-    private boolean revokeTokensOfDisabledUser(String userName, UserStoreManager userStoreManager) throws UserStoreException {
+    private String getAccountState() {
+        return (String) IdentityUtil.threadLocalProperties.get().get(IdentityCoreConstants.USER_ACCOUNT_STATE);
+    }
+
+    private boolean isInactiveAccountState(String accountState) {
+        return accountState != null && (accountState.equalsIgnoreCase(UserCoreConstants.ErrorCode.USER_IS_LOCKED) ||
+                accountState.equalsIgnoreCase(IdentityCoreConstants.USER_ACCOUNT_DISABLED_ERROR_CODE));
+    }
+
+    private String getAccountKey(String userName, UserStoreManager userStoreManager) throws UserStoreException {
+        return UserCoreUtil.addDomainToName(userName, UserCoreUtil.getDomainName(
+                userStoreManager.getRealmConfiguration())) + "@" + userStoreManager.getTenantId();
+    }
 
-        String errorCode = (String) IdentityUtil.threadLocalProperties.get().get(IdentityCoreConstants.USER_ACCOUNT_STATE);
+    private boolean revokeTokens(String username, UserStoreManager userStoreManager) throws UserStoreException {
 
-        if (errorCode != null && errorCode.equalsIgnoreCase(IdentityCoreConstants.USER_ACCOUNT_DISABLED_ERROR_CODE)) {
-            return revokeTokens(userName, userStoreManager);
+        try {
+            revokeTokensOfUser(username, userStoreManager);
+        } catch (IdentityOAuth2Exception e) {
+            log.error("Error occurred while revoking access tokens issued for user : " + username, e);
         }
         return true;
     }
 
-    private boolean revokeTokens(String username, UserStoreManager userStoreManager) throws UserStoreException {
+    /**
+     * Revoke the access tokens of the user, or submit their revocation when asynchronous revocation is enabled.
+     *
+     * @param username         user name.
+     * @param userStoreManager user store manager of the user.
+     * @throws UserStoreException      if the user store of the user cannot be resolved.
+     * @throws IdentityOAuth2Exception if the tokens could not be revoked.
+     */
+    private void revokeTokensOfUser(String username, UserStoreManager userStoreManager)
+            throws UserStoreException, IdentityOAuth2Exception {
+
         TokenMgtDAO tokenMgtDAO = new TokenMgtDAO();
 
         String userStoreDomain = UserCoreUtil.getDomainName(userStoreManager.getRealmConfiguration());
@@ -177,71 +259,35 @@ public class IdentityOathEventListener extends AbstractIdentityUserOperationEven
         authenticatedUser.setTenantDomain(tenantDomain);
         authenticatedUser.setUserName(username);
 
-        /* This userStoreDomain variable is used for access token table partitioning. So it is set to null when access
-        token table partitioning is not enabled.*/
-        userStoreDomain = null;
-        if (OAuth2Util.checkAccessTokenPartitioningEnabled() && OAuth2Util.checkUserNameAssertionEnabled()) {
+        RevocationJobManager revocationJobManager = RevocationJobManager.getInstance();
+        if (revocationJobManager.isEnabled()) {
             try {
-                userStoreDomain = OAuth2Util.getUserStoreDomainFromUserId(authenticatedUser.toString());
+                // tokens are rejected from now on and revoked in the background
+                revocationJobManager.submit(RevocationJob.forUser(userStoreManager.getTenantId(), userStoreDomain,
+                        username));
+                return;
             } catch (IdentityOAuth2Exception e) {
-                log.error("Error occurred while getting user store domain for User ID : " + authenticatedUser, e);
-                return true;
+                log.error("Error occurred while submitting the revocation of access tokens issued for User ID : " +
+                        authenticatedUser + ". Revoking them synchronously", e);
             }
         }
 
-        Set<String> clientIds = null;
-        try {
-            // get all the distinct client Ids authorized by this user
-            clientIds = tokenMgtDAO.getAllTimeAuthorizedClientIds(authenticatedUser);
-        } catch (IdentityOAuth2Exception e) {
-            log.error("Error occurred while retrieving apps authorized by User ID : " + authenticatedUser, e);
-            return true;
+        /* This userStoreDomain variable is used for access token table partitioning. So it is set to null when access
+        token table partitioning is not enabled.*/
+        userStoreDomain = null;
+        if (OAuth2Util.checkAccessTokenPartitioningEnabled() && OAuth2Util.checkUserNameAssertionEnabled()) {
+            userStoreDomain = OAuth2Util.getUserStoreDomainFromUserId(authenticatedUser.toString());
         }
-        for (String clientId : clientIds) {
-            Set<AccessTokenDO> accessTokenDOs = null;
-            try {
-                // retrieve all ACTIVE or EXPIRED access tokens for particular client authorized by this user
-                accessTokenDOs = tokenMgtDAO.retrieveAccessTokens(clientId, authenticatedUser, userStoreDomain, true);
-            } catch (IdentityOAuth2Exception e) {
-                String errorMsg = "Error occurred while retrieving access tokens issued for " +
-                        "Client ID : " + clientId + ", User ID : " + authenticatedUser;
-                log.error(errorMsg, e);
-                return true;
-            }
-            for (AccessTokenDO accessTokenDO : accessTokenDOs) {
-                //Clear cache
-                OAuthUtil.clearOAuthCache(accessTokenDO.getConsumerKey(), accessTokenDO.getAuthzUser(),
-                        OAuth2Util.buildScopeString(accessTokenDO.getScope()));
-                OAuthUtil.clearOAuthCache(accessTokenDO.getConsumerKey(), accessTokenDO.getAuthzUser());
-                OAuthUtil.clearOAuthCache(accessTokenDO.getAccessToken());
-                AccessTokenDO scopedToken = null;
-                try {
-                    // retrieve latest access token for particular client, user and scope combination if its ACTIVE or EXPIRED
-                    scopedToken = tokenMgtDAO.retrieveLatestAccessToken(
-                            clientId, authenticatedUser, userStoreDomain,
-                            OAuth2Util.buildScopeString(accessTokenDO.getScope()), true);
-                } catch (IdentityOAuth2Exception e) {
-                    String errorMsg = "Error occurred while retrieving latest " +
-                            "access token issued for Client ID : " +
-                            clientId + ", User ID : " + authenticatedUser + " and Scope : " +
-                            OAuth2Util.buildScopeString(accessTokenDO.getScope());
-                    log.error(errorMsg, e);
-                    return true;
-                }
-                if (scopedToken != null) {
-                    try {
-                        //Revoking token from database
-                        tokenMgtDAO.revokeTokens(new String[]{scopedToken.getAccessToken()});
-                    } catch (IdentityOAuth2Exception e) {
-                        String errorMsg = "Error occurred while revoking " +
-                                "Access Token : " + scopedToken.getAccessToken();
-                        log.error(errorMsg, e);
-                        return true;
-                    }
-                }
-            }
+
+        // revoke all ACTIVE or EXPIRED access tokens of this user in one transaction
+        Set<AccessTokenDO> revokedTokens = tokenMgtDAO.revokeAccessTokensOfUser(authenticatedUser, userStoreDomain);
+        for (AccessTokenDO accessTokenDO : revokedTokens) {
+            //Clear cache
+            OAuthUtil.clearOAuthCache(accessTokenDO.getConsumerKey(), accessTokenDO.getAuthzUser(),
+                    OAuth2Util.buildScopeString(accessTokenDO.getScope()));
+            OAuthUtil.clearOAuthCache(accessTokenDO.getConsumerKey(), accessTokenDO.getAuthzUser());
+            OAuthUtil.clearOAuthCache(accessTokenDO.getAccessToken());
         }
-        return true;
     }
 
     private void removeTokensFromCache(String userName, UserStoreManager userStoreManager) throws
@@ -291,6 +337,7 @@ public class IdentityOathEventListener extends AbstractIdentityUserOperationEven
      * @param userName
      */
     private boolean removeUserClaimsFromCache(String userName, UserStoreManager userStoreManager) throws UserStoreException {
+        removeResolvedUserClaims(userName, userStoreManager);
         ClaimCache claimCache = ClaimCache.getInstance();
         AuthenticatedUser authenticatedUser = new AuthenticatedUser();
         authenticatedUser.setUserName(userName);
@@ -303,6 +350,19 @@ public class IdentityOathEventListener extends AbstractIdentityUserOperationEven
         return true;
     }
 
+    /**
+     * Remove the claims of the user resolved from the user store for tokens and userinfo responses.
+     *
+     * @param userName
+     * @param userStoreManager
+     */
+    private void removeResolvedUserClaims(String userName, UserStoreManager userStoreManager)
+            throws UserStoreException {
+
+        UserClaimResolutionCache.getInstance().invalidate(UserCoreUtil.addDomainToName(userName,
+                UserCoreUtil.getDomainName(userStoreManager.getRealmConfiguration())), userStoreManager.getTenantId());
+    }
+
     /**
      * Remove ClaimCache Entry if available.
      *
@@ -21,6 +21,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.identity.application.common.listener.AbstractCacheListener;
 import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.oauth.cache.AccessTokenValidationNearCache;
 import org.wso2.carbon.identity.oauth.cache.CacheEntry;
 import org.wso2.carbon.identity.oauth.cache.OAuthCache;
 import org.wso2.carbon.identity.oauth.cache.OAuthCacheKey;
@@ -71,6 +72,7 @@ public class OAuthCacheRemoveListener extends AbstractCacheListener<OAuthCacheKe
             oauthcacheKey = new OAuthCacheKey(accessTokenDO.getAccessToken());
 
             oauthCache.clearCacheEntry(oauthcacheKey);
+            AccessTokenValidationNearCache.getInstance().clearCacheEntry(accessTokenDO.getAccessToken());
 
         }
     }
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.oauth.tokenprocessor;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * An implementation of <Code>TokenPersistenceProcessor</Code> which stores a salted hash of the client secret
+ * instead of the secret itself. Other keys and tokens are stored in plain text.
+ * <p>
+ * The hash algorithm is set with OAuth.ClientSecretHashing.Algorithm. SHA-256 (the default) is sufficient for the
+ * high entropy secrets generated by the server. PBKDF2WithHmacSHA256, with OAuth.ClientSecretHashing.Iterations
+ * iterations, can be used when secrets may be chosen by users. Hashed secrets are stored as
+ * {algorithm}iterations$salt$hash, so that the algorithm and iterations can be changed without invalidating the
+ * existing secrets.
+ * <p>
+ * As a hashed secret cannot be recovered, {@link #getPreprocessedClientSecret(String)} returns the stored hash.
+ * Client secrets must be verified with {@link #isValidClientSecret(String, String)}. This processor cannot be used
+ * with OAuth 1.0a applications or HMAC signed tokens, both of which need the secret itself.
+ */
+public class HashingPersistenceProcessor extends PlainTextPersistenceProcessor {
+
+    private static final Log log = LogFactory.getLog(HashingPersistenceProcessor.class);
+
+    private static final String HASH_ALGORITHM = "OAuth.ClientSecretHashing.Algorithm";
+    private static final String HASH_ITERATIONS = "OAuth.ClientSecretHashing.Iterations";
+
+    private static final String SHA_256 = "SHA-256";
+    private static final String PBKDF2_WITH_HMAC_SHA256 = "PBKDF2WithHmacSHA256";
+    private static final int DEFAULT_PBKDF2_ITERATIONS = 10000;
+    private static final int SALT_LENGTH = 16;
+    private static final int PBKDF2_KEY_LENGTH = 256;
+    private static final String SEPARATOR = "$";
+
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final String algorithm;
+    private final int iterations;
+
+    public HashingPersistenceProcessor() {
+
+        String configuredAlgorithm = StringUtils.trimToNull(IdentityUtil.getProperty(HASH_ALGORITHM));
+        if (configuredAlgorithm == null || SHA_256.equalsIgnoreCase(configuredAlgorithm)) {
+            algorithm = SHA_256;
+        } else if (PBKDF2_WITH_HMAC_SHA256.equalsIgnoreCase(configuredAlgorithm)) {
+            algorithm = PBKDF2_WITH_HMAC_SHA256;
+        } else {
+            log.warn("Unsupported client secret hash algorithm : " + configuredAlgorithm + ". Using " + SHA_256);
+            algorithm = SHA_256;
+        }
+
+        iterations = SHA_256.equals(algorithm) ? 1 : OAuth2Util.getIntProperty(HASH_ITERATIONS,
+                DEFAULT_PBKDF2_ITERATIONS, 1, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public String getProcessedClientSecret(String clientSecret) throws IdentityOAuth2Exception {
+
+        if (clientSecret == null || isHashedClientSecret(clientSecret)) {
+            // Already hashed, e.g. when an application read from the database is updated.
+            return clientSecret;
+        }
+        byte[] salt = new byte[SALT_LENGTH];
+        secureRandom.nextBytes(salt);
+        byte[] hash = hash(algorithm, iterations, salt, clientSecret);
+        return "{" + algorithm + "}" + iterations + SEPARATOR + encode(salt) + SEPARATOR + encode(hash);
+    }
+
+    @Override
+    public String getPreprocessedClientSecret(String processedClientSecret) throws IdentityOAuth2Exception {
+        return processedClientSecret;
+    }
+
+    /**
+     * Verifies a client secret against the stored value in constant time. Secrets stored before this processor was
+     * enabled are compared with the plain text value.
+     *
+     * @param clientSecret          client secret provided by the client.
+     * @param processedClientSecret client secret as stored in the database.
+     * @return true if the client secret matches.
+     * @throws IdentityOAuth2Exception if the stored hash cannot be computed.
+     */
+    public boolean isValidClientSecret(String clientSecret, String processedClientSecret)
+            throws IdentityOAuth2Exception {
+
+        if (clientSecret == null || processedClientSecret == null) {
+            return false;
+        }
+        if (!isHashedClientSecret(processedClientSecret)) {
+            return MessageDigest.isEqual(clientSecret.getBytes(StandardCharsets.UTF_8),
+                    processedClientSecret.getBytes(StandardCharsets.UTF_8));
+        }
+
+        int algorithmEnd = processedClientSecret.indexOf('}');
+        String storedAlgorithm = processedClientSecret.substring(1, algorithmEnd);
+        String[] parts = StringUtils.split(processedClientSecret.substring(algorithmEnd + 1), SEPARATOR);
+        int storedIterations;
+        try {
+            storedIterations = Integer.parseInt(parts[0]);
+        } catch (NumberFormatException e) {
+            throw new IdentityOAuth2Exception("Invalid hashed client secret", e);
+        }
+        byte[] hash = hash(storedAlgorithm, storedIterations, Base64.decodeBase64(parts[1]), clientSecret);
+        return MessageDigest.isEqual(hash, Base64.decodeBase64(parts[2]));
+    }
+
+    private boolean isHashedClientSecret(String value) {
+
+        if (!value.startsWith("{" + SHA_256 + "}") && !value.startsWith("{" + PBKDF2_WITH_HMAC_SHA256 + "}")) {
+            return false;
+        }
+        return StringUtils.countMatches(value, SEPARATOR) == 2;
+    }
+
+    private static String encode(byte[] value) {
+        return new String(Base64.encodeBase64(value), StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] hash(String algorithm, int iterations, byte[] salt, String clientSecret)
+            throws IdentityOAuth2Exception {
+
+        try {
+            if (PBKDF2_WITH_HMAC_SHA256.equals(algorithm)) {
+                PBEKeySpec keySpec = new PBEKeySpec(clientSecret.toCharArray(), salt, iterations, PBKDF2_KEY_LENGTH);
+                try {
+                    return SecretKeyFactory.getInstance(PBKDF2_WITH_HMAC_SHA256).generateSecret(keySpec).getEncoded();
+                } finally {
+                    keySpec.clearPassword();
+                }
+            }
+            MessageDigest messageDigest = MessageDigest.getInstance(SHA_256);
+            messageDigest.update(salt);
+            return messageDigest.digest(clientSecret.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IdentityOAuth2Exception("Error while hashing the client secret with " + algorithm, e);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth.util;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.application.authentication.framework.util.FrameworkConstants;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.oauth.cache.UserClaimResolutionCacheEntry;
+import org.wso2.carbon.identity.oauth.cache.UserClaimResolutionClusterCache;
+import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
+import org.wso2.carbon.user.api.UserStoreException;
+import org.wso2.carbon.user.api.UserStoreManager;
+import org.wso2.carbon.user.core.UserCoreConstants;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local claim values of users resolved from the user store, shared by the ID token, the userinfo response and the
+ * authorization context JWT so that the claims of a login are read from the user store once instead of once per
+ * token.
+ * <p>
+ * Values are kept per user of a tenant for the default profile of the local claim dialect, together with the set of
+ * claim URIs they were resolved for, so that a request for claims already resolved is served from memory and a
+ * request for more claims only reads the missing ones. Values are held in the clustered
+ * {@link UserClaimResolutionClusterCache}. An entry lives for the configured timeout, which never exceeds the user
+ * access token validity period, and is dropped on every node of the cluster when the claims of the user are updated
+ * or the user is deleted. A read racing with such an invalidation on this node is not cached.
+ * <p>
+ * The role claim is always read from the user store. Roles change through role assignments rather than claim
+ * updates, on any node, and a stale role would grant access the user no longer has.
+ */
+public class UserClaimResolutionCache {
+
+    private static final Log log = LogFactory.getLog(UserClaimResolutionCache.class);
+
+    private static final String ENABLE = "OAuth.UserClaimCache.Enable";
+    private static final String TIMEOUT = "OAuth.UserClaimCache.Timeout";
+    private static final long DEFAULT_TIMEOUT = 300;
+
+    private static volatile UserClaimResolutionCache instance;
+
+    private final UserClaimResolutionClusterCache entries = UserClaimResolutionClusterCache.getInstance();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final boolean enabled;
+    private final long timeoutMillis;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    private UserClaimResolutionCache() {
+
+        String enable = IdentityUtil.getProperty(ENABLE);
+        enabled = StringUtils.isBlank(enable) || Boolean.parseBoolean(enable);
+        long timeout = OAuth2Util.getLongProperty(TIMEOUT, DEFAULT_TIMEOUT, 0, Long.MAX_VALUE);
+        long tokenValidityPeriod = OAuthServerConfiguration.getInstance().getUserAccessTokenValidityPeriodInSeconds();
+        if (tokenValidityPeriod > 0) {
+            timeout = Math.min(timeout, tokenValidityPeriod);
+        }
+        timeoutMillis = TimeUnit.SECONDS.toMillis(timeout);
+    }
+
+    public static UserClaimResolutionCache getInstance() {
+        if (instance == null) {
+            synchronized (UserClaimResolutionCache.class) {
+                if (instance == null) {
+                    instance = new UserClaimResolutionCache();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the values of local claims of a user, reading only the claims not resolved yet from the user store.
+     * The returned map is a copy which the caller may modify.
+     *
+     * @param userStoreManager user store manager of the tenant of the user.
+     * @param userName         tenant aware user name, qualified with the user store domain if not in the primary
+     *                         user store.
+     * @param claimURIs        local claim URIs to resolve.
+     * @return values of the claims the user has a value for.
+     * @throws UserStoreException Error when reading the claims from the user store.
+     */
+    public Map<String, String> getUserClaimValues(UserStoreManager userStoreManager, String userName,
+                                                  String[] claimURIs) throws UserStoreException {
+
+        if (!enabled || timeoutMillis == 0 || !entries.isEnabled() || userName == null || claimURIs == null) {
+            return userStoreManager.getUserClaimValues(userName, claimURIs, null);
+        }
+
+        String userKey = getUserKey(userName, userStoreManager.getTenantId());
+        long now = System.currentTimeMillis();
+        UserClaimResolutionCacheEntry resolvedClaims = entries.getValueFromCache(userKey);
+        if (resolvedClaims != null && resolvedClaims.getExpiryTime() <= now) {
+            // Overwritten by the values read below.
+            resolvedClaims = null;
+        }
+
+        Set<String> missingClaims = new HashSet<>();
+        for (String claimURI : claimURIs) {
+            if (FrameworkConstants.LOCAL_ROLE_CLAIM_URI.equals(claimURI) || resolvedClaims == null ||
+                    !resolvedClaims.isResolved(claimURI)) {
+                missingClaims.add(claimURI);
+            }
+        }
+        if (missingClaims.isEmpty()) {
+            hitCount.incrementAndGet();
+            return resolvedClaims.getValues(claimURIs);
+        }
+
+        missCount.incrementAndGet();
+        long invalidationCount = invalidations.get();
+        Map<String, String> values = userStoreManager.getUserClaimValues(userName,
+                missingClaims.toArray(new String[missingClaims.size()]), null);
+        Set<String> cacheableClaims = new HashSet<>(missingClaims);
+        cacheableClaims.remove(FrameworkConstants.LOCAL_ROLE_CLAIM_URI);
+        UserClaimResolutionCacheEntry updatedClaims = new UserClaimResolutionCacheEntry(resolvedClaims,
+                cacheableClaims, values, resolvedClaims == null ? now + timeoutMillis : resolvedClaims.getExpiryTime());
+        if (!cacheableClaims.isEmpty()) {
+            cache(userKey, updatedClaims, invalidationCount);
+        }
+        Map<String, String> requestedValues = updatedClaims.getValues(claimURIs);
+        if (values != null && missingClaims.contains(FrameworkConstants.LOCAL_ROLE_CLAIM_URI) &&
+                values.get(FrameworkConstants.LOCAL_ROLE_CLAIM_URI) != null) {
+            requestedValues.put(FrameworkConstants.LOCAL_ROLE_CLAIM_URI,
+                    values.get(FrameworkConstants.LOCAL_ROLE_CLAIM_URI));
+        }
+        return requestedValues;
+    }
+
+    /**
+     * Drop the resolved claims of a user on this node and the peers of the cluster after the claims of the user
+     * were updated or the user was deleted.
+     *
+     * @param userName user name, qualified with the user store domain if not in the primary user store.
+     * @param tenantId tenant id of the user.
+     */
+    public void invalidate(String userName, int tenantId) {
+
+        if (userName == null) {
+            return;
+        }
+        invalidations.incrementAndGet();
+        entries.clearCacheEntry(getUserKey(userName, tenantId));
+        if (log.isDebugEnabled()) {
+            log.debug("Invalidated resolved claims of user : " + userName + " of tenant : " + tenantId);
+        }
+    }
+
+    public void clear() {
+        invalidations.incrementAndGet();
+        entries.clear();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    private void cache(String userKey, UserClaimResolutionCacheEntry updatedClaims, long invalidationCount) {
+
+        if (invalidations.get() != invalidationCount) {
+            return;
+        }
+        entries.addToCache(userKey, updatedClaims);
+        // An invalidation between the check and the write must not leave the read values behind.
+        if (invalidations.get() != invalidationCount) {
+            entries.clearCacheEntry(userKey);
+        }
+    }
+
+    private static String getUserKey(String userName, int tenantId) {
+
+        int separatorIndex = userName.indexOf(UserCoreConstants.DOMAIN_SEPARATOR);
+        String domainQualifiedName;
+        if (separatorIndex > 0) {
+            domainQualifiedName = userName.substring(0, separatorIndex).toUpperCase() +
+                    userName.substring(separatorIndex);
+        } else {
+            domainQualifiedName = UserCoreConstants.PRIMARY_DEFAULT_DOMAIN_NAME + UserCoreConstants.DOMAIN_SEPARATOR
+                    + userName;
+        }
+        return domainQualifiedName + "@" + tenantId;
+    }
+}
@@ -33,7 +33,6 @@ import org.wso2.carbon.identity.oauth.common.OAuth2ErrorCodes;
 import org.wso2.carbon.identity.oauth.common.OAuthConstants;
 import org.wso2.carbon.identity.oauth.common.exception.InvalidOAuthClientException;
 import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
-import org.wso2.carbon.identity.oauth.dao.OAuthAppDAO;
 import org.wso2.carbon.identity.oauth.dao.OAuthAppDO;
 import org.wso2.carbon.identity.oauth.event.OAuthEventInterceptor;
 import org.wso2.carbon.identity.oauth.internal.OAuthComponentServiceHolder;
@@ -51,6 +50,8 @@ import org.wso2.carbon.identity.oauth2.dto.OAuthRevocationResponseDTO;
 import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
 import org.wso2.carbon.identity.oauth2.model.RefreshTokenValidationDataDO;
 import org.wso2.carbon.identity.oauth2.token.AccessTokenIssuer;
+import org.wso2.carbon.identity.oauth2.token.TokenIssuanceLockManager;
+import org.wso2.carbon.identity.oauth2.util.CallbackUriMatcher;
 import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
 import org.wso2.carbon.user.api.Claim;
 import org.wso2.carbon.user.core.UserStoreManager;
@@ -100,7 +101,11 @@ public class OAuth2Service extends AbstractAdmin {
             log.error("Error occurred when processing the authorization request. Returning an error back to client.",
                     e);
             OAuth2AuthorizeRespDTO authorizeRespDTO = new OAuth2AuthorizeRespDTO();
-            authorizeRespDTO.setErrorCode(OAuth2ErrorCodes.SERVER_ERROR);
+            if (TokenPersistenceOverflowException.isCausedByOverflow(e)) {
+                authorizeRespDTO.setErrorCode(OAuth2ErrorCodes.TEMPORARY_UNAVAILABLE);
+            } else {
+                authorizeRespDTO.setErrorCode(OAuth2ErrorCodes.SERVER_ERROR);
+            }
             authorizeRespDTO.setErrorMsg("Error occurred when processing the authorization " +
                     "request. Returning an error back to client.");
             authorizeRespDTO.setCallbackURI(oAuth2AuthorizeReqDTO.getCallbackUrl());
@@ -127,8 +132,7 @@ public class OAuth2Service extends AbstractAdmin {
         }
 
         try {
-            OAuthAppDAO oAuthAppDAO = new OAuthAppDAO();
-            OAuthAppDO appDO = oAuthAppDAO.getAppInformation(clientId);
+            OAuthAppDO appDO = OAuth2Util.getAppInformationByClientId(clientId);
 
             if (StringUtils.isEmpty(appDO.getGrantTypes()) || StringUtils.isEmpty(appDO.getCallbackUrl())) {
                 if (log.isDebugEnabled()) {
@@ -162,13 +166,10 @@ public class OAuth2Service extends AbstractAdmin {
             // Valid Client with a callback url in the request.
             // If application callback url is defined as a regexp check weather it matches the given url
             // Or else check weather they are equal
-            String regexp = null;
             String registeredCallbackUrl = appDO.getCallbackUrl();
-            if (registeredCallbackUrl.startsWith(OAuthConstants.CALLBACK_URL_REGEXP_PREFIX)) {
-                regexp = registeredCallbackUrl.substring(OAuthConstants.CALLBACK_URL_REGEXP_PREFIX.length());
-            }
+            boolean regexpCallback = registeredCallbackUrl.startsWith(OAuthConstants.CALLBACK_URL_REGEXP_PREFIX);
 
-            if (regexp != null && callbackURI.matches(regexp)) {
+            if (regexpCallback && CallbackUriMatcher.matches(clientId, registeredCallbackUrl, callbackURI)) {
                 validationResponseDTO.setValidClient(true);
                 validationResponseDTO.setApplicationName(appDO.getApplicationName());
                 validationResponseDTO.setCallbackURL(callbackURI);
@@ -243,6 +244,8 @@ public class OAuth2Service extends AbstractAdmin {
             if (e.getCause() != null && e.getCause().getCause() != null &&
                     e.getCause().getCause() instanceof SQLIntegrityConstraintViolationException) {
                 tokenRespDTO.setErrorCode("sql_error");
+            } else if (TokenPersistenceOverflowException.isCausedByOverflow(e)) {
+                tokenRespDTO.setErrorCode(OAuth2ErrorCodes.TEMPORARY_UNAVAILABLE);
             } else {
                 tokenRespDTO.setErrorCode(OAuth2ErrorCodes.SERVER_ERROR);
             }
@@ -380,8 +383,13 @@ public class OAuth2Service extends AbstractAdmin {
                         OAuthUtil.clearOAuthCache(revokeRequestDTO.getToken());
                         String scope = OAuth2Util.buildScopeString(accessTokenDO.getScope());
                         String authorizedUser = accessTokenDO.getAuthzUser().toString();
-                        synchronized ((revokeRequestDTO.getConsumerKey() + ":" + authorizedUser + ":" + scope).intern()) {
+                        TokenIssuanceLockManager.TokenIssuanceLock tokenIssuanceLock =
+                                OAuthServerConfiguration.getInstance().getTokenIssuanceLockManager()
+                                        .acquire(revokeRequestDTO.getConsumerKey(), authorizedUser, scope);
+                        try {
                             tokenMgtDAO.revokeTokens(new String[]{revokeRequestDTO.getToken()});
+                        } finally {
+                            tokenIssuanceLock.release();
                         }
                         addRevokeResponseHeaders(revokeResponseDTO,
                                 revokeRequestDTO.getToken(),
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2;
+
+/**
+ * Thrown when an access token or authorization code cannot be accepted for asynchronous persistence because the
+ * persistence queue is full and the configured overflow policy is to reject. Endpoints map this to a
+ * 'temporarily_unavailable' error with HTTP 503.
+ */
+public class TokenPersistenceOverflowException extends IdentityOAuth2Exception {
+
+    private static final long serialVersionUID = -2744981573489251097L;
+
+    public TokenPersistenceOverflowException(String message) {
+        super(message);
+    }
+
+    public TokenPersistenceOverflowException(String message, Throwable e) {
+        super(message, e);
+    }
+
+    /**
+     * Check whether the given exception was caused by a token persistence overflow.
+     *
+     * @param e exception to be checked.
+     * @return true if a {@link TokenPersistenceOverflowException} is in the cause chain.
+     */
+    public static boolean isCausedByOverflow(Throwable e) {
+
+        Throwable cause = e;
+        while (cause != null) {
+            if (cause instanceof TokenPersistenceOverflowException) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+            cause = cause.getCause();
+        }
+        return false;
+    }
+}
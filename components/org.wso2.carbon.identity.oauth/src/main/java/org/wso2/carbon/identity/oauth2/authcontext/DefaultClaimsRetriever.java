@@ -23,6 +23,7 @@ import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.base.MultitenantConstants;
 import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
 import org.wso2.carbon.identity.oauth.internal.OAuthComponentServiceHolder;
+import org.wso2.carbon.identity.oauth.util.UserClaimResolutionCache;
 import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
 import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
 import org.wso2.carbon.user.api.ClaimManager;
@@ -74,7 +75,8 @@ public class DefaultClaimsRetriever implements ClaimsRetriever {
             String tenantAwareUsername = MultitenantUtils.getTenantAwareUsername(endUserName);
             UserStoreManager userStoreManager = OAuthComponentServiceHolder.getInstance().getRealmService().
                     getTenantUserRealm(tenantId).getUserStoreManager();
-            claimValues = new TreeMap(userStoreManager.getUserClaimValues(tenantAwareUsername, requestedClaims, null));
+            claimValues = new TreeMap(UserClaimResolutionCache.getInstance().getUserClaimValues(userStoreManager,
+                    tenantAwareUsername, requestedClaims));
         } catch (UserStoreException e) {
             throw new IdentityOAuth2Exception("Error while reading claims for user : " + endUserName, e);
         }
@@ -42,7 +42,6 @@ import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
 import org.wso2.carbon.identity.core.util.IdentityUtil;
 import org.wso2.carbon.identity.oauth.common.exception.InvalidOAuthClientException;
 import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
-import org.wso2.carbon.identity.oauth.dao.OAuthAppDAO;
 import org.wso2.carbon.identity.oauth.dao.OAuthAppDO;
 import org.wso2.carbon.identity.oauth.internal.OAuthComponentServiceHolder;
 import org.wso2.carbon.identity.oauth.util.ClaimCache;
@@ -195,10 +194,9 @@ public class JWTTokenGenerator implements AuthorizationContextTokenGenerator {
             }
         }
 
-        OAuthAppDAO appDAO =  new OAuthAppDAO();
         OAuthAppDO appDO;
         try {
-            appDO = appDAO.getAppInformation(clientId);
+            appDO = OAuth2Util.getAppInformationByClientId(clientId);
             // Adding the OAuthAppDO as a context property for further use
             messageContext.addProperty("OAuthAppDO", appDO);
         } catch (IdentityOAuth2Exception e) {
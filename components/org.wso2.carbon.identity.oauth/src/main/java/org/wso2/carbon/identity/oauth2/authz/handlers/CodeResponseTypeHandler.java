@@ -21,12 +21,10 @@ package org.wso2.carbon.identity.oauth2.authz.handlers;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.oltu.oauth2.common.exception.OAuthSystemException;
-import org.wso2.carbon.identity.oauth.cache.AppInfoCache;
 import org.wso2.carbon.identity.oauth.cache.OAuthCacheKey;
 import org.wso2.carbon.identity.oauth.common.OAuthConstants;
 import org.wso2.carbon.identity.oauth.common.exception.InvalidOAuthClientException;
 import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
-import org.wso2.carbon.identity.oauth.dao.OAuthAppDAO;
 import org.wso2.carbon.identity.oauth.dao.OAuthAppDO;
 import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
 import org.wso2.carbon.identity.oauth2.authz.OAuthAuthzReqMessageContext;
@@ -42,25 +40,20 @@ import java.util.UUID;
 public class CodeResponseTypeHandler extends AbstractResponseTypeHandler {
 
     private static Log log = LogFactory.getLog(CodeResponseTypeHandler.class);
-    private AppInfoCache appInfoCache;
     @Override
     public OAuth2AuthorizeRespDTO issue(OAuthAuthzReqMessageContext oauthAuthzMsgCtx)
             throws IdentityOAuth2Exception {
         OAuth2AuthorizeRespDTO respDTO = new OAuth2AuthorizeRespDTO();
         String authorizationCode;
         String codeId;
-        appInfoCache = AppInfoCache.getInstance();
 
         OAuth2AuthorizeReqDTO authorizationReqDTO = oauthAuthzMsgCtx.getAuthorizationReqDTO();
 
-        OAuthAppDO oAuthAppDO = appInfoCache.getValueFromCache(authorizationReqDTO.getConsumerKey());
-        if (oAuthAppDO == null) {
-            try {
-                oAuthAppDO = new OAuthAppDAO().getAppInformation(authorizationReqDTO.getConsumerKey());
-            } catch (InvalidOAuthClientException e) {
-                throw new IdentityOAuth2Exception("Invalid consumer application. Failed to issue Grant token.", e);
-            }
-            appInfoCache.addToCache(oAuthAppDO.getOauthConsumerKey(), oAuthAppDO);
+        OAuthAppDO oAuthAppDO;
+        try {
+            oAuthAppDO = OAuth2Util.getAppInformationByClientId(authorizationReqDTO.getConsumerKey());
+        } catch (InvalidOAuthClientException e) {
+            throw new IdentityOAuth2Exception("Invalid consumer application. Failed to issue Grant token.", e);
         }
 
         Timestamp timestamp = new Timestamp(new Date().getTime());
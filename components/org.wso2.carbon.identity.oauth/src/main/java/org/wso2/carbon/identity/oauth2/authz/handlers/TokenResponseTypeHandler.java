@@ -44,6 +44,7 @@ import org.wso2.carbon.identity.oauth2.config.SpOAuth2ExpiryTimeConfiguration;
 import org.wso2.carbon.identity.oauth2.dto.OAuth2AuthorizeReqDTO;
 import org.wso2.carbon.identity.oauth2.dto.OAuth2AuthorizeRespDTO;
 import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
+import org.wso2.carbon.identity.oauth2.token.TokenIssuanceLockManager;
 import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
 import org.wso2.carbon.identity.openidconnect.IDTokenBuilder;
 
@@ -121,7 +122,9 @@ public class TokenResponseTypeHandler extends AbstractResponseTypeHandler {
 
         AccessTokenDO tokenDO = null;
 
-        synchronized ((consumerKey + ":" + authorizedUser + ":" + scope).intern()) {
+        TokenIssuanceLockManager.TokenIssuanceLock tokenIssuanceLock = OAuthServerConfiguration.getInstance()
+                .getTokenIssuanceLockManager().acquire(consumerKey, authorizedUser, scope);
+        try {
 
             // check if valid access token exists in cache
             if (cacheEnabled) {
@@ -422,6 +425,8 @@ public class TokenResponseTypeHandler extends AbstractResponseTypeHandler {
                 respDTO.setScope(newAccessTokenDO.getScope());
                 respDTO.setTokenType(newAccessTokenDO.getTokenType());
             }
+        } finally {
+            tokenIssuanceLock.release();
         }
 
         // we only need to deal with id_token and user attributes if the request is OIDC
@@ -36,9 +36,16 @@ public class AuthPersistenceTask implements Runnable {
 
     private static Log log = LogFactory.getLog(AuthPersistenceTask.class);
     private BlockingDeque<AuthContextTokenDO> authContextTokenQueue;
+    private TokenPersistenceStatistics statistics;
 
     public AuthPersistenceTask(BlockingDeque<AuthContextTokenDO> authContextTokenQueue) {
+        this(authContextTokenQueue, null);
+    }
+
+    public AuthPersistenceTask(BlockingDeque<AuthContextTokenDO> authContextTokenQueue,
+                               TokenPersistenceStatistics statistics) {
         this.authContextTokenQueue = authContextTokenQueue;
+        this.statistics = statistics;
     }
 
     @Override
@@ -77,6 +84,9 @@ public class AuthPersistenceTask implements Runnable {
                                 authContextTokenDO.getConsumerKey(), authContextTokenDO.getCallbackUrl(),
                                 authContextTokenDO.getAuthzCodeDO());
                     }
+                    if (statistics != null) {
+                        statistics.recordBatch(1, false);
+                    }
                 }
             } catch (InterruptedException | IdentityOAuth2Exception e) {
                 log.error("Error when executing AuthPersistenceTask", e);
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.dao;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.core.util.IdentityDatabaseUtil;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.revocation.RevocationJob;
+import org.wso2.carbon.identity.oauth2.revocation.RevocationScope;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Data Access Layer functionality for the revocation jobs kept in IDN_OAUTH2_REVOCATION_JOB. A job is leased to one
+ * node at a time, the lease is renewed while the job makes progress and a job whose lease expired can be claimed by
+ * any node.
+ */
+public class RevocationJobDAO {
+
+    private static final Log log = LogFactory.getLog(RevocationJobDAO.class);
+    private static final String UTC = "UTC";
+
+    /**
+     * Persist a new revocation job in the pending state.
+     *
+     * @param job revocation job with the job id and the revoked before time set. A lease expiry, if set, is the
+     *            earliest time the job is processed.
+     * @throws IdentityOAuth2Exception if the job could not be persisted.
+     */
+    public void addJob(RevocationJob job) throws IdentityOAuth2Exception {
+
+        if (log.isDebugEnabled()) {
+            log.debug("Persisting revocation job : " + job);
+        }
+        Connection connection = IdentityDatabaseUtil.getDBConnection();
+        PreparedStatement prepStmt = null;
+        try {
+            prepStmt = connection.prepareStatement(SQLQueries.INSERT_REVOCATION_JOB);
+            prepStmt.setString(1, job.getJobId());
+            prepStmt.setString(2, job.getScope().name());
+            prepStmt.setInt(3, job.getTenantId());
+            setNullableString(prepStmt, 4, job.getUserDomain());
+            setNullableString(prepStmt, 5, job.getAuthzUser());
+            setNullableString(prepStmt, 6, job.getConsumerKey());
+            prepStmt.setTimestamp(7, new Timestamp(job.getRevokedBefore()), getUTCCalendar());
+            prepStmt.setString(8, RevocationJob.STATE_PENDING);
+            if (job.getLeaseExpiry() > 0) {
+                prepStmt.setTimestamp(9, new Timestamp(job.getLeaseExpiry()), getUTCCalendar());
+            } else {
+                prepStmt.setNull(9, Types.TIMESTAMP);
+            }
+            prepStmt.setTimestamp(10, new Timestamp(job.getTimeCreated()), getUTCCalendar());
+            prepStmt.executeUpdate();
+            connection.commit();
+        } catch (SQLException e) {
+            IdentityDatabaseUtil.rollBack(connection);
+            throw new IdentityOAuth2Exception("Error occurred while persisting revocation job : " + job, e);
+        } finally {
+            IdentityDatabaseUtil.closeAllConnections(connection, null, prepStmt);
+        }
+    }
+
+    /**
+     * Retrieve the jobs which are not completed, including the failed ones whose tokens are still treated as revoked.
+     *
+     * @return open revocation jobs in the order of creation.
+     * @throws IdentityOAuth2Exception if the jobs could not be retrieved.
+     */
+    public List<RevocationJob> getOpenJobs() throws IdentityOAuth2Exception {
+
+        List<RevocationJob> jobs = new ArrayList<>();
+        Connection connection = IdentityDatabaseUtil.getDBConnection();
+        PreparedStatement prepStmt = null;
+        ResultSet resultSet = null;
+        try {
+            prepStmt = connection.prepareStatement(SQLQueries.RETRIEVE_OPEN_REVOCATION_JOBS);
+            resultSet = prepStmt.executeQuery();
+            while (resultSet.next()) {
+                RevocationJob job = new RevocationJob();
+                job.setJobId(resultSet.getString(1));
+                job.setScope(RevocationScope.valueOf(resultSet.getString(2)));
+                job.setTenantId(resultSet.getInt(3));
+                job.setUserDomain(resultSet.getString(4));
+                job.setAuthzUser(resultSet.getString(5));
+                job.setConsumerKey(resultSet.getString(6));
+                job.setRevokedBefore(getTime(resultSet, 7));
+                job.setState(resultSet.getString(8));
+                job.setAttempts(resultSet.getInt(9));
+                job.setProcessedCount(resultSet.getLong(10));
+                job.setLeaseExpiry(getTime(resultSet, 11));
+                job.setTimeCreated(getTime(resultSet, 12));
+                jobs.add(job);
+            }
+        } catch (SQLException e) {
+            throw new IdentityOAuth2Exception("Error occurred while retrieving open revocation jobs", e);
+        } finally {
+            IdentityDatabaseUtil.closeAllConnections(connection, resultSet, prepStmt);
+        }
+        return jobs;
+    }
+
+    /**
+     * Lease a pending job, or a running job whose lease expired, to the given node.
+     *
+     * @param jobId       job id.
+     * @param leaseOwner  id of the claiming node.
+     * @param leaseExpiry time in milliseconds until which the job is leased.
+     * @return true if the job was claimed.
+     * @throws IdentityOAuth2Exception if the job could not be updated.
+     */
+    public boolean claimJob(String jobId, String leaseOwner, long leaseExpiry) throws IdentityOAuth2Exception {
+
+        return update(SQLQueries.CLAIM_REVOCATION_JOB, "claiming", jobId, leaseOwner,
+                new Timestamp(leaseExpiry), jobId, new Timestamp(System.currentTimeMillis()));
+    }
+
+    /**
+     * Record the progress of a job and renew its lease.
+     *
+     * @return false if the job is no longer leased to the given node.
+     */
+    public boolean updateProgress(String jobId, String leaseOwner, long processedCount, long leaseExpiry)
+            throws IdentityOAuth2Exception {
+
+        return update(SQLQueries.UPDATE_REVOCATION_JOB_PROGRESS, "updating the progress of", jobId, processedCount,
+                new Timestamp(leaseExpiry), jobId, leaseOwner);
+    }
+
+    public boolean completeJob(String jobId, String leaseOwner, long processedCount) throws IdentityOAuth2Exception {
+
+        return update(SQLQueries.COMPLETE_REVOCATION_JOB, "completing", jobId, processedCount, jobId, leaseOwner);
+    }
+
+    /**
+     * Release a job after a failed attempt.
+     *
+     * @param state       {@link RevocationJob#STATE_PENDING} to retry the job not before the given time, or
+     *                    {@link RevocationJob#STATE_FAILED} to give up on it.
+     * @param nextAttempt time in milliseconds of the next attempt.
+     */
+    public boolean releaseFailedJob(String jobId, String leaseOwner, String state, long processedCount,
+                                    long nextAttempt) throws IdentityOAuth2Exception {
+
+        return update(SQLQueries.RELEASE_FAILED_REVOCATION_JOB, "releasing", jobId, state, processedCount,
+                new Timestamp(nextAttempt), jobId, leaseOwner);
+    }
+
+    /**
+     * Remove the completed jobs created before the given time.
+     *
+     * @param createdBefore time in milliseconds.
+     * @return number of removed jobs.
+     */
+    public int removeCompletedJobs(long createdBefore) throws IdentityOAuth2Exception {
+
+        Connection connection = IdentityDatabaseUtil.getDBConnection();
+        PreparedStatement prepStmt = null;
+        try {
+            prepStmt = connection.prepareStatement(SQLQueries.DELETE_COMPLETED_REVOCATION_JOBS);
+            prepStmt.setTimestamp(1, new Timestamp(createdBefore), getUTCCalendar());
+            int count = prepStmt.executeUpdate();
+            connection.commit();
+            return count;
+        } catch (SQLException e) {
+            IdentityDatabaseUtil.rollBack(connection);
+            throw new IdentityOAuth2Exception("Error occurred while removing completed revocation jobs", e);
+        } finally {
+            IdentityDatabaseUtil.closeAllConnections(connection, null, prepStmt);
+        }
+    }
+
+    private boolean update(String sql, String action, String jobId, Object... params) throws IdentityOAuth2Exception {
+
+        Connection connection = IdentityDatabaseUtil.getDBConnection();
+        PreparedStatement prepStmt = null;
+        try {
+            prepStmt = connection.prepareStatement(sql);
+            for (int i = 0; i < params.length; i++) {
+                Object param = params[i];
+                if (param instanceof Timestamp) {
+                    prepStmt.setTimestamp(i + 1, (Timestamp) param, getUTCCalendar());
+                } else if (param instanceof Long) {
+                    prepStmt.setLong(i + 1, (Long) param);
+                } else {
+                    prepStmt.setString(i + 1, (String) param);
+                }
+            }
+            int count = prepStmt.executeUpdate();
+            connection.commit();
+            return count > 0;
+        } catch (SQLException e) {
+            IdentityDatabaseUtil.rollBack(connection);
+            throw new IdentityOAuth2Exception("Error occurred while " + action + " revocation job : " + jobId, e);
+        } finally {
+            IdentityDatabaseUtil.closeAllConnections(connection, null, prepStmt);
+        }
+    }
+
+    private static void setNullableString(PreparedStatement ps, int index, String value) throws SQLException {
+
+        if (value == null) {
+            ps.setNull(index, Types.VARCHAR);
+        } else {
+            ps.setString(index, value);
+        }
+    }
+
+    private static long getTime(ResultSet resultSet, int index) throws SQLException {
+
+        Timestamp timestamp = resultSet.getTimestamp(index, getUTCCalendar());
+        return timestamp == null ? 0 : timestamp.getTime();
+    }
+
+    private static Calendar getUTCCalendar() {
+        return Calendar.getInstance(TimeZone.getTimeZone(UTC));
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.dao;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.core.util.IdentityDatabaseUtil;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.revocation.RevocationJob;
+import org.wso2.carbon.identity.oauth2.revocation.RevocationScope;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Data Access Layer functionality for the revoked before watermarks kept in IDN_OAUTH2_REVOKED_BEFORE. There is a
+ * single row per tenant, user store, user or client, holding the time before which its tokens are revoked. The time
+ * of a row only ever moves forward.
+ */
+public class RevokedBeforeWatermarkDAO {
+
+    private static final Log log = LogFactory.getLog(RevokedBeforeWatermarkDAO.class);
+    private static final String UTC = "UTC";
+    private static final String INTEGRITY_CONSTRAINT_VIOLATION_STATE_CLASS = "23";
+
+    /**
+     * Move the watermark of the scope of the revocation to its revoked before time, creating it if needed.
+     *
+     * @param watermarkKey key of the watermark.
+     * @param revocation   revocation of a user, user store, tenant or client.
+     * @throws IdentityOAuth2Exception if the watermark could not be persisted.
+     */
+    public void addWatermark(String watermarkKey, RevocationJob revocation) throws IdentityOAuth2Exception {
+
+        if (log.isDebugEnabled()) {
+            log.debug("Persisting revoked before watermark : " + watermarkKey + " at " +
+                    revocation.getRevokedBefore());
+        }
+        Connection connection = IdentityDatabaseUtil.getDBConnection();
+        try {
+            if (!updateWatermark(connection, watermarkKey, revocation) && !exists(connection, watermarkKey)) {
+                try {
+                    insertWatermark(connection, watermarkKey, revocation);
+                } catch (SQLException e) {
+                    if (!isIntegrityConstraintViolation(e)) {
+                        throw e;
+                    }
+                    // Created concurrently through another node, which leaves only the update to do.
+                    IdentityDatabaseUtil.rollBack(connection);
+                    if (log.isDebugEnabled()) {
+                        log.debug("Revoked before watermark : " + watermarkKey + " was created concurrently. " +
+                                "Updating it instead", e);
+                    }
+                    updateWatermark(connection, watermarkKey, revocation);
+                }
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            IdentityDatabaseUtil.rollBack(connection);
+            throw new IdentityOAuth2Exception("Error occurred while persisting revoked before watermark : " +
+                    watermarkKey, e);
+        } finally {
+            IdentityDatabaseUtil.closeConnection(connection);
+        }
+    }
+
+    /**
+     * Retrieve the watermarks updated since the given time, which are not older than the retention.
+     *
+     * @param updatedSince time in milliseconds.
+     * @param revokedSince time in milliseconds, older watermarks are no longer needed.
+     * @return watermarks as revocations of their scopes.
+     * @throws IdentityOAuth2Exception if the watermarks could not be retrieved.
+     */
+    public List<RevocationJob> getWatermarks(long updatedSince, long revokedSince) throws IdentityOAuth2Exception {
+
+        List<RevocationJob> watermarks = new ArrayList<>();
+        Connection connection = IdentityDatabaseUtil.getDBConnection();
+        PreparedStatement prepStmt = null;
+        ResultSet resultSet = null;
+        try {
+            prepStmt = connection.prepareStatement(SQLQueries.RETRIEVE_REVOKED_BEFORE_WATERMARKS);
+            prepStmt.setTimestamp(1, new Timestamp(updatedSince), getUTCCalendar());
+            prepStmt.setTimestamp(2, new Timestamp(revokedSince), getUTCCalendar());
+            resultSet = prepStmt.executeQuery();
+            while (resultSet.next()) {
+                RevocationJob watermark = new RevocationJob(RevocationScope.valueOf(resultSet.getString(1)),
+                        resultSet.getInt(2));
+                watermark.setUserDomain(resultSet.getString(3));
+                watermark.setAuthzUser(resultSet.getString(4));
+                watermark.setConsumerKey(resultSet.getString(5));
+                watermark.setRevokedBefore(resultSet.getTimestamp(6, getUTCCalendar()).getTime());
+                watermarks.add(watermark);
+            }
+        } catch (SQLException e) {
+            throw new IdentityOAuth2Exception("Error occurred while retrieving revoked before watermarks", e);
+        } finally {
+            IdentityDatabaseUtil.closeAllConnections(connection, resultSet, prepStmt);
+        }
+        return watermarks;
+    }
+
+    /**
+     * Remove the watermarks older than the given time.
+     *
+     * @param revokedBefore time in milliseconds.
+     * @return number of removed watermarks.
+     */
+    public int removeWatermarks(long revokedBefore) throws IdentityOAuth2Exception {
+
+        Connection connection = IdentityDatabaseUtil.getDBConnection();
+        PreparedStatement prepStmt = null;
+        try {
+            prepStmt = connection.prepareStatement(SQLQueries.DELETE_REVOKED_BEFORE_WATERMARKS);
+            prepStmt.setTimestamp(1, new Timestamp(revokedBefore), getUTCCalendar());
+            int count = prepStmt.executeUpdate();
+            connection.commit();
+            return count;
+        } catch (SQLException e) {
+            IdentityDatabaseUtil.rollBack(connection);
+            throw new IdentityOAuth2Exception("Error occurred while removing revoked before watermarks", e);
+        } finally {
+            IdentityDatabaseUtil.closeAllConnections(connection, null, prepStmt);
+        }
+    }
+
+    private boolean updateWatermark(Connection connection, String watermarkKey, RevocationJob revocation)
+            throws SQLException {
+
+        PreparedStatement prepStmt = null;
+        try {
+            prepStmt = connection.prepareStatement(SQLQueries.UPDATE_REVOKED_BEFORE_WATERMARK);
+            Timestamp revokedBefore = new Timestamp(revocation.getRevokedBefore());
+            prepStmt.setTimestamp(1, revokedBefore, getUTCCalendar());
+            prepStmt.setTimestamp(2, new Timestamp(System.currentTimeMillis()), getUTCCalendar());
+            prepStmt.setString(3, watermarkKey);
+            prepStmt.setTimestamp(4, revokedBefore, getUTCCalendar());
+            return prepStmt.executeUpdate() > 0;
+        } finally {
+            IdentityDatabaseUtil.closeStatement(prepStmt);
+        }
+    }
+
+    private void insertWatermark(Connection connection, String watermarkKey, RevocationJob revocation)
+            throws SQLException {
+
+        PreparedStatement prepStmt = null;
+        try {
+            prepStmt = connection.prepareStatement(SQLQueries.INSERT_REVOKED_BEFORE_WATERMARK);
+            prepStmt.setString(1, watermarkKey);
+            prepStmt.setString(2, revocation.getScope().name());
+            prepStmt.setInt(3, revocation.getTenantId());
+            setNullableString(prepStmt, 4, revocation.getUserDomain());
+            setNullableString(prepStmt, 5, revocation.getAuthzUser());
+            setNullableString(prepStmt, 6, revocation.getConsumerKey());
+            prepStmt.setTimestamp(7, new Timestamp(revocation.getRevokedBefore()), getUTCCalendar());
+            prepStmt.setTimestamp(8, new Timestamp(System.currentTimeMillis()), getUTCCalendar());
+            prepStmt.executeUpdate();
+        } finally {
+            IdentityDatabaseUtil.closeStatement(prepStmt);
+        }
+    }
+
+    private boolean exists(Connection connection, String watermarkKey) throws SQLException {
+
+        PreparedStatement prepStmt = null;
+        ResultSet resultSet = null;
+        try {
+            prepStmt = connection.prepareStatement(SQLQueries.RETRIEVE_REVOKED_BEFORE_WATERMARK_KEY);
+            prepStmt.setString(1, watermarkKey);
+            resultSet = prepStmt.executeQuery();
+            return resultSet.next();
+        } finally {
+            IdentityDatabaseUtil.closeAllConnections(null, resultSet, prepStmt);
+        }
+    }
+
+    /**
+     * Checks whether the exception reports a violated integrity constraint. Some JDBC drivers do not throw
+     * SQLIntegrityConstraintViolationException for it, but all of them report SQL state class 23.
+     */
+    private static boolean isIntegrityConstraintViolation(SQLException e) {
+        return e instanceof SQLIntegrityConstraintViolationException ||
+                (e.getSQLState() != null && e.getSQLState().startsWith(INTEGRITY_CONSTRAINT_VIOLATION_STATE_CLASS));
+    }
+
+    private static void setNullableString(PreparedStatement ps, int index, String value) throws SQLException {
+
+        if (value == null) {
+            ps.setNull(index, Types.VARCHAR);
+        } else {
+            ps.setString(index, value);
+        }
+    }
+
+    private static Calendar getUTCCalendar() {
+        return Calendar.getInstance(TimeZone.getTimeZone(UTC));
+    }
+}
@@ -169,6 +169,40 @@ public class SQLQueries {
     public static final String REVOKE_ACCESS_TOKEN = "UPDATE IDN_OAUTH2_ACCESS_TOKEN SET TOKEN_STATE=?, " +
             "TOKEN_STATE_ID=? WHERE ACCESS_TOKEN=?";
 
+    public static final String RETRIEVE_ACTIVE_EXPIRED_ACCESS_TOKENS_OF_USER = "SELECT ACCESS_TOKEN, CONSUMER_KEY, " +
+            "TOKEN_SCOPE, ACCESS_TOKEN_TABLE.TOKEN_ID FROM (SELECT TOKEN_ID, ACCESS_TOKEN, CONSUMER_KEY FROM " +
+            "IDN_OAUTH2_ACCESS_TOKEN JOIN IDN_OAUTH_CONSUMER_APPS ON IDN_OAUTH2_ACCESS_TOKEN.CONSUMER_KEY_ID = " +
+            "IDN_OAUTH_CONSUMER_APPS.ID WHERE AUTHZ_USER=? AND IDN_OAUTH2_ACCESS_TOKEN.TENANT_ID=? AND USER_DOMAIN=? " +
+            "AND (TOKEN_STATE='ACTIVE' OR TOKEN_STATE='EXPIRED')) ACCESS_TOKEN_TABLE LEFT JOIN " +
+            "IDN_OAUTH2_ACCESS_TOKEN_SCOPE ON ACCESS_TOKEN_TABLE.TOKEN_ID = IDN_OAUTH2_ACCESS_TOKEN_SCOPE.TOKEN_ID";
+
+    public static final String REVOKE_ACTIVE_EXPIRED_ACCESS_TOKEN_BY_TOKEN_ID = "UPDATE IDN_OAUTH2_ACCESS_TOKEN SET " +
+            "TOKEN_STATE=?, TOKEN_STATE_ID=? WHERE TOKEN_ID=? AND (TOKEN_STATE='ACTIVE' OR TOKEN_STATE='EXPIRED')";
+
+    public static final String RETRIEVE_ACCESS_TOKENS_TO_REVOKE = "SELECT TOKEN_ID, ACCESS_TOKEN, CONSUMER_KEY, " +
+            "AUTHZ_USER, IDN_OAUTH2_ACCESS_TOKEN.TENANT_ID, IDN_OAUTH2_ACCESS_TOKEN.USER_DOMAIN FROM " +
+            "IDN_OAUTH2_ACCESS_TOKEN JOIN IDN_OAUTH_CONSUMER_APPS ON IDN_OAUTH2_ACCESS_TOKEN.CONSUMER_KEY_ID = " +
+            "IDN_OAUTH_CONSUMER_APPS.ID WHERE (TOKEN_STATE='ACTIVE' OR TOKEN_STATE='EXPIRED') AND " +
+            "IDN_OAUTH2_ACCESS_TOKEN.TIME_CREATED < ? AND ";
+
+    public static final String REVOKE_TOKENS_OF_USER_CONDITION = "AUTHZ_USER=? AND IDN_OAUTH2_ACCESS_TOKEN" +
+            ".TENANT_ID=? AND IDN_OAUTH2_ACCESS_TOKEN.USER_DOMAIN=?";
+
+    public static final String REVOKE_TOKENS_OF_USER_STORE_CONDITION = "IDN_OAUTH2_ACCESS_TOKEN.TENANT_ID=? AND " +
+            "IDN_OAUTH2_ACCESS_TOKEN.USER_DOMAIN=?";
+
+    public static final String REVOKE_TOKENS_OF_TENANT_CONDITION = "IDN_OAUTH2_ACCESS_TOKEN.TENANT_ID=?";
+
+    public static final String REVOKE_TOKENS_OF_APP_CONDITION = "CONSUMER_KEY=?";
+
+    public static final String REVOKE_TOKENS_OF_APP_EXTERNAL_USERS_CONDITION = "CONSUMER_KEY=? AND " +
+            "IDN_OAUTH2_ACCESS_TOKEN.TENANT_ID != ?";
+
+    public static final String TOKEN_IDS_PLACEHOLDER = "token_ids";
+
+    public static final String RETRIEVE_SCOPES_OF_ACCESS_TOKENS = "SELECT TOKEN_ID, TOKEN_SCOPE FROM " +
+            "IDN_OAUTH2_ACCESS_TOKEN_SCOPE WHERE TOKEN_ID IN (:" + TOKEN_IDS_PLACEHOLDER + ";)";
+
     public static final String REVOKE_APP_ACCESS_TOKEN = "UPDATE IDN_OAUTH2_ACCESS_TOKEN SET TOKEN_STATE=?, " +
             "TOKEN_STATE_ID=? WHERE CONSUMER_KEY_ID = (SELECT ID FROM " +
             "IDN_OAUTH_CONSUMER_APPS WHERE CONSUMER_KEY = ?) AND TOKEN_STATE=?";
@@ -276,6 +310,18 @@ public class SQLQueries {
             "TOKEN_STATE, USER_TYPE, TOKEN_ID, GRANT_TYPE, SUBJECT_IDENTIFIER) SELECT ?,?,ID,?,?,?,?,?,?,?,?,?,?,?,?," +
             "? FROM IDN_OAUTH_CONSUMER_APPS WHERE CONSUMER_KEY=?";
 
+    public static final String INSERT_OAUTH2_ACCESS_TOKEN_WITH_HASH = "INSERT INTO $accessTokenStoreTable " +
+            "(ACCESS_TOKEN, REFRESH_TOKEN, CONSUMER_KEY_ID, AUTHZ_USER, TENANT_ID, USER_DOMAIN, TIME_CREATED, " +
+            "REFRESH_TOKEN_TIME_CREATED, VALIDITY_PERIOD, REFRESH_TOKEN_VALIDITY_PERIOD, TOKEN_SCOPE_HASH, " +
+            "TOKEN_STATE, USER_TYPE, TOKEN_ID, GRANT_TYPE, SUBJECT_IDENTIFIER, ACCESS_TOKEN_HASH, REFRESH_TOKEN_HASH) " +
+            "SELECT ?,?,ID,?,?,?,?,?,?,?,?,?,?,?,?,?,?,? FROM IDN_OAUTH_CONSUMER_APPS WHERE CONSUMER_KEY=?";
+
+    public static final String RETRIEVE_TOKENS_WITHOUT_HASH = "SELECT TOKEN_ID, ACCESS_TOKEN, REFRESH_TOKEN FROM " +
+            "IDN_OAUTH2_ACCESS_TOKEN WHERE ACCESS_TOKEN_HASH IS NULL";
+
+    public static final String UPDATE_TOKEN_HASHES = "UPDATE IDN_OAUTH2_ACCESS_TOKEN SET ACCESS_TOKEN_HASH=?, " +
+            "REFRESH_TOKEN_HASH=? WHERE TOKEN_ID=?";
+
     public static final String INSERT_OAUTH2_TOKEN_SCOPE = "INSERT INTO IDN_OAUTH2_ACCESS_TOKEN_SCOPE (TOKEN_ID, " +
             "TOKEN_SCOPE, TENANT_ID) VALUES (?,?,?)";
 
@@ -531,6 +577,92 @@ public class SQLQueries {
                     "LEFT JOIN IDN_OAUTH2_SCOPE_BINDING AS ScopeBindings ON Scopes.SCOPE_ID=ScopeBindings.SCOPE_ID " +
                     "WHERE Scopes.NAME = ? AND TENANT_ID = ?";
 
+    public static final String INSERT_REVOCATION_JOB = "INSERT INTO IDN_OAUTH2_REVOCATION_JOB (JOB_ID, " +
+            "SCOPE_TYPE, TENANT_ID, USER_DOMAIN, AUTHZ_USER, CONSUMER_KEY, REVOKED_BEFORE, STATE, ATTEMPTS, " +
+            "PROCESSED_COUNT, LEASE_EXPIRY, TIME_CREATED) VALUES (?,?,?,?,?,?,?,?,0,0,?,?)";
+
+    public static final String RETRIEVE_OPEN_REVOCATION_JOBS = "SELECT JOB_ID, SCOPE_TYPE, TENANT_ID, USER_DOMAIN, " +
+            "AUTHZ_USER, CONSUMER_KEY, REVOKED_BEFORE, STATE, ATTEMPTS, PROCESSED_COUNT, LEASE_EXPIRY, TIME_CREATED " +
+            "FROM IDN_OAUTH2_REVOCATION_JOB WHERE STATE <> 'COMPLETED' ORDER BY TIME_CREATED";
+
+    public static final String CLAIM_REVOCATION_JOB = "UPDATE IDN_OAUTH2_REVOCATION_JOB SET STATE='RUNNING', " +
+            "LEASE_OWNER=?, LEASE_EXPIRY=? WHERE JOB_ID=? AND (STATE='PENDING' OR STATE='RUNNING') AND " +
+            "(LEASE_EXPIRY IS NULL OR LEASE_EXPIRY < ?)";
+
+    public static final String UPDATE_REVOCATION_JOB_PROGRESS = "UPDATE IDN_OAUTH2_REVOCATION_JOB SET " +
+            "PROCESSED_COUNT=?, LEASE_EXPIRY=? WHERE JOB_ID=? AND LEASE_OWNER=? AND STATE='RUNNING'";
+
+    public static final String COMPLETE_REVOCATION_JOB = "UPDATE IDN_OAUTH2_REVOCATION_JOB SET STATE='COMPLETED', " +
+            "PROCESSED_COUNT=?, LEASE_OWNER=NULL, LEASE_EXPIRY=NULL WHERE JOB_ID=? AND LEASE_OWNER=?";
+
+    public static final String RELEASE_FAILED_REVOCATION_JOB = "UPDATE IDN_OAUTH2_REVOCATION_JOB SET STATE=?, " +
+            "ATTEMPTS=ATTEMPTS+1, PROCESSED_COUNT=?, LEASE_OWNER=NULL, LEASE_EXPIRY=? WHERE JOB_ID=? AND LEASE_OWNER=?";
+
+    public static final String DELETE_COMPLETED_REVOCATION_JOBS = "DELETE FROM IDN_OAUTH2_REVOCATION_JOB WHERE " +
+            "STATE='COMPLETED' AND TIME_CREATED < ?";
+
+    public static final String UPDATE_REVOKED_BEFORE_WATERMARK = "UPDATE IDN_OAUTH2_REVOKED_BEFORE SET " +
+            "REVOKED_BEFORE=?, TIME_UPDATED=? WHERE WATERMARK_KEY=? AND REVOKED_BEFORE < ?";
+
+    public static final String INSERT_REVOKED_BEFORE_WATERMARK = "INSERT INTO IDN_OAUTH2_REVOKED_BEFORE " +
+            "(WATERMARK_KEY, SCOPE_TYPE, TENANT_ID, USER_DOMAIN, AUTHZ_USER, CONSUMER_KEY, REVOKED_BEFORE, " +
+            "TIME_UPDATED) VALUES (?,?,?,?,?,?,?,?)";
+
+    public static final String RETRIEVE_REVOKED_BEFORE_WATERMARK_KEY = "SELECT WATERMARK_KEY FROM " +
+            "IDN_OAUTH2_REVOKED_BEFORE WHERE WATERMARK_KEY=?";
+
+    public static final String RETRIEVE_REVOKED_BEFORE_WATERMARKS = "SELECT SCOPE_TYPE, TENANT_ID, USER_DOMAIN, " +
+            "AUTHZ_USER, CONSUMER_KEY, REVOKED_BEFORE FROM IDN_OAUTH2_REVOKED_BEFORE WHERE TIME_UPDATED >= ? AND " +
+            "REVOKED_BEFORE >= ?";
+
+    public static final String DELETE_REVOKED_BEFORE_WATERMARKS = "DELETE FROM IDN_OAUTH2_REVOKED_BEFORE WHERE " +
+            "REVOKED_BEFORE < ?";
+
+    public static final String INSERT_PURGE_LEASE = "INSERT INTO IDN_OAUTH2_PURGE_LEASE (LEASE_NAME, LEASE_OWNER, " +
+            "LEASE_EXPIRY) VALUES (?,?,?)";
+
+    public static final String ACQUIRE_PURGE_LEASE = "UPDATE IDN_OAUTH2_PURGE_LEASE SET LEASE_OWNER=?, " +
+            "LEASE_EXPIRY=? WHERE LEASE_NAME=? AND (LEASE_OWNER=? OR LEASE_EXPIRY < ?)";
+
+    public static final String RELEASE_PURGE_LEASE = "UPDATE IDN_OAUTH2_PURGE_LEASE SET LEASE_EXPIRY=? WHERE " +
+            "LEASE_NAME=? AND LEASE_OWNER=?";
+
+    public static final String RETRIEVE_PURGE_LEASE_NAME = "SELECT LEASE_NAME FROM IDN_OAUTH2_PURGE_LEASE WHERE " +
+            "LEASE_NAME=?";
+
+    public static final String RETRIEVE_ACCESS_TOKEN_PURGE_CANDIDATES = "SELECT TOKEN_ID, TOKEN_STATE, REFRESH_TOKEN, " +
+            "TIME_CREATED, VALIDITY_PERIOD, REFRESH_TOKEN_TIME_CREATED, REFRESH_TOKEN_VALIDITY_PERIOD FROM " +
+            "IDN_OAUTH2_ACCESS_TOKEN WHERE TOKEN_ID > ? AND TIME_CREATED < ? ORDER BY TOKEN_ID";
+
+    public static final String ARCHIVE_ACCESS_TOKEN = "INSERT INTO IDN_OAUTH2_ACCESS_TOKEN_AUDIT (TOKEN_ID, " +
+            "ACCESS_TOKEN, REFRESH_TOKEN, CONSUMER_KEY_ID, AUTHZ_USER, TENANT_ID, USER_DOMAIN, USER_TYPE, GRANT_TYPE, " +
+            "TIME_CREATED, REFRESH_TOKEN_TIME_CREATED, VALIDITY_PERIOD, REFRESH_TOKEN_VALIDITY_PERIOD, " +
+            "TOKEN_SCOPE_HASH, TOKEN_STATE, TOKEN_STATE_ID, SUBJECT_IDENTIFIER, INVALIDATED_TIME) SELECT TOKEN_ID, " +
+            "ACCESS_TOKEN, REFRESH_TOKEN, CONSUMER_KEY_ID, AUTHZ_USER, TENANT_ID, USER_DOMAIN, USER_TYPE, GRANT_TYPE, " +
+            "TIME_CREATED, REFRESH_TOKEN_TIME_CREATED, VALIDITY_PERIOD, REFRESH_TOKEN_VALIDITY_PERIOD, " +
+            "TOKEN_SCOPE_HASH, TOKEN_STATE, TOKEN_STATE_ID, SUBJECT_IDENTIFIER, ? FROM IDN_OAUTH2_ACCESS_TOKEN " +
+            "WHERE TOKEN_ID=?";
+
+    public static final String DELETE_ACCESS_TOKEN_SCOPES_BY_TOKEN_ID = "DELETE FROM IDN_OAUTH2_ACCESS_TOKEN_SCOPE " +
+            "WHERE TOKEN_ID=?";
+
+    public static final String DELETE_ACCESS_TOKEN_BY_TOKEN_ID = "DELETE FROM IDN_OAUTH2_ACCESS_TOKEN WHERE " +
+            "TOKEN_ID=?";
+
+    public static final String RETRIEVE_AUTHORIZATION_CODE_PURGE_CANDIDATES = "SELECT CODE_ID, STATE, TIME_CREATED, " +
+            "VALIDITY_PERIOD FROM IDN_OAUTH2_AUTHORIZATION_CODE WHERE CODE_ID > ? AND TIME_CREATED < ? ORDER BY " +
+            "CODE_ID";
+
+    public static final String ARCHIVE_AUTHORIZATION_CODE = "INSERT INTO IDN_OAUTH2_AUTHORIZATION_CODE_AUDIT " +
+            "(CODE_ID, AUTHORIZATION_CODE, CONSUMER_KEY_ID, CALLBACK_URL, SCOPE, AUTHZ_USER, TENANT_ID, USER_DOMAIN, " +
+            "TIME_CREATED, VALIDITY_PERIOD, STATE, TOKEN_ID, SUBJECT_IDENTIFIER, INVALIDATED_TIME) SELECT CODE_ID, " +
+            "AUTHORIZATION_CODE, CONSUMER_KEY_ID, CALLBACK_URL, SCOPE, AUTHZ_USER, TENANT_ID, USER_DOMAIN, " +
+            "TIME_CREATED, VALIDITY_PERIOD, STATE, TOKEN_ID, SUBJECT_IDENTIFIER, ? FROM IDN_OAUTH2_AUTHORIZATION_CODE " +
+            "WHERE CODE_ID=?";
+
+    public static final String DELETE_AUTHORIZATION_CODE_BY_CODE_ID = "DELETE FROM IDN_OAUTH2_AUTHORIZATION_CODE " +
+            "WHERE CODE_ID=?";
+
     private SQLQueries() {
 
     }
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.dao;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.oauth.common.OAuthConstants;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the hashed token lookup mode and migrates the tokens persisted before it was enabled.
+ * <p>
+ * With the mode enabled, the SHA-256 digests of the access and refresh tokens are stored in the ACCESS_TOKEN_HASH
+ * and REFRESH_TOKEN_HASH columns of the token tables, and tokens are looked up by these columns as described in
+ * {@link TokenLookupMode}. On start, the tokens without digests are backfilled in chunks in the background. Until no
+ * such tokens are left, lookups also match the token columns, so existing tokens stay valid during the migration.
+ * <p>
+ * The mode has to be enabled on all nodes of a cluster, since tokens issued by a node without it carry no digests.
+ * It is disabled by default.
+ */
+public class TokenHashMigrator {
+
+    private static final Log log = LogFactory.getLog(TokenHashMigrator.class);
+
+    private static final String ENABLE = "OAuth.TokenPersistence.HashedLookup.Enable";
+    private static final String MIGRATION_CHUNK_SIZE = "OAuth.TokenPersistence.HashedLookup.Migration.ChunkSize";
+
+    private static final int DEFAULT_MIGRATION_CHUNK_SIZE = 500;
+
+    private static volatile TokenHashMigrator instance;
+
+    private final boolean enabled;
+    private final int chunkSize;
+    private final AtomicLong migratedCount = new AtomicLong();
+
+    private volatile boolean migrationComplete;
+    private Thread migrationThread;
+
+    private TokenHashMigrator() {
+
+        this.enabled = Boolean.parseBoolean(StringUtils.trim(IdentityUtil.getProperty(ENABLE)));
+        this.chunkSize = OAuth2Util.getIntProperty(MIGRATION_CHUNK_SIZE, DEFAULT_MIGRATION_CHUNK_SIZE, 1,
+                Integer.MAX_VALUE);
+        if (log.isDebugEnabled()) {
+            log.debug("Hashed token lookup enabled : " + enabled + ", migration chunk size : " + chunkSize);
+        }
+    }
+
+    public static TokenHashMigrator getInstance() {
+        if (instance == null) {
+            synchronized (TokenHashMigrator.class) {
+                if (instance == null) {
+                    instance = new TokenHashMigrator();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Returns whether the digests of new tokens are stored and tokens are looked up by them.
+     *
+     * @return true if hashed token lookup is enabled.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isMigrationComplete() {
+        return migrationComplete;
+    }
+
+    public long getMigratedCount() {
+        return migratedCount.get();
+    }
+
+    /**
+     * Returns the mode tokens are looked up by at the moment. The mode can change once the migration completes,
+     * so a query and its parameters have to be built from the same instance.
+     *
+     * @return current lookup mode.
+     */
+    public TokenLookupMode getLookupMode() {
+
+        if (!enabled) {
+            return TokenLookupMode.PLAIN;
+        }
+        return migrationComplete ? TokenLookupMode.HASHED : TokenLookupMode.HASHED_WITH_FALLBACK;
+    }
+
+    /**
+     * Start migrating the tokens without digests in the background. Nodes migrating concurrently store the same
+     * digests, so the migration can run on every node.
+     */
+    public synchronized void start() {
+
+        if (!enabled || migrationThread != null) {
+            return;
+        }
+        migrationThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    migrate();
+                } catch (IdentityOAuth2Exception e) {
+                    log.error("Error occurred while migrating token hashes. Tokens will be looked up by both their " +
+                            "hash and token columns", e);
+                }
+            }
+        });
+        migrationThread.start();
+    }
+
+    /**
+     * Stop the migration. It continues from the remaining tokens on the next start.
+     */
+    public synchronized void stop() {
+
+        if (migrationThread == null) {
+            return;
+        }
+        migrationThread.interrupt();
+        migrationThread = null;
+    }
+
+    /**
+     * Store the digests of all tokens persisted without them, chunk by chunk, and switch to looking tokens up by
+     * their digests alone once none are left.
+     *
+     * @throws IdentityOAuth2Exception if the tokens could not be migrated.
+     */
+    public void migrate() throws IdentityOAuth2Exception {
+
+        if (!enabled) {
+            return;
+        }
+        TokenMgtDAO tokenMgtDAO = new TokenMgtDAO();
+        long startTime = System.currentTimeMillis();
+        long migratedBefore = migratedCount.get();
+        for (String accessTokenStoreTable : getAccessTokenStoreTables()) {
+            int migrated;
+            do {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                migrated = tokenMgtDAO.migrateTokenHashes(accessTokenStoreTable, chunkSize);
+                migratedCount.addAndGet(migrated);
+            } while (migrated > 0);
+        }
+        migrationComplete = true;
+        log.info("Token hash migration is completed. Migrated " + (migratedCount.get() - migratedBefore) +
+                " tokens in " + (System.currentTimeMillis() - startTime) + "ms");
+    }
+
+    private List<String> getAccessTokenStoreTables() throws IdentityOAuth2Exception {
+
+        List<String> accessTokenStoreTables = new ArrayList<>();
+        accessTokenStoreTables.add(OAuthConstants.ACCESS_TOKEN_STORE_TABLE);
+        if (OAuth2Util.checkAccessTokenPartitioningEnabled()) {
+            for (String mapping : new LinkedHashSet<>(OAuth2Util.getAvailableUserStoreDomainMappings().values())) {
+                accessTokenStoreTables.add(OAuthConstants.ACCESS_TOKEN_STORE_TABLE + "_" + mapping);
+            }
+        }
+        return accessTokenStoreTables;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.dao;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.wso2.carbon.identity.oauth.tokenprocessor.TokenPersistenceProcessor;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Column an access or refresh token is looked up by in the token table.
+ * <p>
+ * The hashed modes look tokens up by the fixed width ACCESS_TOKEN_HASH and REFRESH_TOKEN_HASH columns, which hold
+ * the SHA-256 digest of the plain token and therefore do not depend on the configured
+ * {@link TokenPersistenceProcessor}. While rows persisted before the digest columns were introduced are being
+ * backfilled by the {@link TokenHashMigrator}, a token is matched by either its digest or its token column.
+ */
+public enum TokenLookupMode {
+
+    /**
+     * Look tokens up by the ACCESS_TOKEN and REFRESH_TOKEN columns.
+     */
+    PLAIN,
+
+    /**
+     * Look tokens up by the ACCESS_TOKEN_HASH and REFRESH_TOKEN_HASH columns.
+     */
+    HASHED,
+
+    /**
+     * Look tokens up by the digest columns, falling back to the token columns for rows without a digest.
+     */
+    HASHED_WITH_FALLBACK;
+
+    private static final Pattern ACCESS_TOKEN_CONDITION = Pattern.compile("\\bACCESS_TOKEN\\s*=\\s*\\?");
+    private static final Pattern REFRESH_TOKEN_CONDITION = Pattern.compile("\\bREFRESH_TOKEN\\s*=\\s*\\?");
+
+    private static final String ACCESS_TOKEN = "ACCESS_TOKEN";
+    private static final String ACCESS_TOKEN_HASH = "ACCESS_TOKEN_HASH";
+    private static final String REFRESH_TOKEN = "REFRESH_TOKEN";
+    private static final String REFRESH_TOKEN_HASH = "REFRESH_TOKEN_HASH";
+
+    /**
+     * Rewrite the ACCESS_TOKEN = ? condition of the query to the columns of this mode.
+     *
+     * @param sql query matching a single access token.
+     * @return query to be executed.
+     */
+    public String getAccessTokenQuery(String sql) {
+        return rewriteCondition(sql, ACCESS_TOKEN_CONDITION, ACCESS_TOKEN_HASH, ACCESS_TOKEN);
+    }
+
+    /**
+     * Rewrite the REFRESH_TOKEN = ? condition of the query to the columns of this mode.
+     *
+     * @param sql query matching a single refresh token.
+     * @return query to be executed.
+     */
+    public String getRefreshTokenQuery(String sql) {
+        return rewriteCondition(sql, REFRESH_TOKEN_CONDITION, REFRESH_TOKEN_HASH, REFRESH_TOKEN);
+    }
+
+    /**
+     * Bind the access token to the condition of a query rewritten by {@link #getAccessTokenQuery(String)}.
+     *
+     * @return index of the next parameter.
+     */
+    public int setAccessTokenParameters(PreparedStatement prepStmt, int index, String accessToken,
+                                        TokenPersistenceProcessor persistenceProcessor)
+            throws SQLException, IdentityOAuth2Exception {
+
+        if (this != PLAIN) {
+            prepStmt.setString(index++, hash(accessToken));
+        }
+        if (this != HASHED) {
+            prepStmt.setString(index++, persistenceProcessor.getProcessedAccessTokenIdentifier(accessToken));
+        }
+        return index;
+    }
+
+    /**
+     * Bind the refresh token to the condition of a query rewritten by {@link #getRefreshTokenQuery(String)}.
+     *
+     * @return index of the next parameter.
+     */
+    public int setRefreshTokenParameters(PreparedStatement prepStmt, int index, String refreshToken,
+                                         TokenPersistenceProcessor persistenceProcessor)
+            throws SQLException, IdentityOAuth2Exception {
+
+        if (this != PLAIN) {
+            prepStmt.setString(index++, hash(refreshToken));
+        }
+        if (this != HASHED) {
+            prepStmt.setString(index++, persistenceProcessor.getProcessedRefreshToken(refreshToken));
+        }
+        return index;
+    }
+
+    /**
+     * Returns the value stored in the digest column of a token.
+     *
+     * @param token plain access or refresh token.
+     * @return lower case hex encoded SHA-256 digest of the token, or null if the token is null.
+     */
+    public static String hash(String token) {
+
+        if (token == null) {
+            return null;
+        }
+        return DigestUtils.sha256Hex(token);
+    }
+
+    private String rewriteCondition(String sql, Pattern condition, String hashColumn, String tokenColumn) {
+
+        if (this == PLAIN) {
+            return sql;
+        }
+        String replacement = hashColumn + "=?";
+        if (this == HASHED_WITH_FALLBACK) {
+            replacement = "(" + replacement + " OR " + tokenColumn + "=?)";
+        }
+        return condition.matcher(sql).replaceAll(Matcher.quoteReplacement(replacement));
+    }
+}
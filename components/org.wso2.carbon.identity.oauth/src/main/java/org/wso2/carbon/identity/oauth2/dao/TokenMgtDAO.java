@@ -32,15 +32,20 @@ import org.wso2.carbon.identity.base.IdentityException;
 import org.wso2.carbon.identity.core.util.IdentityDatabaseUtil;
 import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
 import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.oauth.cache.InvalidAccessTokenCache;
+import org.wso2.carbon.identity.oauth.cache.RevokedTokenIdCache;
 import org.wso2.carbon.identity.oauth.common.OAuthConstants;
 import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
 import org.wso2.carbon.identity.oauth.tokenprocessor.PlainTextPersistenceProcessor;
 import org.wso2.carbon.identity.oauth.tokenprocessor.TokenPersistenceProcessor;
 import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.TokenPersistenceOverflowException;
 import org.wso2.carbon.identity.oauth2.internal.OAuth2ServiceComponentHolder;
 import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
 import org.wso2.carbon.identity.oauth2.model.AuthzCodeDO;
 import org.wso2.carbon.identity.oauth2.model.RefreshTokenValidationDataDO;
+import org.wso2.carbon.identity.oauth2.revocation.RevocationJob;
+import org.wso2.carbon.identity.oauth2.util.NamedPreparedStatement;
 import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
 import org.wso2.carbon.user.core.util.UserCoreUtil;
 
@@ -54,6 +59,7 @@ import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -82,17 +88,35 @@ public class TokenMgtDAO {
     private static final int DEFAULT_POOL_SIZE = 100;
     private static final int DEFAULT_TOKEN_PERSIST_RETRY_COUNT = 5;
     private static final boolean DEFAULT_PERSIST_ENABLED = true;
+    private static final int DEFAULT_TOKEN_PERSIST_BATCH_SIZE = 1;
+    private static final long DEFAULT_TOKEN_PERSIST_BATCH_LINGER_TIME = 10;
+    private static final int DEFAULT_TOKEN_PERSIST_QUEUE_CAPACITY = 10000;
+    private static final TokenPersistenceOverflowPolicy DEFAULT_QUEUE_OVERFLOW_POLICY =
+            TokenPersistenceOverflowPolicy.PERSIST_SYNCHRONOUSLY;
+    // Kept below the IN list and bind parameter limits of the supported databases.
+    private static final int MAX_TOKEN_IDS_PER_QUERY = 500;
 
 
     private static int maxPoolSize;
     private static int tokenPersistRetryCount;
     private boolean enablePersist;
 
-    private static BlockingDeque<AccessContextTokenDO> accessContextTokenQueue = new LinkedBlockingDeque<>();
+    private static final Log log = LogFactory.getLog(TokenMgtDAO.class);
 
-    private static BlockingDeque<AuthContextTokenDO> authContextTokenQueue = new LinkedBlockingDeque<>();
+    private static BlockingDeque<AccessContextTokenDO> accessContextTokenQueue =
+            new LinkedBlockingDeque<>(getTokenPersistQueueCapacity());
 
-    private static final Log log = LogFactory.getLog(TokenMgtDAO.class);
+    private static BlockingDeque<AuthContextTokenDO> authContextTokenQueue =
+            new LinkedBlockingDeque<>(getTokenPersistQueueCapacity());
+
+    private static TokenPersistenceOverflowPolicy queueOverflowPolicy = TokenPersistenceOverflowPolicy.fromName(
+            IdentityUtil.getProperty(OAUTH_TOKEN_PERSISTENCE_QUEUE_OVERFLOW_POLICY), DEFAULT_QUEUE_OVERFLOW_POLICY);
+
+    private static TokenPersistenceStatistics accessTokenPersistenceStatistics =
+            new TokenPersistenceStatistics(accessContextTokenQueue);
+
+    private static TokenPersistenceStatistics authzCodePersistenceStatistics =
+            new TokenPersistenceStatistics(authContextTokenQueue);
 
     private static final String IDN_OAUTH2_ACCESS_TOKEN = "IDN_OAUTH2_ACCESS_TOKEN";
     private static final String IDN_OAUTH2_AUTHORIZATION_CODE = "IDN_OAUTH2_AUTHORIZATION_CODE";
@@ -101,6 +125,11 @@ public class TokenMgtDAO {
     private static final String OAUTH_TOKEN_PERSISTENCE_ENABLE = "OAuth.TokenPersistence.Enable";
     private static final String OAUTH_TOKEN_PERSISTENCE_POOLSIZE = "OAuth.TokenPersistence.PoolSize";
     private static final String OAUTH_TOKEN_PERSISTENCE_RETRY_COUNT = "OAuth.TokenPersistence.RetryCount";
+    private static final String OAUTH_TOKEN_PERSISTENCE_BATCH_SIZE = "OAuth.TokenPersistence.BatchSize";
+    private static final String OAUTH_TOKEN_PERSISTENCE_BATCH_LINGER_TIME = "OAuth.TokenPersistence.BatchLingerTime";
+    private static final String OAUTH_TOKEN_PERSISTENCE_QUEUE_CAPACITY = "OAuth.TokenPersistence.QueueCapacity";
+    private static final String OAUTH_TOKEN_PERSISTENCE_QUEUE_OVERFLOW_POLICY =
+            "OAuth.TokenPersistence.QueueOverflowPolicy";
 
     // We read from these properties for the sake of backward compatibility
     private static final String FRAMEWORK_PERSISTENCE_ENABLE = "JDBCPersistenceManager.SessionDataPersist.Enable";
@@ -114,17 +143,27 @@ public class TokenMgtDAO {
         maxPoolSize = getTokenPersistPoolSize();
         if (maxPoolSize > 0) {
             log.info("Thread pool size for OAuth Token persistent consumer : " + maxPoolSize);
+            log.info("OAuth Token persistence queue capacity : " + accessContextTokenQueue.remainingCapacity() +
+                    ", overflow policy : " + queueOverflowPolicy);
+
+            int batchSize = getTokenPersistBatchSize();
+            long batchLingerTime = getTokenPersistBatchLingerTime();
+            if (batchSize > 1) {
+                log.info("OAuth Token persistent consumer batch size : " + batchSize + ", batch linger time : " +
+                        batchLingerTime + "ms");
+            }
 
             ExecutorService threadPool = Executors.newFixedThreadPool(maxPoolSize);
 
             for (int i = 0; i < maxPoolSize; i++) {
-                threadPool.execute(new TokenPersistenceTask(accessContextTokenQueue));
+                threadPool.execute(new TokenPersistenceTask(accessContextTokenQueue, batchSize, batchLingerTime,
+                        accessTokenPersistenceStatistics));
             }
 
             threadPool = Executors.newFixedThreadPool(maxPoolSize);
 
             for (int i = 0; i < maxPoolSize; i++) {
-                threadPool.execute(new AuthPersistenceTask(authContextTokenQueue));
+                threadPool.execute(new AuthPersistenceTask(authContextTokenQueue, authzCodePersistenceStatistics));
             }
         }
     }
@@ -162,13 +201,52 @@ public class TokenMgtDAO {
             return;
         }
 
-        if (maxPoolSize > 0) {
-            authContextTokenQueue.push(new AuthContextTokenDO(authzCode, consumerKey, callbackUrl, authzCodeDO));
-        } else {
+        if (maxPoolSize <= 0 || !enqueue(authContextTokenQueue, new AuthContextTokenDO(authzCode, consumerKey,
+                callbackUrl, authzCodeDO), authzCodePersistenceStatistics)) {
             persistAuthorizationCode(authzCode, consumerKey, callbackUrl, authzCodeDO);
         }
     }
 
+    /**
+     * Add an entry to the tail of an asynchronous persistence queue. When the queue is full the configured
+     * {@link TokenPersistenceOverflowPolicy} decides whether to block, to let the caller persist the entry
+     * synchronously or to reject it.
+     *
+     * @return true if the entry was queued, false if the caller has to persist it synchronously.
+     * @throws TokenPersistenceOverflowException if the queue is full and the overflow policy is to reject.
+     */
+    private static <T> boolean enqueue(BlockingDeque<T> queue, T entry, TokenPersistenceStatistics statistics)
+            throws IdentityOAuth2Exception {
+
+        long startTime = System.nanoTime();
+        if (queue.offerLast(entry)) {
+            statistics.recordEnqueue(System.nanoTime() - startTime);
+            return true;
+        }
+
+        statistics.recordOverflow(queueOverflowPolicy);
+        switch (queueOverflowPolicy) {
+            case BLOCK:
+                try {
+                    queue.putLast(entry);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IdentityOAuth2Exception("Interrupted while waiting for room in the token " +
+                            "persistence queue", e);
+                }
+                statistics.recordEnqueue(System.nanoTime() - startTime);
+                return true;
+            case REJECT:
+                throw new TokenPersistenceOverflowException("Token persistence queue is full. Current depth : " +
+                        queue.size());
+            default:
+                if (log.isDebugEnabled()) {
+                    log.debug("Token persistence queue is full. Persisting synchronously.");
+                }
+                return false;
+        }
+    }
+
     public void persistAuthorizationCode(String authzCode, String consumerKey, String callbackUrl,
                                          AuthzCodeDO authzCodeDO) throws IdentityOAuth2Exception {
 
@@ -249,9 +327,8 @@ public class TokenMgtDAO {
             return;
         }
 
-        if (maxPoolSize > 0) {
-            authContextTokenQueue.push(new AuthContextTokenDO(authzCode, tokenId));
-        } else {
+        if (maxPoolSize <= 0 || !enqueue(authContextTokenQueue, new AuthContextTokenDO(authzCode, tokenId),
+                authzCodePersistenceStatistics)) {
             AuthzCodeDO authzCodeDO = new AuthzCodeDO();
             authzCodeDO.setAuthorizationCode(authzCode);
             authzCodeDO.setOauthTokenId(tokenId);
@@ -301,13 +378,9 @@ public class TokenMgtDAO {
         PreparedStatement insertTokenPrepStmt = null;
         PreparedStatement addScopePrepStmt = null;
 
-        String accessTokenStoreTable = "IDN_OAUTH2_ACCESS_TOKEN";
-        if (StringUtils.isNotBlank(userStoreDomain) &&
-                !IdentityUtil.getPrimaryDomainName().equalsIgnoreCase(userStoreDomain)) {
-            accessTokenStoreTable = accessTokenStoreTable + "_" + userStoreDomain;
-            if (log.isDebugEnabled()) {
-                log.debug("IDN_OAUTH2_ACCESS_TOKEN table name is changed as: " + accessTokenStoreTable);
-            }
+        String accessTokenStoreTable = getAccessTokenStoreTable(userStoreDomain);
+        if (log.isDebugEnabled() && !IDN_OAUTH2_ACCESS_TOKEN.equals(accessTokenStoreTable)) {
+            log.debug("IDN_OAUTH2_ACCESS_TOKEN table name is changed as: " + accessTokenStoreTable);
         }
 
         if (!OAuthServerConfiguration.getInstance().isMapFederatedUsersToLocal() && accessTokenDO.getAuthzUser()
@@ -324,35 +397,13 @@ public class TokenMgtDAO {
                     + " is :" + userDomain);
         }
 
-        String sql = SQLQueries.INSERT_OAUTH2_ACCESS_TOKEN.replaceAll("\\$accessTokenStoreTable",
-                accessTokenStoreTable);
+        String sql = getInsertAccessTokenQuery(accessTokenStoreTable);
         String sqlAddScopes = SQLQueries.INSERT_OAUTH2_TOKEN_SCOPE;
         try {
             insertTokenPrepStmt = connection.prepareStatement(sql);
-            insertTokenPrepStmt.setString(1, persistenceProcessor.getProcessedAccessTokenIdentifier(accessToken));
-
-            if (accessTokenDO.getRefreshToken() != null) {
-                insertTokenPrepStmt.setString(2, persistenceProcessor.getProcessedRefreshToken(accessTokenDO.getRefreshToken()));
-            } else {
-                insertTokenPrepStmt.setString(2, accessTokenDO.getRefreshToken());
-            }
-
-            insertTokenPrepStmt.setString(3, accessTokenDO.getAuthzUser().getUserName());
             int tenantId = OAuth2Util.getTenantId(accessTokenDO.getAuthzUser().getTenantDomain());
-            insertTokenPrepStmt.setInt(4, tenantId);
-            insertTokenPrepStmt.setString(5, getSanitizedUserStoreDomain(userDomain));
-            insertTokenPrepStmt.setTimestamp(6, accessTokenDO.getIssuedTime(), Calendar.getInstance(TimeZone.getTimeZone(UTC)));
-            insertTokenPrepStmt.setTimestamp(7, accessTokenDO.getRefreshTokenIssuedTime(), Calendar.getInstance(TimeZone
-                    .getTimeZone(UTC)));
-            insertTokenPrepStmt.setLong(8, accessTokenDO.getValidityPeriodInMillis());
-            insertTokenPrepStmt.setLong(9, accessTokenDO.getRefreshTokenValidityPeriodInMillis());
-            insertTokenPrepStmt.setString(10, OAuth2Util.hashScopes(accessTokenDO.getScope()));
-            insertTokenPrepStmt.setString(11, accessTokenDO.getTokenState());
-            insertTokenPrepStmt.setString(12, accessTokenDO.getTokenType());
-            insertTokenPrepStmt.setString(13, accessTokenDO.getTokenId());
-            insertTokenPrepStmt.setString(14, accessTokenDO.getGrantType());
-            insertTokenPrepStmt.setString(15, accessTokenDO.getAuthzUser().getAuthenticatedSubjectIdentifier());
-            insertTokenPrepStmt.setString(16, persistenceProcessor.getProcessedClientId(consumerKey));
+            setAccessTokenInsertParameters(insertTokenPrepStmt, accessToken, consumerKey, accessTokenDO, userDomain,
+                    tenantId);
             insertTokenPrepStmt.execute();
 
             String accessTokenId = accessTokenDO.getTokenId();
@@ -423,10 +474,8 @@ public class TokenMgtDAO {
 
         userStoreDomain = getSanitizedUserStoreDomain(userStoreDomain);
 
-        if (maxPoolSize > 0) {
-            accessContextTokenQueue.push(new AccessContextTokenDO(accessToken, consumerKey, newAccessTokenDO
-                    , existingAccessTokenDO, userStoreDomain));
-        } else {
+        if (maxPoolSize <= 0 || !enqueue(accessContextTokenQueue, new AccessContextTokenDO(accessToken, consumerKey,
+                newAccessTokenDO, existingAccessTokenDO, userStoreDomain), accessTokenPersistenceStatistics)) {
             persistAccessToken(accessToken, consumerKey, newAccessTokenDO, existingAccessTokenDO, userStoreDomain);
         }
     }
@@ -468,6 +517,8 @@ public class TokenMgtDAO {
                 deactivateAuthorizationCode(authzCodeDO, connection);
             }
             connection.commit();
+            // A token with this identifier may have been looked up before it was persisted.
+            InvalidAccessTokenCache.getInstance().clearCacheEntry(accessToken);
             return true;
         } catch (SQLException e) {
             throw new IdentityOAuth2Exception("Error occurred while persisting access token", e);
@@ -476,6 +527,145 @@ public class TokenMgtDAO {
         }
     }
 
+    /**
+     * Persist a batch of access tokens queued by the asynchronous persistence tasks within a single transaction.
+     * Token and scope rows are written with JDBC batch inserts. If the batch cannot be written as a whole, e.g. due
+     * to a 'CON_APP_KEY' constraint violation which needs recovery, the transaction is rolled back and each token
+     * is persisted individually through {@link #persistAccessToken(String, String, AccessTokenDO, AccessTokenDO,
+     * String)}.
+     *
+     * @param accessContextTokenDOs access token contexts to be persisted.
+     * @return true if the batch was persisted as a whole, false if it fell back to per token persistence.
+     * @throws IdentityOAuth2Exception
+     */
+    public boolean persistAccessTokens(List<AccessContextTokenDO> accessContextTokenDOs)
+            throws IdentityOAuth2Exception {
+
+        if (!enablePersist || accessContextTokenDOs == null || accessContextTokenDOs.isEmpty()) {
+            return true;
+        }
+
+        if (accessContextTokenDOs.size() == 1) {
+            AccessContextTokenDO accessContextTokenDO = accessContextTokenDOs.get(0);
+            persistAccessToken(accessContextTokenDO.getAccessToken(), accessContextTokenDO.getConsumerKey(),
+                    accessContextTokenDO.getNewAccessTokenDO(), accessContextTokenDO.getExistingAccessTokenDO(),
+                    accessContextTokenDO.getUserStoreDomain());
+            return true;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Persisting a batch of " + accessContextTokenDOs.size() + " access tokens");
+        }
+
+        Connection connection = IdentityDatabaseUtil.getDBConnection();
+        Map<String, PreparedStatement> insertTokenPrepStmts = new HashMap<>();
+        PreparedStatement addScopePrepStmt = null;
+        PreparedStatement deactivateCodePrepStmt = null;
+        try {
+            connection.setAutoCommit(false);
+            addScopePrepStmt = connection.prepareStatement(SQLQueries.INSERT_OAUTH2_TOKEN_SCOPE);
+            boolean hasScopes = false;
+            boolean hasAuthzCodes = false;
+
+            for (AccessContextTokenDO accessContextTokenDO : accessContextTokenDOs) {
+                AccessTokenDO accessTokenDO = accessContextTokenDO.getNewAccessTokenDO();
+                String userStoreDomain = getSanitizedUserStoreDomain(accessContextTokenDO.getUserStoreDomain());
+
+                if (accessContextTokenDO.getExistingAccessTokenDO() != null) {
+                    //  Mark the existing access token as expired on database if a token exist for the user
+                    setAccessTokenState(connection, accessContextTokenDO.getExistingAccessTokenDO().getTokenId(),
+                            OAuthConstants.TokenStates.TOKEN_STATE_EXPIRED, UUID.randomUUID().toString(),
+                            userStoreDomain);
+                }
+
+                String userDomain = accessTokenDO.getAuthzUser().getUserStoreDomain();
+                if (!OAuthServerConfiguration.getInstance().isMapFederatedUsersToLocal() &&
+                        accessTokenDO.getAuthzUser().isFederatedUser()) {
+                    userDomain = OAuth2Util.getFederatedUserDomain(accessTokenDO.getAuthzUser()
+                            .getFederatedIdPName());
+                }
+
+                String accessTokenStoreTable = getAccessTokenStoreTable(userStoreDomain);
+                PreparedStatement insertTokenPrepStmt = insertTokenPrepStmts.get(accessTokenStoreTable);
+                if (insertTokenPrepStmt == null) {
+                    insertTokenPrepStmt = connection.prepareStatement(getInsertAccessTokenQuery(
+                            accessTokenStoreTable));
+                    insertTokenPrepStmts.put(accessTokenStoreTable, insertTokenPrepStmt);
+                }
+
+                int tenantId = OAuth2Util.getTenantId(accessTokenDO.getAuthzUser().getTenantDomain());
+                setAccessTokenInsertParameters(insertTokenPrepStmt, accessContextTokenDO.getAccessToken(),
+                        accessContextTokenDO.getConsumerKey(), accessTokenDO, userDomain, tenantId);
+                insertTokenPrepStmt.addBatch();
+
+                if (accessTokenDO.getScope() != null) {
+                    for (String scope : accessTokenDO.getScope()) {
+                        addScopePrepStmt.setString(1, accessTokenDO.getTokenId());
+                        addScopePrepStmt.setString(2, scope);
+                        addScopePrepStmt.setInt(3, tenantId);
+                        addScopePrepStmt.addBatch();
+                        hasScopes = true;
+                    }
+                }
+
+                if (accessTokenDO.getAuthorizationCode() != null) {
+                    // expire authz code and insert issued access token against authz code
+                    if (deactivateCodePrepStmt == null) {
+                        deactivateCodePrepStmt = connection.prepareStatement(
+                                SQLQueries.DEACTIVATE_AUTHZ_CODE_AND_INSERT_CURRENT_TOKEN);
+                    }
+                    deactivateCodePrepStmt.setString(1, accessTokenDO.getTokenId());
+                    deactivateCodePrepStmt.setString(2, persistenceProcessor.getPreprocessedAuthzCode(
+                            accessTokenDO.getAuthorizationCode()));
+                    deactivateCodePrepStmt.addBatch();
+                    hasAuthzCodes = true;
+                }
+            }
+
+            // Scope rows refer to the token rows, hence tokens need to be inserted first.
+            for (PreparedStatement insertTokenPrepStmt : insertTokenPrepStmts.values()) {
+                insertTokenPrepStmt.executeBatch();
+            }
+            if (hasScopes) {
+                addScopePrepStmt.executeBatch();
+            }
+            if (hasAuthzCodes) {
+                deactivateCodePrepStmt.executeBatch();
+            }
+            connection.commit();
+            for (AccessContextTokenDO accessContextTokenDO : accessContextTokenDOs) {
+                InvalidAccessTokenCache.getInstance().clearCacheEntry(accessContextTokenDO.getAccessToken());
+            }
+            return true;
+        } catch (SQLException | IdentityOAuth2Exception e) {
+            IdentityDatabaseUtil.rollBack(connection);
+            if (log.isDebugEnabled()) {
+                log.debug("Error while persisting a batch of " + accessContextTokenDOs.size() + " access tokens. " +
+                        "Falling back to persist them individually", e);
+            }
+        } finally {
+            for (PreparedStatement insertTokenPrepStmt : insertTokenPrepStmts.values()) {
+                IdentityDatabaseUtil.closeStatement(insertTokenPrepStmt);
+            }
+            IdentityDatabaseUtil.closeStatement(addScopePrepStmt);
+            IdentityDatabaseUtil.closeAllConnections(connection, null, deactivateCodePrepStmt);
+        }
+
+        // Persisting individually recovers 'CON_APP_KEY' constraint violations and isolates the failing tokens so
+        // that the rest of the batch is still stored.
+        for (AccessContextTokenDO accessContextTokenDO : accessContextTokenDOs) {
+            try {
+                persistAccessToken(accessContextTokenDO.getAccessToken(), accessContextTokenDO.getConsumerKey(),
+                        accessContextTokenDO.getNewAccessTokenDO(), accessContextTokenDO.getExistingAccessTokenDO(),
+                        accessContextTokenDO.getUserStoreDomain());
+            } catch (IdentityOAuth2Exception e) {
+                log.error("Error occurred while persisting access token for client: " +
+                        accessContextTokenDO.getConsumerKey(), e);
+            }
+        }
+        return false;
+    }
+
     public AccessTokenDO retrieveLatestAccessToken(String consumerKey, AuthenticatedUser authzUser,
                                                    String userStoreDomain, String scope,
                                                    boolean includeExpiredTokens)
@@ -739,6 +929,273 @@ public class TokenMgtDAO {
     }
 
 
+    /**
+     * Revokes all ACTIVE and EXPIRED access tokens of a user, across all applications, in a single transaction.
+     * The tokens are read and revoked with one query and one batched update, instead of a lookup and a
+     * revocation per application and scope.
+     *
+     * @param authzUser       user whose tokens are revoked.
+     * @param userStoreDomain user store domain of the access token partition, or null if partitioning is disabled.
+     * @return the revoked tokens, with their consumer key, scope and token identifier, for cache eviction.
+     * @throws IdentityOAuth2Exception if the tokens could not be revoked.
+     */
+    public Set<AccessTokenDO> revokeAccessTokensOfUser(AuthenticatedUser authzUser, String userStoreDomain)
+            throws IdentityOAuth2Exception {
+
+        if (log.isDebugEnabled()) {
+            log.debug("Revoking all access tokens of user: " + authzUser.toString());
+        }
+
+        boolean isUsernameCaseSensitive = IdentityUtil.isUserStoreInUsernameCaseSensitive(authzUser.toString());
+        String tenantDomain = authzUser.getTenantDomain();
+        String tenantAwareUsernameWithNoUserDomain = authzUser.getUserName();
+        String userDomain = getSanitizedUserStoreDomain(authzUser.getUserStoreDomain());
+        userStoreDomain = getSanitizedUserStoreDomain(userStoreDomain);
+        int tenantId = OAuth2Util.getTenantId(tenantDomain);
+
+        String selectSql = SQLQueries.RETRIEVE_ACTIVE_EXPIRED_ACCESS_TOKENS_OF_USER;
+        String revokeSql = SQLQueries.REVOKE_ACTIVE_EXPIRED_ACCESS_TOKEN_BY_TOKEN_ID;
+        if (StringUtils.isNotEmpty(userStoreDomain) &&
+                !IdentityUtil.getPrimaryDomainName().equalsIgnoreCase(userStoreDomain)) {
+            selectSql = selectSql.replaceAll("\\b" + IDN_OAUTH2_ACCESS_TOKEN + "\\b", IDN_OAUTH2_ACCESS_TOKEN + "_" +
+                    userStoreDomain);
+            revokeSql = revokeSql.replaceAll("\\b" + IDN_OAUTH2_ACCESS_TOKEN + "\\b", IDN_OAUTH2_ACCESS_TOKEN + "_" +
+                    userStoreDomain);
+        }
+        if (!isUsernameCaseSensitive) {
+            selectSql = selectSql.replace(AUTHZ_USER, LOWER_AUTHZ_USER);
+        }
+
+        Connection connection = IdentityDatabaseUtil.getDBConnection();
+        PreparedStatement selectStmt = null;
+        PreparedStatement revokeStmt = null;
+        ResultSet resultSet = null;
+        Map<String, AccessTokenDO> revokedTokens = new HashMap<>();
+        try {
+            connection.setAutoCommit(false);
+            selectStmt = connection.prepareStatement(selectSql);
+            if (isUsernameCaseSensitive) {
+                selectStmt.setString(1, tenantAwareUsernameWithNoUserDomain);
+            } else {
+                selectStmt.setString(1, tenantAwareUsernameWithNoUserDomain.toLowerCase());
+            }
+            selectStmt.setInt(2, tenantId);
+            selectStmt.setString(3, userDomain);
+            resultSet = selectStmt.executeQuery();
+
+            while (resultSet.next()) {
+                String tokenId = resultSet.getString(4);
+                String scope = resultSet.getString(3);
+                AccessTokenDO accessTokenDO = revokedTokens.get(tokenId);
+                if (accessTokenDO == null) {
+                    AuthenticatedUser user = new AuthenticatedUser();
+                    user.setUserName(tenantAwareUsernameWithNoUserDomain);
+                    user.setTenantDomain(tenantDomain);
+                    user.setUserStoreDomain(userDomain);
+                    accessTokenDO = new AccessTokenDO();
+                    accessTokenDO.setAccessToken(persistenceProcessor.getPreprocessedAccessTokenIdentifier(
+                            resultSet.getString(1)));
+                    accessTokenDO.setConsumerKey(persistenceProcessor.getPreprocessedClientId(resultSet.getString(2)));
+                    accessTokenDO.setAuthzUser(user);
+                    accessTokenDO.setScope(OAuth2Util.buildScopeArray(scope));
+                    accessTokenDO.setTokenId(tokenId);
+                    accessTokenDO.setTenantID(tenantId);
+                    revokedTokens.put(tokenId, accessTokenDO);
+                } else if (StringUtils.isNotBlank(scope)) {
+                    accessTokenDO.setScope((String[]) ArrayUtils.add(accessTokenDO.getScope(), scope.trim()));
+                }
+            }
+
+            if (!revokedTokens.isEmpty()) {
+                // Rows are revoked by id so that the returned set is exactly the set of revoked tokens, even if a
+                // token is issued to the user meanwhile.
+                revokeStmt = connection.prepareStatement(revokeSql);
+                for (String tokenId : revokedTokens.keySet()) {
+                    revokeStmt.setString(1, OAuthConstants.TokenStates.TOKEN_STATE_REVOKED);
+                    revokeStmt.setString(2, UUID.randomUUID().toString());
+                    revokeStmt.setString(3, tokenId);
+                    revokeStmt.addBatch();
+                }
+                revokeStmt.executeBatch();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            IdentityDatabaseUtil.rollBack(connection);
+            throw new IdentityOAuth2Exception("Error occurred while revoking the access tokens of user : " +
+                    authzUser, e);
+        } finally {
+            IdentityDatabaseUtil.closeStatement(revokeStmt);
+            IdentityDatabaseUtil.closeAllConnections(connection, resultSet, selectStmt);
+        }
+
+        String[] accessTokens = new String[revokedTokens.size()];
+        int i = 0;
+        for (AccessTokenDO accessTokenDO : revokedTokens.values()) {
+            accessTokens[i++] = accessTokenDO.getAccessToken();
+        }
+        RevokedTokenIdCache.getInstance().addRevokedTokens(accessTokens);
+
+        if (log.isDebugEnabled()) {
+            log.debug("Revoked " + revokedTokens.size() + " access tokens of user: " + authzUser.toString());
+        }
+        return new HashSet<>(revokedTokens.values());
+    }
+
+    /**
+     * Revoke up to the given number of ACTIVE or EXPIRED access tokens in the scope of a revocation job which were
+     * issued before the revoked before time of the job, in one transaction. Revoked tokens no longer match the
+     * selection, hence calling this repeatedly until fewer tokens are returned revokes the whole scope.
+     *
+     * @param job             revocation job.
+     * @param userStoreDomain access token table partition to work on, null for the default table.
+     * @param chunkSize       maximum number of tokens to revoke.
+     * @return revoked tokens with the consumer key, user and scopes set, to be evicted from the caches.
+     * @throws IdentityOAuth2Exception if the tokens could not be revoked.
+     */
+    public List<AccessTokenDO> revokeAccessTokenChunk(RevocationJob job, String userStoreDomain, int chunkSize)
+            throws IdentityOAuth2Exception {
+
+        String selectSql = SQLQueries.RETRIEVE_ACCESS_TOKENS_TO_REVOKE;
+        String revokeSql = SQLQueries.REVOKE_ACTIVE_EXPIRED_ACCESS_TOKEN_BY_TOKEN_ID;
+        boolean isUsernameCaseSensitive = true;
+        switch (job.getScope()) {
+            case USER:
+                isUsernameCaseSensitive = IdentityUtil.isUserStoreInUsernameCaseSensitive(
+                        UserCoreUtil.addDomainToName(job.getAuthzUser(), job.getUserDomain()), job.getTenantId());
+                selectSql += isUsernameCaseSensitive ? SQLQueries.REVOKE_TOKENS_OF_USER_CONDITION :
+                        SQLQueries.REVOKE_TOKENS_OF_USER_CONDITION.replace(AUTHZ_USER, LOWER_AUTHZ_USER);
+                break;
+            case USER_STORE:
+                selectSql += SQLQueries.REVOKE_TOKENS_OF_USER_STORE_CONDITION;
+                break;
+            case TENANT:
+                selectSql += SQLQueries.REVOKE_TOKENS_OF_TENANT_CONDITION;
+                break;
+            case APP:
+                selectSql += SQLQueries.REVOKE_TOKENS_OF_APP_CONDITION;
+                break;
+            default:
+                selectSql += SQLQueries.REVOKE_TOKENS_OF_APP_EXTERNAL_USERS_CONDITION;
+        }
+        userStoreDomain = getSanitizedUserStoreDomain(userStoreDomain);
+        if (StringUtils.isNotEmpty(userStoreDomain) &&
+                !IdentityUtil.getPrimaryDomainName().equalsIgnoreCase(userStoreDomain)) {
+            selectSql = selectSql.replaceAll("\\b" + IDN_OAUTH2_ACCESS_TOKEN + "\\b", IDN_OAUTH2_ACCESS_TOKEN + "_" +
+                    userStoreDomain);
+            revokeSql = revokeSql.replaceAll("\\b" + IDN_OAUTH2_ACCESS_TOKEN + "\\b", IDN_OAUTH2_ACCESS_TOKEN + "_" +
+                    userStoreDomain);
+        }
+
+        Connection connection = IdentityDatabaseUtil.getDBConnection();
+        PreparedStatement selectStmt = null;
+        PreparedStatement scopeStmt = null;
+        PreparedStatement revokeStmt = null;
+        ResultSet resultSet = null;
+        List<AccessTokenDO> revokedTokens = new ArrayList<>();
+        Map<Integer, String> tenantDomains = new HashMap<>();
+        try {
+            connection.setAutoCommit(false);
+            selectStmt = connection.prepareStatement(selectSql);
+            selectStmt.setMaxRows(chunkSize);
+            selectStmt.setTimestamp(1, new Timestamp(job.getRevokedBefore()),
+                    Calendar.getInstance(TimeZone.getTimeZone(UTC)));
+            switch (job.getScope()) {
+                case USER:
+                    selectStmt.setString(2, isUsernameCaseSensitive ? job.getAuthzUser() :
+                            job.getAuthzUser().toLowerCase());
+                    selectStmt.setInt(3, job.getTenantId());
+                    selectStmt.setString(4, getSanitizedUserStoreDomain(job.getUserDomain()));
+                    break;
+                case USER_STORE:
+                    selectStmt.setInt(2, job.getTenantId());
+                    selectStmt.setString(3, getSanitizedUserStoreDomain(job.getUserDomain()));
+                    break;
+                case TENANT:
+                    selectStmt.setInt(2, job.getTenantId());
+                    break;
+                case APP:
+                    selectStmt.setString(2, persistenceProcessor.getProcessedClientId(job.getConsumerKey()));
+                    break;
+                default:
+                    selectStmt.setString(2, persistenceProcessor.getProcessedClientId(job.getConsumerKey()));
+                    selectStmt.setInt(3, job.getTenantId());
+            }
+            resultSet = selectStmt.executeQuery();
+            while (resultSet.next()) {
+                int tenantId = resultSet.getInt(5);
+                String tenantDomain = tenantDomains.get(tenantId);
+                if (tenantDomain == null) {
+                    tenantDomain = IdentityTenantUtil.getTenantDomain(tenantId);
+                    tenantDomains.put(tenantId, tenantDomain);
+                }
+                AuthenticatedUser user = new AuthenticatedUser();
+                user.setUserName(resultSet.getString(4));
+                user.setTenantDomain(tenantDomain);
+                user.setUserStoreDomain(resultSet.getString(6));
+                AccessTokenDO accessTokenDO = new AccessTokenDO();
+                accessTokenDO.setTokenId(resultSet.getString(1));
+                accessTokenDO.setAccessToken(persistenceProcessor.getPreprocessedAccessTokenIdentifier(
+                        resultSet.getString(2)));
+                accessTokenDO.setConsumerKey(persistenceProcessor.getPreprocessedClientId(resultSet.getString(3)));
+                accessTokenDO.setAuthzUser(user);
+                accessTokenDO.setTenantID(tenantId);
+                revokedTokens.add(accessTokenDO);
+            }
+
+            if (!revokedTokens.isEmpty()) {
+                Map<String, List<String>> scopes = new HashMap<>();
+                for (int from = 0; from < revokedTokens.size(); from += MAX_TOKEN_IDS_PER_QUERY) {
+                    List<String> tokenIds = new ArrayList<>();
+                    for (AccessTokenDO accessTokenDO : revokedTokens.subList(from,
+                            Math.min(from + MAX_TOKEN_IDS_PER_QUERY, revokedTokens.size()))) {
+                        tokenIds.add(accessTokenDO.getTokenId());
+                        scopes.put(accessTokenDO.getTokenId(), new ArrayList<String>());
+                    }
+                    NamedPreparedStatement namedScopeStmt = new NamedPreparedStatement(connection,
+                            SQLQueries.RETRIEVE_SCOPES_OF_ACCESS_TOKENS, Collections.singletonMap(
+                                    SQLQueries.TOKEN_IDS_PLACEHOLDER, tokenIds.size()));
+                    scopeStmt = namedScopeStmt.getPreparedStatement();
+                    namedScopeStmt.setString(SQLQueries.TOKEN_IDS_PLACEHOLDER, tokenIds);
+                    try (ResultSet scopeResultSet = scopeStmt.executeQuery()) {
+                        while (scopeResultSet.next()) {
+                            scopes.get(scopeResultSet.getString(1)).add(scopeResultSet.getString(2));
+                        }
+                    }
+                    IdentityDatabaseUtil.closeStatement(scopeStmt);
+                    scopeStmt = null;
+                }
+
+                revokeStmt = connection.prepareStatement(revokeSql);
+                for (AccessTokenDO accessTokenDO : revokedTokens) {
+                    List<String> tokenScopes = scopes.get(accessTokenDO.getTokenId());
+                    accessTokenDO.setScope(tokenScopes.toArray(new String[tokenScopes.size()]));
+
+                    revokeStmt.setString(1, OAuthConstants.TokenStates.TOKEN_STATE_REVOKED);
+                    revokeStmt.setString(2, UUID.randomUUID().toString());
+                    revokeStmt.setString(3, accessTokenDO.getTokenId());
+                    revokeStmt.addBatch();
+                }
+                revokeStmt.executeBatch();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            IdentityDatabaseUtil.rollBack(connection);
+            throw new IdentityOAuth2Exception("Error occurred while revoking access tokens of revocation job : " +
+                    job.getJobId(), e);
+        } finally {
+            IdentityDatabaseUtil.closeStatement(scopeStmt);
+            IdentityDatabaseUtil.closeStatement(revokeStmt);
+            IdentityDatabaseUtil.closeAllConnections(connection, resultSet, selectStmt);
+        }
+
+        String[] accessTokens = new String[revokedTokens.size()];
+        for (int i = 0; i < accessTokens.length; i++) {
+            accessTokens[i] = revokedTokens.get(i).getAccessToken();
+        }
+        RevokedTokenIdCache.getInstance().addRevokedTokens(accessTokens);
+        return revokedTokens;
+    }
+
     public AuthzCodeDO validateAuthorizationCode(String consumerKey, String authorizationKey)
             throws IdentityOAuth2Exception {
 
@@ -900,9 +1357,8 @@ public class TokenMgtDAO {
     }
 
     public void changeAuthzCodeState(String authzCode, String newState) throws IdentityOAuth2Exception {
-        if (maxPoolSize > 0) {
-            authContextTokenQueue.push(new AuthContextTokenDO(authzCode));
-        } else {
+        if (maxPoolSize <= 0 || !enqueue(authContextTokenQueue, new AuthContextTokenDO(authzCode),
+                authzCodePersistenceStatistics)) {
             doChangeAuthzCodeState(authzCode, newState);
         }
     }
@@ -1083,15 +1539,18 @@ public class TokenMgtDAO {
                 sql = oracleQuery;
             }
 
+            TokenLookupMode lookupMode = TokenHashMigrator.getInstance().getLookupMode();
             if (refreshToken == null) {
                 sql = sql.replace("REFRESH_TOKEN = ?", "REFRESH_TOKEN IS NULL");
+            } else {
+                sql = lookupMode.getRefreshTokenQuery(sql);
             }
 
             prepStmt = connection.prepareStatement(sql);
 
             prepStmt.setString(1, persistenceProcessor.getProcessedClientId(consumerKey));
             if (refreshToken != null) {
-                prepStmt.setString(2, persistenceProcessor.getProcessedRefreshToken(refreshToken));
+                lookupMode.setRefreshTokenParameters(prepStmt, 2, refreshToken, persistenceProcessor);
             }
 
             resultSet = prepStmt.executeQuery();
@@ -1189,9 +1648,10 @@ public class TokenMgtDAO {
                         + userStoreDomain);
             }
 
-            prepStmt = connection.prepareStatement(sql);
+            TokenLookupMode lookupMode = TokenHashMigrator.getInstance().getLookupMode();
+            prepStmt = connection.prepareStatement(lookupMode.getAccessTokenQuery(sql));
 
-            prepStmt.setString(1, persistenceProcessor.getProcessedAccessTokenIdentifier(accessTokenIdentifier));
+            lookupMode.setAccessTokenParameters(prepStmt, 1, accessTokenIdentifier, persistenceProcessor);
             resultSet = prepStmt.executeQuery();
 
             int iterateId = 0;
@@ -1320,6 +1780,8 @@ public class TokenMgtDAO {
         } else {
             revokeTokensBatch(tokens);
         }
+        // Self contained tokens are validated without reading this table, record their revocation separately.
+        RevokedTokenIdCache.getInstance().addRevokedTokens(tokens);
     }
 
     public void revokeTokensBatch(String[] tokens) throws IdentityOAuth2Exception {
@@ -1336,6 +1798,7 @@ public class TokenMgtDAO {
             }
         }
         String accessTokenStoreTable = OAuthConstants.ACCESS_TOKEN_STORE_TABLE;
+        TokenLookupMode lookupMode = TokenHashMigrator.getInstance().getLookupMode();
         Connection connection = IdentityDatabaseUtil.getDBConnection();
         PreparedStatement ps = null;
         if (tokens.length > 1) {
@@ -1343,11 +1806,11 @@ public class TokenMgtDAO {
                 connection.setAutoCommit(false);
                 String sqlQuery = SQLQueries.REVOKE_ACCESS_TOKEN.replace(IDN_OAUTH2_ACCESS_TOKEN,
                         accessTokenStoreTable);
-                ps = connection.prepareStatement(sqlQuery);
+                ps = connection.prepareStatement(lookupMode.getAccessTokenQuery(sqlQuery));
                 for (String token : tokens) {
                     ps.setString(1, OAuthConstants.TokenStates.TOKEN_STATE_REVOKED);
                     ps.setString(2, UUID.randomUUID().toString());
-                    ps.setString(3, persistenceProcessor.getProcessedAccessTokenIdentifier(token));
+                    lookupMode.setAccessTokenParameters(ps, 3, token, persistenceProcessor);
                     ps.addBatch();
                 }
                 ps.executeBatch();
@@ -1364,10 +1827,10 @@ public class TokenMgtDAO {
                 connection.setAutoCommit(true);
                 String sqlQuery = SQLQueries.REVOKE_ACCESS_TOKEN.replace(IDN_OAUTH2_ACCESS_TOKEN,
                         accessTokenStoreTable);
-                ps = connection.prepareStatement(sqlQuery);
+                ps = connection.prepareStatement(lookupMode.getAccessTokenQuery(sqlQuery));
                 ps.setString(1, OAuthConstants.TokenStates.TOKEN_STATE_REVOKED);
                 ps.setString(2, UUID.randomUUID().toString());
-                ps.setString(3, persistenceProcessor.getProcessedAccessTokenIdentifier(tokens[0]));
+                lookupMode.setAccessTokenParameters(ps, 3, tokens[0], persistenceProcessor);
                 ps.executeUpdate();
             } catch (SQLException e) {
                 //IdentityDatabaseUtil.rollBack(connection);
@@ -1393,6 +1856,7 @@ public class TokenMgtDAO {
             }
         }
         String accessTokenStoreTable = OAuthConstants.ACCESS_TOKEN_STORE_TABLE;
+        TokenLookupMode lookupMode = TokenHashMigrator.getInstance().getLookupMode();
         Connection connection = IdentityDatabaseUtil.getDBConnection();
         PreparedStatement ps = null;
         try {
@@ -1405,10 +1869,10 @@ public class TokenMgtDAO {
                 }
                 String sqlQuery = SQLQueries.REVOKE_ACCESS_TOKEN.replace(
                         IDN_OAUTH2_ACCESS_TOKEN, accessTokenStoreTable);
-                ps = connection.prepareStatement(sqlQuery);
+                ps = connection.prepareStatement(lookupMode.getAccessTokenQuery(sqlQuery));
                 ps.setString(1, OAuthConstants.TokenStates.TOKEN_STATE_REVOKED);
                 ps.setString(2, UUID.randomUUID().toString());
-                ps.setString(3, persistenceProcessor.getProcessedAccessTokenIdentifier(token));
+                lookupMode.setAccessTokenParameters(ps, 3, token, persistenceProcessor);
                 int count = ps.executeUpdate();
                 if (log.isDebugEnabled()) {
                     log.debug("Number of rows being updated : " + count);
@@ -1895,6 +2359,7 @@ public class TokenMgtDAO {
 
             // commit both transactions
             connection.commit();
+            InvalidAccessTokenCache.getInstance().clearCacheEntry(newAccessToken);
         } catch (SQLException e) {
             String errorMsg = "Error while regenerating access token";
             throw new IdentityOAuth2Exception(errorMsg, e);
@@ -2398,10 +2863,11 @@ public class TokenMgtDAO {
         PreparedStatement prepStmt = null;
         ResultSet resultSet = null;
         try {
-            String sql = SQLQueries.RETRIEVE_TOKEN_ID_BY_TOKEN;
+            TokenLookupMode lookupMode = TokenHashMigrator.getInstance().getLookupMode();
+            String sql = lookupMode.getAccessTokenQuery(SQLQueries.RETRIEVE_TOKEN_ID_BY_TOKEN);
 
             prepStmt = connection.prepareStatement(sql);
-            prepStmt.setString(1, persistenceProcessor.getProcessedAccessTokenIdentifier(token));
+            lookupMode.setAccessTokenParameters(prepStmt, 1, token, persistenceProcessor);
             resultSet = prepStmt.executeQuery();
 
             if (resultSet.next()) {
@@ -2421,6 +2887,64 @@ public class TokenMgtDAO {
     }
 
 
+    /**
+     * Store the digests of a chunk of the tokens of a token table which were persisted without them.
+     *
+     * @param accessTokenStoreTable token table to be migrated.
+     * @param chunkSize             maximum number of tokens to be migrated.
+     * @return number of migrated tokens, zero if no tokens without digests are left.
+     * @throws IdentityOAuth2Exception if the tokens could not be read or updated.
+     */
+    public int migrateTokenHashes(String accessTokenStoreTable, int chunkSize) throws IdentityOAuth2Exception {
+
+        String selectSql = SQLQueries.RETRIEVE_TOKENS_WITHOUT_HASH.replaceAll("\\b" + IDN_OAUTH2_ACCESS_TOKEN +
+                "\\b", accessTokenStoreTable);
+        String updateSql = SQLQueries.UPDATE_TOKEN_HASHES.replaceAll("\\b" + IDN_OAUTH2_ACCESS_TOKEN + "\\b",
+                accessTokenStoreTable);
+
+        Connection connection = IdentityDatabaseUtil.getDBConnection();
+        PreparedStatement selectStmt = null;
+        PreparedStatement updateStmt = null;
+        ResultSet resultSet = null;
+        int migratedCount = 0;
+        try {
+            connection.setAutoCommit(false);
+            selectStmt = connection.prepareStatement(selectSql);
+            selectStmt.setMaxRows(chunkSize);
+            resultSet = selectStmt.executeQuery();
+            updateStmt = connection.prepareStatement(updateSql);
+            while (resultSet.next()) {
+                String accessToken = persistenceProcessor.getPreprocessedAccessTokenIdentifier(
+                        resultSet.getString(2));
+                String refreshToken = resultSet.getString(3);
+                if (refreshToken != null) {
+                    refreshToken = persistenceProcessor.getPreprocessedRefreshToken(refreshToken);
+                }
+                updateStmt.setString(1, TokenLookupMode.hash(accessToken));
+                updateStmt.setString(2, TokenLookupMode.hash(refreshToken));
+                updateStmt.setString(3, resultSet.getString(1));
+                updateStmt.addBatch();
+                migratedCount++;
+            }
+            if (migratedCount > 0) {
+                updateStmt.executeBatch();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            IdentityDatabaseUtil.rollBack(connection);
+            throw new IdentityOAuth2Exception("Error occurred while migrating token hashes of " +
+                    accessTokenStoreTable, e);
+        } finally {
+            IdentityDatabaseUtil.closeStatement(updateStmt);
+            IdentityDatabaseUtil.closeAllConnections(connection, resultSet, selectStmt);
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Migrated hashes of " + migratedCount + " tokens of " + accessTokenStoreTable);
+        }
+        return migratedCount;
+    }
+
     public String getTokenByTokenId(String tokenId) throws IdentityOAuth2Exception {
 
         if (log.isDebugEnabled()) {
@@ -2636,7 +3160,7 @@ public class TokenMgtDAO {
                 // update consumer secret of the oauth app
                 updateStateStatement = connection.prepareStatement
                         (org.wso2.carbon.identity.oauth.dao.SQLQueries.OAuthAppDAOSQLQueries.UPDATE_OAUTH_SECRET_KEY);
-                updateStateStatement.setString(1, newSecretKey);
+                updateStateStatement.setString(1, persistenceProcessor.getProcessedClientSecret(newSecretKey));
                 updateStateStatement.setString(2, consumerKey);
                 updateStateStatement.execute();
             }
@@ -2692,6 +3216,59 @@ public class TokenMgtDAO {
     }
 
 
+    private String getAccessTokenStoreTable(String userStoreDomain) {
+
+        String accessTokenStoreTable = IDN_OAUTH2_ACCESS_TOKEN;
+        if (StringUtils.isNotBlank(userStoreDomain) &&
+                !IdentityUtil.getPrimaryDomainName().equalsIgnoreCase(userStoreDomain)) {
+            accessTokenStoreTable = accessTokenStoreTable + "_" + userStoreDomain;
+        }
+        return accessTokenStoreTable;
+    }
+
+    private void setAccessTokenInsertParameters(PreparedStatement insertTokenPrepStmt, String accessToken,
+                                                String consumerKey, AccessTokenDO accessTokenDO, String userDomain,
+                                                int tenantId) throws SQLException, IdentityOAuth2Exception {
+
+        insertTokenPrepStmt.setString(1, persistenceProcessor.getProcessedAccessTokenIdentifier(accessToken));
+
+        if (accessTokenDO.getRefreshToken() != null) {
+            insertTokenPrepStmt.setString(2, persistenceProcessor.getProcessedRefreshToken(accessTokenDO.getRefreshToken()));
+        } else {
+            insertTokenPrepStmt.setString(2, accessTokenDO.getRefreshToken());
+        }
+
+        insertTokenPrepStmt.setString(3, accessTokenDO.getAuthzUser().getUserName());
+        insertTokenPrepStmt.setInt(4, tenantId);
+        insertTokenPrepStmt.setString(5, getSanitizedUserStoreDomain(userDomain));
+        insertTokenPrepStmt.setTimestamp(6, accessTokenDO.getIssuedTime(), Calendar.getInstance(TimeZone.getTimeZone(UTC)));
+        insertTokenPrepStmt.setTimestamp(7, accessTokenDO.getRefreshTokenIssuedTime(), Calendar.getInstance(TimeZone
+                .getTimeZone(UTC)));
+        insertTokenPrepStmt.setLong(8, accessTokenDO.getValidityPeriodInMillis());
+        insertTokenPrepStmt.setLong(9, accessTokenDO.getRefreshTokenValidityPeriodInMillis());
+        insertTokenPrepStmt.setString(10, OAuth2Util.hashScopes(accessTokenDO.getScope()));
+        insertTokenPrepStmt.setString(11, accessTokenDO.getTokenState());
+        insertTokenPrepStmt.setString(12, accessTokenDO.getTokenType());
+        insertTokenPrepStmt.setString(13, accessTokenDO.getTokenId());
+        insertTokenPrepStmt.setString(14, accessTokenDO.getGrantType());
+        insertTokenPrepStmt.setString(15, accessTokenDO.getAuthzUser().getAuthenticatedSubjectIdentifier());
+        int index = 16;
+        if (TokenHashMigrator.getInstance().isEnabled()) {
+            insertTokenPrepStmt.setString(index++, TokenLookupMode.hash(accessToken));
+            insertTokenPrepStmt.setString(index++, TokenLookupMode.hash(accessTokenDO.getRefreshToken()));
+        }
+        insertTokenPrepStmt.setString(index, persistenceProcessor.getProcessedClientId(consumerKey));
+    }
+
+    private String getInsertAccessTokenQuery(String accessTokenStoreTable) {
+
+        String sql = SQLQueries.INSERT_OAUTH2_ACCESS_TOKEN;
+        if (TokenHashMigrator.getInstance().isEnabled()) {
+            sql = SQLQueries.INSERT_OAUTH2_ACCESS_TOKEN_WITH_HASH;
+        }
+        return sql.replaceAll("\\$accessTokenStoreTable", accessTokenStoreTable);
+    }
+
     private String getSanitizedUserStoreDomain(String userStoreDomain) {
         if (userStoreDomain != null) {
             userStoreDomain = userStoreDomain.toUpperCase();
@@ -3148,4 +3725,53 @@ public class TokenMgtDAO {
 
         return maxPoolSize;
     }
+
+    private static int getTokenPersistBatchSize() {
+        return OAuth2Util.getIntProperty(OAUTH_TOKEN_PERSISTENCE_BATCH_SIZE, DEFAULT_TOKEN_PERSIST_BATCH_SIZE, 1,
+                Integer.MAX_VALUE);
+    }
+
+    private static long getTokenPersistBatchLingerTime() {
+        return OAuth2Util.getLongProperty(OAUTH_TOKEN_PERSISTENCE_BATCH_LINGER_TIME,
+                DEFAULT_TOKEN_PERSIST_BATCH_LINGER_TIME, 0, Long.MAX_VALUE);
+    }
+
+    private static int getTokenPersistQueueCapacity() {
+
+        int capacity = OAuth2Util.getIntProperty(OAUTH_TOKEN_PERSISTENCE_QUEUE_CAPACITY,
+                DEFAULT_TOKEN_PERSIST_QUEUE_CAPACITY, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        // A capacity which is not positive leaves the queue unbounded.
+        if (capacity <= 0) {
+            capacity = Integer.MAX_VALUE;
+        }
+        return capacity;
+    }
+
+    /**
+     * Returns whether access tokens are handed over to the persistence queue instead of being stored before the
+     * token response is sent.
+     *
+     * @return true if access tokens are persisted asynchronously.
+     */
+    public static boolean isAsynchronousPersistenceEnabled() {
+        return maxPoolSize > 0;
+    }
+
+    /**
+     * Returns the counters of the asynchronous access token persistence queue.
+     *
+     * @return access token persistence statistics.
+     */
+    public static TokenPersistenceStatistics getAccessTokenPersistenceStatistics() {
+        return accessTokenPersistenceStatistics;
+    }
+
+    /**
+     * Returns the counters of the asynchronous authorization code persistence queue.
+     *
+     * @return authorization code persistence statistics.
+     */
+    public static TokenPersistenceStatistics getAuthzCodePersistenceStatistics() {
+        return authzCodePersistenceStatistics;
+    }
 }
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.dao;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Action taken when an asynchronous token persistence queue is full.
+ */
+public enum TokenPersistenceOverflowPolicy {
+
+    /**
+     * Block the issuing thread until the queue has room.
+     */
+    BLOCK,
+
+    /**
+     * Persist the token on the issuing thread, bypassing the queue.
+     */
+    PERSIST_SYNCHRONOUSLY,
+
+    /**
+     * Reject the request with a {@link org.wso2.carbon.identity.oauth2.TokenPersistenceOverflowException}.
+     */
+    REJECT;
+
+    /**
+     * Resolve the policy from its configured name. Names are matched ignoring case, dashes and underscores, so
+     * 'PersistSynchronously' and 'PERSIST_SYNCHRONOUSLY' are equivalent.
+     *
+     * @param name          configured policy name.
+     * @param defaultPolicy policy to be used when the name is blank or unknown.
+     * @return matching policy.
+     */
+    public static TokenPersistenceOverflowPolicy fromName(String name, TokenPersistenceOverflowPolicy defaultPolicy) {
+
+        if (StringUtils.isBlank(name)) {
+            return defaultPolicy;
+        }
+        String normalizedName = name.trim().replace("_", "").replace("-", "");
+        for (TokenPersistenceOverflowPolicy policy : values()) {
+            if (policy.name().replace("_", "").equalsIgnoreCase(normalizedName)) {
+                return policy;
+            }
+        }
+        return defaultPolicy;
+    }
+}
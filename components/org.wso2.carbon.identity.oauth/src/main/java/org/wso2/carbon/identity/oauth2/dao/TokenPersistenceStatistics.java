@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.dao;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runtime counters of an asynchronous token persistence queue and the consumer tasks draining it.
+ */
+public class TokenPersistenceStatistics {
+
+    private static final double NANOS_PER_MILLI = 1000000d;
+
+    private final BlockingQueue<?> queue;
+
+    private final AtomicLong enqueuedCount = new AtomicLong();
+    private final AtomicLong totalEnqueueLatencyNanos = new AtomicLong();
+    private final AtomicLong maxEnqueueLatencyNanos = new AtomicLong();
+    private final AtomicLong overflowCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong synchronouslyPersistedCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong persistedCount = new AtomicLong();
+    private final AtomicLong fallbackBatchCount = new AtomicLong();
+    private final AtomicLong lastBatchSize = new AtomicLong();
+    private final AtomicLong maxBatchSize = new AtomicLong();
+
+    public TokenPersistenceStatistics(BlockingQueue<?> queue) {
+        this.queue = queue;
+    }
+
+    /**
+     * Record an entry accepted by the queue.
+     *
+     * @param latencyNanos time the issuing thread spent enqueueing the entry, including any blocking.
+     */
+    public void recordEnqueue(long latencyNanos) {
+
+        enqueuedCount.incrementAndGet();
+        totalEnqueueLatencyNanos.addAndGet(latencyNanos);
+        updateMax(maxEnqueueLatencyNanos, latencyNanos);
+    }
+
+    /**
+     * Record an entry which did not fit into the queue and was handled according to the overflow policy.
+     *
+     * @param policy overflow policy applied to the entry.
+     */
+    public void recordOverflow(TokenPersistenceOverflowPolicy policy) {
+
+        overflowCount.incrementAndGet();
+        if (policy == TokenPersistenceOverflowPolicy.REJECT) {
+            rejectedCount.incrementAndGet();
+        } else if (policy == TokenPersistenceOverflowPolicy.PERSIST_SYNCHRONOUSLY) {
+            synchronouslyPersistedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Record a batch handed over to the database by a persistence task.
+     *
+     * @param batchSize number of entries in the batch.
+     * @param fallback  whether the batch had to be persisted row by row.
+     */
+    public void recordBatch(int batchSize, boolean fallback) {
+
+        batchCount.incrementAndGet();
+        persistedCount.addAndGet(batchSize);
+        lastBatchSize.set(batchSize);
+        if (fallback) {
+            fallbackBatchCount.incrementAndGet();
+        }
+        updateMax(maxBatchSize, batchSize);
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public int getRemainingCapacity() {
+        return queue.remainingCapacity();
+    }
+
+    public long getEnqueuedCount() {
+        return enqueuedCount.get();
+    }
+
+    public double getAverageEnqueueLatencyMillis() {
+        long enqueued = enqueuedCount.get();
+        if (enqueued == 0) {
+            return 0;
+        }
+        return (double) totalEnqueueLatencyNanos.get() / enqueued / NANOS_PER_MILLI;
+    }
+
+    public double getMaxEnqueueLatencyMillis() {
+        return (double) maxEnqueueLatencyNanos.get() / NANOS_PER_MILLI;
+    }
+
+    public long getOverflowCount() {
+        return overflowCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public long getSynchronouslyPersistedCount() {
+        return synchronouslyPersistedCount.get();
+    }
+
+    /**
+     * Returns the number of entries taken off the queue by the persistence tasks. Sampling this counter
+     * periodically gives the drain rate of the queue.
+     *
+     * @return number of drained entries.
+     */
+    public long getDrainedCount() {
+        return persistedCount.get();
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    public long getPersistedCount() {
+        return persistedCount.get();
+    }
+
+    public long getFallbackBatchCount() {
+        return fallbackBatchCount.get();
+    }
+
+    public long getLastBatchSize() {
+        return lastBatchSize.get();
+    }
+
+    public long getMaxBatchSize() {
+        return maxBatchSize.get();
+    }
+
+    public double getAverageBatchSize() {
+        long batches = batchCount.get();
+        if (batches == 0) {
+            return 0;
+        }
+        return (double) persistedCount.get() / batches;
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "queueDepth=" + getQueueDepth() + ", remainingCapacity=" + getRemainingCapacity() + ", enqueued=" +
+                getEnqueuedCount() + ", overflowed=" + getOverflowCount() + ", rejected=" + getRejectedCount() +
+                ", batches=" + getBatchCount() + ", persisted=" +
+                getPersistedCount() + ", fallbackBatches=" + getFallbackBatchCount() + ", lastBatchSize=" +
+                getLastBatchSize() + ", maxBatchSize=" + getMaxBatchSize();
+    }
+}
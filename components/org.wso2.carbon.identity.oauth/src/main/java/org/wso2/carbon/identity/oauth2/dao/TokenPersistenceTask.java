@@ -21,18 +21,34 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.identity.base.IdentityException;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.TimeUnit;
 
 /**
- *
+ * Consumer of the asynchronous access token persistence queue. When configured with a batch size greater than one,
+ * the task drains up to that many tokens, waiting at most the configured linger time for the batch to fill, and
+ * persists them within a single transaction.
  */
 public class TokenPersistenceTask implements Runnable {
 
     private static Log log = LogFactory.getLog(TokenPersistenceTask.class);
     private BlockingDeque<AccessContextTokenDO> accessContextTokenQueue;
+    private int batchSize;
+    private long batchLingerTimeInNanos;
+    private TokenPersistenceStatistics statistics;
 
     public TokenPersistenceTask(BlockingDeque<AccessContextTokenDO> accessContextTokenQueue) {
+        this(accessContextTokenQueue, 1, 0, null);
+    }
+
+    public TokenPersistenceTask(BlockingDeque<AccessContextTokenDO> accessContextTokenQueue, int batchSize,
+                                long batchLingerTimeInMillis, TokenPersistenceStatistics statistics) {
         this.accessContextTokenQueue = accessContextTokenQueue;
+        this.batchSize = Math.max(1, batchSize);
+        this.batchLingerTimeInNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, batchLingerTimeInMillis));
+        this.statistics = statistics;
     }
 
     @Override
@@ -46,6 +62,10 @@ public class TokenPersistenceTask implements Runnable {
             try {
                 accessContextTokenDO =  accessContextTokenQueue.take();
                 if (accessContextTokenDO != null) {
+                    if (batchSize > 1) {
+                        persistBatch(accessContextTokenDO);
+                        continue;
+                    }
                     accessToken = accessContextTokenDO.getAccessToken();
                     log.debug("Access Token Data persisting Task is started to run");
                     TokenMgtDAO tokenMgtDAO = new TokenMgtDAO();
@@ -53,6 +73,9 @@ public class TokenPersistenceTask implements Runnable {
                                                    accessContextTokenDO.getNewAccessTokenDO(),
                                                    accessContextTokenDO.getExistingAccessTokenDO(),
                                                    accessContextTokenDO.getUserStoreDomain());
+                    if (statistics != null) {
+                        statistics.recordBatch(1, false);
+                    }
                 }
             } catch (InterruptedException e) {
                 log.error("Error occurred while getting AccessContextTokenDO instance from accessContextTokenQueue" , e);
@@ -61,4 +84,39 @@ public class TokenPersistenceTask implements Runnable {
             }
         }
     }
+
+    private void persistBatch(AccessContextTokenDO first) throws InterruptedException {
+
+        List<AccessContextTokenDO> batch = new ArrayList<>(batchSize);
+        batch.add(first);
+
+        long deadline = System.nanoTime() + batchLingerTimeInNanos;
+        while (batch.size() < batchSize) {
+            if (accessContextTokenQueue.drainTo(batch, batchSize - batch.size()) > 0) {
+                continue;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            AccessContextTokenDO next = accessContextTokenQueue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Access Token Data persisting Task is started to run for a batch of " + batch.size() +
+                    " tokens");
+        }
+        try {
+            boolean batched = new TokenMgtDAO().persistAccessTokens(batch);
+            if (statistics != null) {
+                statistics.recordBatch(batch.size(), !batched);
+            }
+        } catch (IdentityException e) {
+            log.error("Error occurred while persisting a batch of " + batch.size() + " access tokens", e);
+        }
+    }
 }
@@ -0,0 +1,369 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.dao;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.core.util.IdentityDatabaseUtil;
+import org.wso2.carbon.identity.oauth.common.OAuthConstants;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.purge.PurgeCandidate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Data Access Layer functionality for purging unusable access tokens and authorization codes, optionally archiving
+ * them to the IDN_OAUTH2_ACCESS_TOKEN_AUDIT and IDN_OAUTH2_AUTHORIZATION_CODE_AUDIT tables. Rows are read in chunks
+ * ordered by their primary key, each chunk starting after the last key of the previous one, and purged in a
+ * transaction per chunk. The purge is serialized across the cluster by a lease kept in IDN_OAUTH2_PURGE_LEASE.
+ */
+public class TokenPurgeDAO {
+
+    private static final Log log = LogFactory.getLog(TokenPurgeDAO.class);
+    private static final String UTC = "UTC";
+    private static final String IDN_OAUTH2_ACCESS_TOKEN = "IDN_OAUTH2_ACCESS_TOKEN";
+    private static final String ACCESS_TOKEN_KEYSET_CONDITION = "TOKEN_ID > ? AND ";
+    private static final String AUTHORIZATION_CODE_KEYSET_CONDITION = "CODE_ID > ? AND ";
+
+    /**
+     * Take or renew the lease of the given name.
+     *
+     * @param leaseName   name of the lease.
+     * @param leaseOwner  id of the claiming node.
+     * @param leaseExpiry time in milliseconds until which the lease is held.
+     * @return false if the lease is held by another node.
+     * @throws IdentityOAuth2Exception if the lease could not be read or updated.
+     */
+    public boolean acquireLease(String leaseName, String leaseOwner, long leaseExpiry)
+            throws IdentityOAuth2Exception {
+
+        Connection connection = IdentityDatabaseUtil.getDBConnection();
+        PreparedStatement prepStmt = null;
+        try {
+            boolean acquired = updateLease(connection, leaseName, leaseOwner, leaseExpiry);
+            if (!acquired && !leaseExists(connection, leaseName)) {
+                try {
+                    prepStmt = connection.prepareStatement(SQLQueries.INSERT_PURGE_LEASE);
+                    prepStmt.setString(1, leaseName);
+                    prepStmt.setString(2, leaseOwner);
+                    prepStmt.setTimestamp(3, new Timestamp(leaseExpiry), getUTCCalendar());
+                    prepStmt.executeUpdate();
+                    acquired = true;
+                } catch (SQLException e) {
+                    // The lease may have been created concurrently through another node.
+                    IdentityDatabaseUtil.rollBack(connection);
+                    if (!leaseExists(connection, leaseName)) {
+                        throw e;
+                    }
+                }
+            }
+            connection.commit();
+            return acquired;
+        } catch (SQLException e) {
+            IdentityDatabaseUtil.rollBack(connection);
+            throw new IdentityOAuth2Exception("Error occurred while acquiring purge lease : " + leaseName, e);
+        } finally {
+            IdentityDatabaseUtil.closeAllConnections(connection, null, prepStmt);
+        }
+    }
+
+    /**
+     * Release a lease held by the given node, so that any node can take it right away.
+     */
+    public void releaseLease(String leaseName, String leaseOwner) throws IdentityOAuth2Exception {
+
+        Connection connection = IdentityDatabaseUtil.getDBConnection();
+        PreparedStatement prepStmt = null;
+        try {
+            prepStmt = connection.prepareStatement(SQLQueries.RELEASE_PURGE_LEASE);
+            prepStmt.setTimestamp(1, new Timestamp(System.currentTimeMillis()), getUTCCalendar());
+            prepStmt.setString(2, leaseName);
+            prepStmt.setString(3, leaseOwner);
+            prepStmt.executeUpdate();
+            connection.commit();
+        } catch (SQLException e) {
+            IdentityDatabaseUtil.rollBack(connection);
+            throw new IdentityOAuth2Exception("Error occurred while releasing purge lease : " + leaseName, e);
+        } finally {
+            IdentityDatabaseUtil.closeAllConnections(connection, null, prepStmt);
+        }
+    }
+
+    /**
+     * Read the next chunk of access tokens issued before the given time.
+     *
+     * @param accessTokenStoreTable token table to be read.
+     * @param afterTokenId          last token id of the previous chunk, or null for the first chunk.
+     * @param issuedBefore          time in milliseconds.
+     * @param chunkSize             maximum number of tokens to be read.
+     * @return tokens ordered by their token id, with the time their access and refresh tokens are both expired.
+     * Revoked and inactive tokens are expired from their issued time.
+     * @throws IdentityOAuth2Exception if the tokens could not be read.
+     */
+    public List<PurgeCandidate> getAccessTokenCandidates(String accessTokenStoreTable, String afterTokenId,
+                                                         long issuedBefore, int chunkSize)
+            throws IdentityOAuth2Exception {
+
+        String sql = getTokenTableQuery(SQLQueries.RETRIEVE_ACCESS_TOKEN_PURGE_CANDIDATES, accessTokenStoreTable);
+        if (afterTokenId == null) {
+            sql = sql.replace(ACCESS_TOKEN_KEYSET_CONDITION, "");
+        }
+        List<PurgeCandidate> candidates = new ArrayList<>();
+        Connection connection = IdentityDatabaseUtil.getDBConnection();
+        PreparedStatement prepStmt = null;
+        ResultSet resultSet = null;
+        try {
+            prepStmt = connection.prepareStatement(sql);
+            prepStmt.setMaxRows(chunkSize);
+            int index = 1;
+            if (afterTokenId != null) {
+                prepStmt.setString(index++, afterTokenId);
+            }
+            prepStmt.setTimestamp(index, new Timestamp(issuedBefore), getUTCCalendar());
+            resultSet = prepStmt.executeQuery();
+            while (resultSet.next()) {
+                String tokenState = resultSet.getString(2);
+                long issuedTime = getTime(resultSet, 4);
+                long expiryTime;
+                if (OAuthConstants.TokenStates.TOKEN_STATE_REVOKED.equals(tokenState) ||
+                        OAuthConstants.TokenStates.TOKEN_STATE_INACTIVE.equals(tokenState)) {
+                    expiryTime = issuedTime;
+                } else {
+                    expiryTime = PurgeCandidate.getExpiryTime(issuedTime, resultSet.getLong(5));
+                    // Expired access tokens can still be refreshed until their refresh token expires.
+                    if (resultSet.getString(3) != null) {
+                        expiryTime = Math.max(expiryTime, PurgeCandidate.getExpiryTime(getTime(resultSet, 6),
+                                resultSet.getLong(7)));
+                    }
+                }
+                candidates.add(new PurgeCandidate(resultSet.getString(1), expiryTime));
+            }
+        } catch (SQLException e) {
+            throw new IdentityOAuth2Exception("Error occurred while reading access tokens to be purged from " +
+                    accessTokenStoreTable, e);
+        } finally {
+            IdentityDatabaseUtil.closeAllConnections(connection, resultSet, prepStmt);
+        }
+        return candidates;
+    }
+
+    /**
+     * Delete the given access tokens and their scopes, archiving the tokens first if requested.
+     *
+     * @param accessTokenStoreTable token table holding the tokens.
+     * @param tokenIds              ids of the tokens.
+     * @param archive               whether to copy the tokens to IDN_OAUTH2_ACCESS_TOKEN_AUDIT.
+     * @return number of deleted tokens.
+     * @throws IdentityOAuth2Exception if the tokens could not be purged, in which case none is deleted.
+     */
+    public int purgeAccessTokens(String accessTokenStoreTable, List<String> tokenIds, boolean archive)
+            throws IdentityOAuth2Exception {
+
+        String[] statements;
+        if (archive) {
+            statements = new String[]{
+                    getTokenTableQuery(SQLQueries.ARCHIVE_ACCESS_TOKEN, accessTokenStoreTable),
+                    SQLQueries.DELETE_ACCESS_TOKEN_SCOPES_BY_TOKEN_ID,
+                    getTokenTableQuery(SQLQueries.DELETE_ACCESS_TOKEN_BY_TOKEN_ID, accessTokenStoreTable)};
+        } else {
+            statements = new String[]{
+                    SQLQueries.DELETE_ACCESS_TOKEN_SCOPES_BY_TOKEN_ID,
+                    getTokenTableQuery(SQLQueries.DELETE_ACCESS_TOKEN_BY_TOKEN_ID, accessTokenStoreTable)};
+        }
+        return purge(statements, tokenIds, archive, "access tokens of " + accessTokenStoreTable);
+    }
+
+    /**
+     * Read the next chunk of authorization codes issued before the given time.
+     *
+     * @param afterCodeId  last code id of the previous chunk, or null for the first chunk.
+     * @param issuedBefore time in milliseconds.
+     * @param chunkSize    maximum number of codes to be read.
+     * @return codes ordered by their code id, with the time they expire. Codes which are no longer active are
+     * expired from their issued time.
+     * @throws IdentityOAuth2Exception if the codes could not be read.
+     */
+    public List<PurgeCandidate> getAuthorizationCodeCandidates(String afterCodeId, long issuedBefore, int chunkSize)
+            throws IdentityOAuth2Exception {
+
+        String sql = SQLQueries.RETRIEVE_AUTHORIZATION_CODE_PURGE_CANDIDATES;
+        if (afterCodeId == null) {
+            sql = sql.replace(AUTHORIZATION_CODE_KEYSET_CONDITION, "");
+        }
+        List<PurgeCandidate> candidates = new ArrayList<>();
+        Connection connection = IdentityDatabaseUtil.getDBConnection();
+        PreparedStatement prepStmt = null;
+        ResultSet resultSet = null;
+        try {
+            prepStmt = connection.prepareStatement(sql);
+            prepStmt.setMaxRows(chunkSize);
+            int index = 1;
+            if (afterCodeId != null) {
+                prepStmt.setString(index++, afterCodeId);
+            }
+            prepStmt.setTimestamp(index, new Timestamp(issuedBefore), getUTCCalendar());
+            resultSet = prepStmt.executeQuery();
+            while (resultSet.next()) {
+                long issuedTime = getTime(resultSet, 3);
+                long expiryTime = issuedTime;
+                if (OAuthConstants.AuthorizationCodeState.ACTIVE.equals(resultSet.getString(2))) {
+                    expiryTime = PurgeCandidate.getExpiryTime(issuedTime, resultSet.getLong(4));
+                }
+                candidates.add(new PurgeCandidate(resultSet.getString(1), expiryTime));
+            }
+        } catch (SQLException e) {
+            throw new IdentityOAuth2Exception("Error occurred while reading authorization codes to be purged", e);
+        } finally {
+            IdentityDatabaseUtil.closeAllConnections(connection, resultSet, prepStmt);
+        }
+        return candidates;
+    }
+
+    /**
+     * Delete the given authorization codes, archiving them first if requested.
+     *
+     * @param codeIds ids of the codes.
+     * @param archive whether to copy the codes to IDN_OAUTH2_AUTHORIZATION_CODE_AUDIT.
+     * @return number of deleted codes.
+     * @throws IdentityOAuth2Exception if the codes could not be purged, in which case none is deleted.
+     */
+    public int purgeAuthorizationCodes(List<String> codeIds, boolean archive) throws IdentityOAuth2Exception {
+
+        String[] statements;
+        if (archive) {
+            statements = new String[]{SQLQueries.ARCHIVE_AUTHORIZATION_CODE,
+                    SQLQueries.DELETE_AUTHORIZATION_CODE_BY_CODE_ID};
+        } else {
+            statements = new String[]{SQLQueries.DELETE_AUTHORIZATION_CODE_BY_CODE_ID};
+        }
+        return purge(statements, codeIds, archive, "authorization codes");
+    }
+
+    /**
+     * Execute each statement as a batch over the ids, in a single transaction. The archiving statement, if any,
+     * comes first and takes the archived time before the id. The count of the last statement is returned.
+     */
+    private int purge(String[] statements, List<String> ids, boolean archive, String description)
+            throws IdentityOAuth2Exception {
+
+        Timestamp archivedTime = new Timestamp(System.currentTimeMillis());
+        int purgedCount = 0;
+        Connection connection = IdentityDatabaseUtil.getDBConnection();
+        PreparedStatement prepStmt = null;
+        try {
+            connection.setAutoCommit(false);
+            for (int i = 0; i < statements.length; i++) {
+                boolean archiveStatement = archive && i == 0;
+                prepStmt = connection.prepareStatement(statements[i]);
+                for (String id : ids) {
+                    if (archiveStatement) {
+                        prepStmt.setTimestamp(1, archivedTime, getUTCCalendar());
+                        prepStmt.setString(2, id);
+                    } else {
+                        prepStmt.setString(1, id);
+                    }
+                    prepStmt.addBatch();
+                }
+                int[] counts = prepStmt.executeBatch();
+                purgedCount = getUpdateCount(counts, ids.size());
+                IdentityDatabaseUtil.closeStatement(prepStmt);
+                prepStmt = null;
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            IdentityDatabaseUtil.rollBack(connection);
+            throw new IdentityOAuth2Exception("Error occurred while purging " + description, e);
+        } finally {
+            IdentityDatabaseUtil.closeAllConnections(connection, null, prepStmt);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Purged " + purgedCount + " " + description);
+        }
+        return purgedCount;
+    }
+
+    /**
+     * Sum the update counts of a batch. Drivers which do not report the counts of a batch are assumed to have
+     * updated a row per statement.
+     */
+    private static int getUpdateCount(int[] counts, int statementCount) {
+
+        int updateCount = 0;
+        for (int count : counts) {
+            if (count == PreparedStatement.SUCCESS_NO_INFO) {
+                return statementCount;
+            }
+            updateCount += count;
+        }
+        return updateCount;
+    }
+
+    private boolean updateLease(Connection connection, String leaseName, String leaseOwner, long leaseExpiry)
+            throws SQLException {
+
+        PreparedStatement prepStmt = null;
+        try {
+            prepStmt = connection.prepareStatement(SQLQueries.ACQUIRE_PURGE_LEASE);
+            prepStmt.setString(1, leaseOwner);
+            prepStmt.setTimestamp(2, new Timestamp(leaseExpiry), getUTCCalendar());
+            prepStmt.setString(3, leaseName);
+            prepStmt.setString(4, leaseOwner);
+            prepStmt.setTimestamp(5, new Timestamp(System.currentTimeMillis()), getUTCCalendar());
+            return prepStmt.executeUpdate() > 0;
+        } finally {
+            IdentityDatabaseUtil.closeStatement(prepStmt);
+        }
+    }
+
+    private boolean leaseExists(Connection connection, String leaseName) throws SQLException {
+
+        PreparedStatement prepStmt = null;
+        ResultSet resultSet = null;
+        try {
+            prepStmt = connection.prepareStatement(SQLQueries.RETRIEVE_PURGE_LEASE_NAME);
+            prepStmt.setString(1, leaseName);
+            resultSet = prepStmt.executeQuery();
+            return resultSet.next();
+        } finally {
+            IdentityDatabaseUtil.closeAllConnections(null, resultSet, prepStmt);
+        }
+    }
+
+    private static String getTokenTableQuery(String sql, String accessTokenStoreTable) {
+        return sql.replaceAll("\\b" + IDN_OAUTH2_ACCESS_TOKEN + "\\b", accessTokenStoreTable);
+    }
+
+    private static long getTime(ResultSet resultSet, int index) throws SQLException {
+
+        Timestamp timestamp = resultSet.getTimestamp(index, getUTCCalendar());
+        return timestamp == null ? 0 : timestamp.getTime();
+    }
+
+    private static Calendar getUTCCalendar() {
+        return Calendar.getInstance(TimeZone.getTimeZone(UTC));
+    }
+}
@@ -29,14 +29,21 @@ import org.wso2.carbon.identity.application.mgt.listener.ApplicationMgtListener;
 import org.wso2.carbon.identity.base.IdentityRuntimeException;
 import org.wso2.carbon.identity.core.util.IdentityCoreInitializedEvent;
 import org.wso2.carbon.identity.core.util.IdentityDatabaseUtil;
+import org.wso2.carbon.identity.oauth.OAuthAppMetadataService;
 import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
 import org.wso2.carbon.identity.oauth2.OAuth2ScopeService;
 import org.wso2.carbon.identity.oauth2.OAuth2Service;
 import org.wso2.carbon.identity.oauth2.OAuth2TokenValidationService;
 import org.wso2.carbon.identity.oauth2.dao.SQLQueries;
+import org.wso2.carbon.identity.oauth2.dao.TokenHashMigrator;
 import org.wso2.carbon.identity.oauth2.listener.TenantCreationEventListener;
+import org.wso2.carbon.identity.oauth2.purge.TokenPurgeManager;
+import org.wso2.carbon.identity.oauth2.revocation.RevocationJobManager;
+import org.wso2.carbon.identity.oauth2.token.JWTTokenIssuer;
 import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
 import org.wso2.carbon.identity.user.store.configuration.listener.UserStoreConfigListener;
+import org.wso2.carbon.idp.mgt.listener.IdentityProviderMgtListener;
 import org.wso2.carbon.registry.core.service.RegistryService;
 import org.wso2.carbon.stratos.common.listeners.TenantMgtListener;
 
@@ -86,6 +93,7 @@ public class OAuth2ServiceComponent {
         }
         // exposing server configuration as a service 
         OAuthServerConfiguration oauthServerConfig = OAuthServerConfiguration.getInstance();
+        validateTokenIssuerConfig(oauthServerConfig);
         bundleContext.registerService(OAuthServerConfiguration.class.getName(), oauthServerConfig, null);
         OAuth2TokenValidationService tokenValidationService = new OAuth2TokenValidationService();
         bundleContext.registerService(OAuth2TokenValidationService.class.getName(), tokenValidationService, null);
@@ -122,6 +130,16 @@ public class OAuth2ServiceComponent {
         } else {
             log.error("OAuth - ApplicationMgtListener could not be registered.");
         }
+
+        ServiceRegistration idpMgtListenerSR = bundleContext.registerService(
+                IdentityProviderMgtListener.class.getName(), new OAuthIdentityProviderMgtListener(), null);
+        if (idpMgtListenerSR != null) {
+            if (log.isDebugEnabled()) {
+                log.debug("OAuth - IdentityProviderMgtListener registered.");
+            }
+        } else {
+            log.error("OAuth - IdentityProviderMgtListener could not be registered.");
+        }
         if(checkPKCESupport()) {
             OAuth2ServiceComponentHolder.setPkceEnabled(true);
             log.info("PKCE Support enabled.");
@@ -129,6 +147,22 @@ public class OAuth2ServiceComponent {
             OAuth2ServiceComponentHolder.setPkceEnabled(false);
             log.info("PKCE Support is disabled.");
         }
+        // PKCE support decides the columns the applications are read with
+        OAuthAppMetadataService.getInstance().warmUp();
+        // resume the bulk token revocations left unfinished by any node
+        RevocationJobManager.getInstance().start();
+        // backfill the hashes of the tokens persisted before hashed token lookup was enabled
+        TokenHashMigrator.getInstance().start();
+        TokenPurgeManager.getInstance().start();
+    }
+
+    protected void deactivate(ComponentContext context) {
+        RevocationJobManager.getInstance().stop();
+        TokenHashMigrator.getInstance().stop();
+        TokenPurgeManager.getInstance().stop();
+        if (log.isDebugEnabled()) {
+            log.debug("Identity OAuth bundle is deactivated");
+        }
     }
 
     /**
@@ -165,6 +199,23 @@ public class OAuth2ServiceComponent {
          is started */
     }
 
+    /**
+     * Self contained access tokens must be signed with a key only the server holds. Refuse to start if the JWT token
+     * issuer is configured with an HMAC signature algorithm, rather than falling back to another token issuer.
+     */
+    private void validateTokenIssuerConfig(OAuthServerConfiguration oauthServerConfig) {
+
+        if (!JWTTokenIssuer.class.getName().equals(oauthServerConfig.getOauthIdentityTokenGeneratorClassName())) {
+            return;
+        }
+        try {
+            new JWTTokenIssuer();
+        } catch (IdentityOAuth2Exception e) {
+            log.error("Invalid self contained access token configuration.", e);
+            throw new IllegalStateException("Invalid self contained access token configuration.", e);
+        }
+    }
+
     private boolean checkPKCESupport() {
         try (Connection connection = IdentityDatabaseUtil.getDBConnection()) {
 
@@ -32,7 +32,8 @@ import org.wso2.carbon.identity.application.mgt.listener.AbstractApplicationMgtL
 import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
 import org.wso2.carbon.identity.core.util.IdentityUtil;
 import org.wso2.carbon.identity.oauth.IdentityOAuthAdminException;
-import org.wso2.carbon.identity.oauth.cache.AppInfoCache;
+import org.wso2.carbon.identity.oauth.OAuthAppMetadataService;
+import org.wso2.carbon.identity.oauth.cache.AccessTokenValidationNearCache;
 import org.wso2.carbon.identity.oauth.cache.AuthorizationGrantCache;
 import org.wso2.carbon.identity.oauth.cache.AuthorizationGrantCacheEntry;
 import org.wso2.carbon.identity.oauth.cache.AuthorizationGrantCacheKey;
@@ -44,6 +45,8 @@ import org.wso2.carbon.identity.oauth.dao.OAuthAppDAO;
 import org.wso2.carbon.identity.oauth.dao.OAuthConsumerDAO;
 import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
 import org.wso2.carbon.identity.oauth2.dao.TokenMgtDAO;
+import org.wso2.carbon.identity.oauth2.revocation.RevocationJob;
+import org.wso2.carbon.identity.oauth2.revocation.RevocationJobManager;
 
 import java.util.HashSet;
 import java.util.Set;
@@ -240,12 +243,12 @@ public class OAuthApplicationMgtListener extends AbstractApplicationMgtListener
                 }
             }
             if (oauthKeys.size() > 0) {
-                AppInfoCache appInfoCache = AppInfoCache.getInstance();
+                OAuthAppMetadataService appMetadataService = OAuthAppMetadataService.getInstance();
                 for (String oauthKey : oauthKeys) {
                     accessTokens.addAll(tokenMgtDAO.getActiveTokensForConsumerKey(oauthKey));
                     authorizationCodes.addAll(tokenMgtDAO.getAuthorizationCodesForConsumerKey(oauthKey));
                     // Remove client credential from AppInfoCache
-                    appInfoCache.clearCacheEntry(oauthKey);
+                    appMetadataService.invalidate(oauthKey);
                 }
             }
             if (accessTokens.size() > 0) {
@@ -259,6 +262,7 @@ public class OAuthApplicationMgtListener extends AbstractApplicationMgtListener
                     }
 
                     // Remove access token from OAuthCache
+                    AccessTokenValidationNearCache.getInstance().clearCacheEntry(accessToken);
                     OAuthCacheKey oauthCacheKey = new OAuthCacheKey(accessToken);
                     CacheEntry oauthCacheEntry = OAuthCache.getInstance().getValueFromCache(oauthCacheKey);
                     if (oauthCacheEntry != null) {
@@ -329,6 +333,11 @@ public class OAuthApplicationMgtListener extends AbstractApplicationMgtListener
                 final int tenantId = IdentityTenantUtil.getTenantId(tenantDomain);
                 final TokenMgtDAO tokenMgtDAO = new TokenMgtDAO();
 
+                if (RevocationJobManager.getInstance().isEnabled()) {
+                    submitSaaSTokenRevocations(serviceProvider, tenantId, tenantDomain);
+                    return;
+                }
+
                 new Thread(new Runnable() {
                     public void run() {
                         InboundAuthenticationRequestConfig[] configs = serviceProvider.getInboundAuthenticationConfig()
@@ -352,4 +361,24 @@ public class OAuthApplicationMgtListener extends AbstractApplicationMgtListener
             IdentityUtil.threadLocalProperties.get().remove(SAAS_PROPERTY);
         }
     }
+
+    private void submitSaaSTokenRevocations(ServiceProvider serviceProvider, int tenantId, String tenantDomain)
+            throws IdentityApplicationManagementException {
+
+        InboundAuthenticationRequestConfig[] configs = serviceProvider.getInboundAuthenticationConfig()
+                .getInboundAuthenticationRequestConfigs();
+        for (InboundAuthenticationRequestConfig config : configs) {
+            if (IdentityApplicationConstants.OAuth2.NAME.equalsIgnoreCase(config.getInboundAuthType()) &&
+                    config.getInboundAuthKey() != null) {
+                try {
+                    RevocationJobManager.getInstance().submit(RevocationJob.forAppExternalUsers(tenantId,
+                            config.getInboundAuthKey()));
+                } catch (IdentityOAuth2Exception e) {
+                    throw new IdentityApplicationManagementException("Error occurred while submitting the " +
+                            "revocation of access tokens for client ID: " + config.getInboundAuthKey() +
+                            " and tenant domain: " + tenantDomain, e);
+                }
+            }
+        }
+    }
 }
\ No newline at end of file
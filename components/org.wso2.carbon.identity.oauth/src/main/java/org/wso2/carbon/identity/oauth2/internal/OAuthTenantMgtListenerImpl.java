@@ -19,11 +19,16 @@
 package org.wso2.carbon.identity.oauth2.internal;
 
 import org.wso2.carbon.identity.core.AbstractIdentityTenantMgtListener;
+import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
+import org.wso2.carbon.identity.oauth.OAuthAppMetadataService;
 import org.wso2.carbon.identity.oauth.OAuthUtil;
 import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
 import org.wso2.carbon.identity.oauth2.dao.TokenMgtDAO;
 import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
 import org.wso2.carbon.identity.oauth2.model.AuthzCodeDO;
+import org.wso2.carbon.identity.oauth2.revocation.RevocationJob;
+import org.wso2.carbon.identity.oauth2.revocation.RevocationJobManager;
+import org.wso2.carbon.identity.oauth2.token.TokenSigningService;
 import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
 import org.wso2.carbon.stratos.common.exception.StratosException;
 
@@ -39,31 +44,11 @@ public class OAuthTenantMgtListenerImpl extends AbstractIdentityTenantMgtListene
     public void onPreDelete(int tenantId) throws StratosException {
         TokenMgtDAO tokenMgtDAO = new TokenMgtDAO();
         try {
-            Set<AccessTokenDO> accessTokenDOs = tokenMgtDAO.getAccessTokensOfTenant(tenantId);
-            Map<String, AccessTokenDO> latestAccessTokens = new HashMap<>();
-            for (AccessTokenDO accessTokenDO : accessTokenDOs) {
-                String keyString = accessTokenDO.getConsumerKey() + ":" + accessTokenDO.getAuthzUser() + ":" +
-                        OAuth2Util.buildScopeString(accessTokenDO.getScope());
-                AccessTokenDO accessTokenDOFromMap = latestAccessTokens.get(keyString);
-                if (accessTokenDOFromMap != null) {
-                    if (accessTokenDOFromMap.getIssuedTime().before(accessTokenDO.getIssuedTime())) {
-                        latestAccessTokens.put(keyString, accessTokenDO);
-                    }
-                } else {
-                    latestAccessTokens.put(keyString, accessTokenDO);
-                }
-
-                //Clear cache
-                OAuthUtil.clearOAuthCache(accessTokenDO.getConsumerKey(), accessTokenDO.getAuthzUser(),
-                        OAuth2Util.buildScopeString(accessTokenDO.getScope()));
-                OAuthUtil.clearOAuthCache(accessTokenDO.getConsumerKey(), accessTokenDO.getAuthzUser());
-                OAuthUtil.clearOAuthCache(accessTokenDO.getAccessToken());
-            }
-            ArrayList<String> tokensToRevoke = new ArrayList<>();
-            for (Map.Entry entry : latestAccessTokens.entrySet()) {
-                tokensToRevoke.add(((AccessTokenDO) entry.getValue()).getAccessToken());
+            if (RevocationJobManager.getInstance().isEnabled()) {
+                RevocationJobManager.getInstance().submit(RevocationJob.forTenant(tenantId));
+            } else {
+                revokeAccessTokensOfTenant(tokenMgtDAO, tenantId);
             }
-            tokenMgtDAO.revokeTokens(tokensToRevoke.toArray(new String[tokensToRevoke.size()]));
             List<AuthzCodeDO> latestAuthzCodes = tokenMgtDAO.getLatestAuthorizationCodesOfTenant(tenantId);
             for (AuthzCodeDO authzCodeDO : latestAuthzCodes) {
                 // remove the authorization code from the cache
@@ -72,8 +57,39 @@ public class OAuthTenantMgtListenerImpl extends AbstractIdentityTenantMgtListene
 
             }
             tokenMgtDAO.deactivateAuthorizationCode(latestAuthzCodes);
+            OAuthAppMetadataService.getInstance().invalidateTenant(IdentityTenantUtil.getTenantDomain(tenantId));
+            TokenSigningService.getInstance().invalidate(IdentityTenantUtil.getTenantDomain(tenantId));
         } catch (IdentityOAuth2Exception e) {
             throw new StratosException("Error occurred while revoking the access tokens in tenant " + tenantId, e);
         }
     }
+
+    private void revokeAccessTokensOfTenant(TokenMgtDAO tokenMgtDAO, int tenantId) throws IdentityOAuth2Exception {
+
+        Set<AccessTokenDO> accessTokenDOs = tokenMgtDAO.getAccessTokensOfTenant(tenantId);
+        Map<String, AccessTokenDO> latestAccessTokens = new HashMap<>();
+        for (AccessTokenDO accessTokenDO : accessTokenDOs) {
+            String keyString = accessTokenDO.getConsumerKey() + ":" + accessTokenDO.getAuthzUser() + ":" +
+                    OAuth2Util.buildScopeString(accessTokenDO.getScope());
+            AccessTokenDO accessTokenDOFromMap = latestAccessTokens.get(keyString);
+            if (accessTokenDOFromMap != null) {
+                if (accessTokenDOFromMap.getIssuedTime().before(accessTokenDO.getIssuedTime())) {
+                    latestAccessTokens.put(keyString, accessTokenDO);
+                }
+            } else {
+                latestAccessTokens.put(keyString, accessTokenDO);
+            }
+
+            //Clear cache
+            OAuthUtil.clearOAuthCache(accessTokenDO.getConsumerKey(), accessTokenDO.getAuthzUser(),
+                    OAuth2Util.buildScopeString(accessTokenDO.getScope()));
+            OAuthUtil.clearOAuthCache(accessTokenDO.getConsumerKey(), accessTokenDO.getAuthzUser());
+            OAuthUtil.clearOAuthCache(accessTokenDO.getAccessToken());
+        }
+        ArrayList<String> tokensToRevoke = new ArrayList<>();
+        for (Map.Entry entry : latestAccessTokens.entrySet()) {
+            tokensToRevoke.add(((AccessTokenDO) entry.getValue()).getAccessToken());
+        }
+        tokenMgtDAO.revokeTokens(tokensToRevoke.toArray(new String[tokensToRevoke.size()]));
+    }
 }
@@ -19,6 +19,7 @@
 package org.wso2.carbon.identity.oauth2.listener;
 
 
+import org.wso2.carbon.identity.oauth2.token.TokenSigningService;
 import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
 import org.wso2.carbon.stratos.common.beans.TenantInfoBean;
 import org.wso2.carbon.stratos.common.exception.StratosException;
@@ -36,6 +37,8 @@ public class TenantCreationEventListener implements TenantMgtListener {
         int tenantId = tenantInfoBean.getTenantId();
         OAuth2Util.initiateOIDCScopes(tenantId);
         OAuth2Util.initTokenExpiryTimesOfSps(tenantId);
+        // A deleted tenant of the same domain may have left its signing keys behind.
+        TokenSigningService.getInstance().invalidate(tenantInfoBean.getTenantDomain());
     }
 
     @Override
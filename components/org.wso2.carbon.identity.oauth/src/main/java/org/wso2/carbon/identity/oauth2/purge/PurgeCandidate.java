@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.purge;
+
+/**
+ * Access token or authorization code row read by the purge, with the time after which it can no longer be used.
+ */
+public class PurgeCandidate {
+
+    /**
+     * Expiry time of a row which never expires.
+     */
+    public static final long NEVER = Long.MAX_VALUE;
+
+    private final String id;
+    private final long expiryTime;
+
+    public PurgeCandidate(String id, long expiryTime) {
+        this.id = id;
+        this.expiryTime = expiryTime;
+    }
+
+    /**
+     * Returns the primary key of the row, which the purge pages by.
+     *
+     * @return token id or code id.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Returns the time in milliseconds after which the row can no longer be used, or {@link #NEVER}.
+     *
+     * @return expiry time.
+     */
+    public long getExpiryTime() {
+        return expiryTime;
+    }
+
+    /**
+     * Returns the time in milliseconds at which a token or code issued with the given validity period expires.
+     *
+     * @param issuedTime           time in milliseconds.
+     * @param validityPeriodMillis validity period, negative if it never expires.
+     * @return expiry time, or {@link #NEVER}.
+     */
+    public static long getExpiryTime(long issuedTime, long validityPeriodMillis) {
+
+        if (validityPeriodMillis < 0 || validityPeriodMillis > NEVER - issuedTime) {
+            return NEVER;
+        }
+        return issuedTime + validityPeriodMillis;
+    }
+}
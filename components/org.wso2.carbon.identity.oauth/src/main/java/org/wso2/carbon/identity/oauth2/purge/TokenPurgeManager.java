@@ -0,0 +1,367 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.purge;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.oauth.common.OAuthConstants;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.dao.TokenPurgeDAO;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Periodically deletes access tokens and authorization codes which can no longer be used, so that the token tables
+ * do not grow without bound.
+ * <p>
+ * A token is purged once both its access and refresh tokens have been expired for the retention period, and a
+ * revoked or inactive token once it was issued the retention period ago. Authorization codes are purged the same way.
+ * Each run takes a cluster wide lease, so a single node purges at a time, and walks the default and the partitioned
+ * token tables and the authorization code table in chunks by primary key. Each chunk is purged in its own transaction,
+ * the lease is renewed after each chunk, and the deletion rate is capped by the configured rows per second. Purged
+ * rows can be archived to audit tables.
+ * <p>
+ * Requires the IDN_OAUTH2_PURGE_LEASE table, and the IDN_OAUTH2_ACCESS_TOKEN_AUDIT and
+ * IDN_OAUTH2_AUTHORIZATION_CODE_AUDIT tables for archiving. It is disabled by default.
+ */
+public class TokenPurgeManager {
+
+    private static final Log log = LogFactory.getLog(TokenPurgeManager.class);
+
+    private static final String ENABLE = "OAuth.TokenPurge.Enable";
+    private static final String INTERVAL = "OAuth.TokenPurge.Interval";
+    private static final String RETENTION = "OAuth.TokenPurge.Retention";
+    private static final String CHUNK_SIZE = "OAuth.TokenPurge.ChunkSize";
+    private static final String MAX_ROWS_PER_SECOND = "OAuth.TokenPurge.MaxRowsPerSecond";
+    private static final String LEASE_TIMEOUT = "OAuth.TokenPurge.LeaseTimeout";
+    private static final String ARCHIVE_ENABLE = "OAuth.TokenPurge.Archive.Enable";
+
+    private static final String LEASE_NAME = "TOKEN_PURGE";
+
+    private static final long DEFAULT_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long DEFAULT_RETENTION_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final int DEFAULT_CHUNK_SIZE = 500;
+    private static final long DEFAULT_MAX_ROWS_PER_SECOND = 1000;
+    private static final long DEFAULT_LEASE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static volatile TokenPurgeManager instance;
+
+    private final boolean enabled;
+    private final long interval;
+    private final long retention;
+    private final int chunkSize;
+    private final long maxRowsPerSecond;
+    private final long leaseTimeout;
+    private final boolean archiveEnabled;
+
+    // Identifies the leases taken by this node.
+    private final String nodeId = UUID.randomUUID().toString();
+    private final TokenPurgeDAO purgeDAO = new TokenPurgeDAO();
+
+    private final AtomicLong runCount = new AtomicLong();
+    private final AtomicLong purgedTokenCount = new AtomicLong();
+    private final AtomicLong purgedCodeCount = new AtomicLong();
+    private final AtomicLong chunkCount = new AtomicLong();
+    private final AtomicLong totalChunkTimeMillis = new AtomicLong();
+    private final AtomicLong maxChunkTimeMillis = new AtomicLong();
+    private final AtomicLong lastChunkPurgedCount = new AtomicLong();
+    private final AtomicLong lastChunkTimeMillis = new AtomicLong();
+    private final AtomicLong lastRunTime = new AtomicLong();
+
+    private ScheduledExecutorService scheduler;
+
+    private final Runnable purgeTask = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                purge();
+            } catch (Throwable e) {
+                log.error("Error occurred while purging expired tokens and authorization codes", e);
+            }
+        }
+    };
+
+    private TokenPurgeManager() {
+
+        this.enabled = Boolean.parseBoolean(StringUtils.trim(IdentityUtil.getProperty(ENABLE)));
+        this.interval = OAuth2Util.getLongProperty(INTERVAL, DEFAULT_INTERVAL_MILLIS, 1000, Long.MAX_VALUE);
+        this.retention = OAuth2Util.getLongProperty(RETENTION, DEFAULT_RETENTION_MILLIS, 0, Long.MAX_VALUE);
+        this.chunkSize = OAuth2Util.getIntProperty(CHUNK_SIZE, DEFAULT_CHUNK_SIZE, 1, 100000);
+        this.maxRowsPerSecond = OAuth2Util.getLongProperty(MAX_ROWS_PER_SECOND, DEFAULT_MAX_ROWS_PER_SECOND, 0,
+                Long.MAX_VALUE);
+        this.leaseTimeout = OAuth2Util.getLongProperty(LEASE_TIMEOUT, DEFAULT_LEASE_TIMEOUT_MILLIS, 1000,
+                Long.MAX_VALUE);
+        this.archiveEnabled = Boolean.parseBoolean(StringUtils.trim(IdentityUtil.getProperty(ARCHIVE_ENABLE)));
+        if (log.isDebugEnabled()) {
+            log.debug("Token purge enabled : " + enabled + ", interval(ms) : " + interval + ", retention(ms) : " +
+                    retention + ", chunk size : " + chunkSize + ", max rows per second : " + maxRowsPerSecond +
+                    ", lease timeout(ms) : " + leaseTimeout + ", archive enabled : " + archiveEnabled);
+        }
+    }
+
+    public static TokenPurgeManager getInstance() {
+        if (instance == null) {
+            synchronized (TokenPurgeManager.class) {
+                if (instance == null) {
+                    instance = new TokenPurgeManager();
+                }
+            }
+        }
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start purging periodically. The first run starts after one interval.
+     */
+    public synchronized void start() {
+
+        if (!enabled || scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleWithFixedDelay(purgeTask, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("Token purge is scheduled every " + interval + "ms");
+    }
+
+    /**
+     * Stop purging. A run in progress is interrupted between chunks and its lease released.
+     */
+    public synchronized void stop() {
+
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    /**
+     * Purge the tokens and authorization codes which are past the retention, unless another node holds the lease.
+     *
+     * @throws IdentityOAuth2Exception if the lease could not be taken or a chunk could not be purged.
+     */
+    public void purge() throws IdentityOAuth2Exception {
+
+        long startTime = System.currentTimeMillis();
+        if (!purgeDAO.acquireLease(LEASE_NAME, nodeId, startTime + leaseTimeout)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Token purge lease is held by another node. Skipping the purge");
+            }
+            return;
+        }
+        runCount.incrementAndGet();
+        lastRunTime.set(startTime);
+        long purgedTokensBefore = purgedTokenCount.get();
+        long purgedCodesBefore = purgedCodeCount.get();
+        long chunksBefore = chunkCount.get();
+        long expiredBefore = startTime - retention;
+        boolean completed = false;
+        try {
+            completed = purgeAccessTokens(expiredBefore) && purgeAuthorizationCodes(expiredBefore);
+        } finally {
+            try {
+                purgeDAO.releaseLease(LEASE_NAME, nodeId);
+            } catch (IdentityOAuth2Exception e) {
+                log.error("Error occurred while releasing the token purge lease. It is taken over once it expires",
+                        e);
+            }
+            log.info("Token purge " + (completed ? "completed" : "stopped") + ". Purged " +
+                    (purgedTokenCount.get() - purgedTokensBefore) + " access tokens and " +
+                    (purgedCodeCount.get() - purgedCodesBefore) + " authorization codes in " +
+                    (chunkCount.get() - chunksBefore) + " chunks, " + (System.currentTimeMillis() - startTime) +
+                    "ms");
+        }
+    }
+
+    public long getRunCount() {
+        return runCount.get();
+    }
+
+    public long getLastRunTime() {
+        return lastRunTime.get();
+    }
+
+    public long getPurgedTokenCount() {
+        return purgedTokenCount.get();
+    }
+
+    public long getPurgedCodeCount() {
+        return purgedCodeCount.get();
+    }
+
+    public long getChunkCount() {
+        return chunkCount.get();
+    }
+
+    public long getLastChunkPurgedCount() {
+        return lastChunkPurgedCount.get();
+    }
+
+    public long getLastChunkTimeMillis() {
+        return lastChunkTimeMillis.get();
+    }
+
+    public long getMaxChunkTimeMillis() {
+        return maxChunkTimeMillis.get();
+    }
+
+    public double getAverageChunkTimeMillis() {
+        long chunks = chunkCount.get();
+        if (chunks == 0) {
+            return 0;
+        }
+        return (double) totalChunkTimeMillis.get() / chunks;
+    }
+
+    /**
+     * Purge the default and the partitioned token tables.
+     *
+     * @return false if the purge was stopped.
+     */
+    private boolean purgeAccessTokens(long expiredBefore) throws IdentityOAuth2Exception {
+
+        for (String accessTokenStoreTable : getAccessTokenStoreTables()) {
+            String lastTokenId = null;
+            List<PurgeCandidate> candidates;
+            do {
+                long chunkStart = System.currentTimeMillis();
+                candidates = purgeDAO.getAccessTokenCandidates(accessTokenStoreTable, lastTokenId, expiredBefore,
+                        chunkSize);
+                if (candidates.isEmpty()) {
+                    break;
+                }
+                lastTokenId = candidates.get(candidates.size() - 1).getId();
+                List<String> tokenIds = getExpiredIds(candidates, expiredBefore);
+                int purged = 0;
+                if (!tokenIds.isEmpty()) {
+                    purged = purgeDAO.purgeAccessTokens(accessTokenStoreTable, tokenIds, archiveEnabled);
+                    purgedTokenCount.addAndGet(purged);
+                }
+                if (!onChunkPurged(accessTokenStoreTable, candidates.size(), purged, chunkStart)) {
+                    return false;
+                }
+            } while (candidates.size() >= chunkSize);
+        }
+        return true;
+    }
+
+    /**
+     * @return false if the purge was stopped.
+     */
+    private boolean purgeAuthorizationCodes(long expiredBefore) throws IdentityOAuth2Exception {
+
+        String lastCodeId = null;
+        List<PurgeCandidate> candidates;
+        do {
+            long chunkStart = System.currentTimeMillis();
+            candidates = purgeDAO.getAuthorizationCodeCandidates(lastCodeId, expiredBefore, chunkSize);
+            if (candidates.isEmpty()) {
+                break;
+            }
+            lastCodeId = candidates.get(candidates.size() - 1).getId();
+            List<String> codeIds = getExpiredIds(candidates, expiredBefore);
+            int purged = 0;
+            if (!codeIds.isEmpty()) {
+                purged = purgeDAO.purgeAuthorizationCodes(codeIds, archiveEnabled);
+                purgedCodeCount.addAndGet(purged);
+            }
+            if (!onChunkPurged(OAuthConstants.AUTHORIZATION_CODE_STORE_TABLE, candidates.size(), purged,
+                    chunkStart)) {
+                return false;
+            }
+        } while (candidates.size() >= chunkSize);
+        return true;
+    }
+
+    /**
+     * Record a chunk, renew the lease and hold the purge back to the configured rate.
+     *
+     * @return false if the purge has to stop, because the lease was lost or the purge was interrupted.
+     */
+    private boolean onChunkPurged(String table, int readCount, int purgedCount, long chunkStart)
+            throws IdentityOAuth2Exception {
+
+        long chunkTime = System.currentTimeMillis() - chunkStart;
+        chunkCount.incrementAndGet();
+        totalChunkTimeMillis.addAndGet(chunkTime);
+        lastChunkPurgedCount.set(purgedCount);
+        lastChunkTimeMillis.set(chunkTime);
+        long currentMax = maxChunkTimeMillis.get();
+        while (chunkTime > currentMax && !maxChunkTimeMillis.compareAndSet(currentMax, chunkTime)) {
+            currentMax = maxChunkTimeMillis.get();
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Purged " + purgedCount + " of " + readCount + " rows read from " + table + " in " +
+                    chunkTime + "ms");
+        }
+
+        if (!purgeDAO.acquireLease(LEASE_NAME, nodeId, System.currentTimeMillis() + leaseTimeout)) {
+            log.warn("Token purge lease was taken over by another node. Stopping the purge");
+            return false;
+        }
+        if (maxRowsPerSecond > 0 && purgedCount > 0) {
+            long delay = purgedCount * 1000L / maxRowsPerSecond - (System.currentTimeMillis() - chunkStart);
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        return !Thread.currentThread().isInterrupted();
+    }
+
+    private static List<String> getExpiredIds(List<PurgeCandidate> candidates, long expiredBefore) {
+
+        List<String> ids = new ArrayList<>();
+        for (PurgeCandidate candidate : candidates) {
+            if (candidate.getExpiryTime() < expiredBefore) {
+                ids.add(candidate.getId());
+            }
+        }
+        return ids;
+    }
+
+    private List<String> getAccessTokenStoreTables() throws IdentityOAuth2Exception {
+
+        List<String> accessTokenStoreTables = new ArrayList<>();
+        accessTokenStoreTables.add(OAuthConstants.ACCESS_TOKEN_STORE_TABLE);
+        if (OAuth2Util.checkAccessTokenPartitioningEnabled()) {
+            for (String mapping : new LinkedHashSet<>(OAuth2Util.getAvailableUserStoreDomainMappings().values())) {
+                accessTokenStoreTables.add(OAuthConstants.ACCESS_TOKEN_STORE_TABLE + "_" + mapping);
+            }
+        }
+        return accessTokenStoreTables;
+    }
+}
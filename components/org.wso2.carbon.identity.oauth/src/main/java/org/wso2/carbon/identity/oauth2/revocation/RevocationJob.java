@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.revocation;
+
+/**
+ * Durable intent to revoke every access token of a {@link RevocationScope} issued before a point in time.
+ */
+public class RevocationJob {
+
+    public static final String STATE_PENDING = "PENDING";
+    public static final String STATE_RUNNING = "RUNNING";
+    public static final String STATE_COMPLETED = "COMPLETED";
+    public static final String STATE_FAILED = "FAILED";
+
+    private String jobId;
+    private RevocationScope scope;
+    private int tenantId;
+    private String userDomain;
+    private String authzUser;
+    private String consumerKey;
+    private long revokedBefore;
+    private String state;
+    private int attempts;
+    private long processedCount;
+    private long leaseExpiry;
+    private long timeCreated;
+
+    public RevocationJob() {
+    }
+
+    public RevocationJob(RevocationScope scope, int tenantId) {
+        this.scope = scope;
+        this.tenantId = tenantId;
+    }
+
+    /**
+     * Job revoking the tokens of a user.
+     *
+     * @param tenantId   tenant of the user.
+     * @param userDomain user store domain of the user.
+     * @param authzUser  tenant aware username without the user store domain.
+     * @return revocation job.
+     */
+    public static RevocationJob forUser(int tenantId, String userDomain, String authzUser) {
+
+        RevocationJob job = new RevocationJob(RevocationScope.USER, tenantId);
+        job.setUserDomain(userDomain);
+        job.setAuthzUser(authzUser);
+        return job;
+    }
+
+    public static RevocationJob forUserStore(int tenantId, String userDomain) {
+
+        RevocationJob job = new RevocationJob(RevocationScope.USER_STORE, tenantId);
+        job.setUserDomain(userDomain);
+        return job;
+    }
+
+    public static RevocationJob forTenant(int tenantId) {
+        return new RevocationJob(RevocationScope.TENANT, tenantId);
+    }
+
+    /**
+     * Job revoking the tokens of a client.
+     *
+     * @param tenantId    tenant owning the client.
+     * @param consumerKey client id.
+     * @return revocation job.
+     */
+    public static RevocationJob forApp(int tenantId, String consumerKey) {
+
+        RevocationJob job = new RevocationJob(RevocationScope.APP, tenantId);
+        job.setConsumerKey(consumerKey);
+        return job;
+    }
+
+    /**
+     * Job revoking the tokens a SaaS client obtained for users of other tenants.
+     *
+     * @param tenantId    tenant owning the client, tokens of its users are kept.
+     * @param consumerKey client id.
+     * @return revocation job.
+     */
+    public static RevocationJob forAppExternalUsers(int tenantId, String consumerKey) {
+
+        RevocationJob job = new RevocationJob(RevocationScope.APP_EXTERNAL_USERS, tenantId);
+        job.setConsumerKey(consumerKey);
+        return job;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    public RevocationScope getScope() {
+        return scope;
+    }
+
+    public void setScope(RevocationScope scope) {
+        this.scope = scope;
+    }
+
+    public int getTenantId() {
+        return tenantId;
+    }
+
+    public void setTenantId(int tenantId) {
+        this.tenantId = tenantId;
+    }
+
+    public String getUserDomain() {
+        return userDomain;
+    }
+
+    public void setUserDomain(String userDomain) {
+        this.userDomain = userDomain;
+    }
+
+    public String getAuthzUser() {
+        return authzUser;
+    }
+
+    public void setAuthzUser(String authzUser) {
+        this.authzUser = authzUser;
+    }
+
+    public String getConsumerKey() {
+        return consumerKey;
+    }
+
+    public void setConsumerKey(String consumerKey) {
+        this.consumerKey = consumerKey;
+    }
+
+    /**
+     * Returns the time in milliseconds before which the tokens of the scope were issued.
+     *
+     * @return revoked before time.
+     */
+    public long getRevokedBefore() {
+        return revokedBefore;
+    }
+
+    public void setRevokedBefore(long revokedBefore) {
+        this.revokedBefore = revokedBefore;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public long getProcessedCount() {
+        return processedCount;
+    }
+
+    public void setProcessedCount(long processedCount) {
+        this.processedCount = processedCount;
+    }
+
+    /**
+     * Returns the time in milliseconds until which the job is leased to a worker, or the time of its next attempt
+     * after a failure.
+     *
+     * @return lease expiry time, 0 if the job is not leased.
+     */
+    public long getLeaseExpiry() {
+        return leaseExpiry;
+    }
+
+    public void setLeaseExpiry(long leaseExpiry) {
+        this.leaseExpiry = leaseExpiry;
+    }
+
+    public long getTimeCreated() {
+        return timeCreated;
+    }
+
+    public void setTimeCreated(long timeCreated) {
+        this.timeCreated = timeCreated;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("RevocationJob{jobId=").append(jobId).append(", scope=")
+                .append(scope).append(", tenantId=").append(tenantId);
+        if (userDomain != null) {
+            builder.append(", userDomain=").append(userDomain);
+        }
+        if (authzUser != null) {
+            builder.append(", authzUser=").append(authzUser);
+        }
+        if (consumerKey != null) {
+            builder.append(", consumerKey=").append(consumerKey);
+        }
+        return builder.append(", revokedBefore=").append(revokedBefore).append(", state=").append(state)
+                .append(", attempts=").append(attempts).append(", processed=").append(processedCount).append('}')
+                .toString();
+    }
+}
@@ -0,0 +1,422 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.revocation;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.dao.RevocationJobDAO;
+import org.wso2.carbon.identity.oauth2.dao.RevokedBeforeWatermarkDAO;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs bulk token revocations of users, user stores, tenants and clients in the background.
+ * <p>
+ * A revocation is recorded as a {@link RevocationJob} in the job table and added to the {@link RevokedBeforeIndex}
+ * before {@link #submit(RevocationJob)} returns, so the tokens in its scope are rejected right away. A dispatcher
+ * periodically reads the open jobs, synchronizes the index with them and leases runnable jobs to a bounded pool of
+ * workers, which revoke the tokens in chunks, record the progress after each chunk and retry failed jobs with an
+ * exponential back off. A job is dropped from the index only after all of its tokens are revoked and evicted from
+ * the caches.
+ * <p>
+ * With revoked before watermarks enabled, a revocation of a user, user store, tenant or client also moves the
+ * durable watermark of its scope, which every node picks up incrementally and keeps for the watermark retention.
+ * The revocation then takes effect through the watermark alone and the row updates of the job can be deferred by
+ * the row update delay, e.g. to batch them away from the revocation burst.
+ * <p>
+ * Requires the IDN_OAUTH2_REVOCATION_JOB table, and the IDN_OAUTH2_REVOKED_BEFORE table for watermarks. It is
+ * disabled by default, in which case callers revoke tokens synchronously as before.
+ */
+public class RevocationJobManager {
+
+    private static final Log log = LogFactory.getLog(RevocationJobManager.class);
+
+    private static final String ENABLE = "OAuth.AsyncRevocation.Enable";
+    private static final String WORKER_COUNT = "OAuth.AsyncRevocation.WorkerCount";
+    private static final String CHUNK_SIZE = "OAuth.AsyncRevocation.ChunkSize";
+    private static final String POLL_INTERVAL = "OAuth.AsyncRevocation.PollInterval";
+    private static final String LEASE_TIMEOUT = "OAuth.AsyncRevocation.LeaseTimeout";
+    private static final String MAX_ATTEMPTS = "OAuth.AsyncRevocation.MaxAttempts";
+    private static final String RETRY_INTERVAL = "OAuth.AsyncRevocation.RetryInterval";
+    private static final String COMPLETED_JOB_RETENTION = "OAuth.AsyncRevocation.CompletedJobRetention";
+    private static final String WATERMARK_ENABLE = "OAuth.RevokedBeforeWatermark.Enable";
+    private static final String WATERMARK_RETENTION = "OAuth.RevokedBeforeWatermark.Retention";
+    private static final String ROW_UPDATE_DELAY = "OAuth.RevokedBeforeWatermark.RowUpdateDelay";
+
+    private static final int DEFAULT_WORKER_COUNT = 2;
+    private static final int DEFAULT_CHUNK_SIZE = 500;
+    private static final long DEFAULT_POLL_INTERVAL_MILLIS = 5000;
+    private static final long DEFAULT_LEASE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final int DEFAULT_MAX_ATTEMPTS = 10;
+    private static final long DEFAULT_RETRY_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long MAX_RETRY_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long DEFAULT_COMPLETED_JOB_RETENTION_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final long DEFAULT_WATERMARK_RETENTION_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private static volatile RevocationJobManager instance;
+
+    private final boolean enabled;
+    private final int workerCount;
+    private final int chunkSize;
+    private final long pollInterval;
+    private final long leaseTimeout;
+    private final int maxAttempts;
+    private final long retryInterval;
+    private final long completedJobRetention;
+    private final boolean watermarksEnabled;
+    private final long watermarkRetention;
+    private final long rowUpdateDelay;
+
+    // Identifies the leases taken by this node.
+    private final String nodeId = UUID.randomUUID().toString();
+    private final RevocationJobDAO jobDAO = new RevocationJobDAO();
+    private final RevokedBeforeWatermarkDAO watermarkDAO = new RevokedBeforeWatermarkDAO();
+    private final RevokedBeforeIndex index = RevokedBeforeIndex.getInstance();
+    private final Set<String> runningJobs = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong failedAttemptCount = new AtomicLong();
+    private final AtomicLong revokedTokenCount = new AtomicLong();
+
+    private ScheduledExecutorService dispatcher;
+    private ExecutorService workers;
+    private long lastCleanupTime;
+    private long lastWatermarkSyncTime;
+
+    private final Runnable dispatchTask = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                dispatch();
+            } catch (Throwable e) {
+                log.error("Error occurred while dispatching revocation jobs", e);
+            }
+        }
+    };
+
+    private RevocationJobManager() {
+
+        this.enabled = Boolean.parseBoolean(StringUtils.trim(IdentityUtil.getProperty(ENABLE)));
+        this.workerCount = OAuth2Util.getIntProperty(WORKER_COUNT, DEFAULT_WORKER_COUNT, 1, 64);
+        this.chunkSize = OAuth2Util.getIntProperty(CHUNK_SIZE, DEFAULT_CHUNK_SIZE, 1, 100000);
+        this.pollInterval = OAuth2Util.getLongProperty(POLL_INTERVAL, DEFAULT_POLL_INTERVAL_MILLIS, 100,
+                Long.MAX_VALUE);
+        this.leaseTimeout = OAuth2Util.getLongProperty(LEASE_TIMEOUT, DEFAULT_LEASE_TIMEOUT_MILLIS, 1000,
+                Long.MAX_VALUE);
+        this.maxAttempts = OAuth2Util.getIntProperty(MAX_ATTEMPTS, DEFAULT_MAX_ATTEMPTS, 1, Integer.MAX_VALUE);
+        this.retryInterval = OAuth2Util.getLongProperty(RETRY_INTERVAL, DEFAULT_RETRY_INTERVAL_MILLIS, 0,
+                MAX_RETRY_INTERVAL_MILLIS);
+        this.completedJobRetention = OAuth2Util.getLongProperty(COMPLETED_JOB_RETENTION,
+                DEFAULT_COMPLETED_JOB_RETENTION_MILLIS, 0, Long.MAX_VALUE);
+        this.watermarksEnabled = Boolean.parseBoolean(StringUtils.trim(IdentityUtil.getProperty(WATERMARK_ENABLE)));
+        this.rowUpdateDelay = OAuth2Util.getLongProperty(ROW_UPDATE_DELAY, 0, 0, TimeUnit.DAYS.toMillis(7));
+        // A watermark has to outlive the job updating the rows below it.
+        this.watermarkRetention = Math.max(rowUpdateDelay + leaseTimeout,
+                OAuth2Util.getLongProperty(WATERMARK_RETENTION, DEFAULT_WATERMARK_RETENTION_MILLIS, 0,
+                        Long.MAX_VALUE));
+        if (log.isDebugEnabled()) {
+            log.debug("Asynchronous revocation enabled : " + enabled + ", workers : " + workerCount +
+                    ", chunk size : " + chunkSize + ", poll interval(ms) : " + pollInterval + ", lease timeout(ms) : " +
+                    leaseTimeout + ", max attempts : " + maxAttempts + ", watermarks enabled : " + watermarksEnabled +
+                    ", watermark retention(ms) : " + watermarkRetention + ", row update delay(ms) : " +
+                    rowUpdateDelay);
+        }
+    }
+
+    public static RevocationJobManager getInstance() {
+        if (instance == null) {
+            synchronized (RevocationJobManager.class) {
+                if (instance == null) {
+                    instance = new RevocationJobManager();
+                }
+            }
+        }
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start dispatching the open jobs, including the ones left unfinished by a previous run of any node.
+     */
+    public synchronized void start() {
+
+        if (!enabled || dispatcher != null) {
+            return;
+        }
+        workers = Executors.newFixedThreadPool(workerCount);
+        dispatcher = Executors.newSingleThreadScheduledExecutor();
+        dispatcher.scheduleWithFixedDelay(dispatchTask, 0, pollInterval, TimeUnit.MILLISECONDS);
+        log.info("Asynchronous token revocation is started with " + workerCount + " workers");
+    }
+
+    /**
+     * Stop dispatching jobs. Jobs in progress are interrupted between chunks and resumed by any node once their
+     * lease expires.
+     */
+    public synchronized void stop() {
+
+        if (dispatcher == null) {
+            return;
+        }
+        dispatcher.shutdownNow();
+        workers.shutdownNow();
+        dispatcher = null;
+        workers = null;
+    }
+
+    /**
+     * Record a revocation job and return without waiting for the tokens to be revoked. Tokens of the scope issued
+     * before the job is submitted are treated as revoked from this point on.
+     *
+     * @param job revocation job.
+     * @throws IdentityOAuth2Exception if the job could not be persisted, in which case nothing is revoked.
+     */
+    public void submit(RevocationJob job) throws IdentityOAuth2Exception {
+
+        long now = System.currentTimeMillis();
+        job.setJobId(UUID.randomUUID().toString());
+        job.setRevokedBefore(now);
+        job.setTimeCreated(now);
+        job.setState(RevocationJob.STATE_PENDING);
+        if (watermarksEnabled && job.getScope() != RevocationScope.APP_EXTERNAL_USERS) {
+            // The watermark alone revokes the tokens, rows are updated lazily.
+            watermarkDAO.addWatermark(RevokedBeforeIndex.getWatermarkKey(job), job);
+            index.addWatermark(job);
+            job.setLeaseExpiry(now + rowUpdateDelay);
+        }
+        jobDAO.addJob(job);
+        index.addJob(job);
+        submittedCount.incrementAndGet();
+        if (log.isDebugEnabled()) {
+            log.debug("Submitted revocation job : " + job);
+        }
+
+        ScheduledExecutorService currentDispatcher = dispatcher;
+        if (currentDispatcher != null) {
+            try {
+                currentDispatcher.execute(dispatchTask);
+            } catch (RejectedExecutionException e) {
+                log.debug("Revocation job dispatcher is shut down. Job will be picked up later", e);
+            }
+        }
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getOpenJobCount() {
+        return index.size();
+    }
+
+    public int getWatermarkCount() {
+        return index.getWatermarkCount();
+    }
+
+    public int getRunningJobCount() {
+        return runningJobs.size();
+    }
+
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    public long getFailedAttemptCount() {
+        return failedAttemptCount.get();
+    }
+
+    public long getRevokedTokenCount() {
+        return revokedTokenCount.get();
+    }
+
+    private void dispatch() throws IdentityOAuth2Exception {
+
+        long readStart = System.currentTimeMillis();
+        if (watermarksEnabled) {
+            synchronizeWatermarks(readStart);
+        }
+        List<RevocationJob> openJobs = jobDAO.getOpenJobs();
+        index.synchronize(openJobs, readStart);
+
+        ExecutorService currentWorkers = workers;
+        for (RevocationJob job : openJobs) {
+            if (currentWorkers == null || runningJobs.size() >= workerCount) {
+                break;
+            }
+            // Failed jobs stay open so that their tokens are still rejected, but are not retried.
+            if (RevocationJob.STATE_FAILED.equals(job.getState()) || runningJobs.contains(job.getJobId()) ||
+                    job.getLeaseExpiry() > readStart) {
+                continue;
+            }
+            if (!jobDAO.claimJob(job.getJobId(), nodeId, System.currentTimeMillis() + leaseTimeout)) {
+                continue;
+            }
+            runningJobs.add(job.getJobId());
+            try {
+                currentWorkers.execute(new RevocationJobTask(job, this));
+            } catch (RejectedExecutionException e) {
+                // The lease expires and the job is picked up again.
+                runningJobs.remove(job.getJobId());
+                break;
+            }
+        }
+
+        if (completedJobRetention > 0 && readStart - lastCleanupTime > completedJobRetention / 24) {
+            lastCleanupTime = readStart;
+            int removed = jobDAO.removeCompletedJobs(readStart - completedJobRetention);
+            if (log.isDebugEnabled() && removed > 0) {
+                log.debug("Removed " + removed + " completed revocation jobs");
+            }
+            if (watermarksEnabled) {
+                watermarkDAO.removeWatermarks(readStart - watermarkRetention);
+            }
+        }
+    }
+
+    /**
+     * Pick up the watermarks moved since the previous synchronization, by any node, and drop the ones past the
+     * retention. The first synchronization loads all retained watermarks.
+     */
+    private void synchronizeWatermarks(long readStart) throws IdentityOAuth2Exception {
+
+        long retainedSince = readStart - watermarkRetention;
+        // Overlap the previous read to tolerate clock differences between the nodes.
+        long overlap = pollInterval + OAuthServerConfiguration.getInstance().getTimeStampSkewInSeconds() * 1000;
+        long updatedSince = lastWatermarkSyncTime == 0 ? 0 : lastWatermarkSyncTime - overlap;
+        List<RevocationJob> watermarks = watermarkDAO.getWatermarks(updatedSince, retainedSince);
+        for (RevocationJob watermark : watermarks) {
+            index.addWatermark(watermark);
+        }
+        lastWatermarkSyncTime = readStart;
+        int removed = index.removeWatermarksBefore(retainedSince);
+        if (log.isDebugEnabled() && (!watermarks.isEmpty() || removed > 0)) {
+            log.debug("Synchronized " + watermarks.size() + " revoked before watermarks and dropped " + removed +
+                    " past the retention. Watermarks in the index : " + index.getWatermarkCount());
+        }
+    }
+
+    /**
+     * Returns the access token table partitions which may hold tokens in the scope of the job. The default table is
+     * denoted by null.
+     */
+    List<String> getTokenTableDomains(RevocationJob job) throws IdentityOAuth2Exception {
+
+        List<String> domains = new ArrayList<>();
+        if (!OAuth2Util.checkAccessTokenPartitioningEnabled() || !OAuth2Util.checkUserNameAssertionEnabled()) {
+            domains.add(null);
+            return domains;
+        }
+        Map<String, String> domainMappings = OAuth2Util.getAvailableUserStoreDomainMappings();
+        if (job.getScope() == RevocationScope.USER || job.getScope() == RevocationScope.USER_STORE) {
+            String userDomain = job.getUserDomain();
+            if (userDomain != null && domainMappings.containsKey(userDomain)) {
+                userDomain = domainMappings.get(userDomain);
+            }
+            domains.add(userDomain);
+            return domains;
+        }
+        Set<String> partitions = new LinkedHashSet<>();
+        partitions.add(null);
+        partitions.addAll(domainMappings.values());
+        domains.addAll(partitions);
+        return domains;
+    }
+
+    String getNodeId() {
+        return nodeId;
+    }
+
+    long getLeaseTimeout() {
+        return leaseTimeout;
+    }
+
+    RevocationJobDAO getJobDAO() {
+        return jobDAO;
+    }
+
+    void onChunkRevoked(int revokedCount) {
+        revokedTokenCount.addAndGet(revokedCount);
+    }
+
+    void onJobCompleted(RevocationJob job) {
+
+        index.removeJob(job.getJobId());
+        completedCount.incrementAndGet();
+        runningJobs.remove(job.getJobId());
+    }
+
+    /**
+     * Release a job whose attempt failed, either to be retried after a back off or, once the attempts are exhausted,
+     * as failed.
+     */
+    void onJobFailed(RevocationJob job, long processedCount, Exception e) {
+
+        failedAttemptCount.incrementAndGet();
+        int attempts = job.getAttempts() + 1;
+        boolean retry = attempts < maxAttempts;
+        // Double the interval on each attempt, without overflowing for large attempt counts.
+        long backOff = Math.min(MAX_RETRY_INTERVAL_MILLIS, retryInterval << Math.min(attempts - 1, 20));
+        try {
+            jobDAO.releaseFailedJob(job.getJobId(), nodeId, retry ? RevocationJob.STATE_PENDING :
+                    RevocationJob.STATE_FAILED, processedCount, System.currentTimeMillis() + backOff);
+        } catch (IdentityOAuth2Exception releaseError) {
+            log.error("Error occurred while releasing revocation job : " + job.getJobId() + ". It will be retried " +
+                    "once its lease expires", releaseError);
+        } finally {
+            runningJobs.remove(job.getJobId());
+        }
+        if (retry) {
+            log.error("Attempt " + attempts + " of revocation job : " + job + " failed. Retrying in " + backOff +
+                    "ms", e);
+        } else {
+            log.error("Revocation job : " + job + " failed after " + attempts + " attempts. Tokens in its scope are " +
+                    "still rejected, remove the job from IDN_OAUTH2_REVOCATION_JOB once they are revoked", e);
+        }
+    }
+
+    void onJobAbandoned(RevocationJob job) {
+        runningJobs.remove(job.getJobId());
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.revocation;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.oauth.OAuthUtil;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.dao.RevocationJobDAO;
+import org.wso2.carbon.identity.oauth2.dao.TokenMgtDAO;
+import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
+
+import java.util.List;
+
+/**
+ * Worker processing a leased revocation job. Tokens are revoked in chunks, each in its own transaction, and evicted
+ * from the caches before the progress is recorded and the lease renewed. Processing stops if the lease is lost.
+ */
+public class RevocationJobTask implements Runnable {
+
+    private static final Log log = LogFactory.getLog(RevocationJobTask.class);
+
+    private final RevocationJob job;
+    private final RevocationJobManager manager;
+
+    public RevocationJobTask(RevocationJob job, RevocationJobManager manager) {
+        this.job = job;
+        this.manager = manager;
+    }
+
+    @Override
+    public void run() {
+
+        if (log.isDebugEnabled()) {
+            log.debug("Processing revocation job : " + job);
+        }
+        TokenMgtDAO tokenMgtDAO = new TokenMgtDAO();
+        RevocationJobDAO jobDAO = manager.getJobDAO();
+        String nodeId = manager.getNodeId();
+        int chunkSize = manager.getChunkSize();
+        long processedCount = job.getProcessedCount();
+        try {
+            for (String userStoreDomain : manager.getTokenTableDomains(job)) {
+                int revokedCount;
+                do {
+                    if (Thread.currentThread().isInterrupted()) {
+                        manager.onJobAbandoned(job);
+                        return;
+                    }
+                    List<AccessTokenDO> revokedTokens = tokenMgtDAO.revokeAccessTokenChunk(job, userStoreDomain,
+                            chunkSize);
+                    for (AccessTokenDO accessTokenDO : revokedTokens) {
+                        OAuthUtil.clearOAuthCache(accessTokenDO.getConsumerKey(), accessTokenDO.getAuthzUser(),
+                                OAuth2Util.buildScopeString(accessTokenDO.getScope()));
+                        OAuthUtil.clearOAuthCache(accessTokenDO.getConsumerKey(), accessTokenDO.getAuthzUser());
+                        OAuthUtil.clearOAuthCache(accessTokenDO.getAccessToken());
+                    }
+                    revokedCount = revokedTokens.size();
+                    processedCount += revokedCount;
+                    manager.onChunkRevoked(revokedCount);
+                    if (!jobDAO.updateProgress(job.getJobId(), nodeId, processedCount,
+                            System.currentTimeMillis() + manager.getLeaseTimeout())) {
+                        log.warn("Lease of revocation job : " + job.getJobId() + " is lost after revoking " +
+                                processedCount + " tokens. Leaving it to the current lease owner");
+                        manager.onJobAbandoned(job);
+                        return;
+                    }
+                } while (revokedCount >= chunkSize);
+            }
+            if (!jobDAO.completeJob(job.getJobId(), nodeId, processedCount)) {
+                log.warn("Lease of revocation job : " + job.getJobId() + " is lost before it could be completed");
+                manager.onJobAbandoned(job);
+                return;
+            }
+            manager.onJobCompleted(job);
+            if (log.isDebugEnabled()) {
+                log.debug("Revocation job : " + job.getJobId() + " is completed. Revoked " + processedCount +
+                        " tokens");
+            }
+        } catch (IdentityOAuth2Exception | RuntimeException e) {
+            manager.onJobFailed(job, processedCount, e);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.revocation;
+
+/**
+ * Set of access tokens covered by a revocation job.
+ */
+public enum RevocationScope {
+
+    /**
+     * Tokens issued to a single user.
+     */
+    USER,
+
+    /**
+     * Tokens issued to the users of a user store of a tenant.
+     */
+    USER_STORE,
+
+    /**
+     * Tokens issued to the users of a tenant.
+     */
+    TENANT,
+
+    /**
+     * Tokens issued to a client.
+     */
+    APP,
+
+    /**
+     * Tokens issued to a SaaS client for users outside the tenant owning the client.
+     */
+    APP_EXTERNAL_USERS
+}
@@ -0,0 +1,403 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.revocation;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.application.authentication.framework.model.AuthenticatedUser;
+import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
+import org.wso2.carbon.user.core.util.UserCoreUtil;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory index of "tokens issued before T are revoked" watermarks, keyed by tenant, user store, user or client.
+ * A token issued before the watermark of any scope it belongs to is considered revoked, whatever the state of its
+ * row and cached entries is. Checking a token takes a constant number of hash lookups.
+ * <p>
+ * Watermarks come from two sources. Each open revocation job contributes one until all tokens in its scope are
+ * revoked and evicted from the caches. Durable watermarks, loaded from IDN_OAUTH2_REVOKED_BEFORE, stay for a
+ * configured retention regardless of the jobs, so that the rows can be updated lazily.
+ * <p>
+ * Lookups do not lock. The job watermarks are an immutable snapshot rebuilt whenever a job is added or removed, the
+ * durable watermarks are a concurrent map only ever moved forward.
+ */
+public class RevokedBeforeIndex {
+
+    private static final Log log = LogFactory.getLog(RevokedBeforeIndex.class);
+
+    private static final String SEPARATOR = "|";
+    private static final String USER_PREFIX = "U" + SEPARATOR;
+    private static final String USER_STORE_PREFIX = "S" + SEPARATOR;
+    private static final String TENANT_PREFIX = "T" + SEPARATOR;
+    private static final String APP_PREFIX = "A" + SEPARATOR;
+    private static final String APP_EXTERNAL_USERS_PREFIX = "X" + SEPARATOR;
+
+    private static volatile RevokedBeforeIndex instance;
+
+    // Open jobs by job id. Guarded by this.
+    private final Map<String, IndexedJob> jobs = new HashMap<>();
+
+    private volatile Map<String, Watermark> jobWatermarks = Collections.emptyMap();
+
+    private final ConcurrentMap<String, Watermark> durableWatermarks = new ConcurrentHashMap<>();
+
+    private final AtomicLong revokedCount = new AtomicLong();
+
+    private RevokedBeforeIndex() {
+    }
+
+    public static RevokedBeforeIndex getInstance() {
+        if (instance == null) {
+            synchronized (RevokedBeforeIndex.class) {
+                if (instance == null) {
+                    instance = new RevokedBeforeIndex();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Checks whether the token was issued before the watermark of its client, tenant, user store or user.
+     *
+     * @param accessTokenDO access token.
+     * @return true if the token has to be treated as revoked.
+     */
+    public boolean isRevoked(AccessTokenDO accessTokenDO) {
+
+        if (accessTokenDO == null || isEmpty()) {
+            return false;
+        }
+        return isRevoked(accessTokenDO.getConsumerKey(), accessTokenDO.getAuthzUser(), accessTokenDO.getIssuedTime());
+    }
+
+    /**
+     * Checks whether a token of the client and user issued at the given time is below a watermark.
+     *
+     * @param consumerKey client id.
+     * @param authzUser   user the token is issued to.
+     * @param issuedTime  time the token was issued.
+     * @return true if the token has to be treated as revoked.
+     */
+    public boolean isRevoked(String consumerKey, AuthenticatedUser authzUser, Timestamp issuedTime) {
+
+        Map<String, Watermark> snapshot = jobWatermarks;
+        if ((snapshot.isEmpty() && durableWatermarks.isEmpty()) || issuedTime == null) {
+            return false;
+        }
+        long issued = issuedTime.getTime();
+        String tenantDomain = null;
+        if (authzUser != null && authzUser.getTenantDomain() != null) {
+            tenantDomain = authzUser.getTenantDomain().toLowerCase();
+        }
+
+        if (consumerKey != null) {
+            if (isBefore(snapshot, APP_PREFIX + consumerKey, issued)) {
+                return markRevoked();
+            }
+            Watermark watermark = snapshot.get(APP_EXTERNAL_USERS_PREFIX + consumerKey);
+            if (watermark != null && issued < watermark.revokedBefore &&
+                    !watermark.exemptTenantDomain.equals(tenantDomain)) {
+                return markRevoked();
+            }
+        }
+        if (tenantDomain == null) {
+            return false;
+        }
+        if (isBefore(snapshot, TENANT_PREFIX + tenantDomain, issued)) {
+            return markRevoked();
+        }
+        String userDomain = getUserDomain(authzUser.getUserStoreDomain());
+        if (isBefore(snapshot, USER_STORE_PREFIX + tenantDomain + SEPARATOR + userDomain, issued)) {
+            return markRevoked();
+        }
+        String userName = authzUser.getUserName();
+        if (userName != null) {
+            String userKey = USER_PREFIX + tenantDomain + SEPARATOR + userDomain + SEPARATOR;
+            if (isBefore(snapshot, userKey + userName, issued)) {
+                return markRevoked();
+            }
+            // Users of case insensitive user stores are indexed with the lower case username.
+            String lowerCaseUserName = userName.toLowerCase();
+            if (!lowerCaseUserName.equals(userName)) {
+                Watermark watermark = find(snapshot, userKey + lowerCaseUserName);
+                if (watermark != null && issued < watermark.revokedBefore && watermark.caseInsensitive) {
+                    return markRevoked();
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the key under which the watermark of the scope of the job is indexed and persisted.
+     *
+     * @param job revocation job.
+     * @return watermark key.
+     */
+    public static String getWatermarkKey(RevocationJob job) {
+        return Watermark.of(job).key;
+    }
+
+    /**
+     * Adds an open revocation job to the index.
+     *
+     * @param job revocation job.
+     */
+    public synchronized void addJob(RevocationJob job) {
+
+        jobs.put(job.getJobId(), new IndexedJob(Watermark.of(job), System.currentTimeMillis()));
+        rebuild();
+    }
+
+    /**
+     * Removes a job from the index once all tokens in its scope are revoked and evicted from the caches.
+     *
+     * @param jobId job id.
+     */
+    public synchronized void removeJob(String jobId) {
+
+        if (jobs.remove(jobId) != null) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Replaces the indexed jobs with the open jobs read from the job table, so that the jobs submitted through other
+     * nodes are honoured and the completed ones are dropped.
+     *
+     * @param openJobs  jobs which were not completed at the time of reading.
+     * @param readStart time in milliseconds the read was started. Jobs indexed locally after that may not be visible
+     *                  in the result yet and are retained.
+     */
+    public synchronized void synchronize(Collection<RevocationJob> openJobs, long readStart) {
+
+        Set<String> openJobIds = new HashSet<>();
+        boolean changed = false;
+        for (RevocationJob job : openJobs) {
+            openJobIds.add(job.getJobId());
+            if (!jobs.containsKey(job.getJobId())) {
+                jobs.put(job.getJobId(), new IndexedJob(Watermark.of(job), readStart));
+                changed = true;
+            }
+        }
+        for (Iterator<Map.Entry<String, IndexedJob>> iterator = jobs.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<String, IndexedJob> entry = iterator.next();
+            if (!openJobIds.contains(entry.getKey()) && entry.getValue().indexedTime < readStart) {
+                iterator.remove();
+                changed = true;
+            }
+        }
+        if (changed) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Moves the durable watermark of the scope of the revocation to its revoked before time, unless it is further
+     * ahead already.
+     *
+     * @param revocation revocation of a user, user store, tenant or client.
+     */
+    public void addWatermark(RevocationJob revocation) {
+
+        Watermark watermark = Watermark.of(revocation);
+        while (true) {
+            Watermark existing = durableWatermarks.putIfAbsent(watermark.key, watermark);
+            if (existing == null || existing.revokedBefore >= watermark.revokedBefore ||
+                    durableWatermarks.replace(watermark.key, existing, watermark)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Drops the durable watermarks older than the given time. Tokens issued before them are expected to be revoked
+     * in the database by then.
+     *
+     * @param revokedBefore time in milliseconds.
+     * @return number of dropped watermarks.
+     */
+    public int removeWatermarksBefore(long revokedBefore) {
+
+        int removed = 0;
+        for (Iterator<Watermark> iterator = durableWatermarks.values().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().revokedBefore < revokedBefore) {
+                iterator.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public synchronized int size() {
+        return jobs.size();
+    }
+
+    public int getWatermarkCount() {
+        return durableWatermarks.size();
+    }
+
+    public synchronized void clear() {
+
+        jobs.clear();
+        durableWatermarks.clear();
+        rebuild();
+    }
+
+    /**
+     * Returns the number of tokens found to be revoked through the index.
+     *
+     * @return revoked token count.
+     */
+    public long getRevokedCount() {
+        return revokedCount.get();
+    }
+
+    private boolean isEmpty() {
+        return jobWatermarks.isEmpty() && durableWatermarks.isEmpty();
+    }
+
+    private void rebuild() {
+
+        Map<String, Watermark> newWatermarks = new HashMap<>();
+        for (IndexedJob indexedJob : jobs.values()) {
+            Watermark existing = newWatermarks.get(indexedJob.watermark.key);
+            if (existing == null || existing.revokedBefore < indexedJob.watermark.revokedBefore) {
+                newWatermarks.put(indexedJob.watermark.key, indexedJob.watermark);
+            }
+        }
+        jobWatermarks = newWatermarks.isEmpty() ? Collections.<String, Watermark>emptyMap() :
+                Collections.unmodifiableMap(newWatermarks);
+        if (log.isDebugEnabled()) {
+            log.debug("Revoked before index is rebuilt with " + newWatermarks.size() + " watermarks of " +
+                    jobs.size() + " open revocation jobs");
+        }
+    }
+
+    private boolean isBefore(Map<String, Watermark> snapshot, String key, long issuedTime) {
+
+        Watermark watermark = find(snapshot, key);
+        return watermark != null && issuedTime < watermark.revokedBefore;
+    }
+
+    /**
+     * Returns the later of the job and the durable watermark of the key.
+     */
+    private Watermark find(Map<String, Watermark> snapshot, String key) {
+
+        Watermark jobWatermark = snapshot.get(key);
+        Watermark durableWatermark = durableWatermarks.isEmpty() ? null : durableWatermarks.get(key);
+        if (jobWatermark == null) {
+            return durableWatermark;
+        }
+        if (durableWatermark == null || durableWatermark.revokedBefore < jobWatermark.revokedBefore) {
+            return jobWatermark;
+        }
+        return durableWatermark;
+    }
+
+    private boolean markRevoked() {
+
+        revokedCount.incrementAndGet();
+        return true;
+    }
+
+    private static String getUserDomain(String userDomain) {
+
+        if (StringUtils.isBlank(userDomain)) {
+            return IdentityUtil.getPrimaryDomainName().toUpperCase();
+        }
+        return userDomain.toUpperCase();
+    }
+
+    private static class IndexedJob {
+
+        private final Watermark watermark;
+        private final long indexedTime;
+
+        private IndexedJob(Watermark watermark, long indexedTime) {
+            this.watermark = watermark;
+            this.indexedTime = indexedTime;
+        }
+    }
+
+    private static class Watermark {
+
+        private final String key;
+        private final long revokedBefore;
+        private final String exemptTenantDomain;
+        private final boolean caseInsensitive;
+
+        private Watermark(String key, long revokedBefore, String exemptTenantDomain, boolean caseInsensitive) {
+            this.key = key;
+            this.revokedBefore = revokedBefore;
+            this.exemptTenantDomain = exemptTenantDomain;
+            this.caseInsensitive = caseInsensitive;
+        }
+
+        private static Watermark of(RevocationJob job) {
+
+            String tenantDomain;
+            try {
+                tenantDomain = IdentityTenantUtil.getTenantDomain(job.getTenantId()).toLowerCase();
+            } catch (RuntimeException e) {
+                // The tenant is being deleted, none of its tokens can be validated anyway.
+                log.debug("Error occurred while resolving the domain of tenant : " + job.getTenantId(), e);
+                tenantDomain = String.valueOf(job.getTenantId());
+            }
+            switch (job.getScope()) {
+                case USER:
+                    String userDomain = getUserDomain(job.getUserDomain());
+                    String userName = job.getAuthzUser();
+                    boolean caseInsensitive = !IdentityUtil.isUserStoreInUsernameCaseSensitive(
+                            UserCoreUtil.addDomainToName(userName, userDomain), job.getTenantId());
+                    if (caseInsensitive) {
+                        userName = userName.toLowerCase();
+                    }
+                    return new Watermark(USER_PREFIX + tenantDomain + SEPARATOR + userDomain + SEPARATOR + userName,
+                            job.getRevokedBefore(), null, caseInsensitive);
+                case USER_STORE:
+                    return new Watermark(USER_STORE_PREFIX + tenantDomain + SEPARATOR +
+                            getUserDomain(job.getUserDomain()), job.getRevokedBefore(), null, false);
+                case TENANT:
+                    return new Watermark(TENANT_PREFIX + tenantDomain, job.getRevokedBefore(), null, false);
+                case APP:
+                    return new Watermark(APP_PREFIX + job.getConsumerKey(), job.getRevokedBefore(), null, false);
+                default:
+                    return new Watermark(APP_EXTERNAL_USERS_PREFIX + job.getConsumerKey(), job.getRevokedBefore(),
+                            tenantDomain, false);
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.oauth.cache.TokenIssuanceLockCache;
+import org.wso2.carbon.identity.oauth.cache.TokenIssuanceLockCacheEntry;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
+
+import java.util.UUID;
+
+/**
+ * {@link TokenIssuanceLockManager} which, in addition to the local striped locks, takes a lease on the client, user
+ * and scope combination in the distributed {@link TokenIssuanceLockCache} so that members of a cluster do not issue
+ * tokens for the same combination concurrently.
+ * <p>
+ * The lease is taken with a read followed by a write to the cache and is therefore best effort. Any remaining race is
+ * resolved by the 'CON_APP_KEY' constraint recovery of {@link org.wso2.carbon.identity.oauth2.dao.TokenMgtDAO}.
+ */
+public class ClusterAwareTokenIssuanceLockManager extends StripedTokenIssuanceLockManager {
+
+    private static final Log log = LogFactory.getLog(ClusterAwareTokenIssuanceLockManager.class);
+
+    // These config properties are defined in identity.xml
+    private static final String OAUTH_TOKEN_ISSUANCE_LOCK_LEASE_TIME = "OAuth.TokenIssuanceLock.LeaseTime";
+    private static final String OAUTH_TOKEN_ISSUANCE_LOCK_TIMEOUT = "OAuth.TokenIssuanceLock.Timeout";
+
+    private static final long DEFAULT_LEASE_TIME_IN_MILLIS = 10000;
+    private static final long DEFAULT_LOCK_TIMEOUT_IN_MILLIS = 30000;
+    private static final long MIN_RETRY_INTERVAL_IN_MILLIS = 5;
+    private static final long MAX_RETRY_INTERVAL_IN_MILLIS = 100;
+
+    private static final String NODE_ID = UUID.randomUUID().toString();
+
+    private final long leaseTimeInMillis;
+    private final long lockTimeoutInMillis;
+
+    public ClusterAwareTokenIssuanceLockManager() {
+        super();
+        this.leaseTimeInMillis = OAuth2Util.getLongProperty(OAUTH_TOKEN_ISSUANCE_LOCK_LEASE_TIME,
+                DEFAULT_LEASE_TIME_IN_MILLIS, 0, Long.MAX_VALUE);
+        this.lockTimeoutInMillis = OAuth2Util.getLongProperty(OAUTH_TOKEN_ISSUANCE_LOCK_TIMEOUT,
+                DEFAULT_LOCK_TIMEOUT_IN_MILLIS, 0, Long.MAX_VALUE);
+    }
+
+    @Override
+    public TokenIssuanceLock acquire(String consumerKey, String authorizedUser, String scope)
+            throws IdentityOAuth2Exception {
+
+        long deadline = System.currentTimeMillis() + lockTimeoutInMillis;
+        final TokenIssuanceLock localLock = super.acquire(consumerKey, authorizedUser, scope);
+        final String leaseKey = DigestUtils.sha256Hex(consumerKey + ":" + authorizedUser + ":" + scope);
+        final TokenIssuanceLockCache cache = TokenIssuanceLockCache.getInstance();
+
+        try {
+            long retryInterval = MIN_RETRY_INTERVAL_IN_MILLIS;
+            while (true) {
+                long currentTime = System.currentTimeMillis();
+                TokenIssuanceLockCacheEntry lease = cache.getValueFromCache(leaseKey);
+                // A lease of this node cannot be live since the local lock is held. It is a leftover of a failed
+                // release and can be taken over.
+                if (lease == null || lease.isExpired(currentTime) || NODE_ID.equals(lease.getOwnerId())) {
+                    cache.addToCache(leaseKey, new TokenIssuanceLockCacheEntry(NODE_ID,
+                            currentTime + leaseTimeInMillis));
+                    break;
+                }
+                if (currentTime >= deadline) {
+                    throw new IdentityOAuth2Exception("Timed out after " + lockTimeoutInMillis + "ms while " +
+                            "waiting for the cluster token issuance lease of client: " + consumerKey);
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug("Token issuance lease for client: " + consumerKey + " is held by another node. " +
+                            "Retrying in " + retryInterval + "ms");
+                }
+                Thread.sleep(Math.min(retryInterval, deadline - currentTime));
+                retryInterval = Math.min(retryInterval * 2, MAX_RETRY_INTERVAL_IN_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            localLock.release();
+            Thread.currentThread().interrupt();
+            throw new IdentityOAuth2Exception("Interrupted while waiting for the cluster token issuance lease of " +
+                    "client: " + consumerKey, e);
+        } catch (IdentityOAuth2Exception | RuntimeException e) {
+            localLock.release();
+            throw e;
+        }
+
+        return new TokenIssuanceLock() {
+            @Override
+            public void release() {
+                try {
+                    cache.clearCacheEntry(leaseKey);
+                } finally {
+                    localLock.release();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.oauth2.token;
+
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+
+/**
+ * Converts ECDSA signatures between the DER encoding produced by JCA and the concatenated R and S encoding
+ * used by JWS (RFC 7518, section 3.4).
+ */
+final class ECDSASignatureTranscoder {
+
+    private ECDSASignatureTranscoder() {
+    }
+
+    /**
+     * Converts a DER encoded ECDSA signature to R and S concatenated.
+     *
+     * @param derSignature DER encoded signature.
+     * @param outputLength length of the JWS signature, i.e. twice the length of the curve order in bytes.
+     * @return concatenated signature.
+     * @throws IdentityOAuth2Exception if the signature is not a valid DER encoded ECDSA signature.
+     */
+    static byte[] toConcat(byte[] derSignature, int outputLength) throws IdentityOAuth2Exception {
+
+        if (derSignature.length < 8 || derSignature[0] != 0x30) {
+            throw new IdentityOAuth2Exception("Invalid DER encoded ECDSA signature");
+        }
+        int offset;
+        if (derSignature[1] > 0) {
+            offset = 2;
+        } else if (derSignature[1] == (byte) 0x81) {
+            offset = 3;
+        } else {
+            throw new IdentityOAuth2Exception("Invalid DER encoded ECDSA signature");
+        }
+
+        int rLength = derSignature[offset + 1];
+        int sOffset = offset + 2 + rLength;
+        if (sOffset + 2 > derSignature.length) {
+            throw new IdentityOAuth2Exception("Invalid DER encoded ECDSA signature");
+        }
+        int sLength = derSignature[sOffset + 1];
+        if (sOffset + 2 + sLength != derSignature.length) {
+            throw new IdentityOAuth2Exception("Invalid DER encoded ECDSA signature");
+        }
+
+        int componentLength = outputLength / 2;
+        byte[] concatSignature = new byte[outputLength];
+        copyComponent(derSignature, offset + 2, rLength, concatSignature, 0, componentLength);
+        copyComponent(derSignature, sOffset + 2, sLength, concatSignature, componentLength, componentLength);
+        return concatSignature;
+    }
+
+    /**
+     * Converts an ECDSA signature of R and S concatenated to DER encoding.
+     *
+     * @param concatSignature concatenated signature.
+     * @return DER encoded signature.
+     */
+    static byte[] toDER(byte[] concatSignature) {
+
+        int componentLength = concatSignature.length / 2;
+        byte[] r = toDERInteger(concatSignature, 0, componentLength);
+        byte[] s = toDERInteger(concatSignature, componentLength, componentLength);
+
+        int sequenceLength = 2 + r.length + 2 + s.length;
+        int headerLength = sequenceLength > 127 ? 3 : 2;
+        byte[] derSignature = new byte[headerLength + sequenceLength];
+        int offset = 0;
+        derSignature[offset++] = 0x30;
+        if (headerLength == 3) {
+            derSignature[offset++] = (byte) 0x81;
+        }
+        derSignature[offset++] = (byte) sequenceLength;
+        derSignature[offset++] = 0x02;
+        derSignature[offset++] = (byte) r.length;
+        System.arraycopy(r, 0, derSignature, offset, r.length);
+        offset += r.length;
+        derSignature[offset++] = 0x02;
+        derSignature[offset++] = (byte) s.length;
+        System.arraycopy(s, 0, derSignature, offset, s.length);
+        return derSignature;
+    }
+
+    private static void copyComponent(byte[] source, int offset, int length, byte[] target, int targetOffset,
+                                      int componentLength) throws IdentityOAuth2Exception {
+
+        // Skip the leading zeros of the DER integer, including the sign byte.
+        while (length > 0 && source[offset] == 0) {
+            offset++;
+            length--;
+        }
+        if (length > componentLength) {
+            throw new IdentityOAuth2Exception("Invalid DER encoded ECDSA signature");
+        }
+        System.arraycopy(source, offset, target, targetOffset + componentLength - length, length);
+    }
+
+    private static byte[] toDERInteger(byte[] source, int offset, int length) {
+
+        int start = offset;
+        int end = offset + length;
+        while (start < end - 1 && source[start] == 0) {
+            start++;
+        }
+        // Prepend a zero byte if the most significant bit is set, as DER integers are signed.
+        int padding = (source[start] & 0x80) != 0 ? 1 : 0;
+        byte[] integer = new byte[end - start + padding];
+        System.arraycopy(source, start, integer, padding, end - start);
+        return integer;
+    }
+}
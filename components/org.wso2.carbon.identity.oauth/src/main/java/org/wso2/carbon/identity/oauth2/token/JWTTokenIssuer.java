@@ -19,38 +19,28 @@
 package org.wso2.carbon.identity.oauth2.token;
 
 import com.nimbusds.jose.Algorithm;
-import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JWSAlgorithm;
-import com.nimbusds.jose.JWSHeader;
-import com.nimbusds.jose.JWSSigner;
-import com.nimbusds.jose.crypto.RSASSASigner;
 import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.jwt.PlainJWT;
-import com.nimbusds.jwt.SignedJWT;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.oltu.oauth2.common.exception.OAuthSystemException;
-import org.wso2.carbon.base.MultitenantConstants;
-import org.wso2.carbon.core.util.KeyStoreManager;
 import org.wso2.carbon.identity.application.authentication.framework.model.AuthenticatedUser;
-import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
+import org.wso2.carbon.identity.oauth.common.OAuthConstants;
 import org.wso2.carbon.identity.oauth.common.exception.InvalidOAuthClientException;
 import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
 import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
 import org.wso2.carbon.identity.oauth2.authz.OAuthAuthzReqMessageContext;
 import org.wso2.carbon.identity.oauth2.config.SpOAuth2ExpiryTimeConfiguration;
+import org.wso2.carbon.identity.oauth2.token.handlers.grant.AuthorizationGrantHandler;
 import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
 import org.wso2.carbon.identity.openidconnect.CustomClaimsCallbackHandler;
 
-import java.security.Key;
-import java.security.interfaces.RSAPrivateKey;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
-import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Self contained access token builder.
@@ -69,15 +59,14 @@ public class JWTTokenIssuer extends OauthTokenIssuerImpl {
     private static final String SHA384_WITH_EC = "SHA384withEC";
     private static final String SHA512_WITH_EC = "SHA512withEC";
 
-    private static final String KEY_STORE_EXTENSION = ".jks";
     private static final String AUTHORIZATION_PARTY = "azp";
     private static final String AUDIENCE = "aud";
+    private static final String SCOPE = "scope";
+    private static final String AUTHORIZED_USER_TYPE = "aut";
+    private static final String USER_TENANT_DOMAIN = "utd";
 
     private static final Log log = LogFactory.getLog(JWTTokenIssuer.class);
 
-    // We are keeping a private key map which will have private key for each tenant domain. We are keeping this as a
-    // static Map since then we don't need to read the key from keystore every time.
-    private static Map<Integer, Key> privateKeys = new ConcurrentHashMap<>();
     private Algorithm signatureAlgorithm = null;
 
     public JWTTokenIssuer() throws IdentityOAuth2Exception {
@@ -90,6 +79,13 @@ public class JWTTokenIssuer extends OauthTokenIssuerImpl {
 
         // Map signature algorithm from identity.xml to nimbus format, this is a one time configuration.
         signatureAlgorithm = mapSignatureAlgorithm(config.getSignatureAlgorithm());
+
+        // An HMAC signature would be keyed with the client secret, which lets the client mint its own access tokens.
+        if (JWSAlgorithm.HS256.equals(signatureAlgorithm) || JWSAlgorithm.HS384.equals(signatureAlgorithm) ||
+                JWSAlgorithm.HS512.equals(signatureAlgorithm)) {
+            throw new IdentityOAuth2Exception("Signature algorithm " + config.getSignatureAlgorithm() + " is not " +
+                    "allowed for self contained access tokens. Configure an RSA or ECDSA signature algorithm.");
+        }
     }
 
     @Override
@@ -207,6 +203,45 @@ public class JWTTokenIssuer extends OauthTokenIssuerImpl {
     protected String signJWTWithRSA(JWTClaimsSet jwtClaimsSet, OAuthTokenReqMessageContext tokenContext,
                                   OAuthAuthzReqMessageContext authorizationContext) throws IdentityOAuth2Exception {
 
+        return TokenSigningService.getInstance().sign(jwtClaimsSet, (JWSAlgorithm) signatureAlgorithm,
+                getSigningTenantDomain(tokenContext, authorizationContext));
+    }
+
+    /**
+     * HMAC signatures are not allowed for access tokens, since the only shared key is the client secret. They are
+     * supported for ID tokens only.
+     * @param jwtClaimsSet JWT claim set to be signed.
+     * @param tokenContext Token context if available.
+     * @param authorizationContext Authorization context if available.
+     * @return Never returns.
+     * @throws IdentityOAuth2Exception Always.
+     */
+    protected String signJWTWithHMAC(JWTClaimsSet jwtClaimsSet, OAuthTokenReqMessageContext tokenContext,
+                                   OAuthAuthzReqMessageContext authorizationContext) throws IdentityOAuth2Exception {
+
+        throw new IdentityOAuth2Exception("Given signature algorithm " + signatureAlgorithm + " is not allowed for " +
+                "self contained access tokens.");
+    }
+
+    /**
+     * Sign the JWT token with ECDSA (SHA-256, SHA-384, SHA-512) algorithm.
+     * @param jwtClaimsSet JWT claim set to be signed.
+     * @param tokenContext Token context if available.
+     * @param authorizationContext Authorization context if available.
+     * @return Signed JWT token.
+     * @throws IdentityOAuth2Exception
+     */
+    protected String signJWTWithECDSA(JWTClaimsSet jwtClaimsSet, OAuthTokenReqMessageContext tokenContext,
+                                   OAuthAuthzReqMessageContext authorizationContext) throws IdentityOAuth2Exception {
+
+        return TokenSigningService.getInstance().sign(jwtClaimsSet, (JWSAlgorithm) signatureAlgorithm,
+                getSigningTenantDomain(tokenContext, authorizationContext));
+    }
+
+    private String getSigningTenantDomain(OAuthTokenReqMessageContext tokenContext,
+                                          OAuthAuthzReqMessageContext authorizationContext)
+            throws IdentityOAuth2Exception {
+
         try {
             String tenantDomain = null;
 
@@ -223,64 +258,12 @@ public class JWTTokenIssuer extends OauthTokenIssuerImpl {
             if (tenantDomain == null) {
                 throw new IdentityOAuth2Exception("Cannot resolve the tenant domain of the user.");
             }
-
-            int tenantId = IdentityTenantUtil.getTenantId(tenantDomain);
-
-            Key privateKey;
-            if (privateKeys.containsKey(tenantId)) {
-
-                // PrivateKey will not be null because containsKey() true says given key is exist and ConcurrentHashMap
-                // does not allow to store null values.
-                privateKey = privateKeys.get(tenantId);
-            } else {
-
-                // Get tenant's key store manager.
-                KeyStoreManager tenantKSM = KeyStoreManager.getInstance(tenantId);
-                if (MultitenantConstants.SUPER_TENANT_DOMAIN_NAME.equals(tenantDomain)) {
-                    try {
-                        privateKey = tenantKSM.getDefaultPrivateKey();
-                    } catch (Exception e) {
-                        throw new IdentityOAuth2Exception("Error while obtaining private key for super tenant", e);
-                    }
-                } else {
-
-                    // Derive key store name.
-                    String ksName = tenantDomain.trim().replace(".", "-");
-                    String jksName = ksName + KEY_STORE_EXTENSION;
-
-                    // Obtain private key.
-                    privateKey = tenantKSM.getPrivateKey(jksName, tenantDomain);
-                }
-
-                // Add the private key to the static concurrent hash map for later uses.
-                privateKeys.put(tenantId, privateKey);
-            }
-
-            JWSSigner signer = new RSASSASigner((RSAPrivateKey) privateKey);
-            SignedJWT signedJWT = new SignedJWT(new JWSHeader((JWSAlgorithm) signatureAlgorithm), jwtClaimsSet);
-            signedJWT.sign(signer);
-            return signedJWT.serialize();
-        } catch (JOSEException | InvalidOAuthClientException e) {
+            return tenantDomain;
+        } catch (InvalidOAuthClientException e) {
             throw new IdentityOAuth2Exception("Error occurred while signing JWT", e);
         }
     }
 
-    // TODO: Implement JWT signing with HMAC SHA (SHA-256, SHA-384, SHA-512).
-    protected String signJWTWithHMAC(JWTClaimsSet jwtClaimsSet, OAuthTokenReqMessageContext tokenContext,
-                                   OAuthAuthzReqMessageContext authorizationContext) throws IdentityOAuth2Exception {
-
-        throw new IdentityOAuth2Exception("Given signature algorithm " + signatureAlgorithm + " is not supported " +
-                "by the current implementation.");
-    }
-
-    // TODO: Implement JWT signing with ECDSA (SHA-256, SHA-384, SHA-512).
-    protected String signJWTWithECDSA(JWTClaimsSet jwtClaimsSet, OAuthTokenReqMessageContext tokenContext,
-                                   OAuthAuthzReqMessageContext authorizationContext) throws IdentityOAuth2Exception {
-
-        throw new IdentityOAuth2Exception("Given signature algorithm " + signatureAlgorithm + " is not supported " +
-                "by the current implementation.");
-    }
-
     /**
      * This method map signature algorithm define in identity.xml to nimbus signature algorithm format, Strings are
      * defined inline hence there are not being used any where
@@ -330,10 +313,20 @@ public class JWTTokenIssuer extends OauthTokenIssuerImpl {
             throws IdentityOAuth2Exception {
 
         AuthenticatedUser user;
+        String[] scope;
+        String userType = OAuthConstants.UserType.APPLICATION_USER;
         if (authAuthzReqMessageContext != null) {
             user = authAuthzReqMessageContext.getAuthorizationReqDTO().getUser();
+            scope = authAuthzReqMessageContext.getApprovedScope();
         } else {
             user = tokenReqMessageContext.getAuthorizedUser();
+            scope = tokenReqMessageContext.getScope();
+            AuthorizationGrantHandler grantHandler = OAuthServerConfiguration.getInstance().getSupportedGrantTypes()
+                    .get(tokenReqMessageContext.getOauth2AccessTokenReqDTO().getGrantType());
+            if (grantHandler != null && !grantHandler.isOfTypeApplicationUser()) {
+                // The authorized user is the application owner, as set by the AccessTokenIssuer.
+                userType = OAuthConstants.UserType.APPLICATION;
+            }
         }
 
         String issuer = OAuth2Util.getIDTokenIssuer();
@@ -357,6 +350,14 @@ public class JWTTokenIssuer extends OauthTokenIssuerImpl {
         jwtClaimsSet.setExpirationTime(new Date(curTimeInMillis + lifetimeInMillis));
         jwtClaimsSet.setIssueTime(new Date(curTimeInMillis));
         jwtClaimsSet.setJWTID(UUID.randomUUID().toString());
+        // The user type is carried in the token so that application tokens are reported as such on validation.
+        jwtClaimsSet.setClaim(AUTHORIZED_USER_TYPE, userType);
+        // The tenant of the user names the signing key on validation, without a token store lookup.
+        jwtClaimsSet.setClaim(USER_TENANT_DOMAIN, user.getTenantDomain());
+        // Scopes are carried in the token so that it can be validated without a token store lookup.
+        if (scope != null && scope.length > 0) {
+            jwtClaimsSet.setClaim(SCOPE, OAuth2Util.buildScopeString(scope));
+        }
 
         // This is a spec (openid-connect-core-1_0:2.0) requirement for ID tokens. But we are keeping this in JWT
         // as well.
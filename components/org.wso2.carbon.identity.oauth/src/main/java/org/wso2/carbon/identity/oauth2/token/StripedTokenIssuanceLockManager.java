@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Default {@link TokenIssuanceLockManager} which maps each client, user and scope combination onto one of a fixed
+ * number of locks by hash. Unlike synchronizing on interned strings, memory use is bounded, waiting is bounded by a
+ * timeout and contention is observable.
+ */
+public class StripedTokenIssuanceLockManager implements TokenIssuanceLockManager {
+
+    private static final Log log = LogFactory.getLog(StripedTokenIssuanceLockManager.class);
+
+    // These config properties are defined in identity.xml
+    private static final String OAUTH_TOKEN_ISSUANCE_LOCK_STRIPES_PER_CORE = "OAuth.TokenIssuanceLock.StripesPerCore";
+    private static final String OAUTH_TOKEN_ISSUANCE_LOCK_TIMEOUT = "OAuth.TokenIssuanceLock.Timeout";
+
+    private static final int DEFAULT_STRIPES_PER_CORE = 16;
+    private static final long DEFAULT_LOCK_TIMEOUT_IN_MILLIS = 30000;
+    private static final int MAX_STRIPES = 1 << 16;
+
+    private final ReentrantLock[] locks;
+    private final int mask;
+    private final long lockTimeoutInMillis;
+
+    private final AtomicLong acquiredCount = new AtomicLong();
+    private final AtomicLong contendedCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public StripedTokenIssuanceLockManager() {
+        this(Runtime.getRuntime().availableProcessors() * OAuth2Util.getIntProperty(
+                OAUTH_TOKEN_ISSUANCE_LOCK_STRIPES_PER_CORE, DEFAULT_STRIPES_PER_CORE, 1, 1024),
+                OAuth2Util.getLongProperty(OAUTH_TOKEN_ISSUANCE_LOCK_TIMEOUT, DEFAULT_LOCK_TIMEOUT_IN_MILLIS, 0,
+                        Long.MAX_VALUE));
+    }
+
+    public StripedTokenIssuanceLockManager(int stripes, long lockTimeoutInMillis) {
+
+        int size = 1;
+        while (size < stripes && size < MAX_STRIPES) {
+            size <<= 1;
+        }
+        this.locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+        this.lockTimeoutInMillis = lockTimeoutInMillis;
+
+        if (log.isDebugEnabled()) {
+            log.debug("Token issuance lock manager initialized with " + size + " stripes and a lock timeout of " +
+                    lockTimeoutInMillis + "ms");
+        }
+    }
+
+    @Override
+    public TokenIssuanceLock acquire(String consumerKey, String authorizedUser, String scope)
+            throws IdentityOAuth2Exception {
+
+        final ReentrantLock lock = locks[stripeOf(consumerKey, authorizedUser, scope)];
+        if (!lock.tryLock()) {
+            contendedCount.incrementAndGet();
+            long startTime = System.nanoTime();
+            boolean acquired;
+            try {
+                acquired = lock.tryLock(lockTimeoutInMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IdentityOAuth2Exception("Interrupted while waiting for the token issuance lock of client: "
+                        + consumerKey, e);
+            }
+            long waitTime = System.nanoTime() - startTime;
+            totalWaitNanos.addAndGet(waitTime);
+            long currentMax = maxWaitNanos.get();
+            while (waitTime > currentMax && !maxWaitNanos.compareAndSet(currentMax, waitTime)) {
+                currentMax = maxWaitNanos.get();
+            }
+            if (!acquired) {
+                timeoutCount.incrementAndGet();
+                throw new IdentityOAuth2Exception("Timed out after " + lockTimeoutInMillis + "ms while waiting " +
+                        "for the token issuance lock of client: " + consumerKey);
+            }
+        }
+        acquiredCount.incrementAndGet();
+
+        return new TokenIssuanceLock() {
+            @Override
+            public void release() {
+                lock.unlock();
+            }
+        };
+    }
+
+    int stripeOf(String consumerKey, String authorizedUser, String scope) {
+
+        int hash = 31 * (31 * hashOf(consumerKey) + hashOf(authorizedUser)) + hashOf(scope);
+        // Spread the higher bits to the lower bits since only the lower bits are used to select the stripe.
+        hash ^= (hash >>> 16);
+        return hash & mask;
+    }
+
+    private static int hashOf(String value) {
+        return value == null ? 0 : value.hashCode();
+    }
+
+    public int getStripeCount() {
+        return locks.length;
+    }
+
+    public long getAcquiredCount() {
+        return acquiredCount.get();
+    }
+
+    /**
+     * Returns the number of acquisitions which had to wait because the stripe was held by another thread.
+     *
+     * @return number of contended acquisitions.
+     */
+    public long getContendedCount() {
+        return contendedCount.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    public long getTotalWaitTimeInMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get());
+    }
+
+    public long getMaxWaitTimeInMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+    }
+
+    /**
+     * Returns the number of threads currently waiting for any of the stripes.
+     *
+     * @return number of waiting threads.
+     */
+    public int getQueuedThreadCount() {
+
+        int queued = 0;
+        for (ReentrantLock lock : locks) {
+            queued += lock.getQueueLength();
+        }
+        return queued;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token;
+
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+
+/**
+ * Serializes token issuance and revocation for the same client, user and scope so that only one active token is
+ * created per combination. Implementations are configured with the 'TokenIssuanceLockManager' element of the OAuth
+ * configuration in identity.xml.
+ */
+public interface TokenIssuanceLockManager {
+
+    /**
+     * Acquire the lock guarding the given client, user and scope combination.
+     *
+     * @param consumerKey    client ID.
+     * @param authorizedUser authorized user.
+     * @param scope          space separated scope string.
+     * @return acquired lock, which must be released in a finally block.
+     * @throws IdentityOAuth2Exception if the lock could not be acquired within the configured timeout.
+     */
+    TokenIssuanceLock acquire(String consumerKey, String authorizedUser, String scope) throws IdentityOAuth2Exception;
+
+    /**
+     * Lock held on a client, user and scope combination.
+     */
+    interface TokenIssuanceLock {
+
+        /**
+         * Release the lock. Must be called by the thread which acquired it.
+         */
+        void release();
+    }
+}
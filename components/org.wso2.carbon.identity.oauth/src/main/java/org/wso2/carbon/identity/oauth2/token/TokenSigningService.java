@@ -0,0 +1,445 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.oauth2.token;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.util.Base64URL;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.base.MultitenantConstants;
+import org.wso2.carbon.core.util.KeyStoreManager;
+import org.wso2.carbon.identity.base.IdentityException;
+import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
+import org.wso2.carbon.utils.CarbonUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.Certificate;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.RSAPrivateKey;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Signs and verifies self contained tokens. Signing keys, pre-serialized JWS headers and initialized
+ * {@link Signature} instances are cached per tenant and algorithm, so that signing a token only serializes the claims
+ * and computes the signature.
+ * <p>
+ * RSA signatures use the primary key of the tenant key store. ECDSA signatures use the primary key if it is an EC
+ * key, otherwise the key of the alias configured with OAuth.TokenSigning.ECKeyAlias in the same key store. HMAC
+ * signatures use a secret supplied by the caller. They are only used for ID tokens, keyed with the client secret of
+ * the application as defined by OpenID Connect, never for access tokens.
+ * <p>
+ * Signing keys are resolved again from the tenant key store after OAuth.TokenSigning.KeyRefreshInterval seconds.
+ * The keys of a tenant are dropped right away when the tenant is created or deleted, since a tenant created again
+ * with the domain of a deleted tenant has a new key store. Other key store changes, e.g. a key imported through the
+ * key store management service, take effect within the refresh interval. The cached headers and signatures are
+ * dropped when the key changes.
+ */
+public class TokenSigningService {
+
+    private static final Log log = LogFactory.getLog(TokenSigningService.class);
+
+    private static final String KEY_REFRESH_INTERVAL = "OAuth.TokenSigning.KeyRefreshInterval";
+    private static final String SIGNATURE_POOL_SIZE = "OAuth.TokenSigning.SignaturePoolSize";
+    private static final String EC_KEY_ALIAS = "OAuth.TokenSigning.ECKeyAlias";
+    private static final long DEFAULT_KEY_REFRESH_INTERVAL_SECONDS = 300;
+    private static final String KEY_STORE_EXTENSION = ".jks";
+    private static final String EC_KEY_SUFFIX = "#EC";
+
+    private static volatile TokenSigningService instance;
+
+    private final ConcurrentMap<String, SigningKey> signingKeys = new ConcurrentHashMap<>();
+    private final long keyRefreshIntervalMillis;
+    private final int signaturePoolSize;
+    private final String ecKeyAlias;
+
+    private TokenSigningService() {
+
+        keyRefreshIntervalMillis = TimeUnit.SECONDS.toMillis(OAuth2Util.getLongProperty(KEY_REFRESH_INTERVAL,
+                DEFAULT_KEY_REFRESH_INTERVAL_SECONDS, 0, Integer.MAX_VALUE));
+        signaturePoolSize = OAuth2Util.getIntProperty(SIGNATURE_POOL_SIZE,
+                Runtime.getRuntime().availableProcessors() * 2, 0, Integer.MAX_VALUE);
+        ecKeyAlias = StringUtils.trimToNull(IdentityUtil.getProperty(EC_KEY_ALIAS));
+    }
+
+    public static TokenSigningService getInstance() {
+        if (instance == null) {
+            synchronized (TokenSigningService.class) {
+                if (instance == null) {
+                    instance = new TokenSigningService();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Signs the claims with the RSA or EC key of the tenant and returns the compact serialization of the JWS.
+     *
+     * @param jwtClaimsSet       claims to be signed.
+     * @param signatureAlgorithm RSA or ECDSA JWS algorithm.
+     * @param tenantDomain       tenant domain whose key is used for signing.
+     * @return signed and serialized JWT.
+     * @throws IdentityOAuth2Exception if the key cannot be resolved or signing fails.
+     */
+    public String sign(JWTClaimsSet jwtClaimsSet, JWSAlgorithm signatureAlgorithm, String tenantDomain)
+            throws IdentityOAuth2Exception {
+
+        SignerPool signerPool = getSigningKey(tenantDomain, signatureAlgorithm).getSignerPool(signatureAlgorithm);
+        String signingInput = signerPool.getHeader() + "." +
+                Base64URL.encode(jwtClaimsSet.toJSONObject().toJSONString());
+        byte[] signature = signerPool.sign(signingInput.getBytes(StandardCharsets.US_ASCII));
+        return signingInput + "." + Base64URL.encode(signature);
+    }
+
+    /**
+     * Signs the claims with an HMAC of the given secret and returns the compact serialization of the JWS.
+     *
+     * @param jwtClaimsSet       claims to be signed.
+     * @param signatureAlgorithm HMAC JWS algorithm.
+     * @param secret             shared secret.
+     * @return signed and serialized JWT.
+     * @throws IdentityOAuth2Exception if signing fails.
+     */
+    public String signWithSecret(JWTClaimsSet jwtClaimsSet, JWSAlgorithm signatureAlgorithm, String secret)
+            throws IdentityOAuth2Exception {
+
+        if (StringUtils.isEmpty(secret)) {
+            throw new IdentityOAuth2Exception("Secret is required to sign the JWT with " + signatureAlgorithm);
+        }
+        String signingInput = new JWSHeader(signatureAlgorithm).toBase64URL() + "." +
+                Base64URL.encode(jwtClaimsSet.toJSONObject().toJSONString());
+        byte[] signature = computeMac(signatureAlgorithm, secret, signingInput.getBytes(StandardCharsets.US_ASCII));
+        return signingInput + "." + Base64URL.encode(signature);
+    }
+
+    /**
+     * Verifies the signature of an RSA or ECDSA signed JWT against the certificate of the tenant signing key.
+     *
+     * @param signedJWT    parsed JWT.
+     * @param tenantDomain tenant domain whose key signed the token.
+     * @return true if the signature is valid.
+     * @throws IdentityOAuth2Exception if the key cannot be resolved or the algorithm is not supported.
+     */
+    public boolean verify(SignedJWT signedJWT, String tenantDomain) throws IdentityOAuth2Exception {
+
+        JWSAlgorithm signatureAlgorithm = signedJWT.getHeader().getAlgorithm();
+        Certificate certificate = getSigningKey(tenantDomain, signatureAlgorithm).certificate;
+        byte[] signatureBytes = signedJWT.getSignature().decode();
+        try {
+            if (isECAlgorithm(signatureAlgorithm)) {
+                int length = getECSignatureLength(signatureAlgorithm);
+                if (signatureBytes.length != length) {
+                    return false;
+                }
+                signatureBytes = ECDSASignatureTranscoder.toDER(signatureBytes);
+            }
+            Signature signature = Signature.getInstance(getJCAAlgorithm(signatureAlgorithm));
+            signature.initVerify(certificate.getPublicKey());
+            signature.update(signedJWT.getSigningInput());
+            return signature.verify(signatureBytes);
+        } catch (GeneralSecurityException e) {
+            throw new IdentityOAuth2Exception("Error occurred while verifying the JWT signature", e);
+        }
+    }
+
+    public Key getPrivateKey(String tenantDomain) throws IdentityOAuth2Exception {
+        return getSigningKey(tenantDomain, JWSAlgorithm.RS256).privateKey;
+    }
+
+    public Certificate getCertificate(String tenantDomain) throws IdentityOAuth2Exception {
+        return getSigningKey(tenantDomain, JWSAlgorithm.RS256).certificate;
+    }
+
+    public String getKeyId(String tenantDomain) throws IdentityOAuth2Exception {
+        return getSigningKey(tenantDomain, JWSAlgorithm.RS256).keyId;
+    }
+
+    /**
+     * Drops the cached signing keys of the tenant, e.g. after its key store was created or removed.
+     *
+     * @param tenantDomain tenant domain.
+     */
+    public void invalidate(String tenantDomain) {
+
+        if (tenantDomain != null) {
+            signingKeys.remove(tenantDomain);
+            signingKeys.remove(tenantDomain + EC_KEY_SUFFIX);
+        }
+    }
+
+    public static boolean isRSAAlgorithm(JWSAlgorithm signatureAlgorithm) {
+        return JWSAlgorithm.RS256.equals(signatureAlgorithm) || JWSAlgorithm.RS384.equals(signatureAlgorithm) ||
+                JWSAlgorithm.RS512.equals(signatureAlgorithm);
+    }
+
+    public static boolean isECAlgorithm(JWSAlgorithm signatureAlgorithm) {
+        return JWSAlgorithm.ES256.equals(signatureAlgorithm) || JWSAlgorithm.ES384.equals(signatureAlgorithm) ||
+                JWSAlgorithm.ES512.equals(signatureAlgorithm);
+    }
+
+    public static boolean isHMACAlgorithm(JWSAlgorithm signatureAlgorithm) {
+        return JWSAlgorithm.HS256.equals(signatureAlgorithm) || JWSAlgorithm.HS384.equals(signatureAlgorithm) ||
+                JWSAlgorithm.HS512.equals(signatureAlgorithm);
+    }
+
+    private SigningKey getSigningKey(String tenantDomain, JWSAlgorithm signatureAlgorithm)
+            throws IdentityOAuth2Exception {
+
+        if (tenantDomain == null) {
+            tenantDomain = MultitenantConstants.SUPER_TENANT_DOMAIN_NAME;
+        }
+        boolean useECKeyAlias = isECAlgorithm(signatureAlgorithm) && ecKeyAlias != null;
+        String cacheKey = useECKeyAlias ? tenantDomain + EC_KEY_SUFFIX : tenantDomain;
+
+        SigningKey signingKey = signingKeys.get(cacheKey);
+        long now = System.currentTimeMillis();
+        if (signingKey == null || now >= signingKey.refreshTime) {
+            SigningKey loadedKey = loadSigningKey(tenantDomain, useECKeyAlias ? ecKeyAlias : null,
+                    now + keyRefreshIntervalMillis);
+            if (signingKey != null && signingKey.isSameKey(loadedKey)) {
+                // Keep the pooled signatures and headers of the unchanged key.
+                signingKey.refreshTime = loadedKey.refreshTime;
+            } else {
+                if (log.isDebugEnabled()) {
+                    log.debug("Loaded signing key with kid: " + loadedKey.keyId + " for tenant: " + tenantDomain);
+                }
+                signingKeys.put(cacheKey, loadedKey);
+                signingKey = loadedKey;
+            }
+        }
+
+        if ((isRSAAlgorithm(signatureAlgorithm) && !(signingKey.privateKey instanceof RSAPrivateKey)) ||
+                (isECAlgorithm(signatureAlgorithm) && !(signingKey.privateKey instanceof ECPrivateKey))) {
+            throw new IdentityOAuth2Exception("The signing key of tenant " + tenantDomain + " cannot be used with " +
+                    signatureAlgorithm);
+        }
+        return signingKey;
+    }
+
+    private SigningKey loadSigningKey(String tenantDomain, String alias, long refreshTime)
+            throws IdentityOAuth2Exception {
+
+        int tenantId = IdentityTenantUtil.getTenantId(tenantDomain);
+        try {
+            IdentityTenantUtil.initializeRegistry(tenantId, tenantDomain);
+        } catch (IdentityException e) {
+            throw new IdentityOAuth2Exception("Error occurred while loading registry for tenant " + tenantDomain, e);
+        }
+
+        // Get tenant's key store manager.
+        KeyStoreManager tenantKSM = KeyStoreManager.getInstance(tenantId);
+        Key privateKey;
+        Certificate certificate;
+        try {
+            if (MultitenantConstants.SUPER_TENANT_DOMAIN_NAME.equals(tenantDomain)) {
+                if (alias == null) {
+                    privateKey = tenantKSM.getDefaultPrivateKey();
+                    certificate = tenantKSM.getDefaultPrimaryCertificate();
+                } else {
+                    KeyStore keyStore = tenantKSM.getPrimaryKeyStore();
+                    String keyPassword = CarbonUtils.getServerConfiguration().getFirstProperty(
+                            "Security.KeyStore.KeyPassword");
+                    privateKey = keyStore.getKey(alias, keyPassword.toCharArray());
+                    certificate = keyStore.getCertificate(alias);
+                }
+            } else {
+                // Derive key store name.
+                String jksName = tenantDomain.trim().replace(".", "-") + KEY_STORE_EXTENSION;
+                String keyAlias = alias == null ? tenantDomain : alias;
+                privateKey = tenantKSM.getPrivateKey(jksName, keyAlias);
+                certificate = tenantKSM.getKeyStore(jksName).getCertificate(keyAlias);
+            }
+        } catch (Exception e) {
+            throw new IdentityOAuth2Exception("Error while obtaining the signing key of tenant " + tenantDomain, e);
+        }
+
+        if (!(privateKey instanceof PrivateKey) || certificate == null) {
+            throw new IdentityOAuth2Exception("Signing key or certificate not found for tenant " + tenantDomain);
+        }
+        return new SigningKey((PrivateKey) privateKey, certificate, OAuth2Util.getKeyId(certificate), refreshTime);
+    }
+
+    private static byte[] computeMac(JWSAlgorithm signatureAlgorithm, String secret, byte[] signingInput)
+            throws IdentityOAuth2Exception {
+
+        String macAlgorithm;
+        if (JWSAlgorithm.HS256.equals(signatureAlgorithm)) {
+            macAlgorithm = "HmacSHA256";
+        } else if (JWSAlgorithm.HS384.equals(signatureAlgorithm)) {
+            macAlgorithm = "HmacSHA384";
+        } else if (JWSAlgorithm.HS512.equals(signatureAlgorithm)) {
+            macAlgorithm = "HmacSHA512";
+        } else {
+            throw new IdentityOAuth2Exception("Given signature algorithm " + signatureAlgorithm + " is not an HMAC " +
+                    "algorithm.");
+        }
+        try {
+            Mac mac = Mac.getInstance(macAlgorithm);
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), macAlgorithm));
+            return mac.doFinal(signingInput);
+        } catch (GeneralSecurityException e) {
+            throw new IdentityOAuth2Exception("Error occurred while computing the HMAC of the JWT", e);
+        }
+    }
+
+    private static String getJCAAlgorithm(JWSAlgorithm signatureAlgorithm) throws IdentityOAuth2Exception {
+
+        if (JWSAlgorithm.RS256.equals(signatureAlgorithm)) {
+            return "SHA256withRSA";
+        } else if (JWSAlgorithm.RS384.equals(signatureAlgorithm)) {
+            return "SHA384withRSA";
+        } else if (JWSAlgorithm.RS512.equals(signatureAlgorithm)) {
+            return "SHA512withRSA";
+        } else if (JWSAlgorithm.ES256.equals(signatureAlgorithm)) {
+            return "SHA256withECDSA";
+        } else if (JWSAlgorithm.ES384.equals(signatureAlgorithm)) {
+            return "SHA384withECDSA";
+        } else if (JWSAlgorithm.ES512.equals(signatureAlgorithm)) {
+            return "SHA512withECDSA";
+        }
+        throw new IdentityOAuth2Exception("Given signature algorithm " + signatureAlgorithm + " is not supported " +
+                "by the token signing service.");
+    }
+
+    /**
+     * Returns the length of the JWS encoded ECDSA signature, i.e. the length of R and S concatenated.
+     */
+    private static int getECSignatureLength(JWSAlgorithm signatureAlgorithm) {
+
+        if (JWSAlgorithm.ES256.equals(signatureAlgorithm)) {
+            return 64;
+        } else if (JWSAlgorithm.ES384.equals(signatureAlgorithm)) {
+            return 96;
+        }
+        return 132;
+    }
+
+    /**
+     * Signing key of a tenant along with the signer pools of each algorithm used with it.
+     */
+    private class SigningKey {
+
+        private final PrivateKey privateKey;
+        private final Certificate certificate;
+        private final String keyId;
+        private final ConcurrentMap<JWSAlgorithm, SignerPool> signerPools = new ConcurrentHashMap<>();
+        private volatile long refreshTime;
+
+        private SigningKey(PrivateKey privateKey, Certificate certificate, String keyId, long refreshTime) {
+            this.privateKey = privateKey;
+            this.certificate = certificate;
+            this.keyId = keyId;
+            this.refreshTime = refreshTime;
+        }
+
+        private boolean isSameKey(SigningKey other) {
+            return keyId.equals(other.keyId) && privateKey.equals(other.privateKey);
+        }
+
+        private SignerPool getSignerPool(JWSAlgorithm signatureAlgorithm) throws IdentityOAuth2Exception {
+
+            SignerPool signerPool = signerPools.get(signatureAlgorithm);
+            if (signerPool == null) {
+                JWSHeader header = new JWSHeader(signatureAlgorithm);
+                header.setKeyID(keyId);
+                header.setX509CertThumbprint(Base64URL.encode(keyId));
+                int ecSignatureLength = isECAlgorithm(signatureAlgorithm) ?
+                        getECSignatureLength(signatureAlgorithm) : 0;
+                signerPool = new SignerPool(getJCAAlgorithm(signatureAlgorithm), privateKey,
+                        header.toBase64URL().toString(), ecSignatureLength);
+                SignerPool existingPool = signerPools.putIfAbsent(signatureAlgorithm, signerPool);
+                if (existingPool != null) {
+                    signerPool = existingPool;
+                }
+            }
+            return signerPool;
+        }
+    }
+
+    /**
+     * Pool of {@link Signature} instances initialized for signing with one key and algorithm. A {@link Signature}
+     * is reset to its initialized state after each signature, hence it can be reused without initializing it again.
+     */
+    private class SignerPool {
+
+        private final String jcaAlgorithm;
+        private final PrivateKey privateKey;
+        private final String header;
+        private final int ecSignatureLength;
+        private final Queue<Signature> idleSignatures = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger idleCount = new AtomicInteger();
+
+        private SignerPool(String jcaAlgorithm, PrivateKey privateKey, String header, int ecSignatureLength) {
+            this.jcaAlgorithm = jcaAlgorithm;
+            this.privateKey = privateKey;
+            this.header = header;
+            this.ecSignatureLength = ecSignatureLength;
+        }
+
+        private String getHeader() {
+            return header;
+        }
+
+        private byte[] sign(byte[] signingInput) throws IdentityOAuth2Exception {
+
+            Signature signature = idleSignatures.poll();
+            try {
+                if (signature == null) {
+                    signature = Signature.getInstance(jcaAlgorithm);
+                    signature.initSign(privateKey);
+                } else {
+                    idleCount.decrementAndGet();
+                }
+                signature.update(signingInput);
+                byte[] signatureBytes = signature.sign();
+                if (idleCount.incrementAndGet() <= signaturePoolSize) {
+                    idleSignatures.offer(signature);
+                } else {
+                    idleCount.decrementAndGet();
+                }
+                if (ecSignatureLength > 0) {
+                    // JCA produces DER encoded ECDSA signatures while JWS uses R and S concatenated.
+                    signatureBytes = ECDSASignatureTranscoder.toConcat(signatureBytes, ecSignatureLength);
+                }
+                return signatureBytes;
+            } catch (GeneralSecurityException e) {
+                // The failed instance is not returned to the pool.
+                throw new IdentityOAuth2Exception("Error occurred while signing JWT", e);
+            }
+        }
+    }
+}
@@ -43,8 +43,10 @@ import org.wso2.carbon.identity.oauth2.dao.TokenMgtDAO;
 import org.wso2.carbon.identity.oauth2.dto.OAuth2AccessTokenReqDTO;
 import org.wso2.carbon.identity.oauth2.dto.OAuth2AccessTokenRespDTO;
 import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
+import org.wso2.carbon.identity.oauth2.revocation.RevokedBeforeIndex;
 import org.wso2.carbon.identity.oauth2.token.OAuthTokenReqMessageContext;
 import org.wso2.carbon.identity.oauth2.token.OauthTokenIssuer;
+import org.wso2.carbon.identity.oauth2.token.TokenIssuanceLockManager;
 import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
 import org.wso2.carbon.identity.oauth2.validators.OAuth2ScopeHandler;
 
@@ -137,14 +139,18 @@ public abstract class AbstractAuthorizationGrantHandler implements Authorization
         long refreshTokenValidityPeriodInMillis = 0;
         long validityPeriodInMillis = 0;
 
-        synchronized ((consumerKey + ":" + authorizedUser + ":" + scope).intern()) {
+        TokenIssuanceLockManager.TokenIssuanceLock tokenIssuanceLock = OAuthServerConfiguration.getInstance()
+                .getTokenIssuanceLockManager().acquire(consumerKey, authorizedUser, scope);
+        try {
             // check if valid access token exists in cache
             if (cacheEnabled) {
 
                 AccessTokenDO existingAccessTokenDO = null;
 
                 CacheEntry cacheEntry = oauthCache.getValueFromCache(cacheKey);
-                if (cacheEntry != null && cacheEntry instanceof AccessTokenDO) {
+                // a token revoked by a bulk revocation in progress is handled with the one in the database
+                if (cacheEntry != null && cacheEntry instanceof AccessTokenDO &&
+                        !RevokedBeforeIndex.getInstance().isRevoked((AccessTokenDO) cacheEntry)) {
                     existingAccessTokenDO = (AccessTokenDO) cacheEntry;
 
                     if (log.isDebugEnabled()
@@ -250,6 +256,13 @@ public abstract class AbstractAuthorizationGrantHandler implements Authorization
 
                 long refreshTokenExpiryTime = OAuth2Util.getRefreshTokenExpireTimeMillis(existingAccessTokenDO);
 
+                // neither the access token nor the refresh token of a token in the scope of a bulk revocation in
+                // progress can be reused, even though the token is still active in the database
+                if (RevokedBeforeIndex.getInstance().isRevoked(existingAccessTokenDO)) {
+                    expireTime = 0;
+                    refreshTokenExpiryTime = 0;
+                }
+
                 if(OAuthConstants.TokenStates.TOKEN_STATE_ACTIVE.equals(
                         existingAccessTokenDO.getTokenState()) && expireTime != 0) {
                     // token is active and valid
@@ -520,6 +533,8 @@ public abstract class AbstractAuthorizationGrantHandler implements Authorization
             }
             tokenRespDTO.setAuthorizedScopes(scope);
             return tokenRespDTO;
+        } finally {
+            tokenIssuanceLock.release();
         }
     }
 
@@ -21,13 +21,11 @@ package org.wso2.carbon.identity.oauth2.token.handlers.grant;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.identity.base.IdentityException;
-import org.wso2.carbon.identity.oauth.cache.AppInfoCache;
 import org.wso2.carbon.identity.core.util.IdentityUtil;
 import org.wso2.carbon.identity.oauth.cache.OAuthCacheKey;
 import org.wso2.carbon.identity.oauth.common.OAuthConstants;
 import org.wso2.carbon.identity.oauth.common.exception.InvalidOAuthClientException;
 import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
-import org.wso2.carbon.identity.oauth.dao.OAuthAppDAO;
 import org.wso2.carbon.identity.oauth.dao.OAuthAppDO;
 import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
 import org.wso2.carbon.identity.oauth2.dto.OAuth2AccessTokenReqDTO;
@@ -46,13 +44,6 @@ public class AuthorizationCodeGrantHandler extends AbstractAuthorizationGrantHan
     private static final String AUTHZ_CODE = "AuthorizationCode";
 
     private static Log log = LogFactory.getLog(AuthorizationCodeGrantHandler.class);
-    private static AppInfoCache appInfoCache;
-
-
-
-    public AuthorizationCodeGrantHandler() {
-        appInfoCache = AppInfoCache.getInstance();
-    }
 
     @Override
     public boolean validateGrant(OAuthTokenReqMessageContext tokReqMsgCtx) throws IdentityOAuth2Exception {
@@ -74,15 +65,10 @@ public class AuthorizationCodeGrantHandler extends AbstractAuthorizationGrantHan
                     clientId, authorizationCode));
             authzCodeDO = (AuthzCodeDO) oauthCache.getValueFromCache(cacheKey);
         }
-        oAuthAppDO = appInfoCache.getValueFromCache(clientId);
-        if (oAuthAppDO == null) {
-            // we need to pull App info from the DB since it was not found in the cache.
-            try {
-                oAuthAppDO = new OAuthAppDAO().getAppInformation(clientId);
-            } catch (InvalidOAuthClientException e) {
-                throw new IdentityOAuth2Exception("Invalid OAuth client", e);
-            }
-            appInfoCache.addToCache(clientId, oAuthAppDO);
+        try {
+            oAuthAppDO = OAuth2Util.getAppInformationByClientId(clientId);
+        } catch (InvalidOAuthClientException e) {
+            throw new IdentityOAuth2Exception("Invalid OAuth client", e);
         }
         if (log.isDebugEnabled()) {
             if (authzCodeDO != null) {
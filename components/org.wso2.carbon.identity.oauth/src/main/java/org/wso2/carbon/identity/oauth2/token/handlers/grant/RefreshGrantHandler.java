@@ -26,6 +26,7 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.oltu.oauth2.common.error.OAuthError;
 import org.apache.oltu.oauth2.common.exception.OAuthSystemException;
 import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.oauth.cache.AccessTokenValidationNearCache;
 import org.wso2.carbon.identity.oauth.cache.OAuthCacheKey;
 import org.wso2.carbon.identity.oauth.common.OAuthConstants;
 import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
@@ -36,6 +37,7 @@ import org.wso2.carbon.identity.oauth2.dto.OAuth2AccessTokenReqDTO;
 import org.wso2.carbon.identity.oauth2.dto.OAuth2AccessTokenRespDTO;
 import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
 import org.wso2.carbon.identity.oauth2.model.RefreshTokenValidationDataDO;
+import org.wso2.carbon.identity.oauth2.revocation.RevokedBeforeIndex;
 import org.wso2.carbon.identity.oauth2.token.OAuthTokenReqMessageContext;
 import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
 
@@ -87,6 +89,15 @@ public class RefreshGrantHandler extends AbstractAuthorizationGrantHandler {
             return false;
         }
 
+        if (RevokedBeforeIndex.getInstance().isRevoked(tokenReqDTO.getClientId(),
+                validationDataDO.getAuthorizedUser(), validationDataDO.getIssuedTime())) {
+            if (log.isDebugEnabled()) {
+                log.debug("Refresh Token is revoked by a bulk revocation in progress for Client with " +
+                        "Client Id : " + tokenReqDTO.getClientId());
+            }
+            return false;
+        }
+
         String userStoreDomain = null;
         if (OAuth2Util.checkAccessTokenPartitioningEnabled() && OAuth2Util.checkUserNameAssertionEnabled()) {
             try {
@@ -317,6 +328,7 @@ public class RefreshGrantHandler extends AbstractAuthorizationGrantHandler {
             // Remove the old access token from the AccessTokenCache
             OAuthCacheKey accessTokenCacheKey = new OAuthCacheKey(oldAccessToken.getAccessToken());
             oauthCache.clearCacheEntry(accessTokenCacheKey);
+            AccessTokenValidationNearCache.getInstance().clearCacheEntry(oldAccessToken.getAccessToken());
 
             // Add new access token to the OAuthCache
             oauthCache.addToCache(oauthCacheKey, accessTokenDO);
@@ -426,5 +438,6 @@ public class RefreshGrantHandler extends AbstractAuthorizationGrantHandler {
         // Remove the old access token from the AccessTokenCache
         OAuthCacheKey accessTokenCacheKey = new OAuthCacheKey(accessToken);
         oauthCache.clearCacheEntry(accessTokenCacheKey);
+        AccessTokenValidationNearCache.getInstance().clearCacheEntry(accessToken);
     }
 }
@@ -35,7 +35,6 @@ import org.opensaml.saml1.core.SubjectConfirmation;
 import org.opensaml.security.SAMLSignatureProfileValidator;
 import org.opensaml.xml.ConfigurationException;
 import org.opensaml.xml.XMLObject;
-import org.opensaml.xml.security.x509.X509Credential;
 import org.opensaml.xml.signature.SignatureValidator;
 import org.opensaml.xml.validation.ValidationException;
 import org.w3c.dom.NodeList;
@@ -56,14 +55,12 @@ import org.wso2.carbon.identity.oauth2.model.RequestParameter;
 import org.wso2.carbon.identity.oauth2.token.OAuthTokenReqMessageContext;
 import org.wso2.carbon.identity.oauth2.token.handlers.grant.AbstractAuthorizationGrantHandler;
 import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
-import org.wso2.carbon.identity.oauth2.util.X509CredentialImpl;
 import org.wso2.carbon.idp.mgt.IdentityProviderManagementException;
 import org.wso2.carbon.idp.mgt.IdentityProviderManager;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.cert.CertificateException;
-import java.security.cert.X509Certificate;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
@@ -168,7 +165,7 @@ public class SAML1BearerGrantHandler extends AbstractAuthorizationGrantHandler {
         }
 
         try {
-            XMLObject samlObject = IdentityUtil.unmarshall(new String(Base64.decodeBase64(
+            XMLObject samlObject = SAMLAssertionUnmarshaller.getInstance().unmarshall(new String(Base64.decodeBase64(
                     tokReqMsgCtx.getOauth2AccessTokenReqDTO().getAssertion())));
             // Validating for multiple assertions
             NodeList assertionList = samlObject.getDOM().getElementsByTagNameNS(SAMLConstants.SAML1_NS, "Assertion");
@@ -469,10 +466,10 @@ public class SAML1BearerGrantHandler extends AbstractAuthorizationGrantHandler {
             return false;
         }
 
-        X509Certificate x509Certificate = null;
+        SignatureValidator signatureValidator;
         try {
-            x509Certificate = (X509Certificate) IdentityApplicationManagementUtil
-                    .decodeCertificate(identityProvider.getCertificate());
+            signatureValidator = SAMLSignatureValidatorCache.getInstance().getSignatureValidator(identityProvider,
+                    tenantDomain);
         } catch (CertificateException e) {
             String message = "Error occurred while decoding public certificate of Identity Provider "
                     + identityProvider.getIdentityProviderName() + " for tenant domain " + tenantDomain;
@@ -480,8 +477,6 @@ public class SAML1BearerGrantHandler extends AbstractAuthorizationGrantHandler {
         }
 
         try {
-            X509Credential x509Credential = new X509CredentialImpl(x509Certificate);
-            SignatureValidator signatureValidator = new SignatureValidator(x509Credential);
             signatureValidator.validate(assertion.getSignature());
             if(log.isDebugEnabled()) {
                 log.debug("Signature validation successful");
@@ -34,7 +34,6 @@ import org.opensaml.saml2.core.SubjectConfirmation;
 import org.opensaml.security.SAMLSignatureProfileValidator;
 import org.opensaml.xml.ConfigurationException;
 import org.opensaml.xml.XMLObject;
-import org.opensaml.xml.security.x509.X509Credential;
 import org.opensaml.xml.signature.SignatureValidator;
 import org.opensaml.xml.validation.ValidationException;
 import org.w3c.dom.NodeList;
@@ -51,6 +50,7 @@ import org.wso2.carbon.identity.base.IdentityConstants;
 import org.wso2.carbon.identity.base.IdentityException;
 import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
 import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.oauth.cache.SAML2AssertionReplayCache;
 import org.wso2.carbon.identity.oauth.common.OAuthConstants;
 import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
 import org.wso2.carbon.identity.oauth.internal.OAuthComponentServiceHolder;
@@ -59,7 +59,6 @@ import org.wso2.carbon.identity.oauth2.internal.OAuth2ServiceComponentHolder;
 import org.wso2.carbon.identity.oauth2.token.OAuthTokenReqMessageContext;
 import org.wso2.carbon.identity.oauth2.token.handlers.grant.AbstractAuthorizationGrantHandler;
 import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
-import org.wso2.carbon.identity.oauth2.util.X509CredentialImpl;
 import org.wso2.carbon.idp.mgt.IdentityProviderManagementException;
 import org.wso2.carbon.idp.mgt.IdentityProviderManager;
 import org.wso2.carbon.user.api.UserStoreException;
@@ -69,7 +68,6 @@ import org.wso2.carbon.user.core.util.UserCoreUtil;
 import org.wso2.carbon.utils.multitenancy.MultitenantUtils;
 
 import java.security.cert.CertificateException;
-import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashMap;
@@ -146,7 +144,7 @@ public class SAML2BearerGrantHandler extends AbstractAuthorizationGrantHandler {
         }
 
         try {
-            XMLObject samlObject = IdentityUtil.unmarshall(new String(Base64.decodeBase64(
+            XMLObject samlObject = SAMLAssertionUnmarshaller.getInstance().unmarshall(new String(Base64.decodeBase64(
                     tokReqMsgCtx.getOauth2AccessTokenReqDTO().getAssertion())));
             // Validating for multiple assertions
             NodeList assertionList = samlObject.getDOM().getElementsByTagNameNS(SAMLConstants.SAML20_NS, "Assertion");
@@ -174,6 +172,24 @@ public class SAML2BearerGrantHandler extends AbstractAuthorizationGrantHandler {
             return false;
         }
 
+        // Reject replayed assertions before looking up the issuer and validating the signature.
+        SAML2AssertionReplayCache replayCache = SAML2AssertionReplayCache.getInstance();
+        if (replayCache.isEnabled()) {
+            if (StringUtils.isBlank(assertion.getID()) || assertion.getIssuer() == null) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Cannot find the ID or the Issuer of the SAML assertion to detect replays");
+                }
+                return false;
+            }
+            if (replayCache.isReplayed(assertion.getIssuer().getValue(), assertion.getID())) {
+                if (log.isDebugEnabled()) {
+                    log.debug("SAML assertion : " + assertion.getID() + " of issuer : " +
+                            assertion.getIssuer().getValue() + " has already been used");
+                }
+                return false;
+            }
+        }
+
         /*
           The Assertion MUST contain a <Subject> element.  The subject MAY identify the resource owner for whom
           the access token is being requested.  For client authentication, the Subject MUST be the "client_id"
@@ -549,18 +565,16 @@ public class SAML2BearerGrantHandler extends AbstractAuthorizationGrantHandler {
             return false;
         }
 
-        X509Certificate x509Certificate = null;
+        SignatureValidator signatureValidator;
         try {
-            x509Certificate = (X509Certificate) IdentityApplicationManagementUtil
-                    .decodeCertificate(identityProvider.getCertificate());
+            signatureValidator = SAMLSignatureValidatorCache.getInstance().getSignatureValidator(identityProvider,
+                    tenantDomain);
         } catch (CertificateException e) {
             throw new IdentityOAuth2Exception("Error occurred while decoding public certificate of Identity Provider "
                     + identityProvider.getIdentityProviderName() + " for tenant domain " + tenantDomain, e);
         }
 
         try {
-            X509Credential x509Credential = new X509CredentialImpl(x509Certificate);
-            SignatureValidator signatureValidator = new SignatureValidator(x509Credential);
             signatureValidator.validate(assertion.getSignature());
             if (log.isDebugEnabled()){
                 log.debug("Signature validation successful");
@@ -570,6 +584,16 @@ public class SAML2BearerGrantHandler extends AbstractAuthorizationGrantHandler {
             return false;
         }
 
+        // Only validated assertions are recorded, so a forged assertion cannot block a genuine one with its ID.
+        if (replayCache.isEnabled() && !replayCache.addUsedAssertion(assertion.getIssuer().getValue(),
+                assertion.getID(), notOnOrAfterFromConditions.getMillis() + timestampSkewInMillis)) {
+            if (log.isDebugEnabled()) {
+                log.debug("SAML assertion : " + assertion.getID() + " of issuer : " +
+                        assertion.getIssuer().getValue() + " has been used concurrently");
+            }
+            return false;
+        }
+
 
         /*
           The authorization server MUST verify that the Assertion is valid in all other respects per
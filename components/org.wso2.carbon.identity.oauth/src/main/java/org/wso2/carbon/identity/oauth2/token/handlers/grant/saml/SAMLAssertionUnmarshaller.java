@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handlers.grant.saml;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.opensaml.xml.Configuration;
+import org.opensaml.xml.XMLObject;
+import org.opensaml.xml.io.Unmarshaller;
+import org.opensaml.xml.io.UnmarshallingException;
+import org.opensaml.xml.parse.BasicParserPool;
+import org.opensaml.xml.parse.XMLParserException;
+import org.w3c.dom.Element;
+import org.wso2.carbon.identity.base.IdentityException;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import javax.xml.XMLConstants;
+
+/**
+ * Unmarshaller of the SAML assertions received by the SAML bearer grant handlers.
+ * <p>
+ * Works as {@link IdentityUtil#unmarshall(String)} does, with the same protection against external entities, but
+ * takes the document builders from a bounded, thread-safe pool instead of creating a new secured document builder
+ * factory for every assertion. The unmarshallers handed out by the OpenSAML unmarshaller factory are stateless and
+ * already shared.
+ */
+public class SAMLAssertionUnmarshaller {
+
+    private static final Log log = LogFactory.getLog(SAMLAssertionUnmarshaller.class);
+
+    private static final String PARSER_POOL_SIZE = "OAuth.SAMLBearerGrant.ParserPool.MaxSize";
+    private static final int DEFAULT_PARSER_POOL_SIZE = 50;
+
+    private static final String DISALLOW_DOCTYPE_DECL_FEATURE = "http://apache.org/xml/features/disallow-doctype-decl";
+    private static final String EXTERNAL_GENERAL_ENTITIES_FEATURE =
+            "http://xml.org/sax/features/external-general-entities";
+    private static final String EXTERNAL_PARAMETER_ENTITIES_FEATURE =
+            "http://xml.org/sax/features/external-parameter-entities";
+    private static final String LOAD_EXTERNAL_DTD_FEATURE =
+            "http://apache.org/xml/features/nonvalidating/load-external-dtd";
+
+    private static volatile SAMLAssertionUnmarshaller instance;
+
+    private final BasicParserPool parserPool;
+
+    private SAMLAssertionUnmarshaller() {
+
+        int poolSize = OAuth2Util.getIntProperty(PARSER_POOL_SIZE, DEFAULT_PARSER_POOL_SIZE, 1, Integer.MAX_VALUE);
+
+        Map<String, Boolean> features = new HashMap<>();
+        features.put(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        features.put(DISALLOW_DOCTYPE_DECL_FEATURE, true);
+        features.put(EXTERNAL_GENERAL_ENTITIES_FEATURE, false);
+        features.put(EXTERNAL_PARAMETER_ENTITIES_FEATURE, false);
+        features.put(LOAD_EXTERNAL_DTD_FEATURE, false);
+
+        parserPool = new BasicParserPool();
+        parserPool.setNamespaceAware(true);
+        parserPool.setExpandEntityReferences(false);
+        parserPool.setXincludeAware(false);
+        parserPool.setIgnoreComments(false);
+        parserPool.setBuilderFeatures(features);
+        parserPool.setMaxPoolSize(poolSize);
+        if (log.isDebugEnabled()) {
+            log.debug("SAML assertion parser pool size : " + poolSize);
+        }
+    }
+
+    public static SAMLAssertionUnmarshaller getInstance() {
+        if (instance == null) {
+            synchronized (SAMLAssertionUnmarshaller.class) {
+                if (instance == null) {
+                    instance = new SAMLAssertionUnmarshaller();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Constructs the XML object of a SAML assertion.
+     *
+     * @param xmlString SAML assertion.
+     * @return XML object of the assertion.
+     * @throws IdentityException if the assertion cannot be parsed or unmarshalled.
+     */
+    public XMLObject unmarshall(String xmlString) throws IdentityException {
+
+        try {
+            Element element = parserPool.parse(new ByteArrayInputStream(xmlString.trim().getBytes(
+                    StandardCharsets.UTF_8))).getDocumentElement();
+            Unmarshaller unmarshaller = Configuration.getUnmarshallerFactory().getUnmarshaller(element);
+            if (unmarshaller == null) {
+                throw IdentityException.error("Cannot find an unmarshaller for the element : " +
+                        element.getLocalName());
+            }
+            return unmarshaller.unmarshall(element);
+        } catch (XMLParserException | UnmarshallingException e) {
+            throw IdentityException.error("Error in constructing XML Object from the encoded String", e);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.token.handlers.grant.saml;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.opensaml.xml.signature.SignatureValidator;
+import org.wso2.carbon.identity.application.common.model.IdentityProvider;
+import org.wso2.carbon.identity.application.common.util.IdentityApplicationManagementUtil;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
+import org.wso2.carbon.identity.oauth2.util.X509CredentialImpl;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per tenant, per identity provider cache of the signature validators used by the SAML bearer grant handlers, so
+ * that the PEM certificate of a trusted identity provider is not decoded into a new credential on every grant.
+ * <p>
+ * An entry remembers the certificate it was built from and is rebuilt whenever the certificate of the resolved
+ * identity provider differs, so a stale validator is never used even if an update is missed. Entries are also
+ * dropped eagerly by {@link org.wso2.carbon.identity.oauth2.internal.OAuthIdentityProviderMgtListener} when an
+ * identity provider is updated or deleted. A {@link SignatureValidator} only holds its credential, so a single
+ * instance is shared by all requests.
+ */
+public class SAMLSignatureValidatorCache {
+
+    private static final Log log = LogFactory.getLog(SAMLSignatureValidatorCache.class);
+
+    private static final String ENABLE = "OAuth.SAMLBearerGrant.SignatureValidatorCache.Enable";
+    private static final String MAX_ENTRIES = "OAuth.SAMLBearerGrant.SignatureValidatorCache.MaxEntries";
+    private static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private static volatile SAMLSignatureValidatorCache instance;
+
+    private final boolean enabled;
+    private final int maxEntries;
+
+    // Tenant domain and identity provider name to the validator built from the certificate of the identity provider.
+    private final Map<String, ValidatorEntry> validators = new ConcurrentHashMap<>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    private SAMLSignatureValidatorCache() {
+
+        this.enabled = !"false".equalsIgnoreCase(StringUtils.trim(IdentityUtil.getProperty(ENABLE)));
+        this.maxEntries = OAuth2Util.getIntProperty(MAX_ENTRIES, DEFAULT_MAX_ENTRIES, 1, Integer.MAX_VALUE);
+        if (log.isDebugEnabled()) {
+            log.debug("SAML signature validator cache enabled : " + enabled + ", max entries : " + maxEntries);
+        }
+    }
+
+    public static SAMLSignatureValidatorCache getInstance() {
+        if (instance == null) {
+            synchronized (SAMLSignatureValidatorCache.class) {
+                if (instance == null) {
+                    instance = new SAMLSignatureValidatorCache();
+                }
+            }
+        }
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns a validator for signatures made with the certificate of the given identity provider.
+     *
+     * @param identityProvider identity provider which issued the assertion.
+     * @param tenantDomain     tenant domain the identity provider belongs to.
+     * @return signature validator.
+     * @throws CertificateException if the certificate of the identity provider cannot be decoded.
+     */
+    public SignatureValidator getSignatureValidator(IdentityProvider identityProvider, String tenantDomain)
+            throws CertificateException {
+
+        String certificate = identityProvider.getCertificate();
+        if (!enabled) {
+            return createSignatureValidator(certificate);
+        }
+
+        String key = getKey(tenantDomain, identityProvider.getIdentityProviderName());
+        ValidatorEntry entry = validators.get(key);
+        if (entry != null && StringUtils.equals(entry.certificate, certificate)) {
+            hitCount.incrementAndGet();
+            return entry.validator;
+        }
+
+        missCount.incrementAndGet();
+        SignatureValidator validator = createSignatureValidator(certificate);
+        if (validators.size() >= maxEntries) {
+            // Only a handful of identity providers are expected to issue assertions, start over if that is not so.
+            validators.clear();
+        }
+        validators.put(key, new ValidatorEntry(certificate, validator));
+        if (log.isDebugEnabled()) {
+            log.debug("Cached the signature validator of Identity Provider : " +
+                    identityProvider.getIdentityProviderName() + " of tenant domain : " + tenantDomain);
+        }
+        return validator;
+    }
+
+    /**
+     * Drops the validator of an identity provider, to be called when the identity provider is updated or deleted.
+     *
+     * @param tenantDomain         tenant domain the identity provider belongs to.
+     * @param identityProviderName name of the identity provider.
+     */
+    public void invalidate(String tenantDomain, String identityProviderName) {
+        validators.remove(getKey(tenantDomain, identityProviderName));
+    }
+
+    /**
+     * Drops the validators of all the identity providers of a tenant.
+     *
+     * @param tenantDomain tenant domain.
+     */
+    public void invalidate(String tenantDomain) {
+
+        String prefix = tenantDomain + "\n";
+        Iterator<String> iterator = validators.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().startsWith(prefix)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public void clear() {
+        validators.clear();
+    }
+
+    public int size() {
+        return validators.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    private static SignatureValidator createSignatureValidator(String certificate) throws CertificateException {
+
+        X509Certificate x509Certificate = (X509Certificate) IdentityApplicationManagementUtil
+                .decodeCertificate(certificate);
+        return new SignatureValidator(new X509CredentialImpl(x509Certificate));
+    }
+
+    private static String getKey(String tenantDomain, String identityProviderName) {
+        return tenantDomain + "\n" + identityProviderName;
+    }
+
+    private static class ValidatorEntry {
+
+        private final String certificate;
+        private final SignatureValidator validator;
+
+        ValidatorEntry(String certificate, SignatureValidator validator) {
+            this.certificate = certificate;
+            this.validator = validator;
+        }
+    }
+}
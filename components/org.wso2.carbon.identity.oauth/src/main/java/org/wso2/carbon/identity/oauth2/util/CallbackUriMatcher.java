@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oauth2.util;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.oauth.common.OAuthConstants;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Matches request callback URIs against the callback registered for an OAuth application, keeping the compiled
+ * form of <code>regexp=</code> callbacks per application instead of compiling the expression on every request.
+ * <p>
+ * A compiled callback is keyed by the client id and is only used while the registered callback it was compiled
+ * from is unchanged, so an updated application is recompiled on its next request even before its AppInfoCache
+ * entry is evicted. Expressions which are an alternation of literal URIs, as generated by dynamic client
+ * registration for multiple redirect URIs, are also kept as a set of URIs so that an exact callback matches
+ * without running the expression.
+ */
+public class CallbackUriMatcher {
+
+    private static final Log log = LogFactory.getLog(CallbackUriMatcher.class);
+
+    private static final String MAX_ENTRIES = "OAuth.CallbackUriMatcherCache.MaxEntries";
+    private static final int DEFAULT_MAX_ENTRIES = 10000;
+    private static final String REGEX_META_CHARACTERS = "\\^$*+?()[]{}|";
+
+    private static final ConcurrentMap<String, CompiledCallback> compiledCallbacks =
+            new ConcurrentHashMap<String, CompiledCallback>();
+    private static final int maxEntries = OAuth2Util.getIntProperty(MAX_ENTRIES, DEFAULT_MAX_ENTRIES, 1,
+            Integer.MAX_VALUE);
+
+    private static final AtomicLong matchCount = new AtomicLong();
+    private static final AtomicLong totalMatchNanos = new AtomicLong();
+    private static final AtomicLong compileCount = new AtomicLong();
+    private static final AtomicLong exactMatchCount = new AtomicLong();
+
+    private CallbackUriMatcher() {
+    }
+
+    /**
+     * Check whether a callback URI matches the callback registered for an application. A registered callback
+     * starting with <code>regexp=</code> matches the URIs matched by the expression, any registered callback
+     * matches an identical URI.
+     *
+     * @param clientId              client id of the application.
+     * @param registeredCallbackUrl callback registered for the application.
+     * @param callbackUri           callback URI of the request.
+     * @return true if the callback URI matches the registered callback.
+     */
+    public static boolean matches(String clientId, String registeredCallbackUrl, String callbackUri) {
+
+        if (registeredCallbackUrl == null || callbackUri == null) {
+            return false;
+        }
+        if (!registeredCallbackUrl.startsWith(OAuthConstants.CALLBACK_URL_REGEXP_PREFIX)) {
+            return registeredCallbackUrl.equals(callbackUri);
+        }
+
+        long start = System.nanoTime();
+        try {
+            CompiledCallback compiledCallback = getCompiledCallback(clientId, registeredCallbackUrl);
+            if (compiledCallback.exactUris != null && compiledCallback.exactUris.contains(callbackUri)) {
+                exactMatchCount.incrementAndGet();
+                return true;
+            }
+            return compiledCallback.pattern.matcher(callbackUri).matches() ||
+                    registeredCallbackUrl.equals(callbackUri);
+        } finally {
+            matchCount.incrementAndGet();
+            totalMatchNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Drop the compiled callback of an application.
+     *
+     * @param clientId client id of the application.
+     */
+    public static void invalidate(String clientId) {
+        if (clientId != null) {
+            compiledCallbacks.remove(clientId);
+        }
+    }
+
+    /**
+     * Drop the compiled callbacks of all applications.
+     */
+    public static void clear() {
+        compiledCallbacks.clear();
+    }
+
+    public static int getCompiledCallbackCount() {
+        return compiledCallbacks.size();
+    }
+
+    public static long getMatchCount() {
+        return matchCount.get();
+    }
+
+    /**
+     * Returns the average time spent matching a callback URI against a <code>regexp=</code> callback, including
+     * compiling the expression when it is not cached.
+     *
+     * @return average matching time in nanoseconds.
+     */
+    public static double getAverageMatchNanos() {
+        long matches = matchCount.get();
+        if (matches == 0) {
+            return 0;
+        }
+        return (double) totalMatchNanos.get() / matches;
+    }
+
+    public static long getCompileCount() {
+        return compileCount.get();
+    }
+
+    public static long getExactMatchCount() {
+        return exactMatchCount.get();
+    }
+
+    private static CompiledCallback getCompiledCallback(String clientId, String registeredCallbackUrl) {
+
+        CompiledCallback compiledCallback = clientId == null ? null : compiledCallbacks.get(clientId);
+        if (compiledCallback != null && compiledCallback.registeredCallbackUrl.equals(registeredCallbackUrl)) {
+            return compiledCallback;
+        }
+        compiledCallback = new CompiledCallback(registeredCallbackUrl);
+        compileCount.incrementAndGet();
+        if (clientId != null) {
+            if (compiledCallbacks.size() >= maxEntries) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Compiled callback cache reached " + maxEntries + " entries. Clearing it");
+                }
+                compiledCallbacks.clear();
+            }
+            compiledCallbacks.put(clientId, compiledCallback);
+        }
+        return compiledCallback;
+    }
+
+    private static class CompiledCallback {
+
+        private final String registeredCallbackUrl;
+        private final Pattern pattern;
+        private final Set<String> exactUris;
+
+        CompiledCallback(String registeredCallbackUrl) {
+
+            String regexp = registeredCallbackUrl.substring(OAuthConstants.CALLBACK_URL_REGEXP_PREFIX.length());
+            this.registeredCallbackUrl = registeredCallbackUrl;
+            this.pattern = Pattern.compile(regexp);
+            this.exactUris = getLiteralAlternatives(regexp);
+        }
+
+        /**
+         * Returns the URIs of an expression of the form <code>uri</code> or <code>(uri1|uri2|..)</code>, where the
+         * URIs have no special characters other than '.', which also matches itself. Returns null for any other
+         * expression.
+         */
+        private static Set<String> getLiteralAlternatives(String regexp) {
+
+            String alternation = regexp;
+            if (alternation.startsWith("(") && alternation.endsWith(")")) {
+                alternation = alternation.substring(1, alternation.length() - 1);
+            }
+            Set<String> uris = new HashSet<String>();
+            for (String uri : alternation.split("\\|", -1)) {
+                if (uri.isEmpty() || StringUtils.containsAny(uri, REGEX_META_CHARACTERS)) {
+                    return null;
+                }
+                uris.add(uri);
+            }
+            return Collections.unmodifiableSet(uris);
+        }
+    }
+}
@@ -22,6 +22,7 @@ import com.nimbusds.jose.JWSAlgorithm;
 import org.apache.axiom.om.OMElement;
 import org.apache.axiom.om.impl.builder.StAXOMBuilder;
 import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.Charsets;
 import org.apache.commons.lang.StringUtils;
@@ -36,17 +37,22 @@ import org.wso2.carbon.identity.core.util.IdentityIOStreamUtils;
 import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
 import org.wso2.carbon.identity.core.util.IdentityUtil;
 import org.wso2.carbon.identity.oauth.IdentityOAuthAdminException;
-import org.wso2.carbon.identity.oauth.cache.AppInfoCache;
+import org.wso2.carbon.identity.oauth.OAuthAppMetadataService;
+import org.wso2.carbon.identity.oauth.cache.AccessTokenValidationNearCache;
 import org.wso2.carbon.identity.oauth.cache.CacheEntry;
+import org.wso2.carbon.identity.oauth.cache.ClientSecretCache;
+import org.wso2.carbon.identity.oauth.cache.ClientSecretVerificationCache;
+import org.wso2.carbon.identity.oauth.cache.InvalidAccessTokenCache;
 import org.wso2.carbon.identity.oauth.cache.OAuthCache;
 import org.wso2.carbon.identity.oauth.cache.OAuthCacheKey;
 import org.wso2.carbon.identity.oauth.common.OAuthConstants;
 import org.wso2.carbon.identity.oauth.common.exception.InvalidOAuthClientException;
 import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
-import org.wso2.carbon.identity.oauth.dao.OAuthAppDAO;
 import org.wso2.carbon.identity.oauth.dao.OAuthAppDO;
 import org.wso2.carbon.identity.oauth.dao.OAuthConsumerDAO;
 import org.wso2.carbon.identity.oauth.internal.OAuthComponentServiceHolder;
+import org.wso2.carbon.identity.oauth.tokenprocessor.HashingPersistenceProcessor;
+import org.wso2.carbon.identity.oauth.tokenprocessor.TokenPersistenceProcessor;
 import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
 import org.wso2.carbon.identity.oauth2.authz.OAuthAuthzReqMessageContext;
 import org.wso2.carbon.identity.oauth2.config.SpOAuth2ExpiryTimeConfiguration;
@@ -54,7 +60,9 @@ import org.wso2.carbon.identity.oauth2.dao.TokenMgtDAO;
 import org.wso2.carbon.identity.oauth2.internal.OAuth2ServiceComponentHolder;
 import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
 import org.wso2.carbon.identity.oauth2.model.ClientCredentialDO;
+import org.wso2.carbon.identity.oauth2.revocation.RevokedBeforeIndex;
 import org.wso2.carbon.identity.oauth2.token.OAuthTokenReqMessageContext;
+import org.wso2.carbon.identity.openidconnect.OIDCScopeClaimIndex;
 import org.wso2.carbon.registry.core.Registry;
 import org.wso2.carbon.registry.core.Resource;
 import org.wso2.carbon.registry.core.exceptions.RegistryException;
@@ -75,6 +83,8 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -327,40 +337,47 @@ public class OAuth2Util {
     public static boolean authenticateClient(String clientId, String clientSecretProvided)
             throws IdentityOAuthAdminException, IdentityOAuth2Exception, InvalidOAuthClientException {
 
-        boolean cacheHit = false;
-        String clientSecret = null;
-
-        // Check the cache first.
-        if (cacheEnabled) {
-            CacheEntry cacheResult = cache.getValueFromCache(new OAuthCacheKey(clientId));
-            if (cacheResult != null && cacheResult instanceof ClientCredentialDO) {
-                ClientCredentialDO clientCredentialDO = (ClientCredentialDO) cacheResult;
-                clientSecret = clientCredentialDO.getClientSecret();
-                cacheHit = true;
-                if (log.isDebugEnabled()) {
-                    log.debug("Client credentials were available in the cache for client id : " +
-                            clientId);
-                }
-            }
-        }
+        String processedClientSecret;
+        ClientSecretCache clientSecretCache = ClientSecretCache.getInstance();
 
-        // Cache miss
-        if (clientSecret == null) {
+        // Check the cache first. It holds the secret as persisted, i.e. encrypted or hashed, never the plain text.
+        ClientCredentialDO clientCredentialDO = clientSecretCache.getValueFromCache(clientId);
+        if (clientCredentialDO != null) {
+            processedClientSecret = clientCredentialDO.getClientSecret();
+            if (log.isDebugEnabled()) {
+                log.debug("Client credentials were available in the cache for client id : " + clientId);
+            }
+        } else {
             OAuthConsumerDAO oAuthConsumerDAO = new OAuthConsumerDAO();
-            clientSecret = oAuthConsumerDAO.getOAuthConsumerSecret(clientId);
+            processedClientSecret = oAuthConsumerDAO.getProcessedOAuthConsumerSecret(clientId);
             if (log.isDebugEnabled()) {
                 log.debug("Client credentials were fetched from the database.");
             }
+            if (processedClientSecret != null) {
+                clientSecretCache.addToCache(clientId, new ClientCredentialDO(processedClientSecret));
+            }
         }
 
-        if (clientSecret == null) {
+        if (processedClientSecret == null) {
             if (log.isDebugEnabled()) {
                 log.debug("Provided Client ID : " + clientId + "is not valid.");
             }
             return false;
         }
 
-        if (!clientSecret.equals(clientSecretProvided)) {
+        // Check the local verification cache before decrypting or hashing. It holds digests of the verified and
+        // stored secrets, not the secrets, and misses once the stored secret changes.
+        ClientSecretVerificationCache verificationCache = ClientSecretVerificationCache.getInstance();
+        if (verificationCache.isVerified(clientId, clientSecretProvided, processedClientSecret)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Client secret was recently verified for client id : " + clientId);
+            }
+            return true;
+        }
+
+        String clientSecret = OAuthServerConfiguration.getInstance().getPersistenceProcessor()
+                .getPreprocessedClientSecret(processedClientSecret);
+        if (!isValidClientSecret(clientSecretProvided, clientSecret)) {
 
             if (log.isDebugEnabled()) {
                 log.debug("Provided the Client ID : " + clientId +
@@ -374,15 +391,44 @@ public class OAuth2Util {
             log.debug("Successfully authenticated the client with client id : " + clientId);
         }
 
-        if (cacheEnabled && !cacheHit) {
+        verificationCache.addVerifiedSecret(clientId, clientSecretProvided, processedClientSecret);
+        return true;
+    }
 
-            cache.addToCache(new OAuthCacheKey(clientId), new ClientCredentialDO(clientSecret));
-            if (log.isDebugEnabled()) {
-                log.debug("Client credentials were added to the cache for client id : " + clientId);
-            }
+    /**
+     * Compares the provided client secret with the stored one in constant time. When client secrets are hashed,
+     * the stored value is the hash and the comparison is done by the {@link HashingPersistenceProcessor}.
+     *
+     * @param clientSecretProvided client secret provided by the client.
+     * @param clientSecret         client secret as returned by the persistence processor.
+     * @return true if the secrets match.
+     * @throws IdentityOAuth2Exception Error when hashing the provided secret
+     */
+    private static boolean isValidClientSecret(String clientSecretProvided, String clientSecret)
+            throws IdentityOAuth2Exception {
+
+        if (clientSecretProvided == null) {
+            return false;
+        }
+        TokenPersistenceProcessor persistenceProcessor = OAuthServerConfiguration.getInstance()
+                .getPersistenceProcessor();
+        if (persistenceProcessor instanceof HashingPersistenceProcessor) {
+            return ((HashingPersistenceProcessor) persistenceProcessor).isValidClientSecret(clientSecretProvided,
+                    clientSecret);
         }
+        return MessageDigest.isEqual(clientSecretProvided.getBytes(StandardCharsets.UTF_8),
+                clientSecret.getBytes(StandardCharsets.UTF_8));
+    }
 
-        return true;
+    /**
+     * Checks whether client secrets are stored as hashes, in which case the secret of an application cannot be
+     * used as a key, e.g. to sign tokens with HMAC.
+     *
+     * @return true if client secrets are hashed.
+     * @throws IdentityOAuth2Exception Error when loading the persistence processor
+     */
+    public static boolean isClientSecretHashingEnabled() throws IdentityOAuth2Exception {
+        return OAuthServerConfiguration.getInstance().getPersistenceProcessor() instanceof HashingPersistenceProcessor;
     }
 
     /**
@@ -669,6 +715,23 @@ public class OAuth2Util {
         }
     }
 
+    /**
+     * Returns the key id used in the JWS headers and the JWKS document for the key of the given certificate. The key
+     * id is the hex encoded SHA-1 thumbprint of the DER encoded certificate.
+     *
+     * @param certificate certificate of the signing key.
+     * @return key id of the certificate.
+     * @throws IdentityOAuth2Exception if the certificate cannot be encoded.
+     */
+    public static String getKeyId(Certificate certificate) throws IdentityOAuth2Exception {
+
+        try {
+            return Hex.encodeHexString(MessageDigest.getInstance("SHA-1").digest(certificate.getEncoded()));
+        } catch (CertificateEncodingException | NoSuchAlgorithmException e) {
+            throw new IdentityOAuth2Exception("Error while encoding the certificate to derive the key id", e);
+        }
+    }
+
     public static String getTenantDomain(int tenantId) throws IdentityOAuth2Exception {
         RealmService realmService = OAuthComponentServiceHolder.getInstance().getRealmService();
         try {
@@ -994,6 +1057,7 @@ public class OAuth2Util {
                 }
 
                 registry.put(OAuthConstants.SCOPE_RESOURCE_PATH, resource);
+                OIDCScopeClaimIndex.getInstance().invalidate(IdentityTenantUtil.getTenantDomain(tenantId));
             }
         } catch (RegistryException e) {
             log.error("Error while creating registry collection for :" + OAuthConstants.SCOPE_RESOURCE_PATH, e);
@@ -1026,6 +1090,12 @@ public class OAuth2Util {
             IdentityOAuth2Exception {
         boolean cacheHit = false;
         AccessTokenDO accessTokenDO = null;
+        // check the local near cache first, this does not cross the network even in a clustered deployment.
+        AccessTokenValidationNearCache nearCache = AccessTokenValidationNearCache.getInstance();
+        accessTokenDO = nearCache.getValueFromCache(accessTokenIdentifier);
+        if (accessTokenDO != null) {
+            return checkNotRevokedInBulk(accessTokenDO);
+        }
         // check the cache, if caching is enabled.
         if (OAuthServerConfiguration.getInstance().isCacheEnabled()) {
             OAuthCache oauthCache = OAuthCache.getInstance();
@@ -1037,13 +1107,20 @@ public class OAuth2Util {
                 cacheHit = true;
             }
         }
-        // cache miss, load the access token info from the database.
+        // cache miss, load the access token info from the database unless it was recently found to be invalid.
         if (accessTokenDO == null) {
+            InvalidAccessTokenCache invalidTokenCache = InvalidAccessTokenCache.getInstance();
+            if (invalidTokenCache.isInvalid(accessTokenIdentifier)) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Access token was recently found to be invalid. Skipping the database lookup.");
+                }
+                throw new IllegalArgumentException("Invalid access token");
+            }
             accessTokenDO = new TokenMgtDAO().retrieveAccessToken(accessTokenIdentifier, false);
-        }
-
-        if (accessTokenDO == null) {
-            throw new IllegalArgumentException("Invalid access token");
+            if (accessTokenDO == null) {
+                invalidTokenCache.addInvalidToken(accessTokenIdentifier);
+                throw new IllegalArgumentException("Invalid access token");
+            }
         }
 
         // add the token back to the cache in the case of a cache miss
@@ -1055,10 +1132,26 @@ public class OAuth2Util {
                 log.debug("Access Token Info object was added back to the cache.");
             }
         }
+        nearCache.addToCache(accessTokenIdentifier, accessTokenDO);
 
-        return accessTokenDO;
+        return checkNotRevokedInBulk(accessTokenDO);
     }
 
+    /**
+     * Tokens in the scope of a bulk revocation which is still in progress may be active in the caches and the
+     * database, they are rejected as if they were revoked already.
+     */
+    private static AccessTokenDO checkNotRevokedInBulk(AccessTokenDO accessTokenDO) {
+
+        if (RevokedBeforeIndex.getInstance().isRevoked(accessTokenDO)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Access token of client: " + accessTokenDO.getConsumerKey() + " is revoked by a bulk " +
+                        "revocation in progress");
+            }
+            throw new IllegalArgumentException("Invalid access token");
+        }
+        return accessTokenDO;
+    }
 
     public static String getClientIdForAccessToken(String accessTokenIdentifier) throws IdentityOAuth2Exception {
         AccessTokenDO accessTokenDO = getAccessTokenDOfromTokenIdentifier(accessTokenIdentifier);
@@ -1252,14 +1345,7 @@ public class OAuth2Util {
     public static OAuthAppDO getAppInformationByClientId(String clientId)
             throws IdentityOAuth2Exception, InvalidOAuthClientException {
 
-        OAuthAppDO oAuthAppDO = AppInfoCache.getInstance().getValueFromCache(clientId);
-        if (oAuthAppDO != null) {
-            return oAuthAppDO;
-        } else {
-            oAuthAppDO = new OAuthAppDAO().getAppInformation(clientId);
-            AppInfoCache.getInstance().addToCache(clientId, oAuthAppDO);
-            return oAuthAppDO;
-        }
+        return OAuthAppMetadataService.getInstance().getAppInformation(clientId);
     }
 
     /**
@@ -1312,7 +1398,6 @@ public class OAuth2Util {
         throw new IdentityOAuth2Exception("Unsupported Signature Algorithm in identity.xml");
     }
 
-
     /**
      * Generate the unique user domain value in the format of "FEDERATED:idp_name".
      *
@@ -1327,4 +1412,45 @@ public class OAuth2Util {
             return OAuthConstants.UserType.FEDERATED_USER_DOMAIN_PREFIX;
         }
     }
+
+    /**
+     * Reads a numeric property of identity.xml. Values out of the given range are moved to the nearest bound and
+     * values which are not numbers are replaced by the default value.
+     *
+     * @param name         property name.
+     * @param defaultValue value used when the property is not set or is not a number.
+     * @param minValue     smallest accepted value.
+     * @param maxValue     largest accepted value.
+     * @return value of the property.
+     */
+    public static long getLongProperty(String name, long defaultValue, long minValue, long maxValue) {
+
+        String value = IdentityUtil.getProperty(name);
+        if (StringUtils.isBlank(value)) {
+            return defaultValue;
+        }
+        long longValue;
+        try {
+            longValue = Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value : " + value + " for " + name + ". Using default value: " + defaultValue);
+            return defaultValue;
+        }
+        if (longValue < minValue || longValue > maxValue) {
+            long boundedValue = Math.min(maxValue, Math.max(minValue, longValue));
+            log.warn("Value : " + value + " for " + name + " is out of the range [" + minValue + ", " + maxValue +
+                    "]. Using value: " + boundedValue);
+            return boundedValue;
+        }
+        return longValue;
+    }
+
+    /**
+     * Reads a numeric property of identity.xml as an int.
+     *
+     * @see #getLongProperty(String, long, long, long)
+     */
+    public static int getIntProperty(String name, int defaultValue, int minValue, int maxValue) {
+        return (int) getLongProperty(name, defaultValue, minValue, maxValue);
+    }
 }
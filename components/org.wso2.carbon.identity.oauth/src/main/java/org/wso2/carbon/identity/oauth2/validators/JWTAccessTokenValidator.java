@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.oauth2.validators;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jwt.ReadOnlyJWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.application.authentication.framework.model.AuthenticatedUser;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.identity.oauth.cache.RevokedTokenIdCache;
+import org.wso2.carbon.identity.oauth.common.OAuthConstants;
+import org.wso2.carbon.identity.oauth.common.exception.InvalidOAuthClientException;
+import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
+import org.wso2.carbon.identity.oauth.dao.OAuthAppDO;
+import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.model.AccessTokenDO;
+import org.wso2.carbon.identity.oauth2.revocation.RevokedBeforeIndex;
+import org.wso2.carbon.identity.oauth2.token.TokenSigningService;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
+import org.wso2.carbon.user.core.util.UserCoreUtil;
+
+import java.sql.Timestamp;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Validates self contained access tokens issued by the JWT token issuer without reading the access token table.
+ * The exp, nbf and iss claims are checked first, then the signature is verified with the cached signing key of the
+ * tenant, using only the RSA or ECDSA algorithm configured for the JWT token issuer. Nothing is looked up for a token
+ * which fails these checks. The {@link AccessTokenDO} used by the scope validators is built from the token claims.
+ * <p>
+ * Tokens are signed with the key of the tenant of the user, which the issuer writes in the token, unless the tokens
+ * of an application are signed with the key of the application tenant. Tokens issued before the tenant of the user
+ * was written in the token can only be verified with the key of another tenant after looking the token up in the
+ * token store, which is only done when the token store check below is enabled.
+ * <p>
+ * Revocation is checked against the {@link RevokedTokenIdCache}, which holds the JWT IDs of the tokens revoked in
+ * the cluster, and the {@link RevokedBeforeIndex} of the bulk revocations. Deployments which need revocations to be
+ * honoured after a restart of the whole cluster can set OAuth.JWTAccessTokenValidation.RevocationCheck to TokenStore,
+ * so that the token is also looked up through the access token caches and the database.
+ */
+public class JWTAccessTokenValidator extends DefaultOAuth2TokenValidator {
+
+    public static final String TOKEN_TYPE = "jwt";
+
+    private static final String ACCESS_TOKEN_DO = "AccessTokenDO";
+    private static final String REVOCATION_CHECK = "OAuth.JWTAccessTokenValidation.RevocationCheck";
+    private static final String REVOCATION_CHECK_TOKEN_STORE = "TokenStore";
+    private static final String AUTHORIZATION_PARTY = "azp";
+    private static final String AUTHORIZED_USER_TYPE = "aut";
+    private static final String USER_TENANT_DOMAIN = "utd";
+
+    private static final Log log = LogFactory.getLog(JWTAccessTokenValidator.class);
+
+    private final boolean checkRevocationInTokenStore;
+    private final JWSAlgorithm signatureAlgorithm;
+
+    public JWTAccessTokenValidator() {
+
+        checkRevocationInTokenStore = REVOCATION_CHECK_TOKEN_STORE.equalsIgnoreCase(
+                StringUtils.trim(IdentityUtil.getProperty(REVOCATION_CHECK)));
+
+        // Only the algorithm the JWT token issuer signs with is accepted, never the one named in the token header.
+        JWSAlgorithm algorithm = null;
+        try {
+            algorithm = JWSAlgorithm.parse(OAuth2Util.mapSignatureAlgorithm(
+                    OAuthServerConfiguration.getInstance().getSignatureAlgorithm()));
+        } catch (IdentityOAuth2Exception e) {
+            log.error("Self contained access tokens cannot be validated with the configured signature algorithm", e);
+        }
+        if (algorithm != null && !TokenSigningService.isRSAAlgorithm(algorithm) &&
+                !TokenSigningService.isECAlgorithm(algorithm)) {
+            log.error("Self contained access tokens cannot be validated with the signature algorithm " + algorithm +
+                    ". Configure an RSA or ECDSA signature algorithm.");
+            algorithm = null;
+        }
+        signatureAlgorithm = algorithm;
+    }
+
+    @Override
+    public boolean validateAccessToken(OAuth2TokenValidationMessageContext validationReqDTO)
+            throws IdentityOAuth2Exception {
+
+        String accessToken = validationReqDTO.getRequestDTO().getAccessToken().getIdentifier();
+        SignedJWT signedJWT;
+        ReadOnlyJWTClaimsSet claimsSet;
+        try {
+            signedJWT = SignedJWT.parse(accessToken);
+            claimsSet = signedJWT.getJWTClaimsSet();
+        } catch (ParseException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Access token is not a signed JWT", e);
+            }
+            return false;
+        }
+
+        if (!validateClaims(claimsSet)) {
+            return false;
+        }
+
+        String consumerKey = (String) claimsSet.getCustomClaim(AUTHORIZATION_PARTY);
+        Object userTenantDomain = claimsSet.getCustomClaim(USER_TENANT_DOMAIN);
+        boolean useSPTenantDomain = OAuthServerConfiguration.getInstance().getUseSPTenantDomainValue();
+        OAuthAppDO oAuthAppDO = null;
+        String tenantDomain;
+        if (!useSPTenantDomain && userTenantDomain instanceof String) {
+            tenantDomain = (String) userTenantDomain;
+        } else {
+            oAuthAppDO = getAppInformation(consumerKey);
+            if (oAuthAppDO == null) {
+                return false;
+            }
+            tenantDomain = oAuthAppDO.getUser().getTenantDomain();
+        }
+
+        AccessTokenDO accessTokenDO = null;
+        if (!verifySignature(signedJWT, tenantDomain)) {
+            // A token which does not name the tenant of its user may be signed with the key of that tenant, which is
+            // then only known from the persisted token. Such a token is only looked up when the token store is
+            // checked anyway, so that a forged token never costs a lookup otherwise.
+            if (useSPTenantDomain || userTenantDomain != null || !checkRevocationInTokenStore) {
+                return false;
+            }
+            accessTokenDO = findAccessToken(accessToken);
+            if (accessTokenDO == null || tenantDomain.equals(accessTokenDO.getAuthzUser().getTenantDomain())) {
+                return false;
+            }
+            tenantDomain = accessTokenDO.getAuthzUser().getTenantDomain();
+            if (!verifySignature(signedJWT, tenantDomain)) {
+                return false;
+            }
+        }
+
+        if (RevokedTokenIdCache.getInstance().isRevoked(claimsSet.getJWTID())) {
+            if (log.isDebugEnabled()) {
+                log.debug("Access token with jti: " + claimsSet.getJWTID() + " has been revoked");
+            }
+            return false;
+        }
+
+        if (oAuthAppDO == null) {
+            oAuthAppDO = getAppInformation(consumerKey);
+            if (oAuthAppDO == null) {
+                return false;
+            }
+        }
+
+        if (accessTokenDO == null && checkRevocationInTokenStore) {
+            accessTokenDO = findAccessToken(accessToken);
+            if (accessTokenDO == null) {
+                return false;
+            }
+        }
+
+        if (accessTokenDO == null) {
+            String userType = (String) claimsSet.getCustomClaim(AUTHORIZED_USER_TYPE);
+            if (userType == null) {
+                // Issued before the user type was carried in the token, the user is only known from the token store.
+                accessTokenDO = findAccessToken(accessToken);
+                if (accessTokenDO == null) {
+                    return false;
+                }
+            } else {
+                accessTokenDO = buildAccessTokenDO(accessToken, claimsSet, consumerKey, oAuthAppDO.getUser(),
+                        userType, tenantDomain);
+            }
+        }
+        if (RevokedBeforeIndex.getInstance().isRevoked(accessTokenDO)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Access token with jti: " + claimsSet.getJWTID() + " is revoked by a bulk revocation");
+            }
+            return false;
+        }
+        addContextProperties(validationReqDTO, claimsSet, accessTokenDO);
+        return true;
+    }
+
+    private boolean validateClaims(ReadOnlyJWTClaimsSet claimsSet) {
+
+        long now = System.currentTimeMillis();
+        long skew = OAuthServerConfiguration.getInstance().getTimeStampSkewInSeconds() * 1000;
+
+        Date expirationTime = claimsSet.getExpirationTime();
+        if (expirationTime == null || expirationTime.getTime() + skew < now) {
+            if (log.isDebugEnabled()) {
+                log.debug("Access token has expired or does not have an expiration time");
+            }
+            return false;
+        }
+        Date notBeforeTime = claimsSet.getNotBeforeTime();
+        if (notBeforeTime != null && notBeforeTime.getTime() - skew > now) {
+            if (log.isDebugEnabled()) {
+                log.debug("Access token is not valid before " + notBeforeTime);
+            }
+            return false;
+        }
+        if (!OAuth2Util.getIDTokenIssuer().equals(claimsSet.getIssuer())) {
+            if (log.isDebugEnabled()) {
+                log.debug("Access token is issued by an unknown issuer: " + claimsSet.getIssuer());
+            }
+            return false;
+        }
+        if (!(claimsSet.getCustomClaim(AUTHORIZATION_PARTY) instanceof String) ||
+                StringUtils.isBlank(claimsSet.getJWTID())) {
+            if (log.isDebugEnabled()) {
+                log.debug("Access token does not contain the azp or jti claim");
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private boolean verifySignature(SignedJWT signedJWT, String tenantDomain) throws IdentityOAuth2Exception {
+
+        JWSAlgorithm algorithm = signedJWT.getHeader().getAlgorithm();
+        if (signatureAlgorithm == null || !signatureAlgorithm.equals(algorithm)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Access token is signed with an unexpected algorithm: " + algorithm);
+            }
+            return false;
+        }
+        return TokenSigningService.getInstance().verify(signedJWT, tenantDomain);
+    }
+
+    private OAuthAppDO getAppInformation(String consumerKey) throws IdentityOAuth2Exception {
+
+        try {
+            return OAuth2Util.getAppInformationByClientId(consumerKey);
+        } catch (InvalidOAuthClientException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Access token is issued to an unknown client: " + consumerKey, e);
+            }
+            return null;
+        }
+    }
+
+    private AccessTokenDO findAccessToken(String accessToken) throws IdentityOAuth2Exception {
+
+        try {
+            return OAuth2Util.getAccessTokenDOfromTokenIdentifier(accessToken);
+        } catch (IllegalArgumentException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Access token is not active in the token store");
+            }
+            return null;
+        }
+    }
+
+    private AccessTokenDO buildAccessTokenDO(String accessToken, ReadOnlyJWTClaimsSet claimsSet, String consumerKey,
+                                             AuthenticatedUser appOwner, String userType, String tenantDomain)
+            throws IdentityOAuth2Exception {
+
+        AuthenticatedUser authzUser;
+        if (OAuthConstants.UserType.APPLICATION.equals(userType)) {
+            // Application tokens are issued to the application owner, see AccessTokenIssuer.
+            authzUser = new AuthenticatedUser();
+            authzUser.setUserName(appOwner.getUserName());
+            authzUser.setUserStoreDomain(appOwner.getUserStoreDomain());
+            authzUser.setTenantDomain(appOwner.getTenantDomain());
+        } else {
+            // The issuer writes the subject identifier of the user, which is the user name unless the service
+            // provider is configured to use another claim as the subject.
+            authzUser = OAuth2Util.getUserFromUserName(claimsSet.getSubject());
+            if (!OAuthServerConfiguration.getInstance().getUseSPTenantDomainValue()) {
+                // The token is signed with the key of the tenant of the user.
+                authzUser.setTenantDomain(tenantDomain);
+            }
+        }
+        authzUser.setAuthenticatedSubjectIdentifier(claimsSet.getSubject());
+
+        long issuedTime = claimsSet.getIssueTime() != null ? claimsSet.getIssueTime().getTime() :
+                System.currentTimeMillis();
+        long validityPeriodInMillis = claimsSet.getExpirationTime().getTime() - issuedTime;
+
+        String[] scope = OAuth2Util.buildScopeArray((String) claimsSet.getCustomClaim(OAuth2Util.SCOPE));
+        AccessTokenDO accessTokenDO = new AccessTokenDO(consumerKey, authzUser, scope, new Timestamp(issuedTime),
+                new Timestamp(issuedTime), validityPeriodInMillis, validityPeriodInMillis, userType);
+        accessTokenDO.setAccessToken(accessToken);
+        accessTokenDO.setTokenState(OAuthConstants.TokenStates.TOKEN_STATE_ACTIVE);
+        accessTokenDO.setTokenId(claimsSet.getJWTID());
+        accessTokenDO.setTenantID(OAuth2Util.getTenantId(authzUser.getTenantDomain()));
+        return accessTokenDO;
+    }
+
+    private void addContextProperties(OAuth2TokenValidationMessageContext messageContext,
+                                      ReadOnlyJWTClaimsSet claimsSet, AccessTokenDO accessTokenDO) {
+
+        AuthenticatedUser authzUser = accessTokenDO.getAuthzUser();
+        String username = UserCoreUtil.addTenantDomainToEntry(IdentityUtil.addDomainToName(authzUser.getUserName(),
+                authzUser.getUserStoreDomain()), authzUser.getTenantDomain());
+
+        messageContext.addProperty(ACCESS_TOKEN_DO, accessTokenDO);
+        messageContext.addProperty(OAuth2Util.REMOTE_ACCESS_TOKEN, "true");
+        messageContext.addProperty(OAuth2Util.JWT_ACCESS_TOKEN, "true");
+        messageContext.addProperty(OAuth2Util.EXP, String.valueOf(claimsSet.getExpirationTime().getTime() / 1000));
+        messageContext.addProperty(OAuth2Util.IAT, String.valueOf(accessTokenDO.getIssuedTime().getTime() / 1000));
+        messageContext.addProperty(OAuth2Util.SCOPE, OAuth2Util.buildScopeString(accessTokenDO.getScope()));
+        messageContext.addProperty(OAuth2Util.USERNAME, username);
+        messageContext.addProperty(OAuth2Util.CLIENT_ID, accessTokenDO.getConsumerKey());
+        messageContext.addProperty(OAuth2Util.SUB, claimsSet.getSubject());
+        messageContext.addProperty(OAuth2Util.ISS, claimsSet.getIssuer());
+        messageContext.addProperty(OAuth2Util.JTI, claimsSet.getJWTID());
+        List<String> audience = claimsSet.getAudience();
+        if (audience != null && !audience.isEmpty()) {
+            messageContext.addProperty(OAuth2Util.AUD, StringUtils.join(audience, " "));
+        }
+        if (claimsSet.getNotBeforeTime() != null) {
+            messageContext.addProperty(OAuth2Util.NBF, String.valueOf(claimsSet.getNotBeforeTime().getTime() / 1000));
+        }
+    }
+}
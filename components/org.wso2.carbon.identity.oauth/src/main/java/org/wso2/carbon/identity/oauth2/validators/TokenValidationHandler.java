@@ -50,6 +50,7 @@ public class TokenValidationHandler {
 
     private TokenValidationHandler() {
         tokenValidators.put(DefaultOAuth2TokenValidator.TOKEN_TYPE, new DefaultOAuth2TokenValidator());
+        tokenValidators.put(JWTAccessTokenValidator.TOKEN_TYPE, new JWTAccessTokenValidator());
         for (Map.Entry<String, String> entry : OAuthServerConfiguration.getInstance().getTokenValidatorClassNames().entrySet()) {
             String className = null;
             try {
@@ -151,11 +152,20 @@ public class TokenValidationHandler {
             return buildClientAppErrorResponse(e.getMessage());
         }
 
-        try {
-            accessTokenDO = findAccessToken(requestDTO.getAccessToken().getIdentifier());
-        } catch (IllegalArgumentException e) {
-            // Access token not found in the system.
-            return buildClientAppErrorResponse(e.getMessage());
+        boolean selfContainedToken = tokenValidator instanceof JWTAccessTokenValidator;
+        if (selfContainedToken) {
+            // Self contained tokens are validated from their claims, without looking up the token store.
+            if (!tokenValidator.validateAccessToken(messageContext)) {
+                return buildClientAppErrorResponse("OAuth2 access token validation failed");
+            }
+            accessTokenDO = (AccessTokenDO) messageContext.getProperty("AccessTokenDO");
+        } else {
+            try {
+                accessTokenDO = findAccessToken(requestDTO.getAccessToken().getIdentifier());
+            } catch (IllegalArgumentException e) {
+                // Access token not found in the system.
+                return buildClientAppErrorResponse(e.getMessage());
+            }
         }
 
         if (hasAcessTokenExpired(accessTokenDO)) {
@@ -175,7 +185,7 @@ public class TokenValidationHandler {
             return buildClientAppErrorResponse("Scope validation failed");
         }
 
-        if (!tokenValidator.validateAccessToken(messageContext)) {
+        if (!selfContainedToken && !tokenValidator.validateAccessToken(messageContext)) {
             return buildClientAppErrorResponse("OAuth2 access token validation failed");
         }
 
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.openidconnect;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
+import org.wso2.carbon.identity.oauth.common.OAuthConstants;
+import org.wso2.carbon.identity.oauth2.internal.OAuth2ServiceComponentHolder;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
+import org.wso2.carbon.registry.api.RegistryException;
+import org.wso2.carbon.registry.api.Resource;
+import org.wso2.carbon.registry.core.service.RegistryService;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Per tenant index of the OIDC scope to claim mappings kept in the config registry under
+ * {@link OAuthConstants#SCOPE_RESOURCE_PATH}.
+ * <p>
+ * The mappings of a tenant are read from the registry once and kept as an immutable index. The index is dropped
+ * when the mappings are written through this component and reloaded in the background once it is older than the
+ * refresh interval, to pick up changes made directly in the registry, while the token path keeps using the
+ * current index.
+ */
+public class OIDCScopeClaimIndex {
+
+    private static final Log log = LogFactory.getLog(OIDCScopeClaimIndex.class);
+
+    private static final String REFRESH_INTERVAL = "OAuth.OIDCScopeClaimCache.RefreshInterval";
+    private static final long DEFAULT_REFRESH_INTERVAL_SECONDS = 300;
+    private static final String ADDRESS_SCOPE = "address";
+
+    private static volatile OIDCScopeClaimIndex instance;
+
+    private final ConcurrentMap<String, ScopeClaims> tenantScopeClaims = new ConcurrentHashMap<>();
+    private final long refreshInterval;
+
+    private OIDCScopeClaimIndex() {
+        this.refreshInterval = TimeUnit.SECONDS.toMillis(OAuth2Util.getLongProperty(REFRESH_INTERVAL,
+                DEFAULT_REFRESH_INTERVAL_SECONDS, 0, Long.MAX_VALUE));
+    }
+
+    public static OIDCScopeClaimIndex getInstance() {
+        if (instance == null) {
+            synchronized (OIDCScopeClaimIndex.class) {
+                if (instance == null) {
+                    instance = new OIDCScopeClaimIndex();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the scope to claim mappings of a tenant, reading them from the registry only if they are not
+     * indexed yet.
+     *
+     * @param tenantDomain tenant domain.
+     * @return scope to claim mappings of the tenant.
+     */
+    public ScopeClaims getScopeClaims(final String tenantDomain) {
+
+        ScopeClaims scopeClaims = tenantScopeClaims.get(tenantDomain);
+        if (scopeClaims == null) {
+            scopeClaims = load(tenantDomain);
+            if (scopeClaims != null) {
+                tenantScopeClaims.put(tenantDomain, scopeClaims);
+                return scopeClaims;
+            }
+            // not indexed, so that the next request retries the registry
+            return ScopeClaims.EMPTY;
+        }
+
+        if (refreshInterval > 0 && System.currentTimeMillis() - scopeClaims.loadTime > refreshInterval &&
+                scopeClaims.refreshing.compareAndSet(false, true)) {
+            final ScopeClaims staleScopeClaims = scopeClaims;
+            new Thread(new Runnable() {
+                public void run() {
+                    ScopeClaims reloadedScopeClaims = load(tenantDomain);
+                    if (reloadedScopeClaims != null) {
+                        tenantScopeClaims.replace(tenantDomain, staleScopeClaims, reloadedScopeClaims);
+                    } else {
+                        staleScopeClaims.refreshing.set(false);
+                    }
+                }
+            }).start();
+        }
+        return scopeClaims;
+    }
+
+    /**
+     * Drop the index of a tenant after its scope to claim mappings are changed.
+     *
+     * @param tenantDomain tenant domain.
+     */
+    public void invalidate(String tenantDomain) {
+        tenantScopeClaims.remove(tenantDomain);
+    }
+
+    private ScopeClaims load(String tenantDomain) {
+
+        Resource oidcScopesResource;
+        try {
+            PrivilegedCarbonContext.startTenantFlow();
+            PrivilegedCarbonContext carbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+            int tenantId = IdentityTenantUtil.getTenantId(tenantDomain);
+            carbonContext.setTenantId(tenantId);
+            carbonContext.setTenantDomain(tenantDomain);
+            RegistryService registry = OAuth2ServiceComponentHolder.getRegistryService();
+            oidcScopesResource = registry.getConfigSystemRegistry(tenantId).get(OAuthConstants.SCOPE_RESOURCE_PATH);
+        } catch (RegistryException e) {
+            log.error("Error while obtaining registry collection from :" + OAuthConstants.SCOPE_RESOURCE_PATH, e);
+            return null;
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Loaded the OIDC scope to claim mappings of tenant : " + tenantDomain);
+        }
+        return new ScopeClaims(oidcScopesResource);
+    }
+
+    /**
+     * Immutable scope to claim mappings of a tenant.
+     */
+    public static class ScopeClaims {
+
+        private static final ScopeClaims EMPTY = new ScopeClaims(null);
+
+        private final Map<String, Set<String>> claimsOfScopes;
+        private final Set<String> addressClaims;
+        private final long loadTime = System.currentTimeMillis();
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private ScopeClaims(Resource oidcScopesResource) {
+
+            Map<String, Set<String>> claimsOfScopes = new HashMap<>();
+            Set<String> addressClaims = new HashSet<>();
+            if (oidcScopesResource != null && oidcScopesResource.getProperties() != null) {
+                String addressValues = oidcScopesResource.getProperty(ADDRESS_SCOPE);
+                Enumeration supportedScopes = oidcScopesResource.getProperties().propertyNames();
+                while (supportedScopes.hasMoreElements()) {
+                    String supportedScope = (String) supportedScopes.nextElement();
+                    String scopeClaims = oidcScopesResource.getProperty(supportedScope);
+                    if (scopeClaims == null) {
+                        continue;
+                    }
+                    Set<String> claims = Collections.unmodifiableSet(
+                            new HashSet<>(Arrays.asList(scopeClaims.split(","))));
+                    claimsOfScopes.put(supportedScope, claims);
+                    if (addressValues != null) {
+                        for (String claim : claims) {
+                            // claims named within the address scope value are sent inside the address claim
+                            if (addressValues.contains(claim)) {
+                                addressClaims.add(claim);
+                            }
+                        }
+                    }
+                }
+            }
+            this.claimsOfScopes = Collections.unmodifiableMap(claimsOfScopes);
+            this.addressClaims = Collections.unmodifiableSet(addressClaims);
+        }
+
+        /**
+         * Returns the claims of a scope.
+         *
+         * @param scope OIDC scope.
+         * @return claims of the scope, or null if the scope is not an OIDC scope of the tenant.
+         */
+        public Set<String> getClaims(String scope) {
+            return claimsOfScopes.get(scope);
+        }
+
+        /**
+         * Checks whether a claim of a scope is sent inside the address claim.
+         *
+         * @param claim claim of a scope.
+         * @return true if the claim is part of the address scope value.
+         */
+        public boolean isAddressClaim(String claim) {
+            return addressClaims.contains(claim);
+        }
+    }
+}
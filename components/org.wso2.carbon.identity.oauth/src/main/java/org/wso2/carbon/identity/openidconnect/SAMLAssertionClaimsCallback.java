@@ -33,7 +33,6 @@ import org.opensaml.saml2.core.AttributeStatement;
 import org.opensaml.xml.XMLObject;
 import org.w3c.dom.Element;
 import org.wso2.carbon.base.MultitenantConstants;
-import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.identity.application.authentication.framework.exception.FrameworkException;
 import org.wso2.carbon.identity.application.authentication.framework.model.AuthenticatedUser;
 import org.wso2.carbon.identity.application.authentication.framework.util.FrameworkConstants;
@@ -53,12 +52,10 @@ import org.wso2.carbon.identity.oauth.cache.AuthorizationGrantCacheEntry;
 import org.wso2.carbon.identity.oauth.cache.AuthorizationGrantCacheKey;
 import org.wso2.carbon.identity.oauth.common.OAuthConstants;
 import org.wso2.carbon.identity.oauth.internal.OAuthComponentServiceHolder;
+import org.wso2.carbon.identity.oauth.util.UserClaimResolutionCache;
 import org.wso2.carbon.identity.oauth2.authz.OAuthAuthzReqMessageContext;
 import org.wso2.carbon.identity.oauth2.internal.OAuth2ServiceComponentHolder;
 import org.wso2.carbon.identity.oauth2.token.OAuthTokenReqMessageContext;
-import org.wso2.carbon.registry.api.RegistryException;
-import org.wso2.carbon.registry.api.Resource;
-import org.wso2.carbon.registry.core.service.RegistryService;
 import org.wso2.carbon.user.api.RealmConfiguration;
 import org.wso2.carbon.user.api.UserRealm;
 import org.wso2.carbon.user.api.UserStoreException;
@@ -69,12 +66,12 @@ import org.wso2.carbon.utils.multitenancy.MultitenantUtils;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.StringTokenizer;
 
 /**
@@ -331,9 +328,9 @@ public class SAMLAssertionClaimsCallback implements CustomClaimsCallbackHandler
                 .getMappingsMapFromOtherDialectToCarbon(SP_DIALECT, null, spTenantDomain, false);
         Map<String, String> userClaims = null;
         try {
-            userClaims = realm.getUserStoreManager().getUserClaimValues(
+            userClaims = UserClaimResolutionCache.getInstance().getUserClaimValues(realm.getUserStoreManager(),
                     MultitenantUtils.getTenantAwareUsername(username),
-                    claimURIList.toArray(new String[claimURIList.size()]), null);
+                    claimURIList.toArray(new String[claimURIList.size()]));
 
             //set local2sp role mappings
             for (Map.Entry<String, String> claim : userClaims.entrySet()) {
@@ -468,9 +465,9 @@ public class SAMLAssertionClaimsCallback implements CustomClaimsCallbackHandler
 
         Map<String, String> userClaims = null;
         try {
-            userClaims = realm.getUserStoreManager().getUserClaimValues(UserCoreUtil.addDomainToName(
-                    user.getUserName(), user.getUserStoreDomain()), claimURIList.toArray(
-                    new String[claimURIList.size()]),null);
+            userClaims = UserClaimResolutionCache.getInstance().getUserClaimValues(realm.getUserStoreManager(),
+                    UserCoreUtil.addDomainToName(user.getUserName(), user.getUserStoreDomain()),
+                    claimURIList.toArray(new String[claimURIList.size()]));
         } catch (UserStoreException e) {
             if (e.getMessage().contains("UserNotFound")) {
                 if (log.isDebugEnabled()) {
@@ -591,57 +588,26 @@ public class SAMLAssertionClaimsCallback implements CustomClaimsCallbackHandler
      */
     private Map<String, Object> controlClaimsFromScope(String[] requestedScopes, String tenantDomain,
                                                        Map<String, Object> claims) {
-        Resource oidcScopesResource = null;
-        String requestedScopeClaims = null;
-        String addressValues = null;
-        String[] arrRequestedScopeClaims = null;
         Map<String, Object> returnClaims = new HashMap<>();
         Map<String, Object> claimsforAddressScope = new HashMap<>();
-        try {
-            PrivilegedCarbonContext.startTenantFlow();
-            PrivilegedCarbonContext carbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
-            int tenantId = IdentityTenantUtil.getTenantId(tenantDomain);
-            carbonContext.setTenantId(tenantId);
-            carbonContext.setTenantDomain(tenantDomain);
-            RegistryService registry = OAuth2ServiceComponentHolder.getRegistryService();
-            oidcScopesResource = registry.getConfigSystemRegistry(tenantId).get(OAuthConstants.SCOPE_RESOURCE_PATH);
-        } catch (RegistryException e) {
-            log.error("Error while obtaining registry collection from :" + OAuthConstants.SCOPE_RESOURCE_PATH, e);
-        } finally {
-            PrivilegedCarbonContext.endTenantFlow();
-        }
-        if (oidcScopesResource != null && oidcScopesResource.getProperties() != null) {
-            addressValues = oidcScopesResource.getProperty("address");
-        }
+        OIDCScopeClaimIndex.ScopeClaims scopeClaims = OIDCScopeClaimIndex.getInstance().getScopeClaims(tenantDomain);
 
         for (String requestedScope : requestedScopes) {
-            if (oidcScopesResource != null && oidcScopesResource.getProperties() != null) {
-                Enumeration supporetdScopes = oidcScopesResource.getProperties().propertyNames();
-                while (supporetdScopes.hasMoreElements()) {
-                    String supportedScope = (String) supporetdScopes.nextElement();
-                    if (supportedScope.equals(requestedScope)) {
-                        requestedScopeClaims = oidcScopesResource.getProperty(requestedScope);
-                        if (requestedScopeClaims.contains(",")) {
-                            arrRequestedScopeClaims = requestedScopeClaims.split(",");
-                        } else {
-                            arrRequestedScopeClaims = new String[1];
-                            arrRequestedScopeClaims[0] = requestedScopeClaims;
-                        }
-                        for (Map.Entry<String, Object> entry : claims.entrySet()) {
-                            String requestedClaims = entry.getKey();
-                            if (Arrays.asList(arrRequestedScopeClaims).contains(requestedClaims)) {
-                                // Address claim is handled for both ways, where address claims are sent as "address."
-                                // prefix or in address scope.
-                                if (requestedClaims.contains(ADDRESS_PREFIX)) {
-                                    claimsforAddressScope.put(entry.getKey().substring(ADDRESS_PREFIX.length()), claims.get(entry.getKey()));
-                                } else if (addressValues.contains(requestedClaims)) {
-                                    claimsforAddressScope.put(entry.getKey(), claims.get(entry.getKey()));
-                                } else {
-                                    returnClaims.put(entry.getKey(), claims.get(entry.getKey()));
-                                }
-                            }
-                        }
-
+            Set<String> claimsOfScope = scopeClaims.getClaims(requestedScope);
+            if (claimsOfScope == null) {
+                continue;
+            }
+            for (Map.Entry<String, Object> entry : claims.entrySet()) {
+                String requestedClaims = entry.getKey();
+                if (claimsOfScope.contains(requestedClaims)) {
+                    // Address claim is handled for both ways, where address claims are sent as "address."
+                    // prefix or in address scope.
+                    if (requestedClaims.contains(ADDRESS_PREFIX)) {
+                        claimsforAddressScope.put(entry.getKey().substring(ADDRESS_PREFIX.length()), entry.getValue());
+                    } else if (scopeClaims.isAddressClaim(requestedClaims)) {
+                        claimsforAddressScope.put(entry.getKey(), entry.getValue());
+                    } else {
+                        returnClaims.put(entry.getKey(), entry.getValue());
                     }
                 }
             }
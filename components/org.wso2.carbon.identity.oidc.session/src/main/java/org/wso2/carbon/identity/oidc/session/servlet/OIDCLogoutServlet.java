@@ -21,9 +21,9 @@ import org.wso2.carbon.identity.oauth.common.OAuth2ErrorCodes;
 import org.wso2.carbon.identity.oauth.common.OAuthConstants;
 import org.wso2.carbon.identity.oauth.common.exception.InvalidOAuthClientException;
 import org.wso2.carbon.identity.oauth.config.OAuthServerConfiguration;
-import org.wso2.carbon.identity.oauth.dao.OAuthAppDAO;
 import org.wso2.carbon.identity.oauth.dao.OAuthAppDO;
 import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.util.CallbackUriMatcher;
 import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
 import org.wso2.carbon.identity.oidc.session.OIDCSessionConstants;
 import org.wso2.carbon.identity.oidc.session.cache.OIDCSessionDataCache;
@@ -180,10 +180,9 @@ public class OIDCLogoutServlet extends HttpServlet {
             }
 
             clientId = extractClientFromIdToken(idTokenHint);
-            OAuthAppDAO appDAO = new OAuthAppDAO();
-            OAuthAppDO oAuthAppDO = appDAO.getAppInformation(clientId);
+            OAuthAppDO oAuthAppDO = OAuth2Util.getAppInformationByClientId(clientId);
 
-            if (!validatePostLogoutUri(postLogoutRedirectUri, oAuthAppDO.getCallbackUrl())) {
+            if (!validatePostLogoutUri(clientId, postLogoutRedirectUri, oAuthAppDO.getCallbackUrl())) {
                 String msg = "Post logout URI does not match with registered callback URI.";
                 redirectURL = OIDCSessionManagementUtil.getErrorPageURL(OAuth2ErrorCodes.ACCESS_DENIED, msg);
                 return redirectURL;
@@ -326,24 +325,18 @@ public class OIDCLogoutServlet extends HttpServlet {
 
     /**
      * Validate post logout URI with registered callback URI
+     * @param clientId Client Id of the application
      * @param postLogoutUri Post logout redirect URI
      * @param registeredCallbackUri registered callback URI
      * @return Validation state
      */
-    private boolean validatePostLogoutUri(String postLogoutUri, String registeredCallbackUri) {
+    private boolean validatePostLogoutUri(String clientId, String postLogoutUri, String registeredCallbackUri) {
 
         if (StringUtils.isEmpty(postLogoutUri)) {
             return true;
         }
 
-        String regexp = null;
-        if (registeredCallbackUri.startsWith(OAuthConstants.CALLBACK_URL_REGEXP_PREFIX)) {
-            regexp = registeredCallbackUri.substring(OAuthConstants.CALLBACK_URL_REGEXP_PREFIX.length());
-        }
-
-        if (regexp != null && postLogoutUri.matches(regexp)) {
-            return true;
-        } else if (registeredCallbackUri.equals(postLogoutUri)) {
+        if (CallbackUriMatcher.matches(clientId, registeredCallbackUri, postLogoutUri)) {
             return true;
         } else {    // Provided Post logout redirect URL does not match the registered callback url.
             log.warn("Provided Post logout redirect URL does not match with the provided one.");
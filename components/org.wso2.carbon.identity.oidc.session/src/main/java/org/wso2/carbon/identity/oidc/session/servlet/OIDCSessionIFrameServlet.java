@@ -5,9 +5,9 @@ import org.apache.commons.lang.text.StrSubstitutor;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.identity.oauth.common.exception.InvalidOAuthClientException;
-import org.wso2.carbon.identity.oauth.dao.OAuthAppDAO;
 import org.wso2.carbon.identity.oauth.dao.OAuthAppDO;
 import org.wso2.carbon.identity.oauth2.IdentityOAuth2Exception;
+import org.wso2.carbon.identity.oauth2.util.OAuth2Util;
 import org.wso2.carbon.identity.oidc.session.OIDCSessionConstants;
 import org.wso2.carbon.identity.oidc.session.util.OIDCSessionManagementUtil;
 
@@ -15,10 +15,15 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class OIDCSessionIFrameServlet extends HttpServlet {
 
@@ -29,11 +34,31 @@ public class OIDCSessionIFrameServlet extends HttpServlet {
 
     private static final String OP_IFRAME_RESOURCE = "op_iframe.html";
 
-    private static StringBuilder opIFrame = null;
+    private static final String ETAG_HEADER = "ETag";
+    private static final String CACHE_CONTROL_HEADER = "Cache-Control";
+    private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+
+    private static final String OP_IFRAME_MAX_AGE = "OAuth.OIDCSessionIFrame.MaxAge";
+    private static final String OP_IFRAME_CACHE_SIZE = "OAuth.OIDCSessionIFrame.CacheSize";
+    private static final long DEFAULT_MAX_AGE_SECONDS = 0;
+    private static final long DEFAULT_CACHE_SIZE = 10000;
+
+    private static String opIFrame = null;
+
+    // rendered iframes by client id
+    private static final ConcurrentMap<String, OPIFrame> opIFrames = new ConcurrentHashMap<>();
+
+    private String cacheControl;
+    private long cacheSize;
 
     @Override
     public void init() throws ServletException {
+
         loadOPIFrame();
+        long maxAge = OAuth2Util.getLongProperty(OP_IFRAME_MAX_AGE, DEFAULT_MAX_AGE_SECONDS, 0, Long.MAX_VALUE);
+        // without a max age browsers revalidate the iframe with its entity tag on every load
+        cacheControl = maxAge > 0 ? "public, max-age=" + maxAge : "no-cache";
+        cacheSize = OAuth2Util.getLongProperty(OP_IFRAME_CACHE_SIZE, DEFAULT_CACHE_SIZE, 0, Long.MAX_VALUE);
     }
 
     @Override
@@ -48,41 +73,73 @@ public class OIDCSessionIFrameServlet extends HttpServlet {
             }
             response.getWriter().print(ERROR_RESPONSE);
         } else {
+            OPIFrame clientOPIFrame;
             try {
-                OAuthAppDAO oAuthAppDAO = new OAuthAppDAO();
-                OAuthAppDO oAuthAppDO = oAuthAppDAO.getAppInformation(clientId);
-
-                String clientOrigin = OIDCSessionManagementUtil.getOrigin(oAuthAppDO.getCallbackUrl());
-                response.getWriter().print(getOPIFrame(clientOrigin));
+                clientOPIFrame = getOPIFrame(clientId);
             } catch (IdentityOAuth2Exception | InvalidOAuthClientException e) {
                 if (log.isDebugEnabled()) {
                     log.debug("Error while retrieving OAuth application information for the provided client id", e);
                 }
                 response.getWriter().print(ERROR_RESPONSE);
+                return;
+            }
+
+            response.setHeader(ETAG_HEADER, clientOPIFrame.getEntityTag());
+            response.setHeader(CACHE_CONTROL_HEADER, cacheControl);
+            if (clientOPIFrame.matches(request.getHeader(IF_NONE_MATCH_HEADER))) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
             }
+            byte[] content = clientOPIFrame.getContent();
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            response.setContentLength(content.length);
+            response.getOutputStream().write(content);
         }
 
     }
 
-    private String getOPIFrame(String clientOrigin) {
-        Map<String, Object> valuesMap = new HashMap<>();
-        valuesMap.put(CLIENT_ORIGIN_PLACE_HOLDER, clientOrigin);
+    /**
+     * Returns the rendered iframe of a client, rendering it again if the callback URL of the client has changed.
+     */
+    private OPIFrame getOPIFrame(String clientId) throws IdentityOAuth2Exception, InvalidOAuthClientException {
+
+        OAuthAppDO oAuthAppDO = OAuth2Util.getAppInformationByClientId(clientId);
+        String callbackUrl = oAuthAppDO.getCallbackUrl();
+
+        OPIFrame clientOPIFrame = opIFrames.get(clientId);
+        if (clientOPIFrame != null && clientOPIFrame.isRenderedFor(callbackUrl)) {
+            return clientOPIFrame;
+        }
 
+        Map<String, Object> valuesMap = new HashMap<>();
+        valuesMap.put(CLIENT_ORIGIN_PLACE_HOLDER, OIDCSessionManagementUtil.getOrigin(callbackUrl));
         StrSubstitutor substitutor = new StrSubstitutor(valuesMap);
-        return substitutor.replace(opIFrame.toString());
+        try {
+            clientOPIFrame = new OPIFrame(callbackUrl, substitutor.replace(opIFrame));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IdentityOAuth2Exception("Error while calculating the entity tag of the OP IFrame", e);
+        }
+        if (opIFrames.size() >= cacheSize) {
+            opIFrames.clear();
+        }
+        opIFrames.put(clientId, clientOPIFrame);
+        return clientOPIFrame;
     }
 
     private void loadOPIFrame() {
-        opIFrame = new StringBuilder();
 
         try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream(OP_IFRAME_RESOURCE)) {
-            int i;
-            while ((i = inputStream.read()) > 0) {
-                opIFrame.append((char) i);
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int length;
+            while ((length = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, length);
             }
-
+            opIFrame = new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+            opIFrames.clear();
         } catch (IOException e) {
             log.error("Failed to load OP IFrame", e);
+            opIFrame = "";
         }
     }
 }
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.oidc.session.servlet;
+
+import org.apache.commons.codec.binary.Base64;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A rendered OP iframe of a client along with its entity tag. Instances are immutable and shared between requests.
+ */
+class OPIFrame {
+
+    private final String callbackUrl;
+    private final byte[] content;
+    private final String entityTag;
+
+    OPIFrame(String callbackUrl, String content) throws NoSuchAlgorithmException {
+
+        this.callbackUrl = callbackUrl;
+        this.content = content.getBytes(StandardCharsets.UTF_8);
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(this.content);
+        this.entityTag = "\"" + Base64.encodeBase64URLSafeString(digest) + "\"";
+    }
+
+    /**
+     * Checks whether this iframe was rendered for the given callback URL of the client.
+     *
+     * @param callbackUrl current callback URL of the client.
+     * @return true if the iframe is still valid for the client.
+     */
+    boolean isRenderedFor(String callbackUrl) {
+        return this.callbackUrl == null ? callbackUrl == null : this.callbackUrl.equals(callbackUrl);
+    }
+
+    /**
+     * Returns the rendered iframe. The returned array must not be modified.
+     *
+     * @return UTF-8 encoded iframe.
+     */
+    byte[] getContent() {
+        return content;
+    }
+
+    String getEntityTag() {
+        return entityTag;
+    }
+
+    /**
+     * Checks whether the value of an If-None-Match request header matches this iframe.
+     *
+     * @param ifNoneMatch value of the If-None-Match header, may contain several comma separated entity tags.
+     * @return true if the browser already holds this version of the iframe.
+     */
+    boolean matches(String ifNoneMatch) {
+
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            String trimmedTag = tag.trim();
+            if (trimmedTag.startsWith("W/")) {
+                trimmedTag = trimmedTag.substring(2);
+            }
+            if ("*".equals(trimmedTag) || entityTag.equals(trimmedTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}